@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import static org.mockito.Mockito.mock;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures {@link CallIdMapper} lookups, which every call into Telecom from a
+ * ConnectionService or InCallService goes through.  Lives in this package since the lookups are
+ * package-private.
+ */
+@RunWith(Parameterized.class)
+public class CallIdMapperBenchmark {
+    @Parameterized.Parameters(name = "calls={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {{1}, {8}, {64}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mNumCalls;
+    private final Map<Call, String> mCallIds = new HashMap<>();
+    private CallIdMapper mCallIdMapper;
+    private Call[] mCalls;
+    private String[] mIds;
+
+    public CallIdMapperBenchmark(int numCalls) {
+        mNumCalls = numCalls;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mCallIdMapper = new CallIdMapper(mCallIds::get);
+        mCalls = new Call[mNumCalls];
+        mIds = new String[mNumCalls];
+        for (int i = 0; i < mNumCalls; i++) {
+            mCalls[i] = mock(Call.class);
+            mIds[i] = "TC@" + i;
+            mCallIds.put(mCalls[i], mIds[i]);
+            mCallIdMapper.addCall(mCalls[i]);
+        }
+    }
+
+    @Test
+    public void getCall() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mCallIdMapper.getCall(mIds[i++ % mNumCalls]);
+        }
+    }
+
+    @Test
+    public void getCallId() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mCallIdMapper.getCallId(mCalls[i++ % mNumCalls]);
+        }
+    }
+
+    @Test
+    public void getCall_unknownId() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mCallIdMapper.getCall("TC@unknown");
+        }
+    }
+
+    @Test
+    public void addAndRemoveCall() {
+        Call call = mock(Call.class);
+        mCallIds.put(call, "TC@new");
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mCallIdMapper.addCall(call);
+            mCallIdMapper.removeCall(call);
+        }
+    }
+}
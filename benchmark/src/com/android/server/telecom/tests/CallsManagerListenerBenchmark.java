@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.SystemClock;
+import android.telecom.VideoProfile;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.server.telecom.AsyncRingtonePlayer;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallAnomalyWatchdog;
+import com.android.server.telecom.CallAudioCommunicationDeviceTracker;
+import com.android.server.telecom.CallAudioManager;
+import com.android.server.telecom.CallAudioModeStateMachine;
+import com.android.server.telecom.CallAudioRouteStateMachine;
+import com.android.server.telecom.CallDiagnosticServiceController;
+import com.android.server.telecom.CallEndpointController;
+import com.android.server.telecom.CallEndpointControllerFactory;
+import com.android.server.telecom.CallerInfoLookupHelper;
+import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.CallsManagerListenerBase;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.ConnectionServiceFocusManager;
+import com.android.server.telecom.ConnectionServiceFocusManager.ConnectionServiceFocusManagerFactory;
+import com.android.server.telecom.DefaultDialerCache;
+import com.android.server.telecom.EmergencyCallDiagnosticLogger;
+import com.android.server.telecom.EmergencyCallHelper;
+import com.android.server.telecom.HeadsetMediaButton;
+import com.android.server.telecom.HeadsetMediaButtonFactory;
+import com.android.server.telecom.InCallController;
+import com.android.server.telecom.InCallControllerFactory;
+import com.android.server.telecom.InCallTonePlayer;
+import com.android.server.telecom.InCallWakeLockController;
+import com.android.server.telecom.InCallWakeLockControllerFactory;
+import com.android.server.telecom.MissedCallNotifier;
+import com.android.server.telecom.PhoneAccountRegistrar;
+import com.android.server.telecom.PhoneNumberUtilsAdapter;
+import com.android.server.telecom.ProximitySensorManager;
+import com.android.server.telecom.ProximitySensorManagerFactory;
+import com.android.server.telecom.Ringer;
+import com.android.server.telecom.RoleManagerAdapter;
+import com.android.server.telecom.SystemStateHelper;
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.Timeouts;
+import com.android.server.telecom.WiredHeadsetManager;
+import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
+import com.android.server.telecom.bluetooth.BluetoothRouteManager;
+import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
+import com.android.server.telecom.callfiltering.BlockedNumbersAdapter;
+import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
+import com.android.server.telecom.callsequencing.TransactionManager;
+import com.android.server.telecom.flags.FeatureFlags;
+import com.android.server.telecom.metrics.TelecomMetricsController;
+import com.android.server.telecom.ui.AudioProcessingNotification;
+import com.android.server.telecom.ui.CallStreamingNotification;
+import com.android.server.telecom.ui.DisconnectedCallNotifier;
+import com.android.server.telecom.ui.ToastFactory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures how {@link CallsManager} fans call events out to its
+ * {@link CallsManager.CallsManagerListener}s.  The construction mirrors
+ * {@code CallsManagerTest}; the listeners backed by mocks are removed again so that Mockito's
+ * invocation recording does not dominate the measurement, and are replaced by the given number
+ * of no-op listeners.
+ */
+@RunWith(Parameterized.class)
+public class CallsManagerListenerBenchmark extends TelecomTestCase {
+    private static final long STATE_TIMEOUT = 5000L;
+
+    @Parameterized.Parameters(name = "listeners={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {{1}, {16}, {64}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mNumListeners;
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+    @Mock private CallerInfoLookupHelper mCallerInfoLookupHelper;
+    @Mock private MissedCallNotifier mMissedCallNotifier;
+    @Mock private DisconnectedCallNotifier.Factory mDisconnectedCallNotifierFactory;
+    @Mock private DisconnectedCallNotifier mDisconnectedCallNotifier;
+    @Mock private PhoneAccountRegistrar mPhoneAccountRegistrar;
+    @Mock private HeadsetMediaButton mHeadsetMediaButton;
+    @Mock private HeadsetMediaButtonFactory mHeadsetMediaButtonFactory;
+    @Mock private ProximitySensorManager mProximitySensorManager;
+    @Mock private ProximitySensorManagerFactory mProximitySensorManagerFactory;
+    @Mock private InCallWakeLockController mInCallWakeLockController;
+    @Mock private ConnectionServiceFocusManagerFactory mConnSvrFocusManagerFactory;
+    @Mock private InCallWakeLockControllerFactory mInCallWakeLockControllerFactory;
+    @Mock private CallAudioManager.AudioServiceFactory mAudioServiceFactory;
+    @Mock private BluetoothRouteManager mBluetoothRouteManager;
+    @Mock private WiredHeadsetManager mWiredHeadsetManager;
+    @Mock private SystemStateHelper mSystemStateHelper;
+    @Mock private DefaultDialerCache mDefaultDialerCache;
+    @Mock private Timeouts.Adapter mTimeoutsAdapter;
+    @Mock private AsyncRingtonePlayer mAsyncRingtonePlayer;
+    @Mock private PhoneNumberUtilsAdapter mPhoneNumberUtilsAdapter;
+    @Mock private EmergencyCallHelper mEmergencyCallHelper;
+    @Mock private InCallTonePlayer.ToneGeneratorFactory mToneGeneratorFactory;
+    @Mock private ClockProxy mClockProxy;
+    @Mock private AudioProcessingNotification mAudioProcessingNotification;
+    @Mock private InCallControllerFactory mInCallControllerFactory;
+    @Mock private InCallController mInCallController;
+    @Mock private CallEndpointControllerFactory mCallEndpointControllerFactory;
+    @Mock private CallEndpointController mCallEndpointController;
+    @Mock private ConnectionServiceFocusManager mConnectionSvrFocusMgr;
+    @Mock private CallAudioRouteStateMachine mCallAudioRouteStateMachine;
+    @Mock private CallAudioRouteStateMachine.Factory mCallAudioRouteStateMachineFactory;
+    @Mock private CallAudioModeStateMachine mCallAudioModeStateMachine;
+    @Mock private CallAudioModeStateMachine.Factory mCallAudioModeStateMachineFactory;
+    @Mock private CallDiagnosticServiceController mCallDiagnosticServiceController;
+    @Mock private BluetoothStateReceiver mBluetoothStateReceiver;
+    @Mock private RoleManagerAdapter mRoleManagerAdapter;
+    @Mock private ToastFactory mToastFactory;
+    @Mock private CallAnomalyWatchdog mCallAnomalyWatchdog;
+    @Mock private EmergencyCallDiagnosticLogger mEmergencyCallDiagnosticLogger;
+    @Mock private Ringer.AccessibilityManagerAdapter mAccessibilityManagerAdapter;
+    @Mock private BlockedNumbersAdapter mBlockedNumbersAdapter;
+    @Mock private CallAudioCommunicationDeviceTracker mCommunicationDeviceTracker;
+    @Mock private CallStreamingNotification mCallStreamingNotification;
+    @Mock private BluetoothDeviceManager mBluetoothDeviceManager;
+    @Mock private FeatureFlags mFeatureFlags;
+    @Mock private com.android.internal.telephony.flags.FeatureFlags mTelephonyFlags;
+    @Mock private IncomingCallFilterGraph mIncomingCallFilterGraph;
+    @Mock private TelecomMetricsController mMockTelecomMetricsController;
+    private CallsManager mCallsManager;
+    private Call mCall;
+
+    public CallsManagerListenerBenchmark(int numListeners) {
+        mNumListeners = numListeners;
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        when(mInCallWakeLockControllerFactory.create(any(), any())).thenReturn(
+                mInCallWakeLockController);
+        when(mHeadsetMediaButtonFactory.create(any(), any(), any())).thenReturn(
+                mHeadsetMediaButton);
+        when(mProximitySensorManagerFactory.create(any(), any())).thenReturn(
+                mProximitySensorManager);
+        when(mInCallControllerFactory.create(any(), any(), any(), any(), any(), any(),
+                any())).thenReturn(mInCallController);
+        when(mCallEndpointControllerFactory.create(any(), any(), any())).thenReturn(
+                mCallEndpointController);
+        when(mCallAudioRouteStateMachineFactory.create(any(), any(), any(), any(), any(), any(),
+                anyInt(), any(), any(), any())).thenReturn(mCallAudioRouteStateMachine);
+        when(mCallAudioModeStateMachineFactory.create(any(), any(), any(), any()))
+                .thenReturn(mCallAudioModeStateMachine);
+        when(mClockProxy.currentTimeMillis()).thenReturn(System.currentTimeMillis());
+        when(mClockProxy.elapsedRealtime()).thenReturn(SystemClock.elapsedRealtime());
+        when(mConnSvrFocusManagerFactory.create(any())).thenReturn(mConnectionSvrFocusMgr);
+        doNothing().when(mRoleManagerAdapter).setCurrentUserHandle(any());
+        when(mDisconnectedCallNotifierFactory.create(any(Context.class),any(CallsManager.class)))
+                .thenReturn(mDisconnectedCallNotifier);
+        when(mTimeoutsAdapter.getCallDiagnosticServiceTimeoutMillis(any(ContentResolver.class)))
+                .thenReturn(2000L);
+        when(mTimeoutsAdapter.getNonVoipCallTransitoryStateTimeoutMillis())
+                .thenReturn(STATE_TIMEOUT);
+        mCallsManager = new CallsManager(
+                mComponentContextFixture.getTestDouble().getApplicationContext(),
+                mLock,
+                mCallerInfoLookupHelper,
+                mMissedCallNotifier,
+                mDisconnectedCallNotifierFactory,
+                mPhoneAccountRegistrar,
+                mHeadsetMediaButtonFactory,
+                mProximitySensorManagerFactory,
+                mInCallWakeLockControllerFactory,
+                mConnSvrFocusManagerFactory,
+                mAudioServiceFactory,
+                mBluetoothRouteManager,
+                mWiredHeadsetManager,
+                mSystemStateHelper,
+                mDefaultDialerCache,
+                mTimeoutsAdapter,
+                mAsyncRingtonePlayer,
+                mPhoneNumberUtilsAdapter,
+                mEmergencyCallHelper,
+                mToneGeneratorFactory,
+                mClockProxy,
+                mAudioProcessingNotification,
+                mBluetoothStateReceiver,
+                mCallAudioRouteStateMachineFactory,
+                mCallAudioModeStateMachineFactory,
+                mInCallControllerFactory,
+                mCallDiagnosticServiceController,
+                mRoleManagerAdapter,
+                mToastFactory,
+                mCallEndpointControllerFactory,
+                mCallAnomalyWatchdog,
+                mAccessibilityManagerAdapter,
+                // Just do async tasks synchronously.
+                command -> command.run(),
+                // For call audio tasks
+                command -> command.run(),
+                mBlockedNumbersAdapter,
+                TransactionManager.getTestInstance(),
+                mEmergencyCallDiagnosticLogger,
+                mCommunicationDeviceTracker,
+                mCallStreamingNotification,
+                mBluetoothDeviceManager,
+                mFeatureFlags,
+                mTelephonyFlags,
+                (call, listener, context, timeoutsAdapter,
+                        mFeatureFlags, lock) -> mIncomingCallFilterGraph,
+                mMockTelecomMetricsController);
+
+        mCallsManager.removeListener(mInCallController);
+        mCallsManager.removeListener(mInCallWakeLockController);
+        mCallsManager.removeListener(mCallEndpointController);
+        mCallsManager.removeListener(mCallDiagnosticServiceController);
+        mCallsManager.removeListener(mMissedCallNotifier);
+        mCallsManager.removeListener(mDisconnectedCallNotifier);
+        mCallsManager.removeListener(mHeadsetMediaButton);
+        mCallsManager.removeListener(mProximitySensorManager);
+        mCallsManager.removeListener(mAudioProcessingNotification);
+        mCallsManager.removeListener(mCallAnomalyWatchdog);
+        mCallsManager.removeListener(mEmergencyCallDiagnosticLogger);
+        for (int i = 0; i < mNumListeners; i++) {
+            mCallsManager.addListener(new CallsManagerListenerBase() { });
+        }
+        mCall = mock(Call.class, withSettings().stubOnly());
+    }
+
+    @Test
+    public void onIsVoipAudioModeChanged() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mCallsManager.onIsVoipAudioModeChanged(mCall);
+        }
+    }
+
+    @Test
+    public void onVideoStateChanged() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mCallsManager.onVideoStateChanged(mCall, VideoProfile.STATE_AUDIO_ONLY,
+                    VideoProfile.STATE_AUDIO_ONLY);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.Timeouts;
+import com.android.server.telecom.callfiltering.CallFilter;
+import com.android.server.telecom.callfiltering.CallFilteringResult;
+import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of {@link IncomingCallFilterGraph} itself, using filters which complete
+ * immediately, from {@link IncomingCallFilterGraph#performFiltering()} until the result is
+ * delivered.
+ */
+@RunWith(JUnit4.class)
+public class IncomingCallFilterGraphBenchmark extends TelecomTestCase {
+    private static final long FILTER_TIMEOUT = 5000;
+    private static final long TEST_TIMEOUT = 7000;
+    private static final CallFilteringResult PASS_CALL_RESULT = new CallFilteringResult.Builder()
+            .setShouldAllowCall(true)
+            .setShouldReject(false)
+            .setShouldSilence(false)
+            .setShouldAddToCallLog(true)
+            .setShouldShowNotification(true).build();
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Mock private Call mCall;
+    @Mock private Context mContext;
+    @Mock private Timeouts.Adapter mTimeoutsAdapter;
+    private TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() {};
+
+    private static class AllowFilter extends CallFilter {
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            return CompletableFuture.completedFuture(PASS_CALL_RESULT);
+        }
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mContext.getContentResolver()).thenReturn(null);
+        when(mTimeoutsAdapter.getCallScreeningTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(FILTER_TIMEOUT);
+    }
+
+    @Test
+    public void performFiltering_empty() throws Exception {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            CompletableFuture<CallFilteringResult> result = new CompletableFuture<>();
+            IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall,
+                    (call, r, timeout) -> result.complete(r), mContext, mTimeoutsAdapter,
+                    mFeatureFlags, mLock);
+            graph.performFiltering();
+            result.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Same shape as the graph built by {@code CallsManager#onSuccessfulIncomingCall}: the
+     * blocked number check runs first, then the remaining filters run in parallel and the
+     * call screening service runs last.
+     */
+    @Test
+    public void performFiltering_callsManagerShape() throws Exception {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            CompletableFuture<CallFilteringResult> result = new CompletableFuture<>();
+            IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall,
+                    (call, r, timeout) -> result.complete(r), mContext, mTimeoutsAdapter,
+                    mFeatureFlags, mLock);
+            AllowFilter blockCheck = new AllowFilter();
+            AllowFilter voicemail = new AllowFilter();
+            AllowFilter dnd = new AllowFilter();
+            AllowFilter carrierScreening = new AllowFilter();
+            AllowFilter callScreening = new AllowFilter();
+            graph.addFilter(blockCheck);
+            graph.addFilter(voicemail);
+            graph.addFilter(dnd);
+            graph.addFilter(carrierScreening);
+            graph.addFilter(callScreening);
+            IncomingCallFilterGraph.addEdge(blockCheck, voicemail);
+            IncomingCallFilterGraph.addEdge(blockCheck, dnd);
+            IncomingCallFilterGraph.addEdge(blockCheck, carrierScreening);
+            IncomingCallFilterGraph.addEdge(voicemail, callScreening);
+            IncomingCallFilterGraph.addEdge(dnd, callScreening);
+            IncomingCallFilterGraph.addEdge(carrierScreening, callScreening);
+            graph.performFiltering();
+            result.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+}
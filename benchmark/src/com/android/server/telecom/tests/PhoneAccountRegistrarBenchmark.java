@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.telephony.SubscriptionManager;
+import android.util.AtomicFile;
+import android.util.Xml;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.internal.telephony.flags.FeatureFlags;
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.telecom.AppLabelProxy;
+import com.android.server.telecom.DefaultDialerCache;
+import com.android.server.telecom.PhoneAccountRegistrar;
+import com.android.server.telecom.TelecomSystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures {@link PhoneAccountRegistrar} queries and the serialization of its state for a
+ * varying number of registered accounts.
+ */
+@RunWith(Parameterized.class)
+public class PhoneAccountRegistrarBenchmark extends TelecomTestCase {
+    private static final String FILE_NAME = "phone-account-registrar-benchmark.xml";
+    private static final int MAX_VERSION = Integer.MAX_VALUE;
+
+    @Parameterized.Parameters(name = "accounts={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {{10}, {100}, {1000}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mNumAccounts;
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+    private PhoneAccountRegistrar mRegistrar;
+    private PhoneAccountRegistrar.State mState;
+    @Mock private SubscriptionManager mSubscriptionManager;
+    @Mock private TelecomManager mTelecomManager;
+    @Mock private DefaultDialerCache mDefaultDialerCache;
+    @Mock private AppLabelProxy mAppLabelProxy;
+    @Mock private FeatureFlags mTelephonyFeatureFlags;
+
+    public PhoneAccountRegistrarBenchmark(int numAccounts) {
+        mNumAccounts = numAccounts;
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        mComponentContextFixture.setTelecomManager(mTelecomManager);
+        mComponentContextFixture.setSubscriptionManager(mSubscriptionManager);
+        when(mDefaultDialerCache.getDefaultDialerApplication(anyInt()))
+                .thenReturn("com.android.dialer");
+        when(mAppLabelProxy.getAppLabel(anyString(), any())).thenReturn("label");
+        when(mFeatureFlags.unregisterUnresolvableAccounts()).thenReturn(false);
+        UserManager userManager = mContext.getSystemService(UserManager.class);
+        when(userManager.getSerialNumberForUser(UserHandle.SYSTEM)).thenReturn(0L);
+        when(userManager.getUserForSerialNumber(0L)).thenReturn(UserHandle.SYSTEM);
+
+        // Accounts from different packages, since each package may only register a few.
+        mState = new PhoneAccountRegistrar.State();
+        for (int i = 0; i < mNumAccounts; i++) {
+            PhoneAccountHandle handle = new PhoneAccountHandle(
+                    new ComponentName("com.test.pkg" + i, "com.test.ConnectionService"),
+                    "id" + i, UserHandle.SYSTEM);
+            mState.accounts.add(PhoneAccount.builder(handle, "label" + i)
+                    .setCapabilities(i % 2 == 0
+                            ? PhoneAccount.CAPABILITY_CALL_PROVIDER
+                            : PhoneAccount.CAPABILITY_SELF_MANAGED)
+                    .addSupportedUriScheme(PhoneAccount.SCHEME_TEL)
+                    .setIsEnabled(true)
+                    .build());
+        }
+
+        // Persist the accounts so the registrar starts with them, as it would after a reboot.
+        File file = new File(mContext.getFilesDir(), FILE_NAME);
+        file.delete();
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream os = atomicFile.startWrite();
+        os.write(toXml(mState));
+        atomicFile.finishWrite(os);
+        mRegistrar = new PhoneAccountRegistrar(mContext, mLock, FILE_NAME, mDefaultDialerCache,
+                mAppLabelProxy, mTelephonyFeatureFlags, mFeatureFlags);
+        mRegistrar.setCurrentUserHandle(UserHandle.SYSTEM);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        mRegistrar = null;
+        new File(mContext.getFilesDir(), FILE_NAME).delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void getPhoneAccounts_all() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mRegistrar.getPhoneAccounts(0 /* capabilities */, 0 /* excludedCapabilities */,
+                    null /* uriScheme */, null /* packageName */,
+                    true /* includeDisabledAccounts */, UserHandle.SYSTEM,
+                    false /* crossUserAccess */, false /* includeAll */);
+        }
+    }
+
+    @Test
+    public void getPhoneAccounts_callCapable() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_TEL,
+                    false /* includeDisabledAccounts */, UserHandle.SYSTEM,
+                    false /* crossUserAccess */);
+        }
+    }
+
+    @Test
+    public void getPhoneAccounts_forPackage() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mRegistrar.getPhoneAccounts(0 /* capabilities */, 0 /* excludedCapabilities */,
+                    null /* uriScheme */, "com.test.pkg0",
+                    true /* includeDisabledAccounts */, UserHandle.SYSTEM,
+                    false /* crossUserAccess */, false /* includeAll */);
+        }
+    }
+
+    @Test
+    public void writeState() throws Exception {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            toXml(mState);
+        }
+    }
+
+    @Test
+    public void readState() throws Exception {
+        byte[] data = toXml(mState);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(new ByteArrayInputStream(data), null);
+            parser.nextTag();
+            PhoneAccountRegistrar.sStateXml.readFromXml(parser, MAX_VERSION, mContext,
+                    mTelephonyFeatureFlags, mFeatureFlags);
+        }
+    }
+
+    private byte[] toXml(PhoneAccountRegistrar.State input) throws Exception {
+        XmlSerializer serializer = new FastXmlSerializer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        serializer.setOutput(new BufferedOutputStream(baos), "utf-8");
+        PhoneAccountRegistrar.sStateXml.writeToXml(input, serializer, mContext,
+                mTelephonyFeatureFlags);
+        serializer.flush();
+        return baos.toByteArray();
+    }
+}
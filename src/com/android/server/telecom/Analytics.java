@@ -44,11 +44,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.stream.Collectors;
 
 import static android.provider.CallLog.Calls.AUTO_MISSED_EMERGENCY_CALL;
 import static android.provider.CallLog.Calls.AUTO_MISSED_MAXIMUM_DIALING;
@@ -166,6 +163,8 @@ public class Analytics {
                     ParcelableCallAnalytics.EventTiming.DND_PRE_CALL_PRE_CHECK_TIMING));
 
     public static final Map<Integer, String> sSessionIdToLogSession = new HashMap<>();
+    private static final int NUM_SESSION_IDS =
+            Collections.max(sLogSessionToSessionId.values()) + 1;
 
     static {
         for (Map.Entry<String, Integer> e : sLogSessionToSessionId.entrySet()) {
@@ -224,6 +223,108 @@ public class Analytics {
         }
     }
 
+    /**
+     * The video events of a call, kept in parallel primitive arrays so that recording an event
+     * does not allocate; the protos are only built when the analytics are dumped.
+     */
+    private static final class VideoEvents {
+        private int[] mEventNames;
+        private long[] mTimesSinceLastEventMillis;
+        private int[] mVideoStates;
+        private int mSize;
+
+        VideoEvents() {
+            mEventNames = new int[INITIAL_EVENT_CAPACITY];
+            mTimesSinceLastEventMillis = new long[INITIAL_EVENT_CAPACITY];
+            mVideoStates = new int[INITIAL_EVENT_CAPACITY];
+        }
+
+        VideoEvents(VideoEvents other) {
+            mEventNames = other.mEventNames.clone();
+            mTimesSinceLastEventMillis = other.mTimesSinceLastEventMillis.clone();
+            mVideoStates = other.mVideoStates.clone();
+            mSize = other.mSize;
+        }
+
+        void add(int eventName, long timeSinceLastEventMillis, int videoState) {
+            if (mSize == mEventNames.length) {
+                int capacity = mSize * 2;
+                mEventNames = Arrays.copyOf(mEventNames, capacity);
+                mTimesSinceLastEventMillis = Arrays.copyOf(mTimesSinceLastEventMillis, capacity);
+                mVideoStates = Arrays.copyOf(mVideoStates, capacity);
+            }
+            mEventNames[mSize] = eventName;
+            mTimesSinceLastEventMillis[mSize] = timeSinceLastEventMillis;
+            mVideoStates[mSize] = videoState;
+            mSize++;
+        }
+
+        TelecomLogClass.VideoEvent[] toProto() {
+            TelecomLogClass.VideoEvent[] result = new TelecomLogClass.VideoEvent[mSize];
+            for (int i = 0; i < mSize; i++) {
+                result[i] = new TelecomLogClass.VideoEvent()
+                        .setEventName(mEventNames[i])
+                        .setTimeSinceLastEventMillis(mTimesSinceLastEventMillis[i])
+                        .setVideoState(mVideoStates[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The InCallServices a call was bound to, stored like {@link VideoEvents}.
+     */
+    private static final class InCallServices {
+        private String[] mNames;
+        private int[] mTypes;
+        private long[] mBoundDurationsMillis;
+        private boolean[] mIsNullBindings;
+        private int mSize;
+
+        InCallServices() {
+            mNames = new String[INITIAL_EVENT_CAPACITY];
+            mTypes = new int[INITIAL_EVENT_CAPACITY];
+            mBoundDurationsMillis = new long[INITIAL_EVENT_CAPACITY];
+            mIsNullBindings = new boolean[INITIAL_EVENT_CAPACITY];
+        }
+
+        InCallServices(InCallServices other) {
+            mNames = other.mNames.clone();
+            mTypes = other.mTypes.clone();
+            mBoundDurationsMillis = other.mBoundDurationsMillis.clone();
+            mIsNullBindings = other.mIsNullBindings.clone();
+            mSize = other.mSize;
+        }
+
+        void add(String name, int type, long boundDurationMillis, boolean isNullBinding) {
+            if (mSize == mNames.length) {
+                int capacity = mSize * 2;
+                mNames = Arrays.copyOf(mNames, capacity);
+                mTypes = Arrays.copyOf(mTypes, capacity);
+                mBoundDurationsMillis = Arrays.copyOf(mBoundDurationsMillis, capacity);
+                mIsNullBindings = Arrays.copyOf(mIsNullBindings, capacity);
+            }
+            mNames[mSize] = name;
+            mTypes[mSize] = type;
+            mBoundDurationsMillis[mSize] = boundDurationMillis;
+            mIsNullBindings[mSize] = isNullBinding;
+            mSize++;
+        }
+
+        TelecomLogClass.InCallServiceInfo[] toProto() {
+            TelecomLogClass.InCallServiceInfo[] result =
+                    new TelecomLogClass.InCallServiceInfo[mSize];
+            for (int i = 0; i < mSize; i++) {
+                result[i] = new TelecomLogClass.InCallServiceInfo()
+                        .setInCallServiceName(mNames[i])
+                        .setInCallServiceType(mTypes[i])
+                        .setBoundDurationMillis(mBoundDurationsMillis[i])
+                        .setIsNullBinding(mIsNullBindings[i]);
+            }
+            return result;
+        }
+    }
+
     /**
      * A class that holds data associated with a call.
      */
@@ -252,12 +353,12 @@ public class Analytics {
         public EventManager.EventRecord callEvents;
 
         public boolean isVideo = false;
-        public List<TelecomLogClass.VideoEvent> videoEvents;
-        public List<TelecomLogClass.InCallServiceInfo> inCallServiceInfos;
         public int callProperties = 0;
         public int callSource = CALL_SOURCE_UNSPECIFIED;
         public long missedReason;
 
+        private VideoEvents mVideoEvents = new VideoEvents();
+        private InCallServices mInCallServices = new InCallServices();
         private long mTimeOfLastVideoEvent = -1;
 
         CallInfoImpl(String callId, int callDirection) {
@@ -267,8 +368,6 @@ public class Analytics {
             this.callDirection = callDirection;
             callTechnologies = 0;
             connectionService = "";
-            videoEvents = new LinkedList<>();
-            inCallServiceInfos = new LinkedList<>();
             missedReason = 0;
         }
 
@@ -285,7 +384,8 @@ public class Analytics {
             this.isEmergency = other.isEmergency;
             this.callEvents = other.callEvents;
             this.isVideo = other.isVideo;
-            this.videoEvents = other.videoEvents;
+            this.mVideoEvents = new VideoEvents(other.mVideoEvents);
+            this.mInCallServices = new InCallServices(other.mInCallServices);
             this.callProperties = other.callProperties;
             this.callSource = other.callSource;
             this.missedReason = other.missedReason;
@@ -386,20 +486,13 @@ public class Analytics {
             }
             mTimeOfLastVideoEvent = currentTime;
 
-            videoEvents.add(new TelecomLogClass.VideoEvent()
-                    .setEventName(eventId)
-                    .setTimeSinceLastEventMillis(timeSinceLastEvent)
-                    .setVideoState(videoState));
+            mVideoEvents.add(eventId, timeSinceLastEvent, videoState);
         }
 
         @Override
         public void addInCallService(String serviceName, int type, long boundDuration,
                 boolean isNullBinding) {
-            inCallServiceInfos.add(new TelecomLogClass.InCallServiceInfo()
-                    .setInCallServiceName(serviceName)
-                    .setInCallServiceType(type)
-                    .setBoundDurationMillis(boundDuration)
-                    .setIsNullBinding(isNullBinding));
+            mInCallServices.add(serviceName, type, boundDuration, isNullBinding);
         }
 
         @Override
@@ -436,18 +529,20 @@ public class Analytics {
         public ParcelableCallAnalytics toParcelableAnalytics() {
             TelecomLogClass.CallLog analyticsProto = toProto();
             List<ParcelableCallAnalytics.AnalyticsEvent> events =
-                    Arrays.stream(analyticsProto.callEvents)
-                            .map(callEventProto -> new ParcelableCallAnalytics.AnalyticsEvent(
-                                    callEventProto.getEventName(),
-                                    callEventProto.getTimeSinceLastEventMillis())
-                            ).collect(Collectors.toList());
+                    new ArrayList<>(analyticsProto.callEvents.length);
+            for (TelecomLogClass.Event callEventProto : analyticsProto.callEvents) {
+                events.add(new ParcelableCallAnalytics.AnalyticsEvent(
+                        callEventProto.getEventName(),
+                        callEventProto.getTimeSinceLastEventMillis()));
+            }
 
             List<ParcelableCallAnalytics.EventTiming> timings =
-                    Arrays.stream(analyticsProto.callTimings)
-                            .map(callTimingProto -> new ParcelableCallAnalytics.EventTiming(
-                                    callTimingProto.getTimingName(),
-                                    callTimingProto.getTimeMillis())
-                            ).collect(Collectors.toList());
+                    new ArrayList<>(analyticsProto.callTimings.length);
+            for (TelecomLogClass.EventTimingEntry callTimingProto : analyticsProto.callTimings) {
+                timings.add(new ParcelableCallAnalytics.EventTiming(
+                        callTimingProto.getTimingName(),
+                        callTimingProto.getTimeMillis()));
+            }
 
             ParcelableCallAnalytics result = new ParcelableCallAnalytics(
                     // rounds down to nearest 5 minute mark
@@ -465,12 +560,15 @@ public class Analytics {
                     timings);
 
             result.setIsVideoCall(analyticsProto.getIsVideoCall());
-            result.setVideoEvents(Arrays.stream(analyticsProto.videoEvents)
-                    .map(videoEventProto -> new ParcelableCallAnalytics.VideoEvent(
-                            videoEventProto.getEventName(),
-                            videoEventProto.getTimeSinceLastEventMillis(),
-                            videoEventProto.getVideoState())
-                    ).collect(Collectors.toList()));
+            List<ParcelableCallAnalytics.VideoEvent> videoEvents =
+                    new ArrayList<>(analyticsProto.videoEvents.length);
+            for (TelecomLogClass.VideoEvent videoEventProto : analyticsProto.videoEvents) {
+                videoEvents.add(new ParcelableCallAnalytics.VideoEvent(
+                        videoEventProto.getEventName(),
+                        videoEventProto.getTimeSinceLastEventMillis(),
+                        videoEventProto.getVideoState()));
+            }
+            result.setVideoEvents(videoEvents);
 
             result.setCallSource(analyticsProto.getCallSource());
 
@@ -510,10 +608,8 @@ public class Analytics {
                         .map(Analytics::logEventTimingToProtoEventTiming)
                         .toArray(TelecomLogClass.EventTimingEntry[]::new);
             }
-            result.videoEvents =
-                    videoEvents.toArray(new TelecomLogClass.VideoEvent[videoEvents.size()]);
-            result.inCallServices = inCallServiceInfos.toArray(
-                    new TelecomLogClass.InCallServiceInfo[inCallServiceInfos.size()]);
+            result.videoEvents = mVideoEvents.toProto();
+            result.inCallServices = mInCallServices.toProto();
 
             return result;
         }
@@ -581,19 +677,17 @@ public class Analytics {
         private String getInCallServicesString() {
             StringBuilder s = new StringBuilder();
             s.append("[\n");
-            if (inCallServiceInfos != null) {
-                for (TelecomLogClass.InCallServiceInfo service : inCallServiceInfos) {
-                    s.append("    ");
-                    s.append("name: ");
-                    s.append(service.getInCallServiceName());
-                    s.append(" type: ");
-                    s.append(service.getInCallServiceType());
-                    s.append(" is crashed: ");
-                    s.append(service.getIsNullBinding());
-                    s.append(" service last time in ms: ");
-                    s.append(service.getBoundDurationMillis());
-                    s.append("\n");
-                }
+            for (int i = 0; i < mInCallServices.mSize; i++) {
+                s.append("    ");
+                s.append("name: ");
+                s.append(mInCallServices.mNames[i]);
+                s.append(" type: ");
+                s.append(mInCallServices.mTypes[i]);
+                s.append(" is crashed: ");
+                s.append(mInCallServices.mIsNullBindings[i]);
+                s.append(" service last time in ms: ");
+                s.append(mInCallServices.mBoundDurationsMillis[i]);
+                s.append("\n");
             }
             s.append("]");
             return s.toString();
@@ -649,19 +743,35 @@ public class Analytics {
 
     public static final int MAX_NUM_CALLS_TO_STORE = 100;
     public static final int MAX_NUM_DUMP_TIMES_TO_STORE = 100;
+    public static final int MAX_NUM_SESSION_TIMINGS_TO_STORE = 1000;
+    private static final int INITIAL_EVENT_CAPACITY = 4;
 
     private static final Object sLock = new Object(); // Coarse lock for all of analytics
-    private static final LinkedBlockingDeque<Long> sDumpTimes =
-            new LinkedBlockingDeque<>(MAX_NUM_DUMP_TIMES_TO_STORE);
-    private static final Map<String, CallInfoImpl> sCallIdToInfo = new HashMap<>();
-    private static final LinkedList<String> sActiveCallIds = new LinkedList<>();
-    private static final List<SessionTiming> sSessionTimings = new LinkedList<>();
+
+    // The dump times, calls and session timings are kept in fixed-size ring buffers; once full,
+    // the oldest entry is overwritten. sNextXxx is the slot the next entry is written to.
+    private static final long[] sDumpTimes = new long[MAX_NUM_DUMP_TIMES_TO_STORE];
+    private static int sNextDumpTime = 0;
+    private static int sNumDumpTimes = 0;
+
+    private static final CallInfoImpl[] sCalls = new CallInfoImpl[MAX_NUM_CALLS_TO_STORE];
+    private static int sNextCall = 0;
+    private static int sNumCalls = 0;
+
+    private static final int[] sSessionTimingKeys = new int[MAX_NUM_SESSION_TIMINGS_TO_STORE];
+    private static final long[] sSessionTimingTimes = new long[MAX_NUM_SESSION_TIMINGS_TO_STORE];
+    private static int sNextSessionTiming = 0;
+    private static int sNumSessionTimings = 0;
 
     public static void addSessionTiming(String sessionName, long time) {
-        if (sLogSessionToSessionId.containsKey(sessionName)) {
+        Integer sessionId = sLogSessionToSessionId.get(sessionName);
+        if (sessionId != null) {
             synchronized (sLock) {
-                sSessionTimings.add(new SessionTiming(sLogSessionToSessionId.get(sessionName),
-                        time));
+                sSessionTimingKeys[sNextSessionTiming] = sessionId;
+                sSessionTimingTimes[sNextSessionTiming] = time;
+                sNextSessionTiming = (sNextSessionTiming + 1) % MAX_NUM_SESSION_TIMINGS_TO_STORE;
+                sNumSessionTimings = Math.min(sNumSessionTimings + 1,
+                        MAX_NUM_SESSION_TIMINGS_TO_STORE);
             }
         }
     }
@@ -670,26 +780,38 @@ public class Analytics {
         Log.i(TAG, "Starting analytics for call " + callId);
         CallInfoImpl callInfo = new CallInfoImpl(callId, direction);
         synchronized (sLock) {
-            while (sActiveCallIds.size() >= MAX_NUM_CALLS_TO_STORE) {
-                String callToRemove = sActiveCallIds.remove();
-                sCallIdToInfo.remove(callToRemove);
+            for (int i = 0; i < sNumCalls; i++) {
+                int index = getRingIndex(i, sNextCall, sNumCalls, MAX_NUM_CALLS_TO_STORE);
+                if (sCalls[index].callId.equals(callId)) {
+                    sCalls[index] = callInfo;
+                    return callInfo;
+                }
             }
-            sCallIdToInfo.put(callId, callInfo);
-            sActiveCallIds.add(callId);
+            sCalls[sNextCall] = callInfo;
+            sNextCall = (sNextCall + 1) % MAX_NUM_CALLS_TO_STORE;
+            sNumCalls = Math.min(sNumCalls + 1, MAX_NUM_CALLS_TO_STORE);
         }
         return callInfo;
     }
 
     public static TelecomAnalytics dumpToParcelableAnalytics() {
-        List<ParcelableCallAnalytics> calls = new LinkedList<>();
-        List<SessionTiming> sessionTimings = new LinkedList<>();
+        List<ParcelableCallAnalytics> calls;
+        List<SessionTiming> sessionTimings;
         synchronized (sLock) {
-            calls.addAll(sCallIdToInfo.values().stream()
-                    .map(CallInfoImpl::toParcelableAnalytics)
-                    .collect(Collectors.toList()));
-            sessionTimings.addAll(sSessionTimings);
-            sCallIdToInfo.clear();
-            sSessionTimings.clear();
+            calls = new ArrayList<>(sNumCalls);
+            for (int i = 0; i < sNumCalls; i++) {
+                calls.add(sCalls[getRingIndex(i, sNextCall, sNumCalls, MAX_NUM_CALLS_TO_STORE)]
+                        .toParcelableAnalytics());
+            }
+            sessionTimings = new ArrayList<>(sNumSessionTimings);
+            for (int i = 0; i < sNumSessionTimings; i++) {
+                int index = getRingIndex(i, sNextSessionTiming, sNumSessionTimings,
+                        MAX_NUM_SESSION_TIMINGS_TO_STORE);
+                sessionTimings.add(new SessionTiming(sSessionTimingKeys[index],
+                        sSessionTimingTimes[index]));
+            }
+            clearCalls();
+            clearSessionTimings();
         }
         return new TelecomAnalytics(sessionTimings, calls);
     }
@@ -699,19 +821,24 @@ public class Analytics {
 
         synchronized (sLock) {
             noteDumpTime();
-            result.callLogs = sCallIdToInfo.values().stream()
-                    .map(CallInfoImpl::toProto)
-                    .toArray(TelecomLogClass.CallLog[]::new);
-            result.sessionTimings = sSessionTimings.stream()
-                    .map(timing -> new TelecomLogClass.LogSessionTiming()
-                            .setSessionEntryPoint(timing.getKey())
-                            .setTimeMillis(timing.getTime()))
-                    .toArray(TelecomLogClass.LogSessionTiming[]::new);
+            result.callLogs = new TelecomLogClass.CallLog[sNumCalls];
+            for (int i = 0; i < sNumCalls; i++) {
+                result.callLogs[i] = sCalls[getRingIndex(i, sNextCall, sNumCalls,
+                        MAX_NUM_CALLS_TO_STORE)].toProto();
+            }
+            result.sessionTimings = new TelecomLogClass.LogSessionTiming[sNumSessionTimings];
+            for (int i = 0; i < sNumSessionTimings; i++) {
+                int index = getRingIndex(i, sNextSessionTiming, sNumSessionTimings,
+                        MAX_NUM_SESSION_TIMINGS_TO_STORE);
+                result.sessionTimings[i] = new TelecomLogClass.LogSessionTiming()
+                        .setSessionEntryPoint(sSessionTimingKeys[index])
+                        .setTimeMillis(sSessionTimingTimes[index]);
+            }
             result.setHardwareRevision(SystemProperties.get("ro.boot.revision", ""));
             result.setCarrierId(getCarrierId(context));
             if (args.length > 1 && CLEAR_ANALYTICS_ARG.equals(args[1])) {
-                sCallIdToInfo.clear();
-                sSessionTimings.clear();
+                clearCalls();
+                clearSessionTimings();
             }
         }
         String encodedProto = Base64.encodeToString(
@@ -749,19 +876,22 @@ public class Analytics {
     public static void dump(IndentingPrintWriter writer) {
         synchronized (sLock) {
             int prefixLength = CallsManager.TELECOM_CALL_ID_PREFIX.length();
-            List<String> callIds = new ArrayList<>(sCallIdToInfo.keySet());
+            CallInfoImpl[] calls = new CallInfoImpl[sNumCalls];
+            for (int i = 0; i < sNumCalls; i++) {
+                calls[i] = sCalls[getRingIndex(i, sNextCall, sNumCalls, MAX_NUM_CALLS_TO_STORE)];
+            }
             // Sort the analytics in increasing order of call IDs
             try {
-                Collections.sort(callIds, (id1, id2) -> {
+                Arrays.sort(calls, (call1, call2) -> {
                     int i1, i2;
                     try {
-                        i1 = Integer.valueOf(id1.substring(prefixLength));
+                        i1 = Integer.valueOf(call1.callId.substring(prefixLength));
                     } catch (NumberFormatException e) {
                         i1 = Integer.MAX_VALUE;
                     }
 
                     try {
-                        i2 = Integer.valueOf(id2.substring(prefixLength));
+                        i2 = Integer.valueOf(call2.callId.substring(prefixLength));
                     } catch (NumberFormatException e) {
                         i2 = Integer.MAX_VALUE;
                     }
@@ -771,20 +901,34 @@ public class Analytics {
                 // do nothing, leave the list in a partially sorted state.
             }
 
-            for (String callId : callIds) {
-                writer.printf("Call %s: ", callId);
-                writer.println(sCallIdToInfo.get(callId).toString());
+            for (CallInfoImpl call : calls) {
+                writer.printf("Call %s: ", call.callId);
+                writer.println(call.toString());
             }
 
-            Map<Integer, Double> averageTimings = SessionTiming.averageTimings(sSessionTimings);
-            averageTimings.entrySet().stream()
-                    .filter(e -> sSessionIdToLogSession.containsKey(e.getKey()))
-                    .forEach(e -> writer.printf("%s: %.2f\n",
-                            sSessionIdToLogSession.get(e.getKey()), e.getValue()));
+            // Average the session timings by session, in order of the session ids.
+            long[] totalTimes = new long[NUM_SESSION_IDS];
+            int[] counts = new int[NUM_SESSION_IDS];
+            for (int i = 0; i < sNumSessionTimings; i++) {
+                int key = sSessionTimingKeys[i];
+                if (key >= 0) {
+                    totalTimes[key] += sSessionTimingTimes[i];
+                    counts[key]++;
+                }
+            }
+            for (int key = 0; key < NUM_SESSION_IDS; key++) {
+                if (counts[key] > 0 && sSessionIdToLogSession.containsKey(key)) {
+                    writer.printf("%s: %.2f\n", sSessionIdToLogSession.get(key),
+                            (double) totalTimes[key] / counts[key]);
+                }
+            }
             writer.println("Hardware Version: " + SystemProperties.get("ro.boot.revision", ""));
             writer.println("Past analytics dumps: ");
             writer.increaseIndent();
-            for (long time : sDumpTimes) {
+            // Most recent dump first.
+            for (int i = sNumDumpTimes - 1; i >= 0; i--) {
+                long time = sDumpTimes[getRingIndex(i, sNextDumpTime, sNumDumpTimes,
+                        MAX_NUM_DUMP_TIMES_TO_STORE)];
                 writer.println(Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC));
             }
             writer.decreaseIndent();
@@ -793,30 +937,51 @@ public class Analytics {
 
     public static void reset() {
         synchronized (sLock) {
-            sCallIdToInfo.clear();
+            clearCalls();
         }
     }
 
     public static void noteDumpTime() {
-        if (sDumpTimes.remainingCapacity() == 0) {
-            sDumpTimes.removeLast();
-        }
-        try {
-            sDumpTimes.addFirst(System.currentTimeMillis());
-        } catch (IllegalStateException e) {
-            Log.w(TAG, "Failed to note dump time -- full");
+        synchronized (sLock) {
+            sDumpTimes[sNextDumpTime] = System.currentTimeMillis();
+            sNextDumpTime = (sNextDumpTime + 1) % MAX_NUM_DUMP_TIMES_TO_STORE;
+            sNumDumpTimes = Math.min(sNumDumpTimes + 1, MAX_NUM_DUMP_TIMES_TO_STORE);
         }
     }
 
+    /**
+     * @param position The position of the entry, where 0 is the oldest one.
+     * @param next The slot the next entry of the ring buffer will be written to.
+     * @param size The number of entries in the ring buffer.
+     * @param capacity The capacity of the ring buffer.
+     * @return The slot holding the entry at the given position.
+     */
+    private static int getRingIndex(int position, int next, int size, int capacity) {
+        return (next - size + position + capacity) % capacity;
+    }
+
+    private static void clearCalls() {
+        Arrays.fill(sCalls, null);
+        sNextCall = 0;
+        sNumCalls = 0;
+    }
+
+    private static void clearSessionTimings() {
+        sNextSessionTiming = 0;
+        sNumSessionTimings = 0;
+    }
+
     /**
      * Returns a copy of callIdToInfo. Use only for testing.
      */
     @VisibleForTesting
     public static Map<String, CallInfoImpl> cloneData() {
         synchronized (sLock) {
-            Map<String, CallInfoImpl> result = new HashMap<>(sCallIdToInfo.size());
-            for (Map.Entry<String, CallInfoImpl> entry : sCallIdToInfo.entrySet()) {
-                result.put(entry.getKey(), new CallInfoImpl(entry.getValue()));
+            Map<String, CallInfoImpl> result = new HashMap<>(sNumCalls);
+            for (int i = 0; i < sNumCalls; i++) {
+                CallInfoImpl call =
+                        sCalls[getRingIndex(i, sNextCall, sNumCalls, MAX_NUM_CALLS_TO_STORE)];
+                result.put(call.callId, new CallInfoImpl(call));
             }
             return result;
         }
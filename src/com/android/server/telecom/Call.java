@@ -77,6 +77,7 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telecom.IVideoProvider;
 import com.android.internal.util.Preconditions;
 import com.android.server.telecom.flags.FeatureFlags;
+import com.android.server.telecom.metrics.CallLatencyTimeline;
 import com.android.server.telecom.stats.CallFailureCause;
 import com.android.server.telecom.stats.CallStateChangedAtomWriter;
 import com.android.server.telecom.ui.ToastFactory;
@@ -205,6 +206,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         default void onReceivedCallQualityReport(Call call, CallQuality callQuality) {};
         default void onCallerNumberVerificationStatusChanged(Call call,
                 int callerNumberVerificationStatus) {};
+        default void onStateChanged(Call call, int oldState, int newState) {};
     }
 
     public abstract static class ListenerBase implements Listener {
@@ -305,6 +307,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         @Override
         public void onCallerNumberVerificationStatusChanged(Call call,
                 int callerNumberVerificationStatus) {}
+        @Override
+        public void onStateChanged(Call call, int oldState, int newState) {}
     }
 
     private final CallerInfoLookupHelper.OnQueryCompleteListener mCallerInfoQueryListener =
@@ -361,6 +365,12 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     private long mCreationElapsedRealtimeMillis;
 
+    /**
+     * The setup milestones of an incoming call added through
+     * {@link android.telecom.TelecomManager#addNewIncomingCall}; {@code null} for other calls.
+     */
+    private volatile CallLatencyTimeline mLatencyTimeline;
+
     /** The time this call was made active. */
     private long mConnectTimeMillis = 0;
 
@@ -1409,6 +1419,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
             updateVideoHistoryViaState(mState, newState);
 
+            int oldState = mState;
             mState = newState;
             maybeLoadCannedSmsResponses();
 
@@ -1492,6 +1503,10 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 }
             }
 
+            for (Listener l : mListeners) {
+                l.onStateChanged(this, oldState, newState);
+            }
+
             mCallStateChangedAtomWriter
                     .setDisconnectCause(getDisconnectCause())
                     .setSelfManaged(isSelfManaged())
@@ -2307,6 +2322,41 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         return mCreationElapsedRealtimeMillis;
     }
 
+    /**
+     * Starts tracking the setup milestones of this incoming call.
+     *
+     * @param startMillis The elapsed realtime the call was reported to Telecom.
+     */
+    public void startLatencyTimeline(long startMillis) {
+        mLatencyTimeline = new CallLatencyTimeline(startMillis);
+    }
+
+    /**
+     * Stamps a setup milestone, if the milestones of this call are tracked.
+     *
+     * @param milestone One of the {@code CallLatencyStats.MILESTONE_*} values.
+     */
+    public void markLatencyMilestone(int milestone) {
+        CallLatencyTimeline timeline = mLatencyTimeline;
+        if (timeline != null) {
+            timeline.mark(milestone, SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Records how long a call filter took, if the milestones of this call are tracked.
+     */
+    public void markFilterLatency(String filterName, long durationMillis) {
+        CallLatencyTimeline timeline = mLatencyTimeline;
+        if (timeline != null) {
+            timeline.markFilter(filterName, durationMillis);
+        }
+    }
+
+    public CallLatencyTimeline getLatencyTimeline() {
+        return mLatencyTimeline;
+    }
+
     public long getConnectTimeMillis() {
         return mConnectTimeMillis;
     }
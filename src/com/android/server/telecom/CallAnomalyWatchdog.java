@@ -216,6 +216,7 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         stopTrackingCall(call);
         if (mFeatureFlags.telecomMetricsSupport()) {
             mMetricsController.getCallStats().onCallEnd(call);
+            mMetricsController.getCallLatencyStats().onCallEnd(call);
         }
     }
 
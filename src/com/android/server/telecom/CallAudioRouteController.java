@@ -25,6 +25,7 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothLeAudio;
 import android.bluetooth.BluetoothProfile;
+import android.bluetooth.BluetoothStatusCodes;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -39,6 +40,7 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.telecom.CallAudioState;
 import android.telecom.Log;
 import android.telecom.Logging.Session;
@@ -117,7 +119,14 @@ public class CallAudioRouteController implements CallAudioRouteAdapter {
     private int mFocusType;
     private int mCallSupportedRouteMask = -1;
     private boolean mIsScoAudioConnected;
+    // The elapsed realtime SCO audio was last reported connected, or -1 while it's disconnected.
+    private volatile long mScoAudioConnectedMillis = -1;
     private boolean mAvailableRoutesUpdated;
+    private boolean mIsBluetoothPreActivationEnabled;
+    // The SCO route whose audio was connected ahead of time while ringing, see
+    // #maybePreActivateBluetoothRoute.
+    private AudioRoute mPreActivatedRoute;
+    private long mPreActivationStartMillis;
     private final Object mLock = new Object();
     private final TelecomSystem.SyncRoot mTelecomLock;
     private final BroadcastReceiver mSpeakerPhoneChangeReceiver = new BroadcastReceiver() {
@@ -886,6 +895,7 @@ public class CallAudioRouteController implements CallAudioRouteAdapter {
                 AudioRoute route = mFeatureFlags.resolveActiveBtRoutingAndBtTimingIssue()
                         ? calculateBaselineRoute(false, true, null)
                         : mCurrentRoute;
+                onPreActivationResolved(null);
                 routeTo(false, route);
                 // Clear pending messages
                 mPendingAudioRoute.clearPendingMessages();
@@ -896,7 +906,11 @@ public class CallAudioRouteController implements CallAudioRouteAdapter {
                 // when a video call is put on hold). Ignore route changes if we're handling playing
                 // the end tone. Otherwise, it's possible that we'll override the route a client has
                 // previously requested.
-                if (handleEndTone == 0) {
+                if (handleEndTone != 0) {
+                    // The end tone is played for a call which is going away, so a link connected
+                    // ahead of time is not going to be used.
+                    onPreActivationResolved(null);
+                } else {
                     // Cache BT device switch in the case that inband ringing is disabled and audio
                     // was routed to a watch. When active focus is received, this selection will be
                     // honored provided that the current route is associated.
@@ -907,6 +921,7 @@ public class CallAudioRouteController implements CallAudioRouteAdapter {
                                     mCurrentRoute.getBluetoothAddress())
                             ? mCurrentRoute
                             : getBaseRoute(true, null);
+                    onPreActivationResolved(audioRoute);
                     routeTo(true, audioRoute);
                     clearRingingBluetoothAddress();
                 }
@@ -919,6 +934,7 @@ public class CallAudioRouteController implements CallAudioRouteAdapter {
                     // inactive route.
                     if (device != null && !mBluetoothRouteManager.isInbandRingEnabled(device)) {
                         routeTo(false, route);
+                        maybePreActivateBluetoothRoute(route, device);
                     } else {
                         routeTo(true, route);
                     }
@@ -1553,6 +1569,81 @@ public class CallAudioRouteController implements CallAudioRouteAdapter {
 
     public void setIsScoAudioConnected(boolean value) {
         mIsScoAudioConnected = value;
+        mScoAudioConnectedMillis = value ? SystemClock.elapsedRealtime() : -1;
+    }
+
+    /**
+     * Sets whether SCO audio of the Bluetooth headset an incoming call is expected to be answered
+     * on is connected while the call is still ringing, so that answering the call does not have
+     * to wait for BT_AUDIO_CONNECTED before audio flows.
+     */
+    public void setBluetoothPreActivationEnabled(boolean enabled) {
+        mIsBluetoothPreActivationEnabled = enabled;
+    }
+
+    /**
+     * While ringing on a headset without in-band ringing, the route stays inactive until the call
+     * is answered, and only then is SCO audio connected.  If the headset is also the most recently
+     * active SCO device, the call is most likely answered on it, so connect its audio right away.
+     * The link is released again if the call ends up elsewhere, see #onPreActivationResolved.
+     */
+    private void maybePreActivateBluetoothRoute(AudioRoute route, BluetoothDevice device) {
+        if (!mIsBluetoothPreActivationEnabled || mPreActivatedRoute != null
+                || route.getType() != AudioRoute.TYPE_BLUETOOTH_SCO
+                || mBluetoothRouteManager.isWatch(device)) {
+            return;
+        }
+        String activeAddress;
+        synchronized (mLock) {
+            activeAddress = mActiveDeviceCache.get(AudioRoute.TYPE_BLUETOOTH_SCO);
+        }
+        if (!Objects.equals(activeAddress, route.getBluetoothAddress())) {
+            Log.i(this, "maybePreActivateBluetoothRoute: %s is not the active SCO device", route);
+            return;
+        }
+        long startMillis = SystemClock.elapsedRealtime();
+        if (mBluetoothRouteManager.getDeviceManager().connectAudio(device,
+                AudioRoute.TYPE_BLUETOOTH_SCO)) {
+            Log.i(this, "maybePreActivateBluetoothRoute: connecting audio of %s", route);
+            mPreActivatedRoute = route;
+            mPreActivationStartMillis = startMillis;
+        }
+    }
+
+    /**
+     * Resolves the pending pre-activation, if any, once the call is answered or ends.
+     * @param activeRoute The route the answered call is about to be routed to, or null if the call
+     *                    ended while ringing.
+     */
+    private void onPreActivationResolved(AudioRoute activeRoute) {
+        if (mPreActivatedRoute == null) {
+            return;
+        }
+        long nowMillis = SystemClock.elapsedRealtime();
+        boolean isHit = mPreActivatedRoute.equals(activeRoute);
+        long latencyMillis;
+        if (isHit) {
+            // The head start the link got, up to the point it was connected.
+            long connectedMillis = mScoAudioConnectedMillis;
+            latencyMillis = (connectedMillis >= mPreActivationStartMillis
+                    ? Math.min(connectedMillis, nowMillis) : nowMillis)
+                    - mPreActivationStartMillis;
+        } else {
+            // Fall back: release the link, which was held for nothing.
+            Log.i(this, "onPreActivationResolved: releasing %s", mPreActivatedRoute);
+            latencyMillis = nowMillis - mPreActivationStartMillis;
+            if (mBluetoothRouteManager.getDeviceManager().disconnectSco()
+                    == BluetoothStatusCodes.SUCCESS
+                    && mPendingAudioRoute.getCommunicationDeviceType()
+                    == AudioRoute.TYPE_BLUETOOTH_SCO) {
+                mPendingAudioRoute.setCommunicationDeviceType(TYPE_INVALID);
+            }
+        }
+        if (mFeatureFlags.telecomMetricsSupport()) {
+            mMetricsController.getAudioRoutePreActivationStats().log(
+                    mPreActivatedRoute.getType(), isHit, latencyMillis);
+        }
+        mPreActivatedRoute = null;
     }
 
     private void clearRingingBluetoothAddress() {
@@ -16,24 +16,31 @@
 
 package com.android.server.telecom;
 
-import android.util.ArrayMap;
-
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-/** Utility to map {@link Call} objects to unique IDs. IDs are generated when a call is added. */
+/**
+ * Utility to map {@link Call} objects to unique IDs. IDs are generated when a call is added.
+ * Each component keeps its own mapper, since the IDs it hands out (telecom IDs or connection
+ * IDs) and the calls it is allowed to resolve differ.
+ */
 @VisibleForTesting
 public class CallIdMapper {
     /**
-     * A very basic bidirectional map.
+     * A very basic bidirectional map.  Lookups in either direction are constant time and may be
+     * made from any thread; updates are serialized so both directions always agree.
      */
     static class BiMap<K, V> {
-        private Map<K, V> mPrimaryMap = new ArrayMap<>();
-        private Map<V, K> mSecondaryMap = new ArrayMap<>();
+        private final Map<K, V> mPrimaryMap = new ConcurrentHashMap<>();
+        private final Map<V, K> mSecondaryMap = new ConcurrentHashMap<>();
+        private final Collection<V> mValues =
+                Collections.unmodifiableCollection(mPrimaryMap.values());
 
-        public boolean put(K key, V value) {
+        public synchronized boolean put(K key, V value) {
             if (key == null || value == null || mPrimaryMap.containsKey(key) ||
                     mSecondaryMap.containsKey(value)) {
                 return false;
@@ -44,20 +51,19 @@ public class CallIdMapper {
             return true;
         }
 
-        public boolean remove(K key) {
+        public synchronized boolean remove(K key) {
             if (key == null) {
                 return false;
             }
-            if (mPrimaryMap.containsKey(key)) {
-                V value = getValue(key);
-                mPrimaryMap.remove(key);
+            V value = mPrimaryMap.remove(key);
+            if (value != null) {
                 mSecondaryMap.remove(value);
                 return true;
             }
             return false;
         }
 
-        public boolean removeValue(V value) {
+        public synchronized boolean removeValue(V value) {
             if (value == null) {
                 return false;
             }
@@ -65,18 +71,18 @@ public class CallIdMapper {
         }
 
         public V getValue(K key) {
-            return mPrimaryMap.get(key);
+            return key == null ? null : mPrimaryMap.get(key);
         }
 
         public K getKey(V value) {
-            return mSecondaryMap.get(value);
+            return value == null ? null : mSecondaryMap.get(value);
         }
 
         public Collection<V> getValues() {
-            return mPrimaryMap.values();
+            return mValues;
         }
 
-        public void clear() {
+        public synchronized void clear() {
             mPrimaryMap.clear();
             mSecondaryMap.clear();
         }
@@ -76,6 +76,11 @@ public class CallIntentProcessor {
      */
     public static final String KEY_INITIATING_USER = "initiating_user";
 
+    /**
+     * The elapsed realtime an incoming call was reported to Telecom.
+     */
+    public static final String KEY_RECEIVED_TIME_MILLIS = "received_time_millis";
+
 
     private final Context mContext;
     private final CallsManager mCallsManager;
@@ -292,7 +297,10 @@ public class CallIntentProcessor {
         Log.d(CallIntentProcessor.class,
                 "Processing incoming call from connection service [%s]",
                 phoneAccountHandle.getComponentName());
-        callsManager.processIncomingCallIntent(phoneAccountHandle, clientExtras);
+        Call call = callsManager.processIncomingCallIntent(phoneAccountHandle, clientExtras);
+        if (call != null && intent.hasExtra(KEY_RECEIVED_TIME_MILLIS)) {
+            call.startLatencyTimeline(intent.getLongExtra(KEY_RECEIVED_TIME_MILLIS, 0));
+        }
     }
 
     static void processUnknownCallIntent(CallsManager callsManager, Intent intent) {
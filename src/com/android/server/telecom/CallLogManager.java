@@ -38,6 +38,7 @@ import android.os.HandlerExecutor;
 import android.os.Looper;
 import android.os.UserHandle;
 import android.os.PersistableBundle;
+import android.os.SystemClock;
 import android.os.UserManager;
 import android.provider.CallLog;
 import android.provider.CallLog.Calls;
@@ -54,6 +55,7 @@ import android.telephony.SubscriptionManager;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.flags.FeatureFlags;
 import com.android.server.telecom.flags.Flags;
@@ -131,6 +133,8 @@ public final class CallLogManager extends CallsManagerListenerBase {
 
     private final FeatureFlags mFeatureFlags;
 
+    private final LogScaleHistogram mWriteLatenciesMillis = new LogScaleHistogram(16);
+
     public CallLogManager(Context context, PhoneAccountRegistrar phoneAccountRegistrar,
             MissedCallNotifier missedCallNotifier, AnomalyReporterAdapter anomalyReporterAdapter,
             FeatureFlags featureFlags) {
@@ -562,7 +566,7 @@ public final class CallLogManager extends CallsManagerListenerBase {
      * @return A handle to the AsyncTask that will add the call to the call log asynchronously.
      */
     public AsyncTask<AddCallArgs, Void, Uri[]> logCallAsync(AddCallArgs args) {
-        return new LogCallAsyncTask().execute(args);
+        return new LogCallAsyncTask(SystemClock.elapsedRealtime()).execute(args);
     }
 
     /**
@@ -572,8 +576,13 @@ public final class CallLogManager extends CallsManagerListenerBase {
      */
     private class LogCallAsyncTask extends AsyncTask<AddCallArgs, Void, Uri[]> {
 
+        private final long mEnqueuedMillis;
         private LogCallCompletedListener[] mListeners;
 
+        LogCallAsyncTask(long enqueuedMillis) {
+            mEnqueuedMillis = enqueuedMillis;
+        }
+
         @Override
         protected Uri[] doInBackground(AddCallArgs... callList) {
             int count = callList.length;
@@ -614,6 +623,7 @@ public final class CallLogManager extends CallsManagerListenerBase {
 
         @Override
         protected void onPostExecute(Uri[] result) {
+            mWriteLatenciesMillis.record(SystemClock.elapsedRealtime() - mEnqueuedMillis);
             for (int i = 0; i < result.length; i++) {
                 Uri uri = result[i];
                 /*
@@ -688,6 +698,13 @@ public final class CallLogManager extends CallsManagerListenerBase {
         }
     }
 
+    /**
+     * Dumps how long after being logged calls were written to the call log.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("writeLatenciesMillis: " + mWriteLatenciesMillis);
+    }
+
     @VisibleForTesting
     public void setAnomalyReporterAdapter(AnomalyReporterAdapter anomalyReporterAdapter){
         mAnomalyReporterAdapter = anomalyReporterAdapter;
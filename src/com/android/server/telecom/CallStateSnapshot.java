@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.UserHandle;
+import android.telecom.PhoneAccount;
+import android.telephony.TelephonyManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable summary of the calls tracked by {@link CallsManager}.  A new snapshot is published
+ * every time the calls change, so read-only queries such as
+ * {@link android.telecom.TelecomManager#isInCall()} can be answered from the latest snapshot
+ * without taking the Telecom lock.
+ */
+public final class CallStateSnapshot {
+    public static final CallStateSnapshot EMPTY = new CallStateSnapshot(0,
+            Collections.emptyList(), false, TelephonyManager.CALL_STATE_IDLE);
+
+    /**
+     * The parts of an ongoing top-level call which the queries look at.
+     */
+    private static final class OngoingCall {
+        private final UserHandle mAssociatedUser;
+        private final boolean mIsMultiUser;
+        private final boolean mIsSelfManaged;
+
+        private OngoingCall(Call call) {
+            PhoneAccount phoneAccount = call.getPhoneAccountFromHandle();
+            mAssociatedUser = call.getAssociatedUser();
+            mIsMultiUser = phoneAccount != null
+                    && phoneAccount.hasCapabilities(PhoneAccount.CAPABILITY_MULTI_USER);
+            mIsSelfManaged = call.isSelfManaged();
+        }
+
+        private boolean isVisibleForUser(UserHandle userHandle) {
+            return mIsMultiUser || (mAssociatedUser != null && mAssociatedUser.equals(userHandle));
+        }
+    }
+
+    private final long mVersion;
+    private final List<OngoingCall> mOngoingCalls;
+    private final boolean mHasRingingOrSimulatedRingingCall;
+    private final int mCallState;
+
+    private CallStateSnapshot(long version, List<OngoingCall> ongoingCalls,
+            boolean hasRingingOrSimulatedRingingCall, int callState) {
+        mVersion = version;
+        mOngoingCalls = ongoingCalls;
+        mHasRingingOrSimulatedRingingCall = hasRingingOrSimulatedRingingCall;
+        mCallState = callState;
+    }
+
+    /**
+     * Summarizes the given calls; only top-level calls which are not external are considered,
+     * like {@link CallsManager#getNumCallsWithState} does.
+     *
+     * @param version The version of the new snapshot.
+     * @param calls The calls tracked by {@link CallsManager}.
+     * @param callState The call state tracked by {@link PhoneStateBroadcaster}.
+     */
+    static CallStateSnapshot create(long version, Collection<Call> calls, int callState) {
+        List<OngoingCall> ongoingCalls = new ArrayList<>();
+        boolean hasRingingOrSimulatedRingingCall = false;
+        for (Call call : calls) {
+            if (call.getParentCall() != null || call.isExternalCall()) {
+                continue;
+            }
+            int state = call.getState();
+            if (state == CallState.SIMULATED_RINGING || state == CallState.RINGING
+                    || state == CallState.ANSWERED) {
+                hasRingingOrSimulatedRingingCall = true;
+            }
+            for (int ongoingState : CallsManager.ONGOING_CALL_STATES) {
+                if (state == ongoingState) {
+                    ongoingCalls.add(new OngoingCall(call));
+                    break;
+                }
+            }
+        }
+        return new CallStateSnapshot(version, Collections.unmodifiableList(ongoingCalls),
+                hasRingingOrSimulatedRingingCall, callState);
+    }
+
+    /**
+     * @return The version of this snapshot; it increases with every snapshot published.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @param callingUser The user to scope the calls to.
+     * @param hasCrossUserAccess indicates if user has the INTERACT_ACROSS_USERS permission.
+     * @param managedOnly {@code true} to consider only managed calls.
+     * @return {@code true} if there were ongoing calls matching the criteria.
+     */
+    public boolean hasOngoingCalls(UserHandle callingUser, boolean hasCrossUserAccess,
+            boolean managedOnly) {
+        for (OngoingCall call : mOngoingCalls) {
+            if (managedOnly && call.mIsSelfManaged) {
+                continue;
+            }
+            if (hasCrossUserAccess || call.isVisibleForUser(callingUser)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasRingingOrSimulatedRingingCall() {
+        return mHasRingingOrSimulatedRingingCall;
+    }
+
+    /**
+     * @return The call state tracked by {@link PhoneStateBroadcaster}.
+     */
+    public int getCallState() {
+        return mCallState;
+    }
+
+    @Override
+    public String toString() {
+        return "CallStateSnapshot{version=" + mVersion
+                + ", ongoingCalls=" + mOngoingCalls.size()
+                + ", ringing=" + mHasRingingOrSimulatedRingingCall
+                + ", callState=" + mCallState + "}";
+    }
+}
@@ -18,16 +18,24 @@ package com.android.server.telecom;
 
 import android.annotation.Nullable;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.provider.ContactsContract;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
 import android.telecom.Logging.Session;
+import android.telecom.PhoneAccount;
+import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
+import android.util.LruCache;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import android.telecom.CallerInfo;
 import android.telecom.CallerInfoAsyncQuery;
 
@@ -52,14 +60,58 @@ public class CallerInfoLookupHelper {
         public CallerInfo callerInfo;
         public List<OnQueryCompleteListener> listeners;
         public boolean imageQueryPending = false;
+        // The result cache generation when the query started; see mResultCacheGeneration.
+        public int resultCacheGeneration;
 
         public CallerInfoQueryInfo() {
             listeners = new LinkedList<>();
         }
     }
 
+    private static class CachedResult {
+        public final CallerInfo callerInfo;
+        public final long elapsedRealtimeMillis;
+
+        public CachedResult(CallerInfo callerInfo, long elapsedRealtimeMillis) {
+            this.callerInfo = callerInfo;
+            this.elapsedRealtimeMillis = elapsedRealtimeMillis;
+        }
+    }
+
+    /**
+     * The number of completed lookups kept.  Entries do not hold contact photos; those are kept,
+     * within a memory budget, by {@link ContactsAsyncHelper}.
+     */
+    @VisibleForTesting
+    public static final int RESULT_CACHE_SIZE = 32;
+    /**
+     * How long a completed lookup is reused.  Changes to the contacts drop the whole cache, so
+     * this only bounds how stale a result can get should a change not be notified.
+     */
+    @VisibleForTesting
+    public static final long RESULT_CACHE_TTL_MILLIS = 5 * 60 * 1000L;
+
     private final Map<Uri, CallerInfoQueryInfo> mQueryEntries = new HashMap<>();
 
+    // Completed lookups, keyed by user and normalized number; guarded by mLock.
+    private final LruCache<String, CachedResult> mResultCache =
+            new LruCache<String, CachedResult>(RESULT_CACHE_SIZE) {
+                @Override
+                protected void entryRemoved(boolean evicted, String key, CachedResult oldValue,
+                        CachedResult newValue) {
+                    if (evicted) {
+                        mResultCacheEvictions++;
+                    }
+                }
+            };
+    // Incremented whenever the cache is cleared so queries already running are not cached.
+    private int mResultCacheGeneration;
+    private int mResultCacheHits;
+    private int mResultCacheMisses;
+    private int mResultCacheEvictions;
+    private int mResultCacheInvalidations;
+    private int mCurrentUserId = UserHandle.USER_SYSTEM;
+
     private final CallerInfoAsyncQueryFactory mCallerInfoAsyncQueryFactory;
     private final ContactsAsyncHelper mContactsAsyncHelper;
     private final Context mContext;
@@ -74,6 +126,25 @@ public class CallerInfoLookupHelper {
         mContactsAsyncHelper = contactsAsyncHelper;
         mContext = context;
         mLock = lock;
+        mContext.getContentResolver().registerContentObserver(ContactsContract.AUTHORITY_URI,
+                true, new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        synchronized (mLock) {
+                            clearResultCache();
+                        }
+                        mContactsAsyncHelper.clearPhotoCache();
+                    }
+                }, UserHandle.USER_ALL);
+    }
+
+    /**
+     * Sets the user whose contacts are looked up, which scopes the cached results.
+     */
+    public void setCurrentUserHandle(UserHandle userHandle) {
+        synchronized (mLock) {
+            mCurrentUserId = userHandle.getIdentifier();
+        }
     }
 
     /**
@@ -130,6 +201,31 @@ public class CallerInfoLookupHelper {
         }
 
         synchronized (mLock) {
+            String cacheKey = getResultCacheKey(handle);
+            CachedResult cachedResult = mResultCache.get(cacheKey);
+            if (cachedResult != null && SystemClock.elapsedRealtime()
+                    - cachedResult.elapsedRealtimeMillis >= RESULT_CACHE_TTL_MILLIS) {
+                mResultCache.remove(cacheKey);
+                cachedResult = null;
+            }
+            if (cachedResult != null && !mQueryEntries.containsKey(handle)) {
+                mResultCacheHits++;
+                Log.i(this, "Using cached lookup result for handle %s", Log.piiHandle(handle));
+                // Every caller gets its own copy, as calls modify their CallerInfo.
+                CallerInfo callerInfo = copyWithoutPhoto(cachedResult.callerInfo);
+                listener.onCallerInfoQueryComplete(handle, callerInfo);
+                Uri contactPhotoUri = callerInfo.getContactDisplayPhotoUri();
+                if (contactPhotoUri != null) {
+                    CallerInfoQueryInfo info = new CallerInfoQueryInfo();
+                    info.callerInfo = callerInfo;
+                    info.imageQueryPending = true;
+                    info.listeners.add(listener);
+                    info.resultCacheGeneration = mResultCacheGeneration;
+                    mQueryEntries.put(handle, info);
+                    startPhotoLookup(handle, contactPhotoUri);
+                }
+                return;
+            }
             if (mQueryEntries.containsKey(handle)) {
                 CallerInfoQueryInfo info = mQueryEntries.get(handle);
                 if (info.callerInfo != null) {
@@ -152,8 +248,10 @@ public class CallerInfoLookupHelper {
                 // Since we have a pending query for this handle already, don't re-query it.
                 return;
             } else {
+                mResultCacheMisses++;
                 CallerInfoQueryInfo info = new CallerInfoQueryInfo();
                 info.listeners.add(listener);
+                info.resultCacheGeneration = mResultCacheGeneration;
                 mQueryEntries.put(handle, info);
             }
         }
@@ -195,6 +293,7 @@ public class CallerInfoLookupHelper {
                             Log.i(CallerInfoLookupHelper.this, "There is no photo for this " +
                                     "contact, skipping photo query");
                             mQueryEntries.remove(handle);
+                            maybeCacheResult(handle, info, ci);
                         } else {
                             info.callerInfo = ci;
                             info.imageQueryPending = true;
@@ -248,6 +347,7 @@ public class CallerInfoLookupHelper {
                             l.onContactPhotoQueryComplete(handle, info.callerInfo);
                         }
                         mQueryEntries.remove(handle);
+                        maybeCacheResult(handle, info, info.callerInfo);
                     } else {
                         Log.i(CallerInfoLookupHelper.this, "Photo query for handle %s has" +
                                 " completed, but there are no listeners left.",
@@ -260,6 +360,88 @@ public class CallerInfoLookupHelper {
         };
     }
 
+    /**
+     * Caches the result of a completed lookup, unless the cache was cleared since it started.
+     * Must be called with {@link #mLock} held.
+     */
+    private void maybeCacheResult(Uri handle, CallerInfoQueryInfo info, CallerInfo callerInfo) {
+        // Emergency and voicemail numbers are answered without a contacts query, and their
+        // markers cannot be copied.
+        if (callerInfo != null && info.resultCacheGeneration == mResultCacheGeneration
+                && !callerInfo.isEmergencyNumber() && !callerInfo.isVoiceMailNumber()) {
+            mResultCache.put(getResultCacheKey(handle),
+                    new CachedResult(copyWithoutPhoto(callerInfo), SystemClock.elapsedRealtime()));
+        }
+    }
+
+    /**
+     * Copies a lookup result without its contact photo.  The photo is a Drawable with mutable
+     * state, and calls release it once they are destroyed, so it is never shared; callers reload
+     * it through the photo cache of {@link ContactsAsyncHelper} instead.
+     * <p>
+     * The contact id has no setter, so the copy only keeps the lookup key; contact lookup URIs
+     * resolve by the lookup key when the id does not match.
+     */
+    private static CallerInfo copyWithoutPhoto(CallerInfo callerInfo) {
+        CallerInfo copy = new CallerInfo();
+        copy.setName(callerInfo.getName());
+        copy.setPhoneNumber(callerInfo.getPhoneNumber());
+        copy.normalizedNumber = callerInfo.normalizedNumber;
+        copy.geoDescription = callerInfo.geoDescription;
+        copy.cnapName = callerInfo.cnapName;
+        copy.numberPresentation = callerInfo.numberPresentation;
+        copy.namePresentation = callerInfo.namePresentation;
+        copy.contactExists = callerInfo.contactExists;
+        copy.phoneLabel = callerInfo.phoneLabel;
+        copy.numberType = callerInfo.numberType;
+        copy.numberLabel = callerInfo.numberLabel;
+        copy.photoResource = callerInfo.photoResource;
+        copy.needUpdate = callerInfo.needUpdate;
+        copy.contactRefUri = callerInfo.contactRefUri;
+        copy.lookupKey = callerInfo.lookupKey;
+        copy.preferredPhoneAccountComponent = callerInfo.preferredPhoneAccountComponent;
+        copy.preferredPhoneAccountId = callerInfo.preferredPhoneAccountId;
+        copy.userType = callerInfo.userType;
+        copy.SetContactDisplayPhotoUri(callerInfo.getContactDisplayPhotoUri());
+        copy.contactRingtoneUri = callerInfo.contactRingtoneUri;
+        copy.shouldSendToVoicemail = callerInfo.shouldSendToVoicemail;
+        return copy;
+    }
+
+    /**
+     * Drops all cached lookup results.  Must be called with {@link #mLock} held.
+     */
+    private void clearResultCache() {
+        mResultCacheGeneration++;
+        mResultCacheInvalidations++;
+        // Entries dropped here are not evictions due to the size limit.
+        int evictions = mResultCacheEvictions;
+        mResultCache.evictAll();
+        mResultCacheEvictions = evictions;
+    }
+
+    private String getResultCacheKey(Uri handle) {
+        String number = handle.getSchemeSpecificPart();
+        if (PhoneAccount.SCHEME_TEL.equals(handle.getScheme())) {
+            number = PhoneNumberUtils.normalizeNumber(number);
+        }
+        return mCurrentUserId + "|" + number;
+    }
+
+    /**
+     * Dumps the usage of the cache of lookup results.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("resultCache: size=" + mResultCache.size()
+                    + ", hits=" + mResultCacheHits
+                    + ", misses=" + mResultCacheMisses
+                    + ", evictions=" + mResultCacheEvictions
+                    + ", invalidations=" + mResultCacheInvalidations);
+        }
+        mContactsAsyncHelper.dump(pw);
+    }
+
     @VisibleForTesting
     public Map<Uri, CallerInfoQueryInfo> getCallerInfoEntries() {
         return mQueryEntries;
@@ -57,6 +57,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.ResolveInfoFlags;
 import android.content.pm.ResolveInfo;
 import android.content.pm.UserInfo;
+import android.database.ContentObserver;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.media.AudioManager;
@@ -66,7 +67,6 @@ import android.media.ToneGenerator;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.OutcomeReceiver;
 import android.os.PersistableBundle;
@@ -136,6 +136,7 @@ import com.android.server.telecom.components.ErrorDialogActivity;
 import com.android.server.telecom.components.TelecomBroadcastReceiver;
 import com.android.server.telecom.callsequencing.CallsManagerCallSequencingAdapter;
 import com.android.server.telecom.flags.FeatureFlags;
+import com.android.server.telecom.metrics.CallLatencyStats;
 import com.android.server.telecom.metrics.ErrorStats;
 import com.android.server.telecom.metrics.TelecomMetricsController;
 import com.android.server.telecom.stats.CallFailureCause;
@@ -156,7 +157,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -171,8 +171,6 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * Singleton.
@@ -380,6 +378,21 @@ public class CallsManager extends Call.ListenerBase
     private final Set<Call> mCalls = Collections.newSetFromMap(
             new ConcurrentHashMap<Call, Boolean>(8, 0.9f, 1));
 
+    /**
+     * {@link #mCalls} by their {@link CallState}, so lookups by state only visit the calls in
+     * those states.  Kept up to date by {@link #addCall}, {@link #removeCall} and
+     * {@link #onStateChanged}, which every {@link Call#setState} ends up in.
+     */
+    private final Map<Integer, Set<Call>> mCallsByState = new ConcurrentHashMap<>(8, 0.9f, 1);
+    // The state each call is filed under in mCallsByState.
+    private final Map<Call, Integer> mIndexedCallStates = new ConcurrentHashMap<>(8, 0.9f, 1);
+
+    /**
+     * Summary of {@link #mCalls}, replaced whenever they change, for queries which are answered
+     * without taking the Telecom lock.
+     */
+    private volatile CallStateSnapshot mCallStateSnapshot = CallStateSnapshot.EMPTY;
+
     /**
      * List of self-managed calls that have been initialized but not yet added to
      * CallsManager#addCall(Call). There is a window of time when a Call has been added to Telecom
@@ -524,8 +537,6 @@ public class CallsManager extends Call.ListenerBase
 
     private Runnable mStopTone;
 
-    private LinkedList<HandlerThread> mGraphHandlerThreads;
-
     // An executor that can be used to fire off async tasks that do not block Telecom in any manner.
     private final Executor mAsyncTaskExecutor;
 
@@ -570,11 +581,23 @@ public class CallsManager extends Call.ListenerBase
             if (CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED.equals(action)
                     || BlockedNumbersManager
                     .ACTION_BLOCK_SUPPRESSION_STATE_CHANGED.equals(action)) {
+                BlockCheckerAdapter.invalidateBlockStatusCache();
                 updateEmergencyCallNotificationAsync(context);
             }
         }
     };
 
+    /**
+     * Drops cached block decisions whenever the blocked numbers provider changes; this covers
+     * both the blocked numbers list and the enhanced call blocking settings.
+     */
+    private final ContentObserver mBlockedNumbersObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            BlockCheckerAdapter.invalidateBlockStatusCache();
+        }
+    };
+
     /**
      * Initializes the required Telecom components.
      */
@@ -665,9 +688,13 @@ public class CallsManager extends Call.ListenerBase
                     featureFlags
             );
         } else {
-            callAudioRouteAdapter = new CallAudioRouteController(context, this, audioServiceFactory,
-                    new AudioRoute.Factory(), wiredHeadsetManager, mBluetoothRouteManager,
-                    statusBarNotifier, featureFlags, metricsController);
+            CallAudioRouteController callAudioRouteController = new CallAudioRouteController(
+                    context, this, audioServiceFactory, new AudioRoute.Factory(),
+                    wiredHeadsetManager, mBluetoothRouteManager, statusBarNotifier, featureFlags,
+                    metricsController);
+            callAudioRouteController.setBluetoothPreActivationEnabled(context.getResources()
+                    .getBoolean(R.bool.preactivate_bluetooth_audio_when_ringing));
+            callAudioRouteAdapter = callAudioRouteController;
         }
         callAudioRouteAdapter.initialize();
         bluetoothStateReceiver.setCallAudioRouteAdapter(callAudioRouteAdapter);
@@ -790,7 +817,8 @@ public class CallsManager extends Call.ListenerBase
         intentFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
         intentFilter.addAction(BlockedNumbersManager.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED);
         context.registerReceiver(mReceiver, intentFilter, Context.RECEIVER_EXPORTED);
-        mGraphHandlerThreads = new LinkedList<>();
+        context.getContentResolver().registerContentObserver(BlockedNumberContract.AUTHORITY_URI,
+                true, mBlockedNumbersObserver, UserHandle.USER_ALL);
 
         mCallAnomalyWatchdog = callAnomalyWatchdog;
         mAsyncTaskExecutor = asyncTaskExecutor;
@@ -874,6 +902,7 @@ public class CallsManager extends Call.ListenerBase
     @Override
     public void onSuccessfulIncomingCall(Call incomingCall) {
         Log.d(this, "onSuccessfulIncomingCall");
+        incomingCall.markLatencyMilestone(CallLatencyStats.MILESTONE_CONNECTION_CREATED);
         PhoneAccount phoneAccount = mPhoneAccountRegistrar.getPhoneAccountUnchecked(
                 incomingCall.getTargetPhoneAccount());
         Bundle extras =
@@ -912,11 +941,16 @@ public class CallsManager extends Call.ListenerBase
             return;
         } else if (performDndFilter && extras.getBoolean(PhoneAccount.EXTRA_SKIP_CALL_FILTERING)) {
             IncomingCallFilterGraph graph = setupDndFilterOnlyGraph(incomingCall);
+            mInCallController.preBindToServices(incomingCall);
+            incomingCall.markLatencyMilestone(CallLatencyStats.MILESTONE_FILTERING_STARTED);
             graph.performFiltering();
             return;
         }
 
         IncomingCallFilterGraph graph = setUpCallFilterGraph(incomingCall);
+        // Start binding the in-call UI now so it is ready by the time filtering completes.
+        mInCallController.preBindToServices(incomingCall);
+        incomingCall.markLatencyMilestone(CallLatencyStats.MILESTONE_FILTERING_STARTED);
         graph.performFiltering();
     }
 
@@ -927,7 +961,6 @@ public class CallsManager extends Call.ListenerBase
                 incomingHfpCall,
                 this::onCallFilteringComplete, mContext, mTimeoutsAdapter, mFeatureFlags, mLock);
         graph.addFilter(dndCallFilter);
-        mGraphHandlerThreads.add(graph.getHandlerThread());
         return graph;
     }
 
@@ -975,7 +1008,6 @@ public class CallsManager extends Call.ListenerBase
         IncomingCallFilterGraph.addEdge(blockCheckerFilter, carrierCallScreeningServiceFilter);
         IncomingCallFilterGraph.addEdge(carrierCallScreeningServiceFilter,
                 callScreeningServiceFilter);
-        mGraphHandlerThreads.add(graph.getHandlerThread());
         return graph;
     }
 
@@ -1000,7 +1032,7 @@ public class CallsManager extends Call.ListenerBase
         // that the connection service disconnected the call before it was even added to Telecom, in
         // which case it makes no sense to set it back to a ringing state.
         Log.i(this, "onCallFilteringComplete");
-        mGraphHandlerThreads.clear();
+        incomingCall.markLatencyMilestone(CallLatencyStats.MILESTONE_FILTERING_COMPLETED);
 
         if (timeout) {
             Log.i(this, "onCallFilteringCompleted: Call filters timeout!");
@@ -1015,6 +1047,8 @@ public class CallsManager extends Call.ListenerBase
             }
         } else {
             Log.i(this, "onCallFilteringCompleted: call already disconnected.");
+            mInCallController.releaseSpeculativeBinding(incomingCall);
+            logFilteredOutCallLatency(incomingCall);
             return;
         }
 
@@ -1076,6 +1110,7 @@ public class CallsManager extends Call.ListenerBase
                             "Exceeds maximum number of ringing calls.");
                     incomingCall.setMissedReason(AUTO_MISSED_MAXIMUM_RINGING);
                     autoMissCallAndLog(incomingCall, result);
+                    logFilteredOutCallLatency(incomingCall);
                 }
             } else if (hasMaximumManagedDialingCalls(incomingCall)) {
                 if (shouldSilenceInsteadOfReject(incomingCall)) {
@@ -1085,6 +1120,7 @@ public class CallsManager extends Call.ListenerBase
                             "dialing calls.");
                     incomingCall.setMissedReason(AUTO_MISSED_MAXIMUM_DIALING);
                     autoMissCallAndLog(incomingCall, result);
+                    logFilteredOutCallLatency(incomingCall);
                 }
             } else if (result.shouldScreenViaAudio) {
                 Log.i(this, "onCallFilteringCompleted: starting background audio processing");
@@ -1121,6 +1157,20 @@ public class CallsManager extends Call.ListenerBase
                 mMissedCallNotifier.showMissedCallNotification(
                         new MissedCallNotifier.CallInfo(incomingCall), /* uri= */ null);
             }
+            logFilteredOutCallLatency(incomingCall);
+        }
+        // Release the in-call UI bound during filtering if the call was not added.
+        mInCallController.releaseSpeculativeBinding(incomingCall);
+    }
+
+    /**
+     * Records the setup milestones of an incoming call which ended at call filtering, such as a
+     * blocked or auto-missed call.  Those calls are never added, so the
+     * {@link CallAnomalyWatchdog} does not see them end.
+     */
+    private void logFilteredOutCallLatency(Call incomingCall) {
+        if (mFeatureFlags.telecomMetricsSupport() && !mCalls.contains(incomingCall)) {
+            mMetricsController.getCallLatencyStats().onCallEnd(incomingCall);
         }
     }
 
@@ -1230,6 +1280,13 @@ public class CallsManager extends Call.ListenerBase
         }
     }
 
+    @Override
+    public void onStateChanged(Call call, int oldState, int newState) {
+        if (mIndexedCallStates.containsKey(call)) {
+            indexCallState(call);
+        }
+    }
+
     @Override
     public void onParentChanged(Call call) {
         // parent-child relationship affects which call should be foreground, so do an update.
@@ -1237,6 +1294,7 @@ public class CallsManager extends Call.ListenerBase
         for (CallsManagerListener listener : mListeners) {
             listener.onIsConferencedChanged(call);
         }
+        publishCallStateSnapshot();
     }
 
     @Override
@@ -1246,6 +1304,7 @@ public class CallsManager extends Call.ListenerBase
         for (CallsManagerListener listener : mListeners) {
             listener.onIsConferencedChanged(call);
         }
+        publishCallStateSnapshot();
     }
 
     @Override
@@ -1529,8 +1588,8 @@ public class CallsManager extends Call.ListenerBase
      *        connection service to use for this call.
      * @param extras The optional extras Bundle passed with the intent used for the incoming call.
      */
-    void processIncomingCallIntent(PhoneAccountHandle phoneAccountHandle, Bundle extras) {
-        processIncomingCallIntent(phoneAccountHandle, extras, false);
+    Call processIncomingCallIntent(PhoneAccountHandle phoneAccountHandle, Bundle extras) {
+        return processIncomingCallIntent(phoneAccountHandle, extras, false);
     }
 
     public Call processIncomingCallIntent(PhoneAccountHandle phoneAccountHandle, Bundle extras,
@@ -3049,12 +3108,19 @@ public class CallsManager extends Call.ListenerBase
         }
 
         if (call.isEmergencyCall()) {
+            // Blocking is suppressed from now on; drop cached decisions right away so that a
+            // call back from the emergency services is not rejected by a stale entry before the
+            // suppression broadcast arrives.
+            BlockCheckerAdapter.invalidateBlockStatusCache();
             Executors.defaultThreadFactory().newThread(() -> {
                 if (mBlockedNumbersManager != null) {
                     mBlockedNumbersManager.notifyEmergencyContact();
                 } else {
                     BlockedNumberContract.SystemContract.notifyEmergencyContact(mContext);
                 }
+                // Lookups made while the provider was recording the suppression may have cached
+                // decisions which ignore it.
+                BlockCheckerAdapter.invalidateBlockStatusCache();
             }).start();
         }
 
@@ -3133,6 +3199,7 @@ public class CallsManager extends Call.ListenerBase
         if (!mCalls.contains(call)) {
             Log.i(this, "Request to answer a non-existent call %s", call);
         }
+        call.markLatencyMilestone(CallLatencyStats.MILESTONE_ANSWERED);
         mCallSequencingAdapter.answerCall(call, videoState);
     }
 
@@ -3742,6 +3809,7 @@ public class CallsManager extends Call.ListenerBase
         for (CallsManagerListener listener : mListeners) {
             listener.onExternalCallChanged(call, isExternalCall);
         }
+        publishCallStateSnapshot();
     }
 
     @Override
@@ -4573,14 +4641,18 @@ public class CallsManager extends Call.ListenerBase
      * @param callToSkip Call that this method should skip while searching
      */
     Call getFirstCallWithState(Call callToSkip, int... states) {
+        Call foregroundCall = getForegroundCall();
         for (int currentState : states) {
             // check the foreground first
-            Call foregroundCall = getForegroundCall();
             if (foregroundCall != null && foregroundCall.getState() == currentState) {
                 return foregroundCall;
             }
 
-            for (Call call : mCalls) {
+            Set<Call> calls = mCallsByState.get(currentState);
+            if (calls == null) {
+                continue;
+            }
+            for (Call call : calls) {
                 if (Objects.equals(callToSkip, call)) {
                     continue;
                 }
@@ -4602,6 +4674,17 @@ public class CallsManager extends Call.ListenerBase
         return null;
     }
 
+    /**
+     * @return A mask with the bit {@code 1 << state} set for each of the given {@link CallState}s.
+     */
+    private static int getStateMask(int... states) {
+        int mask = 0;
+        for (int state : states) {
+            mask |= 1 << state;
+        }
+        return mask;
+    }
+
     Call createConferenceCall(
             String callId,
             PhoneAccountHandle phoneAccount,
@@ -4754,6 +4837,7 @@ public class CallsManager extends Call.ListenerBase
         Log.i(this, "addCall(%s)", call);
         call.addListener(this);
         mCalls.add(call);
+        indexCallState(call);
         mSelfManagedCallsBeingSetup.remove(call);
 
         // Specifies the time telecom finished routing the call. This is used by the dialer for
@@ -4769,6 +4853,7 @@ public class CallsManager extends Call.ListenerBase
         for (CallsManagerListener listener : mListeners) {
             listener.onCallAdded(call);
         }
+        publishCallStateSnapshot();
     }
 
     @VisibleForTesting
@@ -4788,6 +4873,7 @@ public class CallsManager extends Call.ListenerBase
         boolean shouldNotify = false;
         if (mCalls.contains(call)) {
             mCalls.remove(call);
+            unindexCallState(call);
             shouldNotify = true;
         }
         mSelfManagedCallsBeingSetup.remove(call);
@@ -4801,6 +4887,31 @@ public class CallsManager extends Call.ListenerBase
             for (CallsManagerListener listener : mListeners) {
                 listener.onCallRemoved(call);
             }
+            publishCallStateSnapshot();
+        }
+    }
+
+    /**
+     * Files the call in {@link #mCallsByState} under its current state.  The call is added to
+     * its new state before it leaves the old one, so it is never missing from the index.
+     */
+    private void indexCallState(Call call) {
+        int state = call.getState();
+        Integer indexedState = mIndexedCallStates.put(call, state);
+        if (indexedState != null && indexedState == state) {
+            return;
+        }
+        mCallsByState.computeIfAbsent(state, k -> Collections.newSetFromMap(
+                new ConcurrentHashMap<Call, Boolean>(8, 0.9f, 1))).add(call);
+        if (indexedState != null) {
+            mCallsByState.get(indexedState).remove(call);
+        }
+    }
+
+    private void unindexCallState(Call call) {
+        Integer indexedState = mIndexedCallStates.remove(call);
+        if (indexedState != null) {
+            mCallsByState.get(indexedState).remove(call);
         }
     }
 
@@ -4880,9 +4991,26 @@ public class CallsManager extends Call.ListenerBase
             for (CallsManagerListener listener : mListeners) {
                 listener.onCallStateChanged(call, oldState, newState);
             }
+            publishCallStateSnapshot();
         }
     }
 
+    /**
+     * Publishes a new {@link CallStateSnapshot} of {@link #mCalls}; must be called, with the
+     * Telecom lock held, after any change which affects it has been handled by the listeners.
+     */
+    private void publishCallStateSnapshot() {
+        mCallStateSnapshot = CallStateSnapshot.create(mCallStateSnapshot.getVersion() + 1,
+                mCalls, getCallState());
+    }
+
+    /**
+     * @return The latest summary of the calls, which may be read without holding the Telecom lock.
+     */
+    public CallStateSnapshot getCallStateSnapshot() {
+        return mCallStateSnapshot;
+    }
+
     /**
      * Identifies call state transitions for a call which trigger handover events.
      * - If this call has a handover to it which just started and this call goes active, treat
@@ -5050,31 +5178,8 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public int getNumCallsWithState(final int callFilter, Call excludeCall,
                                     PhoneAccountHandle phoneAccountHandle, int... states) {
-
-        Set<Integer> desiredStates = IntStream.of(states).boxed().collect(Collectors.toSet());
-
-        Stream<Call> callsStream = mCalls.stream()
-                .filter(call -> desiredStates.contains(call.getState()) &&
-                        call.getParentCall() == null && !call.isExternalCall());
-
-        if (callFilter == CALL_FILTER_MANAGED) {
-            callsStream = callsStream.filter(call -> !call.isSelfManaged());
-        } else if (callFilter == CALL_FILTER_SELF_MANAGED) {
-            callsStream = callsStream.filter(call -> call.isSelfManaged());
-        }
-
-        // If a call to exclude was specified, filter it out.
-        if (excludeCall != null) {
-            callsStream = callsStream.filter(call -> call != excludeCall);
-        }
-
-        // If a phone account handle was specified, only consider calls for that phone account.
-        if (phoneAccountHandle != null) {
-            callsStream = callsStream.filter(
-                    call -> phoneAccountHandle.equals(call.getTargetPhoneAccount()));
-        }
-
-        return (int) callsStream.count();
+        return countCallsWithState(callFilter, excludeCall, null /* callingUser */,
+                true /* hasCrossUserAccess */, phoneAccountHandle, states);
     }
 
     /**
@@ -5101,34 +5206,56 @@ public class CallsManager extends Call.ListenerBase
     public int getNumCallsWithState(final int callFilter, Call excludeCall,
             UserHandle callingUser, boolean hasCrossUserAccess,
             PhoneAccountHandle phoneAccountHandle, int... states) {
+        return countCallsWithState(callFilter, excludeCall, callingUser, hasCrossUserAccess,
+                phoneAccountHandle, states);
+    }
 
-        Set<Integer> desiredStates = IntStream.of(states).boxed().collect(Collectors.toSet());
-
-        Stream<Call> callsStream = mCalls.stream()
-                .filter(call -> desiredStates.contains(call.getState()) &&
-                        call.getParentCall() == null && !call.isExternalCall());
-
-        if (callFilter == CALL_FILTER_MANAGED) {
-            callsStream = callsStream.filter(call -> !call.isSelfManaged());
-        } else if (callFilter == CALL_FILTER_SELF_MANAGED) {
-            callsStream = callsStream.filter(call -> call.isSelfManaged());
-        }
-
-        // If a call to exclude was specified, filter it out.
-        if (excludeCall != null) {
-            callsStream = callsStream.filter(call -> call != excludeCall);
+    /**
+     * Counts the calls for both {@link #getNumCallsWithState} variants, visiting only the calls
+     * in the given states and checking the cheapest criteria first.
+     */
+    private int countCallsWithState(int callFilter, Call excludeCall, UserHandle callingUser,
+            boolean hasCrossUserAccess, PhoneAccountHandle phoneAccountHandle, int[] states) {
+        // Through the mask, a state listed twice is still only counted once.
+        int stateMask = getStateMask(states);
+        int count = 0;
+        for (Map.Entry<Integer, Set<Call>> entry : mCallsByState.entrySet()) {
+            int state = entry.getKey();
+            if (state < 0 || state >= Integer.SIZE || (stateMask & (1 << state)) == 0) {
+                continue;
+            }
+            count += countCallsWithState(entry.getValue(), state, callFilter, excludeCall,
+                    callingUser, hasCrossUserAccess, phoneAccountHandle);
         }
+        return count;
+    }
 
-        // If a phone account handle was specified, only consider calls for that phone account.
-        if (phoneAccountHandle != null) {
-            callsStream = callsStream.filter(
-                    call -> phoneAccountHandle.equals(call.getTargetPhoneAccount()));
+    private int countCallsWithState(Set<Call> calls, int state, int callFilter, Call excludeCall,
+            UserHandle callingUser, boolean hasCrossUserAccess,
+            PhoneAccountHandle phoneAccountHandle) {
+        int count = 0;
+        for (Call call : calls) {
+            if (call.getState() != state) {
+                continue;
+            }
+            if (call == excludeCall || call.getParentCall() != null || call.isExternalCall()) {
+                continue;
+            }
+            if ((callFilter == CALL_FILTER_MANAGED && call.isSelfManaged())
+                    || (callFilter == CALL_FILTER_SELF_MANAGED && !call.isSelfManaged())) {
+                continue;
+            }
+            // If a phone account handle was specified, only consider calls for that phone account.
+            if (phoneAccountHandle != null
+                    && !phoneAccountHandle.equals(call.getTargetPhoneAccount())) {
+                continue;
+            }
+            if (!hasCrossUserAccess && !isCallVisibleForUser(call, callingUser)) {
+                continue;
+            }
+            count++;
         }
-
-        callsStream = callsStream.filter(
-                call -> hasCrossUserAccess || isCallVisibleForUser(call, callingUser));
-
-        return (int) callsStream.count();
+        return count;
     }
 
     public boolean hasMaximumLiveCalls(Call exceptCall) {
@@ -5217,8 +5344,12 @@ public class CallsManager extends Call.ListenerBase
      * @return {@code true} if there are managed calls, {@code false} otherwise.
      */
     public boolean hasManagedCalls() {
-        return mCalls.stream().filter(call -> !call.isSelfManaged() &&
-                !call.isExternalCall()).count() > 0;
+        for (Call call : mCalls) {
+            if (!call.isSelfManaged() && !call.isExternalCall()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -5229,7 +5360,7 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public boolean hasSelfManagedCalls() {
         return mSelfManagedCallsBeingSetup.size() > 0 ||
-                mCalls.stream().filter(call -> call.isSelfManaged()).count() > 0;
+                mCalls.stream().anyMatch(call -> call.isSelfManaged());
     }
 
     /**
@@ -5238,14 +5369,12 @@ public class CallsManager extends Call.ListenerBase
      * @param callingUser The user to scope the calls to.
      * @param hasCrossUserAccess indicates if user has the INTERACT_ACROSS_USERS permission.
      * @return {@code true} if there are ongoing managed or self-managed calls, {@code false}
-     *      otherwise.
+     *      otherwise.  Answered from the {@link CallStateSnapshot}, so the Telecom lock is not
+     *      needed.
      */
     public boolean hasOngoingCalls(UserHandle callingUser, boolean hasCrossUserAccess) {
-        return getNumCallsWithState(
-                CALL_FILTER_ALL, null /* excludeCall */,
-                callingUser, hasCrossUserAccess,
-                null /* phoneAccountHandle */,
-                ONGOING_CALL_STATES) > 0;
+        return mCallStateSnapshot.hasOngoingCalls(callingUser, hasCrossUserAccess,
+                false /* managedOnly */);
     }
 
     /**
@@ -5253,13 +5382,11 @@ public class CallsManager extends Call.ListenerBase
      * @param callingUser The user to scope the calls to.
      * @param hasCrossUserAccess indicates if user has the INTERACT_ACROSS_USERS permission.
      * @return {@code true} if there are ongoing managed calls, {@code false} otherwise.
+     *      Answered from the {@link CallStateSnapshot}, so the Telecom lock is not needed.
      */
     public boolean hasOngoingManagedCalls(UserHandle callingUser, boolean hasCrossUserAccess) {
-        return getNumCallsWithState(
-                CALL_FILTER_MANAGED, null /* excludeCall */,
-                callingUser, hasCrossUserAccess,
-                null /* phoneAccountHandle */,
-                ONGOING_CALL_STATES) > 0;
+        return mCallStateSnapshot.hasOngoingCalls(callingUser, hasCrossUserAccess,
+                true /* managedOnly */);
     }
 
     /**
@@ -5790,6 +5917,7 @@ public class CallsManager extends Call.ListenerBase
         mCurrentUserHandle = userHandle;
         mMissedCallNotifier.setCurrentUserHandle(userHandle);
         mRoleManagerAdapter.setCurrentUserHandle(userHandle);
+        mCallerInfoLookupHelper.setCurrentUserHandle(userHandle);
         final UserManager userManager = mFeatureFlags.telecomResolveHiddenDependencies()
                 ? mContext.createContextAsUser(userHandle, 0).getSystemService(
                         UserManager.class)
@@ -6107,6 +6235,20 @@ public class CallsManager extends Call.ListenerBase
             pw.decreaseIndent();
         }
 
+        if (mCallerInfoLookupHelper != null) {
+            pw.println("mCallerInfoLookupHelper:");
+            pw.increaseIndent();
+            mCallerInfoLookupHelper.dump(pw);
+            pw.decreaseIndent();
+        }
+
+        if (mCallLogManager != null) {
+            pw.println("mCallLogManager:");
+            pw.increaseIndent();
+            mCallLogManager.dump(pw);
+            pw.decreaseIndent();
+        }
+
         if (mCallDiagnosticServiceController != null) {
             pw.println("mCallDiagnosticServiceController:");
             pw.increaseIndent();
@@ -6822,8 +6964,8 @@ public class CallsManager extends Call.ListenerBase
      */
     public boolean
     isInEmergencyCall() {
-        return mCalls.stream().filter(c -> (c.isEmergencyCall()
-                || c.isNetworkIdentifiedEmergencyCall()) && !c.isDisconnected()).count() > 0;
+        return mCalls.stream().anyMatch(c -> (c.isEmergencyCall()
+                || c.isNetworkIdentifiedEmergencyCall()) && !c.isDisconnected());
     }
 
     /**
@@ -6908,10 +7050,6 @@ public class CallsManager extends Call.ListenerBase
         return PhoneAccountHandle.areFromSamePackage(call1TargetAcct, call2TargetAcct);
     }
 
-    public LinkedList<HandlerThread> getGraphHandlerThreads() {
-        return mGraphHandlerThreads;
-    }
-
     private void maybeSendPostCallScreenIntent(Call call) {
         if (call.isEmergencyCall() || (call.isNetworkIdentifiedEmergencyCall()) ||
                 (call.getPostCallPackageName() == null)) {
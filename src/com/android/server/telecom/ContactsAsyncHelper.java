@@ -19,6 +19,7 @@ package com.android.server.telecom;
 import android.app.Notification;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.telecom.Log;
@@ -27,6 +28,10 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.util.LruCache;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
 
@@ -75,6 +80,44 @@ public class ContactsAsyncHelper {
     // constants
     private static final int EVENT_LOAD_IMAGE = 1;
 
+    /**
+     * How many bytes of decoded photos are kept, so repeated callers and rebuilt missed call
+     * notifications do not decode the same photo again.
+     */
+    @VisibleForTesting
+    public static final int PHOTO_CACHE_MAX_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * A decoded photo and its notification icon, which may be the same bitmap.
+     */
+    private static final class CachedPhoto {
+        public final Bitmap photo;
+        public final Bitmap photoIcon;
+
+        public CachedPhoto(Bitmap photo, Bitmap photoIcon) {
+            this.photo = photo;
+            this.photoIcon = photoIcon;
+        }
+
+        public int getByteCount() {
+            int byteCount = photo.getAllocationByteCount();
+            if (photoIcon != null && photoIcon != photo) {
+                byteCount += photoIcon.getAllocationByteCount();
+            }
+            return byteCount;
+        }
+    }
+
+    // Decoded photos keyed by the user and their URI, as the same contacts URI refers to another
+    // photo for each user; LruCache does its own locking.
+    private final LruCache<String, CachedPhoto> mPhotoCache =
+            new LruCache<String, CachedPhoto>(PHOTO_CACHE_MAX_BYTES) {
+                @Override
+                protected int sizeOf(String key, CachedPhoto value) {
+                    return value.getByteCount();
+                }
+            };
+
     /** Handler run on a worker thread to load photo asynchronously. */
     private Handler mThreadHandler;
     private final ContentResolverAdapter mContentResolverAdapter;
@@ -112,22 +155,40 @@ public class ContactsAsyncHelper {
 
             switch (msg.arg1) {
                 case EVENT_LOAD_IMAGE:
+                    String cacheKey = getPhotoCacheKey(args.context, args.displayPhotoUri);
+                    CachedPhoto cachedPhoto = mPhotoCache.get(cacheKey);
+                    if (cachedPhoto != null) {
+                        // Every caller gets its own Drawable, as Drawables have mutable state.
+                        args.photo = new BitmapDrawable(args.context.getResources(),
+                                cachedPhoto.photo);
+                        args.photoIcon = cachedPhoto.photoIcon;
+                        Log.d(this, "Using cached image: " + args.displayPhotoUri);
+                        args.listener.onImageLoadComplete(msg.what, args.photo, args.photoIcon,
+                                args.cookie);
+                        break;
+                    }
+                    int iconSize = args.context.getResources()
+                            .getDimensionPixelSize(R.dimen.notification_icon_size);
+                    // The photos are only shown as notification icons, so they are decoded at a
+                    // fraction of their size which still covers the icon.
+                    int sampleSize = getSampleSize(args, iconSize);
                     InputStream inputStream = null;
                     try {
-                        try {
-                            inputStream = mContentResolverAdapter.openInputStream(
-                                    args.context, args.displayPhotoUri);
-                        } catch (Exception e) {
-                            Log.e(this, e, "Error opening photo input stream");
+                        if (sampleSize > 0) {
+                            inputStream = openInputStream(args);
                         }
 
                         if (inputStream != null) {
-                            args.photo = Drawable.createFromStream(inputStream,
-                                    args.displayPhotoUri.toString());
+                            BitmapFactory.Options options = new BitmapFactory.Options();
+                            options.inSampleSize = sampleSize;
+                            Bitmap photo = BitmapFactory.decodeStream(inputStream, null, options);
+                            args.photo = photo == null ? null
+                                    : new BitmapDrawable(args.context.getResources(), photo);
 
-                            // This assumes Drawable coming from contact database is usually
-                            // BitmapDrawable and thus we can have (down)scaled version of it.
-                            args.photoIcon = getPhotoIconWhenAppropriate(args.context, args.photo);
+                            args.photoIcon = getPhotoIconWhenAppropriate(args.photo, iconSize);
+                            if (photo != null) {
+                                mPhotoCache.put(cacheKey, new CachedPhoto(photo, args.photoIcon));
+                            }
 
                             Log.d(this, "Loading image: " + msg.arg1 +
                                     " token: " + msg.what + " image URI: " + args.displayPhotoUri);
@@ -164,12 +225,10 @@ public class ContactsAsyncHelper {
          * return null when the given Drawable isn't BitmapDrawable, or if the system fails to
          * create a scaled Bitmap for the Drawable.
          */
-        private Bitmap getPhotoIconWhenAppropriate(Context context, Drawable photo) {
+        private Bitmap getPhotoIconWhenAppropriate(Drawable photo, int iconSize) {
             if (!(photo instanceof BitmapDrawable)) {
                 return null;
             }
-            int iconSize = context.getResources()
-                    .getDimensionPixelSize(R.dimen.notification_icon_size);
             Bitmap orgBitmap = ((BitmapDrawable) photo).getBitmap();
             int orgWidth = orgBitmap.getWidth();
             int orgHeight = orgBitmap.getHeight();
@@ -195,6 +254,50 @@ public class ContactsAsyncHelper {
         }
     }
 
+    /**
+     * Returns the largest power of two the photo can be subsampled by while its longer edge still
+     * covers {@code iconSize}, or 0 if the photo cannot be read.
+     */
+    private int getSampleSize(WorkerArgs args, int iconSize) {
+        InputStream inputStream = openInputStream(args);
+        if (inputStream == null) {
+            return 0;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log.e(this, e, "Unable to close input stream.");
+            }
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return 0;
+        }
+        int longerEdge = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (longerEdge / (sampleSize * 2) >= iconSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private InputStream openInputStream(WorkerArgs args) {
+        try {
+            return mContentResolverAdapter.openInputStream(args.context, args.displayPhotoUri);
+        } catch (Exception e) {
+            Log.e(this, e, "Error opening photo input stream");
+            return null;
+        }
+    }
+
+    private static String getPhotoCacheKey(Context context, Uri displayPhotoUri) {
+        return context.getUserId() + "|" + displayPhotoUri;
+    }
+
     /**
      * Starts an asynchronous image load. After finishing the load,
      * {@link OnImageLoadCompleteListener#onImageLoadComplete(int, Drawable, Bitmap, Object)}
@@ -244,6 +347,24 @@ public class ContactsAsyncHelper {
         mThreadHandler.sendMessage(msg);
     }
 
+    /**
+     * Drops all cached photos; called when the contacts change, as a photo URI may then refer
+     * to a different photo.
+     */
+    public void clearPhotoCache() {
+        mPhotoCache.evictAll();
+    }
+
+    /**
+     * Dumps the memory used by the cache of decoded photos.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("photoCache: bytes=" + mPhotoCache.size() + "/" + mPhotoCache.maxSize()
+                + ", hits=" + mPhotoCache.hitCount()
+                + ", misses=" + mPhotoCache.missCount()
+                + ", evictions=" + mPhotoCache.evictionCount());
+    }
+
     private void ensureAsyncHandlerStarted() {
         if (mThreadHandler == null) {
             HandlerThread thread = new HandlerThread("ContactsAsyncWorker");
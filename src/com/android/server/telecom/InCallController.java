@@ -38,6 +38,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
 import android.hardware.SensorPrivacyManager;
+import android.net.Uri;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.Handler;
@@ -70,11 +71,13 @@ import com.android.internal.util.ArrayUtils;
 import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.SystemStateHelper.SystemStateListener;
 import com.android.server.telecom.flags.FeatureFlags;
+import com.android.server.telecom.metrics.CallLatencyStats;
 import com.android.server.telecom.ui.NotificationChannelManager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -83,7 +86,9 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -872,35 +877,62 @@ public class InCallController extends CallsManagerListenerBase implements
         }
     }
 
+    /**
+     * Accumulates the parameters of call updates which arrive while an update for the same call is
+     * already pending, so that they can be sent to the {@link InCallService}s as a single update.
+     */
+    private static class PendingCallUpdate {
+        private boolean mVideoProviderChanged;
+        private boolean mRttInfoChanged;
+        private String mExceptPackageName;
+
+        PendingCallUpdate(boolean videoProviderChanged, boolean rttInfoChanged,
+                String exceptPackageName) {
+            mVideoProviderChanged = videoProviderChanged;
+            mRttInfoChanged = rttInfoChanged;
+            mExceptPackageName = exceptPackageName;
+        }
+
+        void merge(boolean videoProviderChanged, boolean rttInfoChanged,
+                String exceptPackageName) {
+            mVideoProviderChanged |= videoProviderChanged;
+            mRttInfoChanged |= rttInfoChanged;
+            // Only skip the requesting package if every coalesced update originated from it.
+            if (!Objects.equals(mExceptPackageName, exceptPackageName)) {
+                mExceptPackageName = null;
+            }
+        }
+    }
+
     private final Call.Listener mCallListener = new Call.ListenerBase() {
         @Override
         public void onConnectionCapabilitiesChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onConnectionPropertiesChanged(Call call, boolean didRttChange) {
-            updateCall(call, false /* includeVideoProvider */, didRttChange, null);
+            scheduleCallUpdate(call, false /* includeVideoProvider */, didRttChange, null);
         }
 
         @Override
         public void onCannedSmsResponsesLoaded(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onVideoCallProviderChanged(Call call) {
-            updateCall(call, true /* videoProviderChanged */, false, null);
+            scheduleCallUpdate(call, true /* videoProviderChanged */, false, null);
         }
 
         @Override
         public void onStatusHintsChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onCallerInfoChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         /**
@@ -920,12 +952,12 @@ public class InCallController extends CallsManagerListenerBase implements
         public void onExtrasChanged(Call call, int source, Bundle extras,
                 String requestingPackageName) {
             if (source == Call.SOURCE_CONNECTION_SERVICE) {
-                updateCall(call);
+                scheduleCallUpdate(call);
             } else if (source == Call.SOURCE_INCALL_SERVICE && requestingPackageName != null) {
                 // If the change originated from another InCallService, we'll propagate the change
                 // to all other InCallServices running, EXCEPT the one who made the original change.
-                updateCall(call, false /* videoProviderChanged */, false /* rttInfoChanged */,
-                        requestingPackageName);
+                scheduleCallUpdate(call, false /* videoProviderChanged */,
+                        false /* rttInfoChanged */, requestingPackageName);
             }
         }
 
@@ -946,37 +978,37 @@ public class InCallController extends CallsManagerListenerBase implements
             if (source == Call.SOURCE_INCALL_SERVICE) {
                 return;
             }
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onHandleChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onCallerDisplayNameChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onCallDirectionChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onVideoStateChanged(Call call, int previousVideoState, int newVideoState) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onTargetPhoneAccountChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
         public void onConferenceableCallsChanged(Call call) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
 
         @Override
@@ -1008,7 +1040,7 @@ public class InCallController extends CallsManagerListenerBase implements
         @Override
         public void onCallerNumberVerificationStatusChanged(Call call,
                 int callerNumberVerificationStatus) {
-            updateCall(call);
+            scheduleCallUpdate(call);
         }
     };
 
@@ -1029,6 +1061,72 @@ public class InCallController extends CallsManagerListenerBase implements
         }
         return childManagedProfileUser;
     }
+    /**
+     * Key of a cached {@link InCallService} resolution; {@code null} package and component mean
+     * the query was not restricted to them.  The requested type is part of the key so each kind
+     * of lookup made while binding keeps its own entry.
+     */
+    private static final class ResolvedInCallServicesKey {
+        private final int mUserId;
+        private final String mPackageName;
+        private final ComponentName mComponentName;
+        private final int mRequestedType;
+
+        ResolvedInCallServicesKey(int userId, String packageName, ComponentName componentName,
+                int requestedType) {
+            mUserId = userId;
+            mPackageName = packageName;
+            mComponentName = componentName;
+            mRequestedType = requestedType;
+        }
+
+        /**
+         * @return {@code true} if a change to the given package can change the resolution.
+         */
+        boolean isAffectedBy(String packageName) {
+            if (mPackageName == null && mComponentName == null) {
+                return true;
+            }
+            return packageName.equals(mPackageName)
+                    || (mComponentName != null
+                            && packageName.equals(mComponentName.getPackageName()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ResolvedInCallServicesKey)) return false;
+            ResolvedInCallServicesKey that = (ResolvedInCallServicesKey) o;
+            return mUserId == that.mUserId
+                    && mRequestedType == that.mRequestedType
+                    && Objects.equals(mPackageName, that.mPackageName)
+                    && Objects.equals(mComponentName, that.mComponentName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mUserId, mPackageName, mComponentName, mRequestedType);
+        }
+    }
+
+    /**
+     * Receiver for package changes which may affect which {@link InCallService}s resolve, used to
+     * invalidate {@link #mResolvedInCallServices}.
+     */
+    private final BroadcastReceiver mResolvedInCallServicesReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.startSession("ICC.rICSR");
+            try {
+                Uri uri = intent.getData();
+                String packageName = uri != null ? uri.getSchemeSpecificPart() : null;
+                invalidateResolvedInCallServices(packageName);
+            } finally {
+                Log.endSession();
+            }
+        }
+    };
+
     private BroadcastReceiver mPackageChangedReceiver = new BroadcastReceiver() {
         private List<InCallController.InCallServiceInfo> getNonUiInCallServiceInfoList(
                 Intent intent, UserHandle userHandle) {
@@ -1086,6 +1184,8 @@ public class InCallController extends CallsManagerListenerBase implements
             UserManager um = mContext.getSystemService(UserManager.class);
             try {
                 if (Intent.ACTION_PACKAGE_CHANGED.equals(intent.getAction())) {
+                    // Receivers are not ordered; drop stale resolutions before re-querying below.
+                    invalidateResolvedInCallServices(intent.getData().getSchemeSpecificPart());
                     synchronized (mLock) {
                         int uid = intent.getIntExtra(Intent.EXTRA_UID, 0);
                         String changedPackage = intent.getData().getSchemeSpecificPart();
@@ -1206,6 +1306,7 @@ public class InCallController extends CallsManagerListenerBase implements
 
         @Override
         public void onPackageUninstalled(String packageName) {
+            invalidateResolvedInCallServices(packageName);
             mCarModeTracker.forceRemove(packageName);
             updateCarModeForConnections();
         }
@@ -1262,6 +1363,44 @@ public class InCallController extends CallsManagerListenerBase implements
     // component has been enabled.
     private Set<ComponentName> mKnownNonUiInCallServices = new ArraySet<>();
 
+    /**
+     * Successful {@link InCallService} resolutions from the package manager.  Entries are dropped
+     * when an affected package is added, changed or removed, and when car mode changes.  Empty
+     * results are not cached so a newly installed or enabled service is picked up immediately.
+     * Only the query is cached; the type, permission and enabled checks are still made on every
+     * lookup since they can change without a package broadcast.
+     */
+    private final Map<ResolvedInCallServicesKey, List<ResolveInfo>> mResolvedInCallServices =
+            new ConcurrentHashMap<>();
+    private final AtomicLong mResolvedInCallServicesHits = new AtomicLong();
+    private final AtomicLong mResolvedInCallServicesMisses = new AtomicLong();
+
+    /**
+     * A binding to the UI {@link InCallService} started by {@link #preBindToServices(Call)} while
+     * an incoming call is being filtered.
+     */
+    private static final class SpeculativeBinding {
+        private final Call mCall;
+        private final long mStartMillis;
+        private final Runnable mTimeout;
+        private long mConnectedMillis;
+
+        SpeculativeBinding(Call call, long startMillis, Runnable timeout) {
+            mCall = call;
+            mStartMillis = startMillis;
+            mTimeout = timeout;
+        }
+    }
+
+    /**
+     * Speculative bindings which have not yet been handed over to an added call, by user.
+     */
+    private final Map<UserHandle, SpeculativeBinding> mSpeculativeBindings = new ArrayMap<>();
+    private final LogScaleHistogram mSpeculativeBindingSavedMillis = new LogScaleHistogram(16);
+    private long mNumSpeculativeBindingsStarted = 0;
+    private long mNumSpeculativeBindingsAdopted = 0;
+    private long mNumSpeculativeBindingsReleased = 0;
+
     // Future that's in a completed state unless we're in the middle of binding to a service.
     // The future will complete with true if binding succeeds, false if it timed out.
     private CompletableFuture<Boolean> mBindingFuture = CompletableFuture.completedFuture(true);
@@ -1308,6 +1447,15 @@ public class InCallController extends CallsManagerListenerBase implements
 
     private java.lang.Runnable mCallRemovedRunnable;
 
+    /**
+     * Call updates which are waiting for the coalescing window to elapse before being sent to the
+     * {@link InCallService}s.
+     */
+    private final Map<Call, PendingCallUpdate> mPendingCallUpdates = new ArrayMap<>();
+    private boolean mIsCallUpdateFlushScheduled = false;
+    private long mNumCallUpdatesSent = 0;
+    private long mNumCallUpdatesCoalesced = 0;
+
     public InCallController(Context context, TelecomSystem.SyncRoot lock, CallsManager callsManager,
             SystemStateHelper systemStateHelper, DefaultDialerCache defaultDialerCache,
             Timeouts.Adapter timeoutsAdapter, EmergencyCallHelper emergencyCallHelper,
@@ -1338,6 +1486,14 @@ public class InCallController extends CallsManagerListenerBase implements
         IntentFilter userAddedFilter = new IntentFilter(Intent.ACTION_USER_ADDED);
         userAddedFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
         mContext.registerReceiver(mUserAddedReceiver, userAddedFilter);
+        IntentFilter packageIntentFilter = new IntentFilter();
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageIntentFilter.addDataScheme("package");
+        packageIntentFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
+        mContext.registerReceiverAsUser(mResolvedInCallServicesReceiver, UserHandle.ALL,
+                packageIntentFilter, null, null);
         mFeatureFlags = featureFlags;
     }
 
@@ -1418,6 +1574,9 @@ public class InCallController extends CallsManagerListenerBase implements
         // Track the call if we don't already know about it.
         addCall(call);
 
+        // If the UI was bound while the call was being filtered, the call is sent to it below.
+        adoptSpeculativeBinding(call, userFromCall);
+
         if (mFeatureFlags.separatelyBindToBtIncallService()) {
             boolean bindingToBtRequired = false;
             boolean bindingToOtherServicesRequired = false;
@@ -1468,6 +1627,8 @@ public class InCallController extends CallsManagerListenerBase implements
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
         if (serviceMap.containsKey(userFromCall)) {
+            ParcelableCallUtils.Snapshot snapshot = new ParcelableCallUtils.Snapshot(call,
+                    mCallsManager.getPhoneAccountRegistrar());
             for (Map.Entry<InCallServiceInfo, IInCallService> entry :
                     serviceMap.get(userFromCall).entrySet()) {
                 InCallServiceInfo info = entry.getKey();
@@ -1490,9 +1651,8 @@ public class InCallController extends CallsManagerListenerBase implements
                 componentsUpdated.add(info.getComponentName());
                 IInCallService inCallService = entry.getValue();
 
-                ParcelableCall parcelableCall = ParcelableCallUtils.toParcelableCall(call,
+                ParcelableCall parcelableCall = snapshot.toParcelableCall(
                         true /* includeVideoProvider */,
-                        mCallsManager.getPhoneAccountRegistrar(),
                         info.isExternalCallsSupported(), includeRttCall,
                         info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI ||
                                 info.getType() == IN_CALL_SERVICE_TYPE_NON_UI);
@@ -1510,6 +1670,7 @@ public class InCallController extends CallsManagerListenerBase implements
     @Override
     public void onCallRemoved(Call call) {
         Log.i(this, "onCallRemoved: %s", call);
+        flushPendingCallUpdate(call);
         // Instead of checking if there are no active calls, we should check if there any calls with
         // the same associated user returned from getUserFromCall. For instance, it's possible to
         // have calls coexist on the personal profile and work profile, in which case, we would only
@@ -1661,6 +1822,8 @@ public class InCallController extends CallsManagerListenerBase implements
         if (!isExternalCall && serviceMap.containsKey(userFromCall)) {
             // The call was external but it is no longer external.  We must now add it to any
             // InCallServices which do not support external calls.
+            ParcelableCallUtils.Snapshot snapshot = new ParcelableCallUtils.Snapshot(call,
+                    mCallsManager.getPhoneAccountRegistrar());
             for (Map.Entry<InCallServiceInfo, IInCallService> entry : serviceMap.
                     get(userFromCall).entrySet()) {
                 InCallServiceInfo info = entry.getKey();
@@ -1683,8 +1846,8 @@ public class InCallController extends CallsManagerListenerBase implements
                 boolean includeRttCall = info.equals(mInCallServiceConnections.
                         get(userFromCall).getInfo());
 
-                ParcelableCall parcelableCall = ParcelableCallUtils.toParcelableCall(call,
-                        true /* includeVideoProvider */, mCallsManager.getPhoneAccountRegistrar(),
+                ParcelableCall parcelableCall = snapshot.toParcelableCall(
+                        true /* includeVideoProvider */,
                         info.isExternalCallsSupported(), includeRttCall,
                         info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI
                                 || info.getType() == IN_CALL_SERVICE_TYPE_NON_UI);
@@ -1863,6 +2026,7 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     void onPostDialWait(Call call, String remaining) {
+        flushPendingCallUpdate(call);
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
@@ -2007,6 +2171,7 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private void notifyConnectionEvent(Call call, String event, Bundle extras) {
+        flushPendingCallUpdate(call);
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
@@ -2025,6 +2190,7 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private void notifyRttInitiationFailure(Call call, int reason) {
+        flushPendingCallUpdate(call);
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
@@ -2045,6 +2211,7 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private void notifyRemoteRttRequest(Call call, int requestId) {
+        flushPendingCallUpdate(call);
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
@@ -2065,6 +2232,7 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private void notifyHandoverFailed(Call call, int error) {
+        flushPendingCallUpdate(call);
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
@@ -2079,6 +2247,7 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private void notifyHandoverComplete(Call call) {
+        flushPendingCallUpdate(call);
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
@@ -2181,6 +2350,156 @@ public class InCallController extends CallsManagerListenerBase implements
     @VisibleForTesting
     public void bindToServices(Call call) {
         UserHandle userFromCall = getUserFromCall(call);
+        CarSwappingInCallServiceConnection inCallServiceConnection =
+                getOrCreateInCallServiceConnection(userFromCall);
+        inCallServiceConnection.chooseInitialInCallService(shouldUseCarModeUI());
+
+        // Actually try binding to the UI InCallService.
+        if (inCallServiceConnection.connect(call) ==
+                InCallServiceConnection.CONNECTION_SUCCEEDED || (call != null
+                && call.isSelfManaged())) {
+            // Only connect to the non-ui InCallServices if we actually connected to the main UI
+            // one, or if the call is self-managed (in which case we'd still want to keep Wear, BT,
+            // etc. informed.
+            connectToNonUiInCallServices(call);
+            mBindingFuture = new CompletableFuture<Boolean>().completeOnTimeout(false,
+                    mTimeoutsAdapter.getCallRemoveUnbindInCallServicesDelay(
+                            mContext.getContentResolver()),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            Log.i(this, "bindToServices: current UI doesn't support call; not binding.");
+        }
+
+        registerPackageChangedReceiver();
+    }
+
+    /**
+     * Starts binding to the UI {@link InCallService} for an incoming call which is still being
+     * filtered, so the binding is under way by the time the call is added.  The call itself is
+     * not sent to the service until it is added; if it never is, the binding is released by
+     * {@link #releaseSpeculativeBinding(Call)} or once the pre-bind timeout elapses.
+     *
+     * @param call The incoming call being filtered.
+     */
+    public void preBindToServices(Call call) {
+        long timeoutMillis = mTimeoutsAdapter.getInCallServicePreBindTimeoutMillis(
+                mContext.getContentResolver());
+        if (timeoutMillis <= 0 || call.isSelfManaged() || call.isExternalCall()) {
+            return;
+        }
+        UserHandle userFromCall = getUserFromCall(call);
+        if (mSpeculativeBindings.containsKey(userFromCall)
+                || mInCallServiceConnections.containsKey(userFromCall)) {
+            // Already bound, or being bound, for this user.
+            return;
+        }
+
+        CarSwappingInCallServiceConnection inCallServiceConnection =
+                getOrCreateInCallServiceConnection(userFromCall);
+        inCallServiceConnection.chooseInitialInCallService(shouldUseCarModeUI());
+        if (inCallServiceConnection.connect(call) != InCallServiceConnection.CONNECTION_SUCCEEDED) {
+            Log.i(this, "preBindToServices: could not bind for %s", call);
+            mInCallServiceConnections.remove(userFromCall);
+            return;
+        }
+        Log.i(this, "preBindToServices: bound ahead of filtering for %s", call);
+        Runnable timeout = new Runnable("ICC.pBTS", mLock) {
+            @Override
+            public void loggedRun() {
+                releaseSpeculativeBinding(call, false /* cancelTimeout */);
+            }
+        };
+        mSpeculativeBindings.put(userFromCall,
+                new SpeculativeBinding(call, mClockProxy.elapsedRealtime(), timeout));
+        mNumSpeculativeBindingsStarted++;
+        mHandler.postDelayed(timeout.prepare(), timeoutMillis);
+    }
+
+    /**
+     * Releases the binding started by {@link #preBindToServices(Call)} for a call which was not
+     * added, such as one which was blocked during call filtering.  Does nothing once the call has
+     * been added, since the binding then belongs to the call.
+     *
+     * @param call The incoming call which was filtered.
+     */
+    public void releaseSpeculativeBinding(Call call) {
+        releaseSpeculativeBinding(call, true /* cancelTimeout */);
+    }
+
+    private void releaseSpeculativeBinding(Call call, boolean cancelTimeout) {
+        UserHandle userFromCall = getUserFromCall(call);
+        SpeculativeBinding speculativeBinding = mSpeculativeBindings.get(userFromCall);
+        if (speculativeBinding == null || speculativeBinding.mCall != call) {
+            return;
+        }
+        Log.i(this, "releaseSpeculativeBinding: %s was not added; unbinding", call);
+        mSpeculativeBindings.remove(userFromCall);
+        if (cancelTimeout) {
+            cancelSpeculativeBindingTimeout(speculativeBinding);
+        }
+        mNumSpeculativeBindingsReleased++;
+        unbindFromServices(userFromCall);
+    }
+
+    /**
+     * Hands a binding started by {@link #preBindToServices(Call)} over to the call it was started
+     * for once that call is added, connecting the non-UI services the way
+     * {@link #bindToServices(Call)} would.  If the UI service is no longer connected, the services
+     * are bound as usual instead.  Any other call added first, such as an outgoing call, gets a
+     * binding of its own, since the UI was bound with the filtered call's details.
+     */
+    private void adoptSpeculativeBinding(Call call, UserHandle userFromCall) {
+        SpeculativeBinding speculativeBinding = mSpeculativeBindings.get(userFromCall);
+        if (speculativeBinding == null) {
+            return;
+        }
+        if (speculativeBinding.mCall != call) {
+            Log.i(this, "adoptSpeculativeBinding: %s was added before %s; unbinding", call,
+                    speculativeBinding.mCall);
+            releaseSpeculativeBinding(speculativeBinding.mCall);
+            return;
+        }
+        mSpeculativeBindings.remove(userFromCall);
+        cancelSpeculativeBindingTimeout(speculativeBinding);
+        if (!isBoundAndConnectedToServices(userFromCall)) {
+            return;
+        }
+        // The part of the binding which completed before the call was added is time the user
+        // no longer waits for.
+        long nowMillis = mClockProxy.elapsedRealtime();
+        long boundMillis = speculativeBinding.mConnectedMillis > 0
+                ? Math.min(speculativeBinding.mConnectedMillis, nowMillis) : nowMillis;
+        mSpeculativeBindingSavedMillis.record(boundMillis - speculativeBinding.mStartMillis);
+        mNumSpeculativeBindingsAdopted++;
+        Log.i(this, "adoptSpeculativeBinding: %s; saved %d ms", call,
+                boundMillis - speculativeBinding.mStartMillis);
+
+        connectToNonUiInCallServices(call);
+        mBindingFuture = new CompletableFuture<Boolean>().completeOnTimeout(false,
+                mTimeoutsAdapter.getCallRemoveUnbindInCallServicesDelay(
+                        mContext.getContentResolver()),
+                TimeUnit.MILLISECONDS);
+        registerPackageChangedReceiver();
+    }
+
+    private void cancelSpeculativeBindingTimeout(SpeculativeBinding speculativeBinding) {
+        mHandler.removeCallbacks(speculativeBinding.mTimeout.getRunnableToCancel());
+        speculativeBinding.mTimeout.cancel();
+    }
+
+    private void registerPackageChangedReceiver() {
+        IntentFilter packageChangedFilter = new IntentFilter(Intent.ACTION_PACKAGE_CHANGED);
+        packageChangedFilter.addDataScheme("package");
+        mContext.registerReceiverAsUser(mPackageChangedReceiver, UserHandle.ALL,
+                packageChangedFilter, null, null);
+    }
+
+    /**
+     * @return The connection to the UI {@link InCallService}s for the user, which is created if
+     * there is none yet.
+     */
+    private CarSwappingInCallServiceConnection getOrCreateInCallServiceConnection(
+            UserHandle userFromCall) {
         UserManager um = mContext.getSystemService(UserManager.class);
         UserHandle parentUser = mFeatureFlags.profileUserSupport()
                 ? um.getProfileParent(userFromCall) : null;
@@ -2232,31 +2551,7 @@ public class InCallController extends CallsManagerListenerBase implements
             mInCallServiceConnections.put(userFromCall,
                     new CarSwappingInCallServiceConnection(systemInCall, carModeInCall));
         }
-
-        CarSwappingInCallServiceConnection inCallServiceConnection =
-                mInCallServiceConnections.get(userFromCall);
-        inCallServiceConnection.chooseInitialInCallService(shouldUseCarModeUI());
-
-        // Actually try binding to the UI InCallService.
-        if (inCallServiceConnection.connect(call) ==
-                InCallServiceConnection.CONNECTION_SUCCEEDED || (call != null
-                && call.isSelfManaged())) {
-            // Only connect to the non-ui InCallServices if we actually connected to the main UI
-            // one, or if the call is self-managed (in which case we'd still want to keep Wear, BT,
-            // etc. informed.
-            connectToNonUiInCallServices(call);
-            mBindingFuture = new CompletableFuture<Boolean>().completeOnTimeout(false,
-                    mTimeoutsAdapter.getCallRemoveUnbindInCallServicesDelay(
-                            mContext.getContentResolver()),
-                    TimeUnit.MILLISECONDS);
-        } else {
-            Log.i(this, "bindToServices: current UI doesn't support call; not binding.");
-        }
-
-        IntentFilter packageChangedFilter = new IntentFilter(Intent.ACTION_PACKAGE_CHANGED);
-        packageChangedFilter.addDataScheme("package");
-        mContext.registerReceiverAsUser(mPackageChangedReceiver, UserHandle.ALL,
-                packageChangedFilter, null, null);
+        return mInCallServiceConnections.get(userFromCall);
     }
 
     private void updateNonUiInCallServices(Call call) {
@@ -2451,10 +2746,8 @@ public class InCallController extends CallsManagerListenerBase implements
                 userContext.getPackageManager() : packageManager;
 
 
-        for (ResolveInfo entry : packageManager.queryIntentServicesAsUser(
-                serviceIntent,
-                PackageManager.GET_META_DATA | PackageManager.MATCH_DISABLED_COMPONENTS,
-                userHandle.getIdentifier())) {
+        for (ResolveInfo entry : resolveInCallServices(userHandle, packageName, componentName,
+                requestedType, serviceIntent, packageManager)) {
             ServiceInfo serviceInfo = entry.serviceInfo;
 
             if (serviceInfo != null) {
@@ -2502,6 +2795,46 @@ public class InCallController extends CallsManagerListenerBase implements
         return retval;
     }
 
+    /**
+     * Queries the package manager for the {@link InCallService}s matching the intent, using a
+     * cached result when one is available.
+     */
+    private List<ResolveInfo> resolveInCallServices(UserHandle userHandle, String packageName,
+            ComponentName componentName, int requestedType, Intent serviceIntent,
+            PackageManager packageManager) {
+        ResolvedInCallServicesKey key = new ResolvedInCallServicesKey(
+                userHandle.getIdentifier(), packageName, componentName, requestedType);
+        List<ResolveInfo> resolveInfos = mResolvedInCallServices.get(key);
+        if (resolveInfos != null) {
+            mResolvedInCallServicesHits.incrementAndGet();
+            return resolveInfos;
+        }
+        mResolvedInCallServicesMisses.incrementAndGet();
+        resolveInfos = packageManager.queryIntentServicesAsUser(
+                serviceIntent,
+                PackageManager.GET_META_DATA | PackageManager.MATCH_DISABLED_COMPONENTS,
+                userHandle.getIdentifier());
+        if (resolveInfos == null || resolveInfos.isEmpty()) {
+            return Collections.emptyList();
+        }
+        resolveInfos = Collections.unmodifiableList(new ArrayList<>(resolveInfos));
+        mResolvedInCallServices.put(key, resolveInfos);
+        return resolveInfos;
+    }
+
+    /**
+     * Drops cached {@link InCallService} resolutions which a package may affect.
+     *
+     * @param packageName The package which changed, or {@code null} to drop all entries.
+     */
+    private void invalidateResolvedInCallServices(String packageName) {
+        if (packageName == null) {
+            mResolvedInCallServices.clear();
+            return;
+        }
+        mResolvedInCallServices.keySet().removeIf(key -> key.isAffectedBy(packageName));
+    }
+
     private boolean isServiceEnabled(ComponentName componentName,
             ServiceInfo serviceInfo, PackageManager packageManager) {
         if (packageManager == null) {
@@ -2630,6 +2963,10 @@ public class InCallController extends CallsManagerListenerBase implements
                 || info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI
                 || info.getType() == IN_CALL_SERVICE_TYPE_DEFAULT_DIALER_UI) {
             trackCallingUserInterfaceStarted(info);
+            SpeculativeBinding speculativeBinding = mSpeculativeBindings.get(userHandle);
+            if (speculativeBinding != null && speculativeBinding.mConnectedMillis == 0) {
+                speculativeBinding.mConnectedMillis = mClockProxy.elapsedRealtime();
+            }
         }
         IInCallService inCallService = IInCallService.Stub.asInterface(service);
         if (mFeatureFlags.separatelyBindToBtIncallService()
@@ -2788,12 +3125,106 @@ public class InCallController extends CallsManagerListenerBase implements
      */
     private void updateCall(Call call, boolean videoProviderChanged, boolean rttInfoChanged,
             String exceptPackageName) {
+        // Fold any pending coalesced update into this one so the ICS sees a single update.
+        PendingCallUpdate pendingUpdate = mPendingCallUpdates.remove(call);
+        if (pendingUpdate != null) {
+            pendingUpdate.merge(videoProviderChanged, rttInfoChanged, exceptPackageName);
+            mNumCallUpdatesCoalesced++;
+            sendCallUpdate(call, pendingUpdate.mVideoProviderChanged,
+                    pendingUpdate.mRttInfoChanged, pendingUpdate.mExceptPackageName);
+        } else {
+            sendCallUpdate(call, videoProviderChanged, rttInfoChanged, exceptPackageName);
+        }
+    }
+
+    /**
+     * Schedules an update of the call information to all {@link InCallService} instances.
+     * Updates for the same call which arrive within the coalescing window (see
+     * {@link Timeouts#getInCallUpdateCoalescingWindowMillis()}) are merged and sent once the
+     * window elapses.  Call state changes use {@link #updateCall(Call)} directly, which sends the
+     * update immediately along with anything still pending.
+     *
+     * @param call The {@link Call}.
+     */
+    private void scheduleCallUpdate(Call call) {
+        scheduleCallUpdate(call, false /* videoProviderChanged */, false, null);
+    }
+
+    /**
+     * Schedules an update of the call information to all {@link InCallService} instances.
+     * See {@link #updateCall(Call, boolean, boolean, String)} for a description of the parameters.
+     */
+    private void scheduleCallUpdate(Call call, boolean videoProviderChanged,
+            boolean rttInfoChanged, String exceptPackageName) {
+        long coalescingWindowMillis = mTimeoutsAdapter.getInCallUpdateCoalescingWindowMillis();
+        if (coalescingWindowMillis <= 0) {
+            updateCall(call, videoProviderChanged, rttInfoChanged, exceptPackageName);
+            return;
+        }
+        PendingCallUpdate pendingUpdate = mPendingCallUpdates.get(call);
+        if (pendingUpdate == null) {
+            mPendingCallUpdates.put(call, new PendingCallUpdate(videoProviderChanged,
+                    rttInfoChanged, exceptPackageName));
+        } else {
+            pendingUpdate.merge(videoProviderChanged, rttInfoChanged, exceptPackageName);
+            mNumCallUpdatesCoalesced++;
+        }
+        if (!mIsCallUpdateFlushScheduled) {
+            mIsCallUpdateFlushScheduled = true;
+            mHandler.postDelayed(new Runnable("ICC.sCU", mLock) {
+                @Override
+                public void loggedRun() {
+                    flushPendingCallUpdates();
+                }
+            }.prepare(), coalescingWindowMillis);
+        }
+    }
+
+    /**
+     * Sends all call updates which are waiting on the coalescing window.
+     */
+    private void flushPendingCallUpdates() {
+        mIsCallUpdateFlushScheduled = false;
+        if (mPendingCallUpdates.isEmpty()) {
+            return;
+        }
+        List<Call> calls = new ArrayList<>(mPendingCallUpdates.keySet());
+        for (Call call : calls) {
+            flushPendingCallUpdate(call);
+        }
+    }
+
+    /**
+     * Sends the pending coalesced update for a call, if there is one.  Used to ensure that
+     * {@link InCallService}s see the latest call information before any other signal about the
+     * call, preserving the ordering they would have seen without coalescing.
+     *
+     * @param call The {@link Call}.
+     */
+    private void flushPendingCallUpdate(Call call) {
+        PendingCallUpdate pendingUpdate = mPendingCallUpdates.remove(call);
+        if (pendingUpdate == null || mCallIdMapper.getCallId(call) == null) {
+            return;
+        }
+        sendCallUpdate(call, pendingUpdate.mVideoProviderChanged, pendingUpdate.mRttInfoChanged,
+                pendingUpdate.mExceptPackageName);
+    }
+
+    /**
+     * Sends the call information to all {@link InCallService} instances.
+     * See {@link #updateCall(Call, boolean, boolean, String)} for a description of the parameters.
+     */
+    private void sendCallUpdate(Call call, boolean videoProviderChanged, boolean rttInfoChanged,
+            String exceptPackageName) {
+        mNumCallUpdatesSent++;
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
         if (serviceMap.containsKey(userFromCall)) {
             Log.i(this, "Sending updateCall %s", call);
             List<ComponentName> componentsUpdated = new ArrayList<>();
+            ParcelableCallUtils.Snapshot snapshot = new ParcelableCallUtils.Snapshot(call,
+                    mCallsManager.getPhoneAccountRegistrar());
             for (Map.Entry<InCallServiceInfo, IInCallService> entry : serviceMap.
                     get(userFromCall).entrySet()) {
                 InCallServiceInfo info = entry.getKey();
@@ -2816,10 +3247,8 @@ public class InCallController extends CallsManagerListenerBase implements
                     continue;
                 }
 
-                ParcelableCall parcelableCall = ParcelableCallUtils.toParcelableCall(
-                        call,
+                ParcelableCall parcelableCall = snapshot.toParcelableCall(
                         videoProviderChanged /* includeVideoProvider */,
-                        mCallsManager.getPhoneAccountRegistrar(),
                         info.isExternalCallsSupported(),
                         rttInfoChanged && info.equals(
                                 mInCallServiceConnections.get(userFromCall).getInfo()),
@@ -2977,6 +3406,30 @@ public class InCallController extends CallsManagerListenerBase implements
         }
         pw.decreaseIndent();
 
+        pw.println("CallUpdates:");
+        pw.increaseIndent();
+        pw.println("coalescingWindowMillis: "
+                + mTimeoutsAdapter.getInCallUpdateCoalescingWindowMillis());
+        pw.println("sent: " + mNumCallUpdatesSent);
+        pw.println("coalesced: " + mNumCallUpdatesCoalesced);
+        pw.println("pending: " + mPendingCallUpdates.size());
+        pw.decreaseIndent();
+
+        pw.println("SpeculativeBindings:");
+        pw.increaseIndent();
+        pw.println("timeoutMillis: " + mTimeoutsAdapter.getInCallServicePreBindTimeoutMillis(
+                mContext.getContentResolver()));
+        pw.println("started: " + mNumSpeculativeBindingsStarted);
+        pw.println("adopted: " + mNumSpeculativeBindingsAdopted);
+        pw.println("released: " + mNumSpeculativeBindingsReleased);
+        pw.println("pending: " + mSpeculativeBindings.size());
+        pw.println("savedMillis: " + mSpeculativeBindingSavedMillis);
+        pw.decreaseIndent();
+
+        pw.println("resolvedInCallServices: size=" + mResolvedInCallServices.size()
+                + ", hits=" + mResolvedInCallServicesHits.get()
+                + ", misses=" + mResolvedInCallServicesMisses.get());
+
         mCarModeTracker.dump(pw);
     }
 
@@ -3117,6 +3570,8 @@ public class InCallController extends CallsManagerListenerBase implements
             Log.i(this, "handleCarModeChange: Got null packageName, ignoring");
             return;
         }
+        // The car mode app may have been updated while it was not in use.
+        invalidateResolvedInCallServices(packageName);
         // Don't ignore the signal if we are disabling car mode; package may be uninstalled.
         if (isCarMode && !isCarModeInCallService(packageName)) {
             Log.i(this, "handleCarModeChange: not a valid InCallService; packageName=%s",
@@ -3357,6 +3812,9 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private void updateCallTracking(Call call, InCallServiceInfo info, boolean isAdd) {
+        if (isAdd) {
+            call.markLatencyMilestone(CallLatencyStats.MILESTONE_IN_CALL_SERVICE_ADDED);
+        }
         int type = info.getType();
         boolean hasUi = type == IN_CALL_SERVICE_TYPE_CAR_MODE_UI
                 || type == IN_CALL_SERVICE_TYPE_DEFAULT_DIALER_UI;
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+/**
+ * A fixed-size histogram of non-negative values, such as latencies or queue depths, whose buckets
+ * double in width.  Bucket 0 counts the value 0 and bucket {@code i} counts values in
+ * {@code [2^(i-1), 2^i)}; the last bucket also counts every larger value.  Percentiles are
+ * therefore reported as the upper bound of the bucket they fall into.
+ */
+public class LogScaleHistogram {
+    private final long[] mCounts;
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * @param numBuckets The number of buckets; values of {@code 2^(numBuckets - 2)} and larger
+     *                   share the last bucket.
+     */
+    public LogScaleHistogram(int numBuckets) {
+        if (numBuckets < 2 || numBuckets > Long.SIZE) {
+            throw new IllegalArgumentException("Invalid number of buckets: " + numBuckets);
+        }
+        mCounts = new long[numBuckets];
+    }
+
+    /**
+     * Records a value; negative values are counted as 0.
+     */
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        mCounts[getBucketIndex(value)]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Adds counts recorded earlier, e.g. by a histogram restored from storage.
+     *
+     * @param counts The count of each bucket; extra buckets are added to the last bucket.
+     * @param sum The sum of the values counted.
+     * @param max The largest value counted.
+     */
+    public synchronized void add(long[] counts, long sum, long max) {
+        for (int i = 0; i < counts.length; i++) {
+            mCounts[Math.min(i, mCounts.length - 1)] += counts[i];
+            mCount += counts[i];
+        }
+        mSum += sum;
+        mMax = Math.max(mMax, max);
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    public int getNumBuckets() {
+        return mCounts.length;
+    }
+
+    public synchronized long getBucketCount(int index) {
+        return mCounts[index];
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getSum() {
+        return mSum;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return The mean of the recorded values, or 0 if nothing was recorded.
+     */
+    public synchronized long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return An upper bound of the given percentile of the recorded values, never larger than
+     * the largest recorded value; 0 if nothing was recorded.
+     */
+    public synchronized long getPercentile(int percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (mCount * percentile + 99) / 100);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return i == mCounts.length - 1 ? mMax : Math.min(mMax, getUpperBound(i));
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * @return The smallest value counted by the bucket at {@code index}.
+     */
+    public static long getLowerBound(int index) {
+        return index == 0 ? 0 : 1L << (index - 1);
+    }
+
+    /**
+     * @return The largest value counted by the bucket at {@code index}, ignoring the overflow of
+     * the last bucket.
+     */
+    public static long getUpperBound(int index) {
+        return index == 0 ? 0 : (1L << index) - 1;
+    }
+
+    private int getBucketIndex(long value) {
+        int index = Long.SIZE - Long.numberOfLeadingZeros(value);
+        return Math.min(index, mCounts.length - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("n=").append(mCount)
+                .append(" mean=").append(getMean())
+                .append(" p50=").append(getPercentile(50))
+                .append(" p95=").append(getPercentile(95))
+                .append(" p99=").append(getPercentile(99))
+                .append(" max=").append(mMax)
+                .append(" [");
+        boolean first = true;
+        for (int i = 0; i < mCounts.length; i++) {
+            if (mCounts[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(getLowerBound(i));
+            if (i == mCounts.length - 1) {
+                sb.append('+');
+            } else if (getUpperBound(i) > getLowerBound(i)) {
+                sb.append('-').append(getUpperBound(i));
+            }
+            sb.append(':').append(mCounts[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -80,6 +80,100 @@ public class ParcelableCallUtils {
         }
     }
 
+    /**
+     * Parcels a {@link Call} for a number of {@link InCallService}s as part of a single update.
+     * <p>
+     * Most of the information in a {@link ParcelableCall} is the same regardless of which
+     * {@link InCallService} it is being sent to; only the state (for external calls), extras
+     * sanitization, video provider and RTT call vary.  A snapshot parcels the call once and then
+     * derives and memoizes each variant from that base, so that binding several services (UI,
+     * BT, car mode, wear, non-UI) does not repeat the full conversion for each of them.
+     * <p>
+     * A snapshot reflects the call at the time it is first used; a new one should be created for
+     * each update of the call.
+     */
+    public static class Snapshot {
+        private static final int FLAG_INCLUDE_VIDEO_PROVIDER = 1 << 0;
+        private static final int FLAG_SUPPORTS_EXTERNAL_CALLS = 1 << 1;
+        private static final int FLAG_INCLUDE_RTT_CALL = 1 << 2;
+        private static final int FLAG_IS_FOR_SYSTEM_IN_CALL_SERVICE = 1 << 3;
+
+        private final Call mCall;
+        private final PhoneAccountRegistrar mPhoneAccountRegistrar;
+        private final ParcelableCall[] mVariants = new ParcelableCall[1 << 4];
+        private ParcelableCall mBase;
+        private int mCapabilities;
+        private Bundle mSanitizedExtras;
+
+        public Snapshot(Call call, PhoneAccountRegistrar phoneAccountRegistrar) {
+            mCall = call;
+            mPhoneAccountRegistrar = phoneAccountRegistrar;
+        }
+
+        /**
+         * Returns the {@link ParcelableCall} for the call; see
+         * {@link ParcelableCallUtils#toParcelableCall(Call, boolean, PhoneAccountRegistrar,
+         * boolean, boolean, boolean)} for a description of the parameters.  Repeated requests with
+         * the same parameters return the same instance.
+         */
+        public ParcelableCall toParcelableCall(
+                boolean includeVideoProvider,
+                boolean supportsExternalCalls,
+                boolean includeRttCall,
+                boolean isForSystemInCallService) {
+            int key = (includeVideoProvider ? FLAG_INCLUDE_VIDEO_PROVIDER : 0)
+                    | (supportsExternalCalls ? FLAG_SUPPORTS_EXTERNAL_CALLS : 0)
+                    | (includeRttCall ? FLAG_INCLUDE_RTT_CALL : 0)
+                    | (isForSystemInCallService ? FLAG_IS_FOR_SYSTEM_IN_CALL_SERVICE : 0);
+            ParcelableCall parcelableCall = mVariants[key];
+            if (parcelableCall == null) {
+                parcelableCall = createVariant(includeVideoProvider, supportsExternalCalls,
+                        includeRttCall, isForSystemInCallService);
+                mVariants[key] = parcelableCall;
+            }
+            return parcelableCall;
+        }
+
+        private ParcelableCall createVariant(
+                boolean includeVideoProvider,
+                boolean supportsExternalCalls,
+                boolean includeRttCall,
+                boolean isForSystemInCallService) {
+            if (mBase == null) {
+                // The base is parcelled for the system in-call service with external call
+                // support; this keeps the unsanitized extras and the unmapped call state, both of
+                // which can be narrowed below for other recipients.
+                mBase = ParcelableCallUtils.toParcelableCall(mCall,
+                        false /* includeVideoProvider */, mPhoneAccountRegistrar,
+                        true /* supportsExternalCalls */, false /* includeRttCall */,
+                        true /* isForSystemInCallService */);
+                // The base's capabilities were narrowed for its own state, which need not be the
+                // state of the variant.
+                mCapabilities = getParcelableCapabilities(mCall, mPhoneAccountRegistrar);
+            }
+            int state = supportsExternalCalls ? mBase.getState()
+                    : getParcelableState(mCall, false /* supportsExternalCalls */);
+            Bundle extras;
+            if (isForSystemInCallService) {
+                extras = mBase.getExtras();
+            } else {
+                if (mSanitizedExtras == null) {
+                    mSanitizedExtras = sanitizeExtras(mCall.getExtras());
+                }
+                extras = mSanitizedExtras;
+            }
+            return ParcelableCall.ParcelableCallBuilder.fromParcelableCall(mBase)
+                    .setState(state)
+                    .setCapabilities(removeCapabilitiesForState(mCapabilities, state))
+                    .setIsVideoCallProviderChanged(includeVideoProvider)
+                    .setVideoCallProvider(includeVideoProvider ? mCall.getVideoProvider() : null)
+                    .setIsRttCallChanged(includeRttCall)
+                    .setRttCall(includeRttCall ? getParcelableRttCall(mCall) : null)
+                    .setExtras(extras)
+                    .createParcelableCall();
+        }
+    }
+
     /**
      * Parcels all information for a {@link Call} into a new {@link ParcelableCall} instance.
      *
@@ -143,7 +237,7 @@ public class ParcelableCallUtils {
         } else {
             state = overrideState;
         }
-        int capabilities = convertConnectionToCallCapabilities(call.getConnectionCapabilities());
+        int capabilities = getParcelableCapabilities(call, phoneAccountRegistrar);
         int properties = convertConnectionToCallProperties(call.getConnectionProperties());
         int supportedAudioRoutes = call.getSupportedAudioRoutes();
 
@@ -163,24 +257,7 @@ public class ParcelableCallUtils {
             properties |= android.telecom.Call.Details.PROPERTY_IS_TRANSACTIONAL;
         }
 
-        // If this is a single-SIM device, the "default SIM" will always be the only SIM.
-        boolean isDefaultSmsAccount = phoneAccountRegistrar != null &&
-                phoneAccountRegistrar.isUserSelectedSmsPhoneAccount(call.getTargetPhoneAccount());
-        if (call.isRespondViaSmsCapable() && isDefaultSmsAccount) {
-            capabilities |= android.telecom.Call.Details.CAPABILITY_RESPOND_VIA_TEXT;
-        }
-
-        if (call.isEmergencyCall()) {
-            capabilities = removeCapability(
-                    capabilities, android.telecom.Call.Details.CAPABILITY_MUTE);
-        }
-
-        if (state == android.telecom.Call.STATE_DIALING) {
-            capabilities = removeCapability(capabilities,
-                    android.telecom.Call.Details.CAPABILITY_SUPPORTS_VT_LOCAL_BIDIRECTIONAL);
-            capabilities = removeCapability(capabilities,
-                    android.telecom.Call.Details.CAPABILITY_SUPPORTS_VT_REMOTE_BIDIRECTIONAL);
-        }
+        capabilities = removeCapabilitiesForState(capabilities, state);
 
         String parentCallId = null;
         Call parentCall = call.getParentCall();
@@ -586,6 +663,42 @@ public class ParcelableCallUtils {
         return callProperties;
     }
 
+    /**
+     * Removes the capabilities which are not valid for a call in the specified
+     * {@link android.telecom.Call} state and returns the new set.
+     */
+    /**
+     * Returns the {@link android.telecom.Call.Details} capabilities of the call, before those
+     * which do not apply to its parcelled state are removed.
+     */
+    private static int getParcelableCapabilities(Call call,
+            PhoneAccountRegistrar phoneAccountRegistrar) {
+        int capabilities = convertConnectionToCallCapabilities(call.getConnectionCapabilities());
+
+        // If this is a single-SIM device, the "default SIM" will always be the only SIM.
+        boolean isDefaultSmsAccount = phoneAccountRegistrar != null &&
+                phoneAccountRegistrar.isUserSelectedSmsPhoneAccount(call.getTargetPhoneAccount());
+        if (call.isRespondViaSmsCapable() && isDefaultSmsAccount) {
+            capabilities |= android.telecom.Call.Details.CAPABILITY_RESPOND_VIA_TEXT;
+        }
+
+        if (call.isEmergencyCall()) {
+            capabilities = removeCapability(
+                    capabilities, android.telecom.Call.Details.CAPABILITY_MUTE);
+        }
+        return capabilities;
+    }
+
+    private static int removeCapabilitiesForState(int capabilities, int state) {
+        if (state == android.telecom.Call.STATE_DIALING) {
+            capabilities = removeCapability(capabilities,
+                    android.telecom.Call.Details.CAPABILITY_SUPPORTS_VT_LOCAL_BIDIRECTIONAL);
+            capabilities = removeCapability(capabilities,
+                    android.telecom.Call.Details.CAPABILITY_SUPPORTS_VT_REMOTE_BIDIRECTIONAL);
+        }
+        return capabilities;
+    }
+
     /**
      * Removes the specified capability from the set of capabilities bits and returns the new set.
      */
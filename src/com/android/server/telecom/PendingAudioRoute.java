@@ -22,13 +22,18 @@ import static com.android.server.telecom.CallAudioRouteController.INCLUDE_BLUETO
 
 import android.bluetooth.BluetoothDevice;
 import android.media.AudioManager;
+import android.os.SystemClock;
 import android.telecom.Log;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Pair;
 
 import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.flags.FeatureFlags;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -53,6 +58,15 @@ public class PendingAudioRoute {
      */
     private AudioRoute mDestRoute;
     private Set<Pair<Integer, String>> mPendingMessages;
+    /**
+     * The elapsed realtime each of the pending messages was added at
+     */
+    private final Map<Pair<Integer, String>, Long> mPendingMessageStartMillis = new ArrayMap<>();
+    /**
+     * How long the pending messages were waited for, until they are taken by
+     * {@link #takeMessageWaits()}
+     */
+    private final List<MessageWait> mMessageWaits = new ArrayList<>();
     private boolean mActive;
     /**
      * The device that has been set for communication by Telecom
@@ -92,7 +106,10 @@ public class PendingAudioRoute {
     }
 
     public void addMessage(int message, String bluetoothDevice) {
-        mPendingMessages.add(new Pair<>(message, bluetoothDevice));
+        Pair<Integer, String> pendingMessage = new Pair<>(message, bluetoothDevice);
+        if (mPendingMessages.add(pendingMessage)) {
+            mPendingMessageStartMillis.put(pendingMessage, SystemClock.elapsedRealtime());
+        }
     }
 
     public void onMessageReceived(Pair<Integer, String> message, String btAddressToExclude) {
@@ -109,7 +126,9 @@ public class PendingAudioRoute {
         }
 
         // Removes the first occurrence of the specified message from this list, if it is present.
-        mPendingMessages.remove(message);
+        if (mPendingMessages.remove(message)) {
+            recordMessageWait(message, true);
+        }
         evaluatePendingState();
     }
 
@@ -123,11 +142,35 @@ public class PendingAudioRoute {
     }
 
     public void clearPendingMessages() {
+        for (Pair<Integer, String> message : mPendingMessages) {
+            recordMessageWait(message, false);
+        }
         mPendingMessages.clear();
+        mPendingMessageStartMillis.clear();
     }
 
     public void clearPendingMessage(Pair<Integer, String> message) {
-        mPendingMessages.remove(message);
+        if (mPendingMessages.remove(message)) {
+            recordMessageWait(message, false);
+        }
+    }
+
+    /**
+     * @return How long each message received or given up on since the last call was waited for.
+     */
+    public List<MessageWait> takeMessageWaits() {
+        List<MessageWait> messageWaits = new ArrayList<>(mMessageWaits);
+        mMessageWaits.clear();
+        return messageWaits;
+    }
+
+    private void recordMessageWait(Pair<Integer, String> message, boolean isReceived) {
+        Long startMillis = mPendingMessageStartMillis.remove(message);
+        // Only the metrics take the waits, so they are not kept without them.
+        if (startMillis != null && mFeatureFlags.telecomMetricsSupport()) {
+            mMessageWaits.add(new MessageWait(message.first,
+                    SystemClock.elapsedRealtime() - startMillis, isReceived));
+        }
     }
 
     public Set<Pair<Integer, String>> getPendingMessages() {
@@ -154,4 +197,20 @@ public class PendingAudioRoute {
     public FeatureFlags getFeatureFlags() {
         return mFeatureFlags;
     }
+
+    /**
+     * How long a pending message was waited for.
+     */
+    public static class MessageWait {
+        public final int message;
+        public final long waitMillis;
+        /** Whether the message arrived, rather than being cleared while still pending. */
+        public final boolean isReceived;
+
+        public MessageWait(int message, long waitMillis, boolean isReceived) {
+            this.message = message;
+            this.waitMillis = waitMillis;
+            this.isReceived = isReceived;
+        }
+    }
 }
@@ -35,14 +35,18 @@ import android.net.Uri;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PersistableBundle;
 import android.os.Process;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
 import android.telecom.CallAudioState;
 import android.telecom.ConnectionService;
 import android.telecom.Log;
+import android.telecom.Logging.Runnable;
 import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telephony.CarrierConfigManager;
@@ -54,6 +58,7 @@ import android.text.TextUtils;
 import android.util.AtomicFile;
 import android.util.Base64;
 import android.util.EventLog;
+import android.util.Pair;
 import android.util.Xml;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
@@ -79,10 +84,13 @@ import java.lang.Integer;
 import java.lang.SecurityException;
 import java.lang.String;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -90,6 +98,10 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -156,6 +168,24 @@ public class PhoneAccountRegistrar {
         }
     };
 
+    /**
+     * Receiver for package changes which may affect whether a {@link ConnectionService} component
+     * can be resolved, used to invalidate {@link #mResolvedComponentCache}.
+     */
+    private final BroadcastReceiver mPackageChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.startSession("PARbR.oPC");
+            try {
+                Uri uri = intent.getData();
+                String packageName = uri != null ? uri.getSchemeSpecificPart() : null;
+                invalidateResolvedComponents(packageName);
+            } finally {
+                Log.endSession();
+            }
+        }
+    };
+
     public static final String FILE_NAME = "phone-account-registrar-state.xml";
     public static final String ICON_ERROR_MSG =
             "Icon cannot be written to memory. Try compressing or downsizing";
@@ -166,6 +196,13 @@ public class PhoneAccountRegistrar {
     public static final int MAX_PHONE_ACCOUNT_FIELD_CHAR_LIMIT = 256;
     public static final int MAX_SCHEMES_PER_ACCOUNT = 10;
 
+    /**
+     * Time to wait after an incidental change, such as enabling an account or changing the
+     * default, before persisting the state, so that a burst of them results in a single write.
+     * Registrations and removals are written right away, see {@link #writeNow()}.
+     */
+    private static final long WRITE_COALESCING_DELAY_MS = 100L;
+
     /** Keep in sync with the same in SipSettings.java */
     private static final String SIP_SHARED_PREFERENCES = "SIP_PREFERENCES";
 
@@ -179,14 +216,42 @@ public class PhoneAccountRegistrar {
     private final AppLabelProxy mAppLabelProxy;
     private final TelecomSystem.SyncRoot mLock;
     private State mState;
+    private volatile AccountIndex mAccountIndex;
     private UserHandle mCurrentUserHandle;
     private String mTestPhoneAccountPackageNameFilter;
     private interface PhoneAccountRegistrarWriteLock {}
     private final PhoneAccountRegistrarWriteLock mWriteLock =
             new PhoneAccountRegistrarWriteLock() {};
+    private final Handler mWriteHandler = new Handler(Looper.getMainLooper());
+    private boolean mIsWritePending = false;
+    // The serialized state last handed to the writer; null when the file contents are unknown.
+    private volatile byte[] mLastWrittenBytes;
+    private int mNumWritesRequested = 0;
+    private int mNumWritesFlushed = 0;
+    private int mNumWritesSkipped = 0;
     private final FeatureFlags mTelephonyFeatureFlags;
     private final com.android.server.telecom.flags.FeatureFlags mTelecomFeatureFlags;
 
+    /**
+     * Successful {@link ConnectionService} resolutions, keyed by component and user.  Entries are
+     * dropped when the package is added, changed or removed.  Empty results are not cached so a
+     * newly installed or enabled service is picked up immediately.
+     */
+    private final Map<Pair<ComponentName, UserHandle>, List<ResolveInfo>> mResolvedComponentCache =
+            new ConcurrentHashMap<>();
+    private final AtomicLong mResolvedComponentCacheHits = new AtomicLong();
+    private final AtomicLong mResolvedComponentCacheMisses = new AtomicLong();
+
+    /**
+     * Still-encoded icons of the accounts read from disk, keyed by account identity.  Decoding
+     * is deferred until an account is returned to a caller or the state is next written, which
+     * keeps it off the boot path.
+     */
+    private final Map<PhoneAccount, String> mDeferredIcons = new IdentityHashMap<>();
+    private int mNumDeferredIconsDecoded = 0;
+    private long mReadParseMicros = 0;
+    private long mReadVerifyMicros = 0;
+
     @VisibleForTesting
     public PhoneAccountRegistrar(Context context, TelecomSystem.SyncRoot lock,
             DefaultDialerCache defaultDialerCache, AppLabelProxy appLabelProxy,
@@ -227,6 +292,15 @@ public class PhoneAccountRegistrar {
         intentFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
         mContext.registerReceiver(mManagedProfileReceiver, intentFilter);
 
+        IntentFilter packageIntentFilter = new IntentFilter();
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageIntentFilter.addDataScheme("package");
+        packageIntentFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
+        mContext.registerReceiverAsUser(mPackageChangedReceiver, UserHandle.ALL,
+                packageIntentFilter, null, null);
+
         read();
     }
 
@@ -792,9 +866,51 @@ public class PhoneAccountRegistrar {
         }
     }
 
+    /**
+     * Resolves the {@link ConnectionService} for a phone account, using a cached result when one
+     * is available.  Callers which make security decisions or which must detect a service that was
+     * just disabled should use {@link #resolveComponentUncached(PhoneAccountHandle)} instead.
+     */
     private List<ResolveInfo> resolveComponent(PhoneAccountHandle phoneAccountHandle) {
-        return resolveComponent(phoneAccountHandle.getComponentName(),
+        Pair<ComponentName, UserHandle> key = new Pair<>(phoneAccountHandle.getComponentName(),
                 phoneAccountHandle.getUserHandle());
+        List<ResolveInfo> resolveInfos = mResolvedComponentCache.get(key);
+        if (resolveInfos != null) {
+            mResolvedComponentCacheHits.incrementAndGet();
+            return resolveInfos;
+        }
+        mResolvedComponentCacheMisses.incrementAndGet();
+        return resolveComponentUncached(phoneAccountHandle);
+    }
+
+    /**
+     * Resolves the {@link ConnectionService} for a phone account from the package manager and
+     * refreshes the cached result.
+     */
+    private List<ResolveInfo> resolveComponentUncached(PhoneAccountHandle phoneAccountHandle) {
+        Pair<ComponentName, UserHandle> key = new Pair<>(phoneAccountHandle.getComponentName(),
+                phoneAccountHandle.getUserHandle());
+        List<ResolveInfo> resolveInfos = resolveComponent(key.first, key.second);
+        if (resolveInfos.isEmpty()) {
+            mResolvedComponentCache.remove(key);
+        } else {
+            mResolvedComponentCache.put(key, Collections.unmodifiableList(resolveInfos));
+        }
+        return resolveInfos;
+    }
+
+    /**
+     * Drops cached {@link ConnectionService} resolutions for a package.
+     *
+     * @param packageName The package which changed, or {@code null} to drop all entries.
+     */
+    private void invalidateResolvedComponents(String packageName) {
+        if (packageName == null) {
+            mResolvedComponentCache.clear();
+            return;
+        }
+        mResolvedComponentCache.keySet().removeIf(
+                key -> packageName.equals(key.first.getPackageName()));
     }
 
     private List<ResolveInfo> resolveComponent(ComponentName componentName,
@@ -1044,13 +1160,10 @@ public class PhoneAccountRegistrar {
         if (packageName == null) {
             return new ArrayList<>();
         }
-        List<PhoneAccount> accounts = new ArrayList<>(mState.accounts.size());
-        for (PhoneAccount m : mState.accounts) {
-            PhoneAccountHandle handle = m.getAccountHandle();
-            if (!packageName.equals(handle.getComponentName().getPackageName())) {
-                // Not the right package name; skip this one.
-                continue;
-            }
+        decodeAllDeferredIcons();
+        List<PhoneAccount> candidates = getAccountIndex().getAccountsForPackage(packageName);
+        List<PhoneAccount> accounts = new ArrayList<>(candidates.size());
+        for (PhoneAccount m : candidates) {
             // Do not count accounts registered under different users on the device. Otherwise, an
             // application can only have MAX_PHONE_ACCOUNT_REGISTRATIONS across all users. If the
             // DUT has multiple users, they should each get to register 10 accounts. Also, 3rd
@@ -1085,7 +1198,7 @@ public class PhoneAccountRegistrar {
             if (/* skip for transactional accounts since they don't require a ConnectionService */
                     !hasTransactionalCallCapabilities(account) &&
                     /* check if the {@link ConnectionService} has been disabled or can longer be
-                       found */ resolveComponent(handle).isEmpty()) {
+                       found */ resolveComponentUncached(handle).isEmpty()) {
                 Log.i(this, " cAGVA: Cannot resolve the ConnectionService for"
                         + " handle=[%s]; unregistering account", handle);
                 unregisterPhoneAccount(handle);
@@ -1347,7 +1460,7 @@ public class PhoneAccountRegistrar {
                 isEnabled || account.hasCapabilities(PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)
                 || account.hasCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED));
 
-        write();
+        writeNow();
         fireAccountsChanged();
         if (isNewAccount) {
             fireAccountRegistered(account.getAccountHandle());
@@ -1363,7 +1476,7 @@ public class PhoneAccountRegistrar {
         PhoneAccount account = getPhoneAccountUnchecked(accountHandle);
         if (account != null) {
             if (mState.accounts.remove(account)) {
-                write();
+                writeNow();
                 fireAccountsChanged();
                 fireAccountUnRegistered(accountHandle);
                 // If this is the SIM call manager, tell telephony when the voice ServiceState
@@ -1407,7 +1520,7 @@ public class PhoneAccountRegistrar {
         }
 
         if (accountsRemoved) {
-            write();
+            writeNow();
             fireAccountsChanged();
         }
     }
@@ -1607,7 +1720,7 @@ public class PhoneAccountRegistrar {
      * @return {@code True} if the phone account has permission.
      */
     public boolean phoneAccountRequiresBindPermission(PhoneAccountHandle phoneAccountHandle) {
-        List<ResolveInfo> resolveInfos = resolveComponent(phoneAccountHandle);
+        List<ResolveInfo> resolveInfos = resolveComponentUncached(phoneAccountHandle);
         if (resolveInfos.isEmpty()) {
             Log.w(this, "phoneAccount %s not found", phoneAccountHandle.getComponentName());
             return false;
@@ -1651,12 +1764,8 @@ public class PhoneAccountRegistrar {
      * @return The corresponding phone account if one exists.
      */
     public PhoneAccount getPhoneAccountUnchecked(PhoneAccountHandle handle) {
-        for (PhoneAccount m : mState.accounts) {
-            if (Objects.equals(handle, m.getAccountHandle())) {
-                return m;
-            }
-        }
-        return null;
+        decodeAllDeferredIcons();
+        return getAccountIndex().getAccount(handle);
     }
 
     /**
@@ -1795,9 +1904,13 @@ public class PhoneAccountRegistrar {
             UserHandle userHandle,
             boolean crossUserAccess,
             boolean includeAll) {
-        List<PhoneAccount> accounts = new ArrayList<>(mState.accounts.size());
-        List<PhoneAccount> matchedAccounts = new ArrayList<>(mState.accounts.size());
-        for (PhoneAccount m : mState.accounts) {
+        decodeAllDeferredIcons();
+        // Only the smallest set of accounts which could possibly match needs to be filtered.
+        List<PhoneAccount> candidates = getAccountIndex().getCandidateAccounts(capabilities,
+                uriScheme, packageName);
+        List<PhoneAccount> accounts = new ArrayList<>(candidates.size());
+        List<PhoneAccount> matchedAccounts = new ArrayList<>(candidates.size());
+        for (PhoneAccount m : candidates) {
             if (!(m.isEnabled() || includeDisabledAccounts)) {
                 // Do not include disabled accounts.
                 continue;
@@ -1830,14 +1943,15 @@ public class PhoneAccountRegistrar {
                 // Not the right package name; skip this one.
                 continue;
             }
-            if (isMatchedUser(m, userHandle)) {
-                matchedAccounts.add(m);
+            PhoneAccount account = m;
+            if (isMatchedUser(account, userHandle)) {
+                matchedAccounts.add(account);
             }
-            if (!crossUserAccess && !isVisibleForUser(m, userHandle, false)) {
+            if (!crossUserAccess && !isVisibleForUser(account, userHandle, false)) {
                 // Account is not visible for the current user; skip this one.
                 continue;
             }
-            accounts.add(m);
+            accounts.add(account);
         }
 
         // Return the account if it exactly matches. Otherwise, return any account that's visible
@@ -1849,6 +1963,20 @@ public class PhoneAccountRegistrar {
         return accounts;
     }
 
+    /**
+     * Returns the index over the registered accounts, rebuilding it if the set of accounts has
+     * changed since it was last built.
+     */
+    private AccountIndex getAccountIndex() {
+        AccountIndex index = mAccountIndex;
+        State state = mState;
+        if (index == null || !index.isCurrent(state.accounts)) {
+            index = new AccountIndex(state.accounts);
+            mAccountIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Clean up the orphan {@code PhoneAccount}. An orphan {@code PhoneAccount} is a phone
      * account that does not have a {@code UserHandle} or belongs to a deleted package.
@@ -1915,7 +2043,7 @@ public class PhoneAccountRegistrar {
         /**
          * The complete list of {@code PhoneAccount}s known to the Telecom subsystem.
          */
-        public final List<PhoneAccount> accounts = new CopyOnWriteArrayList<>();
+        public final List<PhoneAccount> accounts = new VersionedAccountList();
 
         /**
          * The version number of the State data.
@@ -1923,6 +2051,214 @@ public class PhoneAccountRegistrar {
         public int versionNumber;
     }
 
+    /**
+     * A {@link CopyOnWriteArrayList} which counts structural modifications, so that the
+     * {@link AccountIndex} built from it can tell when it is stale.
+     */
+    private static class VersionedAccountList extends CopyOnWriteArrayList<PhoneAccount> {
+        private final AtomicInteger mVersion = new AtomicInteger();
+
+        int getVersion() {
+            return mVersion.get();
+        }
+
+        private <T> T modified(T result) {
+            mVersion.incrementAndGet();
+            return result;
+        }
+
+        @Override
+        public boolean add(PhoneAccount account) {
+            return modified(super.add(account));
+        }
+
+        @Override
+        public void add(int index, PhoneAccount account) {
+            super.add(index, account);
+            modified(null);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends PhoneAccount> c) {
+            return modified(super.addAll(c));
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends PhoneAccount> c) {
+            return modified(super.addAll(index, c));
+        }
+
+        @Override
+        public boolean addIfAbsent(PhoneAccount account) {
+            return modified(super.addIfAbsent(account));
+        }
+
+        @Override
+        public int addAllAbsent(Collection<? extends PhoneAccount> c) {
+            return modified(super.addAllAbsent(c));
+        }
+
+        @Override
+        public PhoneAccount set(int index, PhoneAccount account) {
+            return modified(super.set(index, account));
+        }
+
+        @Override
+        public PhoneAccount remove(int index) {
+            return modified(super.remove(index));
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return modified(super.remove(o));
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return modified(super.removeAll(c));
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return modified(super.retainAll(c));
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super PhoneAccount> filter) {
+            return modified(super.removeIf(filter));
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<PhoneAccount> operator) {
+            super.replaceAll(operator);
+            modified(null);
+        }
+
+        @Override
+        public void sort(Comparator<? super PhoneAccount> c) {
+            super.sort(c);
+            modified(null);
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            modified(null);
+        }
+    }
+
+    /**
+     * An immutable index over a snapshot of {@link State#accounts}, used to answer account queries
+     * without scanning every registered account.  Each bucket preserves the order of the accounts
+     * in the snapshot, so filtering a bucket yields the same ordering as filtering the full list.
+     * <p>
+     * Enabled state and user visibility are not indexed; enabled state can change without the
+     * list being modified and visibility depends on profile relationships, so both are checked
+     * against the candidates returned here.
+     */
+    private static class AccountIndex {
+        private final List<PhoneAccount> mSourceList;
+        private final int mVersion;
+        private final List<PhoneAccount> mAccounts;
+        private final Map<PhoneAccountHandle, PhoneAccount> mAccountsByHandle = new HashMap<>();
+        private final Map<String, List<PhoneAccount>> mAccountsByPackage = new HashMap<>();
+        private final Map<String, List<PhoneAccount>> mAccountsByScheme = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        private final List<PhoneAccount>[] mAccountsByCapability = new List[Integer.SIZE];
+
+        AccountIndex(List<PhoneAccount> accounts) {
+            mSourceList = accounts;
+            // Read the version before taking the snapshot; a concurrent modification will then
+            // at worst cause an unnecessary rebuild rather than a stale index.
+            mVersion = getVersion(accounts);
+            mAccounts = new ArrayList<>(accounts);
+            for (PhoneAccount account : mAccounts) {
+                PhoneAccountHandle handle = account.getAccountHandle();
+                mAccountsByHandle.putIfAbsent(handle, account);
+                if (handle != null && handle.getComponentName() != null) {
+                    mAccountsByPackage.computeIfAbsent(
+                            handle.getComponentName().getPackageName(), k -> new ArrayList<>())
+                            .add(account);
+                }
+                List<String> schemes = account.getSupportedUriSchemes();
+                if (schemes != null) {
+                    for (String scheme : schemes) {
+                        if (scheme != null) {
+                            List<PhoneAccount> bucket = mAccountsByScheme.computeIfAbsent(
+                                    scheme, k -> new ArrayList<>());
+                            if (!bucket.contains(account)) {
+                                bucket.add(account);
+                            }
+                        }
+                    }
+                }
+                int capabilities = account.getCapabilities();
+                while (capabilities != 0) {
+                    int bit = Integer.numberOfTrailingZeros(capabilities);
+                    if (mAccountsByCapability[bit] == null) {
+                        mAccountsByCapability[bit] = new ArrayList<>();
+                    }
+                    mAccountsByCapability[bit].add(account);
+                    capabilities &= capabilities - 1;
+                }
+            }
+        }
+
+        private static int getVersion(List<PhoneAccount> accounts) {
+            return accounts instanceof VersionedAccountList
+                    ? ((VersionedAccountList) accounts).getVersion() : -1;
+        }
+
+        /**
+         * @return {@code true} if this index reflects the current contents of the list.
+         */
+        boolean isCurrent(List<PhoneAccount> accounts) {
+            return mSourceList == accounts && mVersion != -1 && mVersion == getVersion(accounts);
+        }
+
+        PhoneAccount getAccount(PhoneAccountHandle handle) {
+            return handle == null ? null : mAccountsByHandle.get(handle);
+        }
+
+        List<PhoneAccount> getAccountsForPackage(String packageName) {
+            List<PhoneAccount> accounts = mAccountsByPackage.get(packageName);
+            return accounts == null ? Collections.emptyList() : accounts;
+        }
+
+        /**
+         * Returns the smallest indexed set of accounts which could satisfy a query; every
+         * account matching the query is included, but callers must still apply each filter.
+         *
+         * @param capabilities Capabilities which the account must have.  Ignored if 0.
+         * @param uriScheme URI scheme the account must support.  Ignored if {@code null}.
+         * @param packageName Package name of the account.  Ignored if {@code null}.
+         */
+        List<PhoneAccount> getCandidateAccounts(int capabilities, String uriScheme,
+                String packageName) {
+            List<PhoneAccount> candidates = mAccounts;
+            if (packageName != null) {
+                candidates = smallest(candidates, mAccountsByPackage.get(packageName));
+            }
+            if (uriScheme != null) {
+                candidates = smallest(candidates, mAccountsByScheme.get(uriScheme));
+            }
+            while (capabilities != 0) {
+                int bit = Integer.numberOfTrailingZeros(capabilities);
+                candidates = smallest(candidates, mAccountsByCapability[bit]);
+                capabilities &= capabilities - 1;
+            }
+            return candidates;
+        }
+
+        private static List<PhoneAccount> smallest(List<PhoneAccount> current,
+                List<PhoneAccount> bucket) {
+            if (bucket == null) {
+                return Collections.emptyList();
+            }
+            return bucket.size() < current.size() ? bucket : current;
+        }
+    }
+
     /**
      * The default {@link PhoneAccountHandle} of a user.
      */
@@ -1978,6 +2314,19 @@ public class PhoneAccountRegistrar {
             pw.increaseIndent();
             pw.println("test emergency PhoneAccount filter: " + mTestPhoneAccountPackageNameFilter);
             pw.decreaseIndent();
+            pw.println("writes: requested=" + mNumWritesRequested
+                    + ", flushed=" + mNumWritesFlushed
+                    + ", skippedUnchanged=" + mNumWritesSkipped
+                    + ", pending=" + mIsWritePending);
+            synchronized (mDeferredIcons) {
+                pw.println("startup: parseUs=" + mReadParseMicros
+                        + ", verifyUs=" + mReadVerifyMicros
+                        + ", iconsDeferred=" + mDeferredIcons.size()
+                        + ", iconsDecoded=" + mNumDeferredIconsDecoded);
+            }
+            pw.println("resolvedComponentCache: size=" + mResolvedComponentCache.size()
+                    + ", hits=" + mResolvedComponentCacheHits.get()
+                    + ", misses=" + mResolvedComponentCacheMisses.get());
         }
     }
 
@@ -2046,24 +2395,83 @@ public class PhoneAccountRegistrar {
             } catch (IOException e) {
                 Log.e(this, e, "Writing state to XML file");
                 mAtomicFile.failWrite(fileOutput);
+                // Ensure the next flush is not skipped as a duplicate of this failed one.
+                mLastWrittenBytes = null;
             }
             return null;
         }
     }
 
+    /**
+     * Schedules the state to be persisted.  The accounts are sorted immediately since queries
+     * depend on the order, but serialization is deferred by {@link #WRITE_COALESCING_DELAY_MS} so
+     * that a burst of changes is written once.
+     */
     private void write() {
+        sortPhoneAccounts();
+        mNumWritesRequested++;
+        if (mIsWritePending) {
+            return;
+        }
+        mIsWritePending = true;
+        mWriteHandler.postDelayed(new Runnable("PAR.w", mLock) {
+            @Override
+            public void loggedRun() {
+                // The state may have been written by #writeNow in the meantime.
+                if (mIsWritePending) {
+                    flushWrite();
+                }
+            }
+        }.prepare(), WRITE_COALESCING_DELAY_MS);
+    }
+
+    /**
+     * Persists the state without waiting, along with any change still waiting in
+     * {@link #write()}, so a registration or removal is not lost if the process dies shortly
+     * after it.
+     */
+    private void writeNow() {
+        sortPhoneAccounts();
+        mNumWritesRequested++;
+        flushWrite();
+    }
+
+    /**
+     * Serializes the state and writes it out, unless it is identical to what was last written;
+     * this is common when apps re-register unchanged accounts.
+     */
+    private void flushWrite() {
+        mIsWritePending = false;
+        decodeAllDeferredIcons();
         try {
-            sortPhoneAccounts();
             ByteArrayOutputStream os = new ByteArrayOutputStream();
             XmlSerializer serializer = Xml.resolveSerializer(os);
             writeToXml(mState, serializer, mContext, mTelephonyFeatureFlags);
             serializer.flush();
+
+            byte[] bytes = os.toByteArray();
+            if (Arrays.equals(bytes, mLastWrittenBytes)) {
+                mNumWritesSkipped++;
+                return;
+            }
+            mLastWrittenBytes = bytes;
+            mNumWritesFlushed++;
             new AsyncXmlWriter().execute(os);
         } catch (IOException e) {
             Log.e(this, e, "Writing state to XML buffer");
         }
     }
 
+    @VisibleForTesting
+    public int getNumWritesFlushed() {
+        return mNumWritesFlushed;
+    }
+
+    @VisibleForTesting
+    public int getNumWritesSkipped() {
+        return mNumWritesSkipped;
+    }
+
     private void read() {
         final InputStream is;
         try {
@@ -2073,17 +2481,24 @@ public class PhoneAccountRegistrar {
         }
 
         boolean versionChanged = false;
+        long startNanos = SystemClock.elapsedRealtimeNanos();
 
         try {
             XmlPullParser parser = Xml.resolvePullParser(is);
             parser.nextTag();
-            mState = readFromXml(parser, mContext, mTelephonyFeatureFlags, mTelecomFeatureFlags);
+            synchronized (mDeferredIcons) {
+                mState = readFromXml(parser, mContext, mTelephonyFeatureFlags,
+                        mTelecomFeatureFlags, mDeferredIcons);
+            }
             migratePhoneAccountHandle(mState);
             versionChanged = mState.versionNumber < EXPECTED_STATE_VERSION;
 
         } catch (IOException | XmlPullParserException e) {
             Log.e(this, e, "Reading state from XML file");
             mState = new State();
+            synchronized (mDeferredIcons) {
+                mDeferredIcons.clear();
+            }
         } finally {
             try {
                 is.close();
@@ -2091,6 +2506,8 @@ public class PhoneAccountRegistrar {
                 Log.e(this, e, "Closing InputStream");
             }
         }
+        long parsedNanos = SystemClock.elapsedRealtimeNanos();
+        mReadParseMicros = (parsedNanos - startNanos) / 1000;
 
         // Verify all of the UserHandles.
         List<PhoneAccount> badAccounts = new ArrayList<>();
@@ -2105,6 +2522,7 @@ public class PhoneAccountRegistrar {
             }
         }
         mState.accounts.removeAll(badAccounts);
+        mReadVerifyMicros = (SystemClock.elapsedRealtimeNanos() - parsedNanos) / 1000;
 
         // If an upgrade occurred, write out the changed data.
         if (versionChanged || !badAccounts.isEmpty()) {
@@ -2119,13 +2537,51 @@ public class PhoneAccountRegistrar {
 
     private static State readFromXml(XmlPullParser parser, Context context,
             FeatureFlags telephonyFeatureFlags,
-            com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags)
+            com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags,
+            Map<PhoneAccount, String> deferredIcons)
             throws IOException, XmlPullParserException {
         State s = sStateXml.readFromXml(parser, 0, context,
-                telephonyFeatureFlags, telecomFeatureFlags);
+                telephonyFeatureFlags, telecomFeatureFlags, deferredIcons);
         return s != null ? s : new State();
     }
 
+    /**
+     * Decodes every deferred icon which still belongs to a registered account, and discards the
+     * rest; needed before accounts are handed out or the state is serialized.  The decoded
+     * accounts are swapped into the state in a single modification, so the {@link AccountIndex}
+     * is only rebuilt once rather than once per icon.  Nothing refers to the replaced accounts
+     * afterwards, as lookups run this first.
+     */
+    private void decodeAllDeferredIcons() {
+        synchronized (mDeferredIcons) {
+            if (mDeferredIcons.isEmpty()) {
+                return;
+            }
+            mState.accounts.replaceAll(account -> {
+                String encodedIcon = mDeferredIcons.get(account);
+                if (encodedIcon == null) {
+                    return account;
+                }
+                Icon icon = null;
+                try {
+                    icon = sPhoneAccountXml.readIcon(encodedIcon);
+                } catch (IOException e) {
+                    Log.e(this, e, "Decoding deferred icon for %s", account.getAccountHandle());
+                }
+                mNumDeferredIconsDecoded++;
+                return account.toBuilder().setIcon(icon).build();
+            });
+            mDeferredIcons.clear();
+        }
+    }
+
+    @VisibleForTesting
+    public int getNumDeferredIconsDecoded() {
+        synchronized (mDeferredIcons) {
+            return mNumDeferredIconsDecoded;
+        }
+    }
+
     /**
      * Try to migrate the ID of default phone account handle from IccId to SubId.
      */
@@ -2203,6 +2659,20 @@ public class PhoneAccountRegistrar {
                 com.android.server.telecom.flags.FeatureFlags featureFlags)
                 throws IOException, XmlPullParserException;
 
+        /**
+         * Same as {@link #readFromXml(XmlPullParser, int, Context, FeatureFlags,
+         * com.android.server.telecom.flags.FeatureFlags)}, except that any {@link PhoneAccount}
+         * icon is left undecoded in 'deferredIcons', keyed by the account it belongs to, rather
+         * than decoded while parsing.  A null 'deferredIcons' decodes icons as usual.
+         */
+        public T readFromXml(XmlPullParser parser, int version, Context context,
+                FeatureFlags telephonyFeatureFlags,
+                com.android.server.telecom.flags.FeatureFlags featureFlags,
+                @Nullable Map<PhoneAccount, String> deferredIcons)
+                throws IOException, XmlPullParserException {
+            return readFromXml(parser, version, context, telephonyFeatureFlags, featureFlags);
+        }
+
         protected void writeTextIfNonNull(String tagName, Object value, XmlSerializer serializer)
                 throws IOException {
             if (value != null) {
@@ -2432,8 +2902,16 @@ public class PhoneAccountRegistrar {
 
         @Nullable
         protected Icon readIcon(XmlPullParser parser) throws IOException {
+            return readIcon(parser.getText());
+        }
+
+        /**
+         * Decodes an icon written by {@link #writeIconToBase64String(Icon)}.
+         */
+        @Nullable
+        protected Icon readIcon(String encodedIcon) throws IOException {
             try {
-                byte[] iconByteArray = Base64.decode(parser.getText(), 0);
+                byte[] iconByteArray = Base64.decode(encodedIcon, 0);
                 ByteArrayInputStream stream = new ByteArrayInputStream(iconByteArray);
                 return Icon.createFromStream(stream);
             } catch (IllegalArgumentException e) {
@@ -2482,6 +2960,16 @@ public class PhoneAccountRegistrar {
                 FeatureFlags telephonyFeatureFlags,
                 com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags)
                 throws IOException, XmlPullParserException {
+            return readFromXml(parser, version, context, telephonyFeatureFlags,
+                    telecomFeatureFlags, null /* deferredIcons */);
+        }
+
+        @Override
+        public State readFromXml(XmlPullParser parser, int version, Context context,
+                FeatureFlags telephonyFeatureFlags,
+                com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags,
+                @Nullable Map<PhoneAccount, String> deferredIcons)
+                throws IOException, XmlPullParserException {
             if (parser.getName().equals(CLASS_STATE)) {
                 State s = new State();
 
@@ -2534,7 +3022,7 @@ public class PhoneAccountRegistrar {
                         while (XmlUtils.nextElementWithin(parser, accountsDepth)) {
                             PhoneAccount account = sPhoneAccountXml.readFromXml(parser,
                                     s.versionNumber, context, telephonyFeatureFlags,
-                                    telecomFeatureFlags);
+                                    telecomFeatureFlags, deferredIcons);
 
                             if (account != null && s.accounts != null) {
                                 s.accounts.add(account);
@@ -2684,6 +3172,16 @@ public class PhoneAccountRegistrar {
         public PhoneAccount readFromXml(XmlPullParser parser, int version, Context context,
                 FeatureFlags telephonyFeatureFlags,
                 com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags) throws IOException, XmlPullParserException {
+            return readFromXml(parser, version, context, telephonyFeatureFlags,
+                    telecomFeatureFlags, null /* deferredIcons */);
+        }
+
+        @Override
+        public PhoneAccount readFromXml(XmlPullParser parser, int version, Context context,
+                FeatureFlags telephonyFeatureFlags,
+                com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags,
+                @Nullable Map<PhoneAccount, String> deferredIcons)
+                throws IOException, XmlPullParserException {
             if (parser.getName().equals(CLASS_PHONE_ACCOUNT)) {
                 int outerDepth = parser.getDepth();
                 PhoneAccountHandle accountHandle = null;
@@ -2700,6 +3198,7 @@ public class PhoneAccountRegistrar {
                 String shortDescription = null;
                 List<String> supportedUriSchemes = null;
                 Icon icon = null;
+                String encodedIcon = null;
                 boolean enabled = false;
                 Bundle extras = null;
                 Set<PhoneAccountHandle> simultaneousCallingRestriction = null;
@@ -2744,7 +3243,11 @@ public class PhoneAccountRegistrar {
                         supportedUriSchemes = readStringList(parser);
                     } else if (parser.getName().equals(ICON)) {
                         parser.next();
-                        icon = readIcon(parser);
+                        if (deferredIcons != null) {
+                            encodedIcon = parser.getText();
+                        } else {
+                            icon = readIcon(parser);
+                        }
                     } else if (parser.getName().equals(ENABLED)) {
                         parser.next();
                         enabled = "true".equalsIgnoreCase(parser.getText());
@@ -2833,7 +3336,8 @@ public class PhoneAccountRegistrar {
                         .setExtras(extras)
                         .setIsEnabled(enabled);
 
-                if (icon != null) {
+                if (icon != null || encodedIcon != null) {
+                    // A deferred icon is set once decoded; see #decodeAllDeferredIcons.
                     builder.setIcon(icon);
                 } else if (iconBitmap != null) {
                     builder.setIcon(Icon.createWithBitmap(iconBitmap));
@@ -2845,7 +3349,11 @@ public class PhoneAccountRegistrar {
                     builder.setSimultaneousCallingRestriction(simultaneousCallingRestriction);
                 }
 
-                return builder.build();
+                PhoneAccount account = builder.build();
+                if (encodedIcon != null) {
+                    deferredIcons.put(account, encodedIcon);
+                }
+                return account;
             }
             return null;
         }
@@ -57,6 +57,7 @@ import android.view.accessibility.AccessibilityManager;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.LogUtils.EventTimer;
 import com.android.server.telecom.flags.FeatureFlags;
+import com.android.server.telecom.metrics.CallLatencyStats;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -446,6 +447,7 @@ public class Ringer {
             if (attributes.isRingerAudible()) {
                 mRingingCall = foregroundCall;
                 Log.addEvent(foregroundCall, LogUtils.Events.START_RINGER);
+                foregroundCall.markLatencyMilestone(CallLatencyStats.MILESTONE_RINGER_STARTED);
                 // Because we wait until a contact info query to complete before processing a
                 // call (for the purposes of direct-to-voicemail), the information about custom
                 // ringtones should be available by the time this code executes. We can safely
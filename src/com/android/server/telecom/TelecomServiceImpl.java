@@ -58,6 +58,7 @@ import android.os.OutcomeReceiver;
 import android.os.ParcelFileDescriptor;
 import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.BlockedNumberContract;
 import android.provider.BlockedNumbersManager;
@@ -285,7 +286,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.gDOPA", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     PhoneAccountHandle phoneAccountHandle = null;
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
@@ -322,7 +325,9 @@ public class TelecomServiceImpl {
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(
                     ApiStats.API_GETUSERSELECTEDOUTGOINGPHONEACCOUNT,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
+            event.onLockRequested();
             synchronized (mLock) {
+                event.onLockAcquired();
                 try {
                     Log.startSession("TSI.gUSOPA", Log.getPackageAbbreviation(callingPackage));
                     if (!isDialerOrPrivileged(callingPackage, "getDefaultOutgoingPhoneAccount")) {
@@ -350,7 +355,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.sUSOPA");
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     enforceModifyPermission();
                     UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
@@ -410,7 +417,9 @@ public class TelecomServiceImpl {
                     return ParceledListSlice.emptyList();
                 }
                 event.setResult(ApiStats.RESULT_NORMAL);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     boolean crossUserAccess = (!mTelephonyFeatureFlags.workProfileApiSplit()
                             || acrossProfiles) && (mTelephonyFeatureFlags.workProfileApiSplit()
@@ -450,7 +459,9 @@ public class TelecomServiceImpl {
                         "Requires READ_PHONE_STATE permission.")) {
                     throw new SecurityException("Requires READ_PHONE_STATE permission.");
                 }
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -489,7 +500,9 @@ public class TelecomServiceImpl {
                 if (!canReadMangeOwnCalls("Requires MANAGE_OWN_CALLS permission.")) {
                     throw new SecurityException("Requires MANAGE_OWN_CALLS permission.");
                 }
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -529,7 +542,9 @@ public class TelecomServiceImpl {
                     return ParceledListSlice.emptyList();
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -574,7 +589,9 @@ public class TelecomServiceImpl {
                     throw se2;
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -611,7 +628,9 @@ public class TelecomServiceImpl {
                             "getPhoneAccount: invalid calling package");
                     throw se;
                 }
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     if (CompatChanges.isChangeEnabled(
                             TelecomManager.ENABLE_GET_PHONE_ACCOUNT_PERMISSION_PROTECTION,
@@ -677,7 +696,9 @@ public class TelecomServiceImpl {
                     // pass through
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -722,7 +743,9 @@ public class TelecomServiceImpl {
                     throw e;
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     event.setResult(ApiStats.RESULT_NORMAL);
                     try {
                         // This list is pre-filtered for the calling user.
@@ -744,7 +767,9 @@ public class TelecomServiceImpl {
         public ParceledListSlice<PhoneAccount> getAllPhoneAccounts() {
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(ApiStats.API_GETALLPHONEACCOUNTS,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
+            event.onLockRequested();
             synchronized (mLock) {
+                event.onLockAcquired();
                 try {
                     Log.startSession("TSI.gAPA");
                     try {
@@ -792,7 +817,9 @@ public class TelecomServiceImpl {
                     throw e;
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     boolean crossUserAccess = hasInAppCrossUserPermission();
                     long token = Binder.clearCallingIdentity();
@@ -819,7 +846,9 @@ public class TelecomServiceImpl {
         public PhoneAccountHandle getSimCallManager(int subId, String callingPackage) {
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(ApiStats.API_GETSIMCALLMANAGER,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
+            event.onLockRequested();
             synchronized (mLock) {
+                event.onLockAcquired();
                 try {
                     Log.startSession("TSI.gSCM", Log.getPackageAbbreviation(callingPackage));
                     final int callingUid = Binder.getCallingUid();
@@ -850,7 +879,9 @@ public class TelecomServiceImpl {
         public PhoneAccountHandle getSimCallManagerForUser(int user, String callingPackage) {
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(ApiStats.API_GETSIMCALLMANAGERFORUSER,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
+            event.onLockRequested();
             synchronized (mLock) {
+                event.onLockAcquired();
                 try {
                     Log.startSession("TSI.gSCMFU", Log.getPackageAbbreviation(callingPackage));
                     final int callingUid = Binder.getCallingUid();
@@ -882,7 +913,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.rPA", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     try {
                         enforcePhoneAccountModificationForPackage(
                                 account.getAccountHandle().getComponentName().getPackageName());
@@ -981,7 +1014,9 @@ public class TelecomServiceImpl {
                 String callingPackage) {
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(ApiStats.API_UNREGISTERPHONEACCOUNT,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
+            event.onLockRequested();
             synchronized (mLock) {
+                event.onLockAcquired();
                 try {
                     Log.startSession("TSI.uPA", Log.getPackageAbbreviation(callingPackage));
                     enforcePhoneAccountModificationForPackage(
@@ -1008,7 +1043,9 @@ public class TelecomServiceImpl {
         public void clearAccounts(String packageName) {
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(ApiStats.API_CLEARACCOUNTS,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
+            event.onLockRequested();
             synchronized (mLock) {
+                event.onLockAcquired();
                 try {
                     Log.startSession("TSI.cA");
                     enforcePhoneAccountModificationForPackage(packageName);
@@ -1035,7 +1072,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.iVMN", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (!canReadPhoneState(callingPackage, callingFeatureId, "isVoiceMailNumber")) {
                         return false;
                     }
@@ -1078,14 +1117,20 @@ public class TelecomServiceImpl {
                 }
                 try {
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
-                    if (!isPhoneAccountHandleVisibleToCallingUser(accountHandle,
-                            callingUserHandle)) {
-                        Log.d(this, "%s is not visible for the calling user [gVMN]",
-                                accountHandle);
-                        return null;
+                    event.onLockRequested();
+                    synchronized (mLock) {
+                        event.onLockAcquired();
+                        if (!isPhoneAccountHandleVisibleToCallingUser(accountHandle,
+                                callingUserHandle)) {
+                            Log.d(this, "%s is not visible for the calling user [gVMN]",
+                                    accountHandle);
+                            return null;
+                        }
                     }
                     int subId = mSubscriptionManagerAdapter.getDefaultVoiceSubId();
+                    event.onLockRequested();
                     synchronized (mLock) {
+                        event.onLockAcquired();
                         if (accountHandle != null) {
                             subId = mPhoneAccountRegistrar
                                     .getSubscriptionIdForPhoneAccount(accountHandle);
@@ -1122,16 +1167,23 @@ public class TelecomServiceImpl {
                 }
 
                 final UserHandle callingUserHandle = Binder.getCallingUserHandle();
-                if (!isPhoneAccountHandleVisibleToCallingUser(accountHandle,
-                        callingUserHandle)) {
-                    Log.d(this, "%s is not visible for the calling user [gL1N]", accountHandle);
-                    return null;
+                event.onLockRequested();
+                synchronized (mLock) {
+                    event.onLockAcquired();
+                    if (!isPhoneAccountHandleVisibleToCallingUser(accountHandle,
+                            callingUserHandle)) {
+                        Log.d(this, "%s is not visible for the calling user [gL1N]",
+                                accountHandle);
+                        return null;
+                    }
                 }
 
                 long token = Binder.clearCallingIdentity();
                 try {
                     int subId;
+                    event.onLockRequested();
                     synchronized (mLock) {
+                        event.onLockAcquired();
                         subId = mPhoneAccountRegistrar.getSubscriptionIdForPhoneAccount(
                                 accountHandle);
                     }
@@ -1162,7 +1214,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.sR", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     enforcePermissionOrPrivilegedDialer(MODIFY_PHONE_STATE, callingPackage);
                     UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     boolean crossUserAccess = hasInAppCrossUserPermission();
@@ -1306,10 +1360,8 @@ public class TelecomServiceImpl {
                     return false;
                 }
                 event.setResult(ApiStats.RESULT_NORMAL);
-                synchronized (mLock) {
-                    return mCallsManager.hasOngoingCalls(Binder.getCallingUserHandle(),
-                            hasInAppCrossUserPermission());
-                }
+                return mCallsManager.hasOngoingCalls(Binder.getCallingUserHandle(),
+                        hasInAppCrossUserPermission());
             } finally {
                 logEvent(event);
                 Log.endSession();
@@ -1356,10 +1408,8 @@ public class TelecomServiceImpl {
                             "READ_PHONE_STATE permission can use this method.");
                 }
                 event.setResult(ApiStats.RESULT_NORMAL);
-                synchronized (mLock) {
-                    return mCallsManager.hasOngoingManagedCalls(Binder.getCallingUserHandle(),
-                            hasInAppCrossUserPermission());
-                }
+                return mCallsManager.hasOngoingManagedCalls(Binder.getCallingUserHandle(),
+                        hasInAppCrossUserPermission());
             } finally {
                 logEvent(event);
                 Log.endSession();
@@ -1386,14 +1436,12 @@ public class TelecomServiceImpl {
                 }
 
                 event.setResult(ApiStats.RESULT_NORMAL);
-                synchronized (mLock) {
-                    // Note: We are explicitly checking the calls telecom is tracking rather than
-                    // relying on mCallsManager#getCallState(). Since getCallState() relies on the
-                    // current state as tracked by PhoneStateBroadcaster, any failure to properly
-                    // track the current call state there could result in the wrong ringing state
-                    // being reported by this API.
-                    return mCallsManager.hasRingingOrSimulatedRingingCall();
-                }
+                // Note: We are explicitly checking the calls telecom is tracking rather than
+                // relying on mCallsManager#getCallState(). Since getCallState() relies on the
+                // current state as tracked by PhoneStateBroadcaster, any failure to properly
+                // track the current call state there could result in the wrong ringing state
+                // being reported by this API.
+                return mCallsManager.getCallStateSnapshot().hasRingingOrSimulatedRingingCall();
             } finally {
                 logEvent(event);
                 Log.endSession();
@@ -1421,9 +1469,7 @@ public class TelecomServiceImpl {
                             + "targeting API version 30 or less.");
                 }
                 event.setResult(ApiStats.RESULT_NORMAL);
-                synchronized (mLock) {
-                    return mCallsManager.getCallState();
-                }
+                return mCallsManager.getCallStateSnapshot().getCallState();
             } finally {
                 Log.endSession();
             }
@@ -1465,9 +1511,7 @@ public class TelecomServiceImpl {
                     }
                 }
                 event.setResult(ApiStats.RESULT_NORMAL);
-                synchronized (mLock) {
-                    return mCallsManager.getCallState();
-                }
+                return mCallsManager.getCallStateSnapshot().getCallState();
             } finally {
                 logEvent(event);
                 Log.endSession();
@@ -1515,7 +1559,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.eC", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (!enforceAnswerCallPermission(callingPackage, Binder.getCallingUid())) {
                         throw new SecurityException("requires ANSWER_PHONE_CALLS permission");
                     }
@@ -1550,7 +1596,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.aRC", Log.getPackageAbbreviation(packageName));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (!enforceAnswerCallPermission(packageName, Binder.getCallingUid())) return;
                     // Legacy behavior is to ignore whether the invocation is from a system app:
                     boolean isCallerPrivileged = false;
@@ -1585,7 +1633,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.aRCWVS", Log.getPackageAbbreviation(packageName));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (!enforceAnswerCallPermission(packageName, Binder.getCallingUid())) return;
                     // Legacy behavior is to ignore whether the invocation is from a system app:
                     boolean isCallerPrivileged = false;
@@ -1623,7 +1673,9 @@ public class TelecomServiceImpl {
                     return;
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     UserHandle callingUser = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -1650,7 +1702,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.cMCN", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     enforcePermissionOrPrivilegedDialer(MODIFY_PHONE_STATE, callingPackage);
                     UserHandle userHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
@@ -1711,7 +1765,9 @@ public class TelecomServiceImpl {
                 Log.startSession("TSI.hPMFPA", Log.getPackageAbbreviation(callingPackage));
                 enforcePermissionOrPrivilegedDialer(MODIFY_PHONE_STATE, callingPackage);
                 UserHandle callingUserHandle = Binder.getCallingUserHandle();
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (!isPhoneAccountHandleVisibleToCallingUser(accountHandle,
                             callingUserHandle)) {
                         Log.d(this, "%s is not visible for the calling user [hMMI]",
@@ -1727,7 +1783,9 @@ public class TelecomServiceImpl {
                 boolean retval = false;
                 int subId;
                 try {
+                    event.onLockRequested();
                     synchronized (mLock) {
+                        event.onLockAcquired();
                         subId = mPhoneAccountRegistrar.getSubscriptionIdForPhoneAccount(
                                 accountHandle);
                     }
@@ -1760,7 +1818,9 @@ public class TelecomServiceImpl {
             try {
                 Log.startSession("TSI.aAUFPA", Log.getPackageAbbreviation(callingPackage));
                 enforcePermissionOrPrivilegedDialer(MODIFY_PHONE_STATE, callingPackage);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (!isPhoneAccountHandleVisibleToCallingUser(accountHandle,
                             Binder.getCallingUserHandle())) {
                         Log.d(this, "%s is not visible for the calling user [gA4PA]",
@@ -1803,7 +1863,9 @@ public class TelecomServiceImpl {
                 }
 
                 event.setResult(ApiStats.RESULT_NORMAL);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     return mCallsManager.isTtySupported();
                 }
             } finally {
@@ -1826,7 +1888,9 @@ public class TelecomServiceImpl {
                 }
 
                 event.setResult(ApiStats.RESULT_NORMAL);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     return mCallsManager.getCurrentTtyMode();
                 }
             } finally {
@@ -1841,11 +1905,14 @@ public class TelecomServiceImpl {
         @Override
         public void addNewIncomingCall(PhoneAccountHandle phoneAccountHandle, Bundle extras,
                 String callingPackage) {
+            long receivedTimeMillis = SystemClock.elapsedRealtime();
             ApiStats.ApiEvent event = new ApiStats.ApiEvent(ApiStats.API_ADDNEWINCOMINGCALL,
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.aNIC", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     Log.i(this, "Adding new incoming call with phoneAccountHandle %s",
                             phoneAccountHandle);
                     if (phoneAccountHandle != null &&
@@ -1882,6 +1949,8 @@ public class TelecomServiceImpl {
                             intent.putExtra(TelecomManager.EXTRA_PHONE_ACCOUNT_HANDLE,
                                     phoneAccountHandle);
                             intent.putExtra(CallIntentProcessor.KEY_IS_INCOMING_CALL, true);
+                            intent.putExtra(CallIntentProcessor.KEY_RECEIVED_TIME_MILLIS,
+                                    receivedTimeMillis);
                             if (extras != null) {
                                 extras.setDefusable(true);
                                 intent.putExtra(TelecomManager.EXTRA_INCOMING_CALL_EXTRAS, extras);
@@ -1937,7 +2006,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.aNIC", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     Log.i(this, "Adding new incoming conference with phoneAccountHandle %s",
                             phoneAccountHandle);
                     if (phoneAccountHandle != null &&
@@ -1992,7 +2063,9 @@ public class TelecomServiceImpl {
                     Binder.getCallingUid(), ApiStats.RESULT_PERMISSION);
             try {
                 Log.startSession("TSI.aHO", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     Log.i(this, "acceptHandover; srcAddr=%s, videoState=%s, dest=%s",
                             Log.pii(srcAddr), VideoProfile.videoStateToString(videoState),
                             destAcct);
@@ -2057,7 +2130,9 @@ public class TelecomServiceImpl {
                     throw e;
                 }
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     if (phoneAccountHandle != null &&
                             phoneAccountHandle.getComponentName() != null) {
                         mAppOpsManager.checkPackage(
@@ -2208,7 +2283,9 @@ public class TelecomServiceImpl {
                 final boolean hasCallPrivilegedPermission = mContext.checkCallingOrSelfPermission(
                         CALL_PRIVILEGED) == PackageManager.PERMISSION_GRANTED;
 
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     final UserHandle userHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -2244,7 +2321,9 @@ public class TelecomServiceImpl {
             try {
                 Log.startSession("TSI.ePA");
                 enforceModifyPermission();
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
                     try {
@@ -2268,7 +2347,9 @@ public class TelecomServiceImpl {
                 Log.startSession("TSI.sDD");
                 enforcePermission(MODIFY_PHONE_STATE);
                 enforcePermission(WRITE_SECURE_SETTINGS);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     int callerUserId = UserHandle.getCallingUserId();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
@@ -2390,6 +2471,21 @@ public class TelecomServiceImpl {
                 pw.increaseIndent();
                 TransactionManager.getInstance().dump(pw);
                 pw.decreaseIndent();
+
+                if (mFeatureFlags.telecomMetricsSupport()) {
+                    pw.println("ApiLatencyStats: ");
+                    pw.increaseIndent();
+                    mMetricsController.getApiLatencyStats().dump(pw);
+                    pw.decreaseIndent();
+                    pw.println("AudioRouteLatencyStats: ");
+                    pw.increaseIndent();
+                    mMetricsController.getAudioRouteLatencyStats().dump(pw);
+                    pw.decreaseIndent();
+                    pw.println("AudioRoutePreActivationStats: ");
+                    pw.increaseIndent();
+                    mMetricsController.getAudioRoutePreActivationStats().dump(pw);
+                    pw.decreaseIndent();
+                }
             }
             if (isTimeLineView) {
                 Log.dumpEventsTimeline(pw);
@@ -2492,7 +2588,9 @@ public class TelecomServiceImpl {
                 enforcePhoneAccountHandleMatchesCaller(phoneAccountHandle, callingPackage);
                 enforcePermission(android.Manifest.permission.MANAGE_OWN_CALLS);
                 enforceUserHandleMatchesCaller(phoneAccountHandle);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
                     try {
@@ -2521,7 +2619,9 @@ public class TelecomServiceImpl {
                 enforcePhoneAccountHandleMatchesCaller(phoneAccountHandle, callingPackage);
                 enforcePermission(android.Manifest.permission.MANAGE_OWN_CALLS);
                 enforceUserHandleMatchesCaller(phoneAccountHandle);
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
                     try {
@@ -2590,7 +2690,9 @@ public class TelecomServiceImpl {
             try {
                 Log.startSession("TSI.iIEC");
                 enforceModifyPermission();
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
                     try {
@@ -2936,7 +3038,9 @@ public class TelecomServiceImpl {
                 }
 
                 Log.startSession("TSI.iISMC", Log.getPackageAbbreviation(callingPackage));
+                event.onLockRequested();
                 synchronized (mLock) {
+                    event.onLockAcquired();
                     long token = Binder.clearCallingIdentity();
                     event.setResult(ApiStats.RESULT_NORMAL);
                     try {
@@ -3738,6 +3842,7 @@ public class TelecomServiceImpl {
     private void logEvent(ApiStats.ApiEvent event) {
         if (mFeatureFlags.telecomMetricsSupport()) {
             mMetricsController.getApiStats().log(event);
+            mMetricsController.getApiLatencyStats().log(event);
         }
     }
 
@@ -49,6 +49,10 @@ public final class Timeouts {
             return Timeouts.getCallRemoveUnbindInCallServicesDelay(cr);
         }
 
+        public long getInCallServicePreBindTimeoutMillis(ContentResolver cr) {
+            return Timeouts.getInCallServicePreBindTimeoutMillis(cr);
+        }
+
         public long getRetryBluetoothConnectAudioBackoffMillis(ContentResolver cr) {
             return Timeouts.getRetryBluetoothConnectAudioBackoffMillis(cr);
         }
@@ -136,6 +140,10 @@ public final class Timeouts {
         public int getDaysBackToSearchEmergencyDiagnosticEntries(){
             return Timeouts.getDaysBackToSearchEmergencyDiagnosticEntries();
         }
+
+        public long getInCallUpdateCoalescingWindowMillis() {
+            return Timeouts.getInCallUpdateCoalescingWindowMillis();
+        }
     }
 
     /** A prefix to use for all keys so to not clobber the global namespace. */
@@ -218,6 +226,13 @@ public final class Timeouts {
     private static final String INTERMEDIATE_STATE_NON_VOIP_EMERGENCY_TIMEOUT_MILLIS =
             "intermediate_state_non_voip_emergency_timeout_millis";
 
+    /**
+     * A key to use for {@link DeviceConfig} for the window, in millis, during which call updates
+     * sent to InCallServices are coalesced.
+     */
+    private static final String INCALL_UPDATE_COALESCING_WINDOW_MILLIS =
+            "incall_update_coalescing_window_millis";
+
     private Timeouts() {
     }
 
@@ -295,6 +310,15 @@ public final class Timeouts {
                 2000L /* 2 seconds */);
     }
 
+    /**
+     * Returns the maximum amount of time the UI in-call service is kept bound for an incoming call
+     * which is still being filtered, before the call has been added.  A value of 0 disables
+     * binding before call filtering completes.
+     */
+    public static long getInCallServicePreBindTimeoutMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "in_call_service_pre_bind_timeout_millis", 0L);
+    }
+
     /**
      * Returns the amount of time for which bluetooth is considered connected after requesting
      * connection. This compensates for the amount of time it takes for the audio route to
@@ -485,6 +509,17 @@ public final class Timeouts {
                 INTERMEDIATE_STATE_NON_VOIP_EMERGENCY_TIMEOUT_MILLIS, 60000L);
     }
 
+    /**
+     * Returns the window during which non-state call updates destined for the bound
+     * InCallServices are coalesced into a single update.  A value of 0 sends every update
+     * immediately.
+     * @return the coalescing window in millis.
+     */
+    public static long getInCallUpdateCoalescingWindowMillis() {
+        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+                INCALL_UPDATE_COALESCING_WINDOW_MILLIS, 16L);
+    }
+
     public static long getCallStartAppOpDebounceIntervalMillis() {
         return DeviceConfig.getLong(DeviceConfig.NAMESPACE_PRIVACY, "app_op_debounce_time", 250L);
     }
@@ -18,15 +18,51 @@ package com.android.server.telecom.callfiltering;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.BlockedNumberContract;
 import android.provider.BlockedNumbersManager;
 import android.telecom.Log;
+import android.telecom.PhoneAccount;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.LruCache;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.flags.FeatureFlags;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class BlockCheckerAdapter {
     private static final String TAG = BlockCheckerAdapter.class.getSimpleName();
 
+    /**
+     * How long a block decision is reused.  Decisions are dropped as soon as the blocked numbers,
+     * the enhanced blocking settings, block suppression or the carrier config change; this only
+     * bounds staleness for changes which are not announced, such as block suppression expiring.
+     */
+    @VisibleForTesting
+    public static final long BLOCK_STATUS_CACHE_TTL_MILLIS = 60 * 1000L;
+    private static final int BLOCK_STATUS_CACHE_SIZE = 64;
+
+    private static class CachedBlockStatus {
+        final int blockStatus;
+        final long elapsedRealtimeMillis;
+
+        CachedBlockStatus(int blockStatus, long elapsedRealtimeMillis) {
+            this.blockStatus = blockStatus;
+            this.elapsedRealtimeMillis = elapsedRealtimeMillis;
+        }
+    }
+
+    /**
+     * Block decisions of recent lookups, shared by every call so that repeated calls from the
+     * same number do not each query the blocked numbers provider.
+     */
+    private static final LruCache<String, CachedBlockStatus> sBlockStatusCache =
+            new LruCache<>(BLOCK_STATUS_CACHE_SIZE);
+    // Incremented on invalidation, so a lookup racing with a change does not cache its result.
+    private static final AtomicInteger sBlockStatusCacheGeneration = new AtomicInteger();
+
     private FeatureFlags mFeatureFlags;
 
     public BlockCheckerAdapter(FeatureFlags featureFlags) {
@@ -52,6 +88,33 @@ public class BlockCheckerAdapter {
      */
     public int getBlockStatus(Context context, String phoneNumber,
             int numberPresentation, boolean isNumberInContacts) {
+        return getBlockStatus(context, PhoneAccount.SCHEME_TEL, phoneNumber, numberPresentation,
+                isNumberInContacts);
+    }
+
+    /**
+     * Returns the call blocking status for the {@code phoneNumber}, see
+     * {@link #getBlockStatus(Context, String, int, boolean)}.
+     *
+     * @param scheme the scheme of the handle the {@code phoneNumber} was taken from; only
+     *               {@link PhoneAccount#SCHEME_TEL} numbers are normalized before their decision
+     *               is cached.
+     */
+    public int getBlockStatus(Context context, String scheme, String phoneNumber,
+            int numberPresentation, boolean isNumberInContacts) {
+        // Decisions without a number are never cached; they depend on the enhanced blocking
+        // settings rather than the number, so one entry would stand for every such caller.
+        String cacheKey = !TextUtils.isEmpty(phoneNumber)
+                ? getCacheKey(context, scheme, phoneNumber, numberPresentation,
+                        isNumberInContacts)
+                : null;
+        CachedBlockStatus cached = cacheKey != null ? sBlockStatusCache.get(cacheKey) : null;
+        if (cached != null && SystemClock.elapsedRealtime() - cached.elapsedRealtimeMillis
+                < BLOCK_STATUS_CACHE_TTL_MILLIS) {
+            return cached.blockStatus;
+        }
+        int cacheGeneration = sBlockStatusCacheGeneration.get();
+
         int blockStatus = BlockedNumberContract.STATUS_NOT_BLOCKED;
         long startTimeNano = System.nanoTime();
         BlockedNumbersManager blockedNumbersManager = mFeatureFlags
@@ -71,6 +134,13 @@ public class BlockCheckerAdapter {
             if (blockStatus != BlockedNumberContract.STATUS_NOT_BLOCKED) {
                 Log.d(TAG, phoneNumber + " is blocked.");
             }
+            synchronized (sBlockStatusCache) {
+                if (cacheKey != null
+                        && cacheGeneration == sBlockStatusCacheGeneration.get()) {
+                    sBlockStatusCache.put(cacheKey,
+                            new CachedBlockStatus(blockStatus, SystemClock.elapsedRealtime()));
+                }
+            }
         } catch (Exception e) {
             Log.e(TAG, e, "Exception checking for blocked number");
         }
@@ -81,4 +151,26 @@ public class BlockCheckerAdapter {
         }
         return blockStatus;
     }
+
+    /**
+     * Drops all cached block decisions; must be called whenever anything which affects them
+     * changes.
+     */
+    public static void invalidateBlockStatusCache() {
+        synchronized (sBlockStatusCache) {
+            sBlockStatusCacheGeneration.incrementAndGet();
+            sBlockStatusCache.evictAll();
+        }
+    }
+
+    private static String getCacheKey(Context context, String scheme, String phoneNumber,
+            int numberPresentation, boolean isNumberInContacts) {
+        // Normalizing maps letters to keypad digits and drops characters such as '@', so only
+        // phone numbers are normalized; other handles, such as SIP addresses, are used as is.
+        String number = PhoneAccount.SCHEME_TEL.equals(scheme)
+                ? PhoneNumberUtils.normalizeNumber(phoneNumber)
+                : phoneNumber;
+        return context.getUserId() + "|" + numberPresentation + "|" + isNumberInContacts + "|"
+                + scheme + ":" + number;
+    }
 }
@@ -19,8 +19,6 @@ package com.android.server.telecom.callfiltering;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.UserManager;
 import android.provider.BlockedNumberContract;
 import android.provider.CallLog;
@@ -32,7 +30,6 @@ import com.android.server.telecom.Call;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.flags.FeatureFlags;
 import com.android.server.telecom.LogUtils;
-import com.android.server.telecom.LoggedHandlerExecutor;
 import com.android.server.telecom.settings.BlockedNumbersUtil;
 
 import java.util.concurrent.CompletableFuture;
@@ -45,8 +42,6 @@ public class BlockCheckerFilter extends CallFilter {
     private final BlockCheckerAdapter mBlockCheckerAdapter;
     private final String TAG = "BlockCheckerFilter";
     private boolean mContactExists;
-    private HandlerThread mHandlerThread;
-    private Handler mHandler;
     private FeatureFlags mFeatureFlags;
 
     public static final long CALLER_INFO_QUERY_TIMEOUT = 5000;
@@ -114,9 +109,6 @@ public class BlockCheckerFilter extends CallFilter {
         mCallerInfoLookupHelper = callerInfoLookupHelper;
         mBlockCheckerAdapter = blockCheckerAdapter;
         mContactExists = false;
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
         mFeatureFlags = featureFlags;
     }
 
@@ -179,15 +171,15 @@ public class BlockCheckerFilter extends CallFilter {
         }
 
         // Set number
+        final String scheme = mCall.getHandle() == null ? null : mCall.getHandle().getScheme();
         final String number = mCall.getHandle() == null ? null :
                 mCall.getHandle().getSchemeSpecificPart();
 
         CompletableFuture.supplyAsync(
-                () -> mBlockCheckerAdapter.getBlockStatus(userContext, number,
+                () -> mBlockCheckerAdapter.getBlockStatus(userContext, scheme, number,
                         presentation, isNumberInContacts),
-                new LoggedHandlerExecutor(mHandler, "BCF.gBS", null))
-                .thenApplyAsync((x) -> completeResult(resultFuture, x),
-                        new LoggedHandlerExecutor(mHandler, "BCF.gBS", null));
+                CallFilterLooperPool.getQueryExecutor("BCF.gBS"))
+                .thenApply((x) -> completeResult(resultFuture, x));
     }
 
     private int completeResult(CompletableFuture<CallFilteringResult> resultFuture,
@@ -218,7 +210,6 @@ public class BlockCheckerFilter extends CallFilter {
         Log.addEvent(mCall, LogUtils.Events.BLOCK_CHECK_FINISHED,
                 blockStatusToString(blockStatus) + " " + result);
         resultFuture.complete(result);
-        mHandlerThread.quitSafely();
         return blockStatus;
     }
 
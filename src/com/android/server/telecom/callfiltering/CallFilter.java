@@ -40,6 +40,13 @@ public class CallFilter {
         return CompletableFuture.completedFuture(priorStageResult);
     }
 
+    /**
+     * @return The name this filter's latency is reported under.
+     */
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
     List<CallFilter> getDependencies() {
         return mDependencies;
     }
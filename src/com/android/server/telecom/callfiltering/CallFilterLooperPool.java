@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.telecom.Logging.Runnable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of loopers shared by incoming call filtering, so filtering a call does not start
+ * threads of its own and the number of threads stays the same however many calls come in.
+ * Loopers are handed out round-robin, one per {@link IncomingCallFilterGraph}; the graph must
+ * keep its work on the looper it was given.  Each looper is started on first use and lives as
+ * long as the process, unless it is quit, in which case it is replaced the next time it is handed
+ * out.
+ * <p>
+ * Filters must not block a looper, since other calls share it.  Blocking queries, such as the
+ * block status lookup of {@link BlockCheckerFilter}, go to the bounded query executor instead, so
+ * the queries of concurrent calls run in parallel rather than one after another.
+ */
+public final class CallFilterLooperPool {
+    private static final String TAG = "CallFilterLooperPool";
+    private static final int POOL_SIZE = 2;
+    private static final int QUERY_POOL_SIZE = 4;
+    private static final long QUERY_THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    private static final HandlerThread[] sHandlerThreads = new HandlerThread[POOL_SIZE];
+    private static int sNextIndex = 0;
+    private static ThreadPoolExecutor sQueryExecutor;
+
+    private CallFilterLooperPool() {
+    }
+
+    /**
+     * @return The next looper of the pool, starting it if needed.
+     */
+    public static synchronized Looper getLooper() {
+        int index = sNextIndex;
+        sNextIndex = (sNextIndex + 1) % POOL_SIZE;
+        HandlerThread handlerThread = sHandlerThreads[index];
+        if (handlerThread == null || !handlerThread.isAlive()) {
+            handlerThread = new HandlerThread(TAG + "-" + index);
+            handlerThread.start();
+            sHandlerThreads[index] = handlerThread;
+        }
+        return handlerThread.getLooper();
+    }
+
+    /**
+     * @param sessionName The name of the log session each query runs in.
+     * @return An executor for blocking queries; its threads stop when idle.
+     */
+    public static synchronized Executor getQueryExecutor(String sessionName) {
+        if (sQueryExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            sQueryExecutor = new ThreadPoolExecutor(QUERY_POOL_SIZE, QUERY_POOL_SIZE,
+                    QUERY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, TAG + "-query-" + threadCount.getAndIncrement()));
+            sQueryExecutor.allowCoreThreadTimeOut(true);
+        }
+        ThreadPoolExecutor executor = sQueryExecutor;
+        return command -> executor.execute(new Runnable(sessionName, null) {
+            @Override
+            public void loggedRun() {
+                command.run();
+            }
+        }.prepare());
+    }
+}
@@ -304,6 +304,20 @@ public class CallScreeningServiceFilter extends CallFilter {
         return super.toString() + ": " + mPackageName;
     }
 
+    @Override
+    public String getName() {
+        switch (mPackagetype) {
+            case PACKAGE_TYPE_CARRIER:
+                return super.getName() + "/carrier";
+            case PACKAGE_TYPE_DEFAULT_DIALER:
+                return super.getName() + "/dialer";
+            case PACKAGE_TYPE_USER_CHOSEN:
+                return super.getName() + "/user";
+            default:
+                return super.getName();
+        }
+    }
+
     private boolean hasReadContactsPermission() {
         int permission = PackageManager.PERMISSION_DENIED;
         if (mPackagetype == PACKAGE_TYPE_CARRIER || mPackagetype == PACKAGE_TYPE_DEFAULT_DIALER) {
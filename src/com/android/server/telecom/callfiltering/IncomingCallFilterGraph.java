@@ -18,10 +18,12 @@ package com.android.server.telecom.callfiltering;
 
 import android.content.Context;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.Call;
 import com.android.server.telecom.LoggedHandlerExecutor;
 import com.android.server.telecom.LogUtils;
@@ -48,7 +50,6 @@ public class IncomingCallFilterGraph {
     private final CallFilterResultCallback mListener;
     private final Call mCall;
     private final Handler mHandler;
-    private final HandlerThread mHandlerThread;
     private final TelecomSystem.SyncRoot mLock;
     private List<CallFilter> mFiltersList;
     private CallFilter mCompletionSentinel;
@@ -60,14 +61,24 @@ public class IncomingCallFilterGraph {
 
     private class PostFilterTask {
         private final CallFilter mFilter;
+        private final long mStartMillis;
 
         public PostFilterTask(final CallFilter filter) {
             mFilter = filter;
+            mStartMillis = SystemClock.elapsedRealtime();
         }
 
         public CallFilteringResult whenDone(CallFilteringResult result) {
             Log.i(TAG, "Filter %s done, result: %s.", mFilter, result);
             mFilter.result = result;
+            if (mFiltersList.contains(mFilter)) {
+                mCall.markFilterLatency(mFilter.getName(),
+                        SystemClock.elapsedRealtime() - mStartMillis);
+            }
+            if (mFinished) {
+                // Filtering already completed or timed out; nothing is waiting for this result.
+                return result;
+            }
             for (CallFilter filter : mFilter.getFollowings()) {
                 if (filter.decrementAndGetIndegree() == 0) {
                     scheduleFilter(filter);
@@ -79,7 +90,8 @@ public class IncomingCallFilterGraph {
                     mListener.onCallFilteringComplete(mCall, result, false);
                     Log.addEvent(mCall, LogUtils.Events.FILTERING_COMPLETED, result);
                 }
-                mHandlerThread.quit();
+                // The looper is shared, so drop only this graph's pending work, e.g. the timeout.
+                mHandler.removeCallbacksAndMessages(null);
             }
             return result;
         }
@@ -92,9 +104,7 @@ public class IncomingCallFilterGraph {
         mCall = call;
         mFiltersList = new ArrayList<>();
         mFeatureFlags = featureFlags;
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mHandler = new Handler(CallFilterLooperPool.getLooper());
         mLock = lock;
         mFinished = false;
         mContext = context;
@@ -102,6 +112,11 @@ public class IncomingCallFilterGraph {
         mCurrentResult = DEFAULT_RESULT;
     }
 
+    @VisibleForTesting
+    public Looper getLooper() {
+        return mHandler.getLooper();
+    }
+
     public void addFilter(CallFilter filter) {
         mFiltersList.add(filter);
     }
@@ -128,7 +143,7 @@ public class IncomingCallFilterGraph {
                     mCurrentResult = onTimeoutCombineFinishedFilters(mFiltersList, mCurrentResult);
                     mListener.onCallFilteringComplete(mCall, mCurrentResult, true);
                     mFinished = true;
-                    mHandlerThread.quit();
+                    mHandler.removeCallbacksAndMessages(null);
                 }
                 for (CallFilter filter : mFiltersList) {
                     // unbind timed out call screening service
@@ -201,8 +216,4 @@ public class IncomingCallFilterGraph {
         before.addFollowings(after);
         after.addDependency(before);
     }
-
-    public HandlerThread getHandlerThread() {
-        return mHandlerThread;
-    }
 }
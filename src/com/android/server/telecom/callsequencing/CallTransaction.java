@@ -27,17 +27,38 @@ import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.flags.Flags;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class CallTransaction {
     //TODO: add log events
     private static final long DEFAULT_TRANSACTION_TIMEOUT_MS = 5000L;
 
+    /**
+     * Resource which conflicts with every other resource. Transactions which do not declare what
+     * they touch hold it, so they never run alongside any other transaction.
+     */
+    public static final String RESOURCE_ALL = "*";
+
+    /**
+     * Resource for the global call audio state, such as the mute state and current endpoint.
+     */
+    public static final String RESOURCE_AUDIO = "audio";
+
+    /**
+     * @return The resource for the state of the call with the given id.
+     */
+    public static String getCallResource(String callId) {
+        return "call:" + callId;
+    }
+
     /**
      * Tracks stats about a transaction for logging purposes.
      */
@@ -262,6 +283,23 @@ public class CallTransaction {
         mHandlerThread.quitSafely();
     }
 
+    /**
+     * The {@link TransactionManager} runs transactions which share no resources concurrently, and
+     * transactions which share one in the order they were added. Transactions which only touch
+     * the state of a single call or the audio state should override this to say so.
+     *
+     * @return The resources this transaction reads or modifies. Defaults to the resources of the
+     * sub-transactions if there are any and to {@link #RESOURCE_ALL} otherwise.
+     */
+    public Set<String> getResources() {
+        if (mSubTransactions == null || mSubTransactions.isEmpty()) {
+            return Collections.singleton(RESOURCE_ALL);
+        }
+        return mSubTransactions.stream()
+                .flatMap(t -> t.getResources().stream())
+                .collect(Collectors.toSet());
+    }
+
     /**
      * @return Stats related to this transaction if stats are enabled, null otherwise.
      */
@@ -25,24 +25,42 @@ import android.util.IndentingPrintWriter;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.telecom.LogScaleHistogram;
 import com.android.server.telecom.flags.Flags;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * Runs {@link CallTransaction}s in the order they are added. A transaction waits only for
+ * earlier transactions which share one of its {@link CallTransaction#getResources()}, so
+ * transactions for unrelated calls do not hold each other up.
+ */
 public class TransactionManager {
     private static final String TAG = "CallTransactionManager";
     private static final int TRANSACTION_HISTORY_SIZE = 20;
+    private static final int HISTOGRAM_BUCKETS = 16;
     private static TransactionManager INSTANCE = null;
     private static final Object sLock = new Object();
     private final Queue<CallTransaction> mTransactions;
     private final Deque<CallTransaction> mCompletedTransactions;
-    private CallTransaction mCurrentTransaction;
+    private final List<CallTransaction> mOngoingTransactions;
     private boolean mProcessingCallSequencing;
+    // Number of transactions already waiting when a transaction is added.
+    private final LogScaleHistogram mQueueDepthHistogram =
+            new LogScaleHistogram(HISTOGRAM_BUCKETS);
+    // Time in mS between a transaction being added and started.
+    private final LogScaleHistogram mWaitTimeHistogram = new LogScaleHistogram(HISTOGRAM_BUCKETS);
+    // Time in mS between a transaction being started and finished.
+    private final LogScaleHistogram mRunTimeHistogram = new LogScaleHistogram(HISTOGRAM_BUCKETS);
 
     public interface TransactionCompleteListener {
         void onTransactionCompleted(CallTransactionResult result, String transactionName);
@@ -51,7 +69,7 @@ public class TransactionManager {
 
     private TransactionManager() {
         mTransactions = new ArrayDeque<>();
-        mCurrentTransaction = null;
+        mOngoingTransactions = new ArrayList<>();
         if (Flags.enableCallSequencing()) {
             mCompletedTransactions = new ArrayDeque<>();
         } else
@@ -76,6 +94,7 @@ public class TransactionManager {
             OutcomeReceiver<CallTransactionResult, CallException> receiver) {
         CompletableFuture<Boolean> transactionCompleteFuture = new CompletableFuture<>();
         synchronized (sLock) {
+            mQueueDepthHistogram.record(mTransactions.size());
             mTransactions.add(transaction);
         }
         transaction.setCompleteListener(new TransactionCompleteListener() {
@@ -99,7 +118,7 @@ public class TransactionManager {
                             + " %s resulted in an Exception.", result), e);
                     transactionCompleteFuture.complete(false);
                 }
-                finishTransaction();
+                finishTransaction(transaction);
             }
 
             @Override
@@ -114,7 +133,7 @@ public class TransactionManager {
                             + " %s resulted in an Exception.", transactionName), e);
                     transactionCompleteFuture.complete(false);
                 }
-                finishTransaction();
+                finishTransaction(transaction);
             }
         });
 
@@ -123,26 +142,55 @@ public class TransactionManager {
     }
 
     private void startTransactions() {
+        List<CallTransaction> startedTransactions = new ArrayList<>();
         synchronized (sLock) {
-            if (mTransactions.isEmpty()) {
-                // No transaction waiting for process
-                return;
+            // Resources of ongoing transactions and of pending transactions which are still
+            // waiting; a pending transaction may not overtake an earlier one it conflicts with.
+            Set<String> busyResources = new HashSet<>();
+            for (CallTransaction t : mOngoingTransactions) {
+                busyResources.addAll(t.getResources());
             }
-
-            if (mCurrentTransaction != null) {
-                // Ongoing transaction
-                return;
+            Iterator<CallTransaction> pending = mTransactions.iterator();
+            while (pending.hasNext() && !busyResources.contains(CallTransaction.RESOURCE_ALL)) {
+                CallTransaction t = pending.next();
+                Set<String> resources = t.getResources();
+                if (isConflicting(resources, busyResources)) {
+                    busyResources.addAll(resources);
+                    continue;
+                }
+                pending.remove();
+                mOngoingTransactions.add(t);
+                startedTransactions.add(t);
+                busyResources.addAll(resources);
             }
-            mCurrentTransaction = mTransactions.poll();
         }
-        mCurrentTransaction.start();
+        for (CallTransaction t : startedTransactions) {
+            CallTransaction.Stats s = t.getStats();
+            if (s != null) {
+                mWaitTimeHistogram.record(s.measureTimeSinceCreatedMs());
+            }
+            t.start();
+        }
+    }
+
+    private static boolean isConflicting(Set<String> resources, Set<String> busyResources) {
+        if (busyResources.isEmpty()) {
+            return false;
+        }
+        if (resources.contains(CallTransaction.RESOURCE_ALL)) {
+            return true;
+        }
+        return !Collections.disjoint(resources, busyResources);
     }
 
-    private void finishTransaction() {
+    private void finishTransaction(CallTransaction transaction) {
         synchronized (sLock) {
-            if (mCurrentTransaction != null) {
-                addTransactionToHistory(mCurrentTransaction);
-                mCurrentTransaction = null;
+            if (mOngoingTransactions.remove(transaction)) {
+                addTransactionToHistory(transaction);
+                CallTransaction.Stats s = transaction.getStats();
+                if (s != null) {
+                    mRunTimeHistogram.record(s.measureStartedToCompletedMs());
+                }
             }
         }
         startTransactions();
@@ -193,10 +241,10 @@ public class TransactionManager {
             }
             pw.decreaseIndent();
 
-            pw.println("Ongoing Transaction:");
+            pw.println("Ongoing Transactions:");
             pw.increaseIndent();
-            if (mCurrentTransaction != null) {
-                printPendingTransactionStats(mCurrentTransaction, pw);
+            for (CallTransaction t : mOngoingTransactions) {
+                printPendingTransactionStats(t, pw);
             }
             pw.decreaseIndent();
 
@@ -206,6 +254,10 @@ public class TransactionManager {
                 printCompleteTransactionStats(t, pw);
             }
             pw.decreaseIndent();
+
+            pw.println("Queue depth on add: " + mQueueDepthHistogram);
+            pw.println("Wait time (mS): " + mWaitTimeHistogram);
+            pw.println("Run time (mS): " + mRunTimeHistogram);
         }
     }
 
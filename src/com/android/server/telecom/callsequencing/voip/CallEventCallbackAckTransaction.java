@@ -32,6 +32,8 @@ import com.android.server.telecom.TransactionalServiceWrapper;
 import com.android.server.telecom.callsequencing.CallTransaction;
 import com.android.server.telecom.callsequencing.CallTransactionResult;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
@@ -96,6 +98,15 @@ public class CallEventCallbackAckTransaction extends CallTransaction {
         mDisconnectCause = cause;
     }
 
+    /**
+     * Only waits on the client for the given call, so it does not need to block transactions for
+     * other calls while the client takes its time to respond.
+     */
+    @Override
+    public Set<String> getResources() {
+        return mCallId == null ? super.getResources()
+                : Collections.singleton(getCallResource(mCallId));
+    }
 
     @Override
     public CompletionStage<CallTransactionResult> processTransaction(Void v) {
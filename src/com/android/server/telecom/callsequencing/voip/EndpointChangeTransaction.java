@@ -26,6 +26,8 @@ import com.android.server.telecom.CallsManager;
 import com.android.server.telecom.callsequencing.CallTransaction;
 import com.android.server.telecom.callsequencing.CallTransactionResult;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
@@ -40,6 +42,11 @@ public class EndpointChangeTransaction extends CallTransaction {
         mCallsManager = callsManager;
     }
 
+    @Override
+    public Set<String> getResources() {
+        return Collections.singleton(RESOURCE_AUDIO);
+    }
+
     @Override
     public CompletionStage<CallTransactionResult> processTransaction(Void v) {
         Log.i(TAG, "processTransaction");
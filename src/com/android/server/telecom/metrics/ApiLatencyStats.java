@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.metrics;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.app.StatsManager;
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telecom.Log;
+import android.util.StatsEvent;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.LogScaleHistogram;
+import com.android.server.telecom.nano.PulledAtomsClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks how long each Telecom API takes, split into the time spent waiting for the Telecom lock
+ * and the time spent handling the call, as histograms per API.
+ * <p>
+ * Like {@link ApiStats}, the histograms are recorded on the calling thread and only copied into
+ * the atoms when they are saved or pulled.  The atom is not declared in frameworks/proto_logging,
+ * so it uses an id from the range statsd reserves for OEM atoms, see {@link CallLatencyStats}.
+ */
+public class ApiLatencyStats extends TelecomPulledAtom {
+    public static final int TELECOM_API_LATENCY_STATS = 100002;
+
+    private static final String TAG = ApiLatencyStats.class.getSimpleName();
+    private static final String FILE_NAME = "api_latency_stats";
+    // Latencies of 2^22 us (about 4 seconds) and more share the last bucket.
+    private static final int NUM_BUCKETS = 24;
+    // Assigned in onLoad(), which runs from the super constructor.
+    private Map<Integer, ApiLatency> mApiLatencies;
+    // Set when the histograms changed since the atoms were last materialized and saved.
+    private AtomicBoolean mDirty;
+
+    public ApiLatencyStats(@NonNull Context context, @NonNull Looper looper) {
+        super(context, looper);
+    }
+
+    public ApiLatencyStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public int getTag() {
+        return TELECOM_API_LATENCY_STATS;
+    }
+
+    @Override
+    protected String getFileName() {
+        return FILE_NAME;
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized int onPull(final List<StatsEvent> data) {
+        List<StatsEvent> events = new ArrayList<>();
+        for (Integer apiId : new ArrayList<>(mApiLatencies.keySet())) {
+            ApiLatency latency = mApiLatencies.remove(apiId);
+            if (latency == null) {
+                continue;
+            }
+            // Callers which already looked the entry up record into a fresh one from now on.
+            latency.retire();
+            events.add(StatsEvent.newBuilder()
+                    .setAtomId(getTag())
+                    .writeInt(apiId)
+                    .writeLong(latency.mWorkMicros.getCount())
+                    .writeLong(latency.mLockWaitMicros.getPercentile(50))
+                    .writeLong(latency.mLockWaitMicros.getPercentile(95))
+                    .writeLong(latency.mLockWaitMicros.getPercentile(99))
+                    .writeLong(latency.mLockWaitMicros.getMax())
+                    .writeLong(latency.mWorkMicros.getPercentile(50))
+                    .writeLong(latency.mWorkMicros.getPercentile(95))
+                    .writeLong(latency.mWorkMicros.getPercentile(99))
+                    .writeLong(latency.mWorkMicros.getMax())
+                    .usePooledBuffer()
+                    .build());
+        }
+        onAggregate();
+        if (events.isEmpty()) {
+            return StatsManager.PULL_SKIP;
+        }
+        data.addAll(events);
+        save(DELAY_FOR_PERSISTENT_MILLIS);
+        return StatsManager.PULL_SUCCESS;
+    }
+
+    @Override
+    protected synchronized void onLoad() {
+        mApiLatencies = new ConcurrentHashMap<>();
+        mDirty = new AtomicBoolean();
+        if (mPulledAtoms.telecomApiLatencyStats != null) {
+            for (PulledAtomsClass.TelecomApiLatencyStats v : mPulledAtoms.telecomApiLatencyStats) {
+                ApiLatency latency = getApiLatency(v.getApiName());
+                latency.mLockWaitMicros.add(v.lockWaitBucketCounts, v.getLockWaitSumUs(),
+                        v.getLockWaitMaxUs());
+                latency.mWorkMicros.add(v.workBucketCounts, v.getWorkSumUs(), v.getWorkMaxUs());
+            }
+            mLastPulledTimestamps = mPulledAtoms.getTelecomApiLatencyStatsPullTimestampMillis();
+        }
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized void onAggregate() {
+        Log.d(TAG, "onAggregate: %d apis", mApiLatencies.size());
+        clearAtoms();
+        if (mApiLatencies.isEmpty()) {
+            return;
+        }
+        List<PulledAtomsClass.TelecomApiLatencyStats> stats = new ArrayList<>();
+        mApiLatencies.forEach((apiId, latency) -> {
+            PulledAtomsClass.TelecomApiLatencyStats v =
+                    new PulledAtomsClass.TelecomApiLatencyStats();
+            v.setApiName(apiId);
+            v.setCount(latency.mWorkMicros.getCount());
+            v.setLockWaitSumUs(latency.mLockWaitMicros.getSum());
+            v.setLockWaitMaxUs(latency.mLockWaitMicros.getMax());
+            v.lockWaitBucketCounts = getBucketCounts(latency.mLockWaitMicros);
+            v.setWorkSumUs(latency.mWorkMicros.getSum());
+            v.setWorkMaxUs(latency.mWorkMicros.getMax());
+            v.workBucketCounts = getBucketCounts(latency.mWorkMicros);
+            stats.add(v);
+        });
+        mPulledAtoms.setTelecomApiLatencyStatsPullTimestampMillis(mLastPulledTimestamps);
+        mPulledAtoms.telecomApiLatencyStats =
+                stats.toArray(new PulledAtomsClass.TelecomApiLatencyStats[stats.size()]);
+    }
+
+    @Override
+    protected void onPrepareSave() {
+        mDirty.set(false);
+        onAggregate();
+    }
+
+    /**
+     * Records the latency of the API call described by the event; call when the API returns.
+     */
+    public void log(@NonNull ApiStats.ApiEvent event) {
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        long lockWaitNanos = event.mLockWaitNanos;
+        // Everything else, including the permission checks before the lock, is work.
+        log(event.mId, lockWaitNanos / 1000,
+                (nowNanos - event.mStartNanos - lockWaitNanos) / 1000);
+    }
+
+    @VisibleForTesting
+    public void log(@ApiStats.ApiId int apiId, long lockWaitMicros, long workMicros) {
+        while (!getApiLatency(apiId).record(lockWaitMicros, workMicros)) {
+            // The entry was pulled in the meantime; record into the one which replaced it.
+        }
+        if (mDirty.compareAndSet(false, true)) {
+            save(DELAY_FOR_PERSISTENT_MILLIS);
+        }
+    }
+
+    /**
+     * Prints the latency percentiles of each API since the last pull.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        Map<Integer, ApiLatency> apiLatencies = new TreeMap<>(mApiLatencies);
+        for (Map.Entry<Integer, ApiLatency> entry : apiLatencies.entrySet()) {
+            pw.println("api " + entry.getKey() + ":");
+            pw.increaseIndent();
+            pw.println("lockWaitMicros: " + entry.getValue().mLockWaitMicros);
+            pw.println("workMicros: " + entry.getValue().mWorkMicros);
+            pw.decreaseIndent();
+        }
+    }
+
+    private ApiLatency getApiLatency(int apiId) {
+        return mApiLatencies.computeIfAbsent(apiId, k -> new ApiLatency());
+    }
+
+    private static long[] getBucketCounts(LogScaleHistogram histogram) {
+        long[] counts = new long[histogram.getNumBuckets()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.getBucketCount(i);
+        }
+        return counts;
+    }
+
+    private static final class ApiLatency {
+        final LogScaleHistogram mLockWaitMicros = new LogScaleHistogram(NUM_BUCKETS);
+        final LogScaleHistogram mWorkMicros = new LogScaleHistogram(NUM_BUCKETS);
+        // Set once the entry is removed by a pull; it takes no samples afterwards.
+        private boolean mRetired;
+
+        /**
+         * @return false if the entry was retired, and the sample has to go to its replacement.
+         */
+        synchronized boolean record(long lockWaitMicros, long workMicros) {
+            if (mRetired) {
+                return false;
+            }
+            mLockWaitMicros.record(lockWaitMicros);
+            mWorkMicros.record(workMicros);
+            return true;
+        }
+
+        /**
+         * Stops taking samples, so that the samples read after this are final.
+         */
+        synchronized void retire() {
+            mRetired = true;
+        }
+    }
+}
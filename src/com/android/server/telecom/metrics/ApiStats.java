@@ -20,9 +20,11 @@ import static com.android.server.telecom.TelecomStatsLog.TELECOM_API_STATS;
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.StatsManager;
 import android.content.Context;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.telecom.Log;
 import android.util.StatsEvent;
 
@@ -33,11 +35,11 @@ import com.android.server.telecom.nano.PulledAtomsClass;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ApiStats extends TelecomPulledAtom {
     public static final int API_UNSPECIFIC = TelecomStatsLog
@@ -167,12 +169,21 @@ public class ApiStats extends TelecomPulledAtom {
             .TELECOM_API_STATS__API_RESULT__RESULT_EXCEPTION;
     private static final String TAG = ApiStats.class.getSimpleName();
     private static final String FILE_NAME = "api_stats";
-    private Map<ApiEvent, Integer> mApiStatsMap;
+    private static final int NUM_STRIPES = 8;
+    // Assigned in onLoad(), which runs from the super constructor.
+    private CounterStripe[] mStripes;
+    // Set when the counters changed since the atoms were last materialized and saved.
+    private AtomicBoolean mDirty;
 
     public ApiStats(@NonNull Context context, @NonNull Looper looper) {
         super(context, looper);
     }
 
+    public ApiStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     @Override
     public int getTag() {
@@ -187,58 +198,186 @@ public class ApiStats extends TelecomPulledAtom {
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     @Override
     public synchronized int onPull(final List<StatsEvent> data) {
-        if (mPulledAtoms.telecomApiStats.length != 0) {
-            Arrays.stream(mPulledAtoms.telecomApiStats).forEach(v -> data.add(
-                    TelecomStatsLog.buildStatsEvent(getTag(),
-                            v.getApiName(), v.getUid(), v.getApiResult(), v.getCount())));
-            mApiStatsMap.clear();
-            onAggregate();
-            return StatsManager.PULL_SUCCESS;
-        } else {
+        List<StatsEvent> events = new ArrayList<>();
+        for (CounterStripe stripe : mStripes) {
+            stripe.drain((key, count) -> events.add(TelecomStatsLog.buildStatsEvent(getTag(),
+                    getApiId(key), getCallerUid(key), getResult(key), count)));
+        }
+        onAggregate();
+        if (events.isEmpty()) {
             return StatsManager.PULL_SKIP;
         }
+        data.addAll(events);
+        save(DELAY_FOR_PERSISTENT_MILLIS);
+        return StatsManager.PULL_SUCCESS;
     }
 
     @Override
     protected synchronized void onLoad() {
+        mStripes = new CounterStripe[NUM_STRIPES];
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            mStripes[i] = new CounterStripe();
+        }
+        mDirty = new AtomicBoolean();
         if (mPulledAtoms.telecomApiStats != null) {
-            mApiStatsMap = new HashMap<>();
             for (PulledAtomsClass.TelecomApiStats v : mPulledAtoms.telecomApiStats) {
-                mApiStatsMap.put(new ApiEvent(v.getApiName(), v.getUid(), v.getApiResult()),
-                        v.getCount());
+                long key = toKey(v.getApiName(), v.getUid(), v.getApiResult());
+                getStripe(key).add(key, v.getCount());
             }
             mLastPulledTimestamps = mPulledAtoms.getTelecomApiStatsPullTimestampMillis();
         }
     }
 
+    /**
+     * Materializes the counters into {@link #mPulledAtoms}.  Unlike the other atoms this does not
+     * run on every {@link #log}; the counters are only copied out when they are saved or pulled.
+     */
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     @Override
     public synchronized void onAggregate() {
-        Log.d(TAG, "onAggregate: %s", mApiStatsMap);
         clearAtoms();
-        if (mApiStatsMap.isEmpty()) {
+        List<PulledAtomsClass.TelecomApiStats> stats = new ArrayList<>();
+        for (CounterStripe stripe : mStripes) {
+            stripe.forEach((key, count) -> {
+                PulledAtomsClass.TelecomApiStats v = new PulledAtomsClass.TelecomApiStats();
+                v.setApiName(getApiId(key));
+                v.setUid(getCallerUid(key));
+                v.setApiResult(getResult(key));
+                v.setCount(count);
+                stats.add(v);
+            });
+        }
+        Log.d(TAG, "onAggregate: %d counters", stats.size());
+        if (stats.isEmpty()) {
             return;
         }
         mPulledAtoms.setTelecomApiStatsPullTimestampMillis(mLastPulledTimestamps);
         mPulledAtoms.telecomApiStats =
-                new PulledAtomsClass.TelecomApiStats[mApiStatsMap.size()];
-        int[] index = new int[1];
-        mApiStatsMap.forEach((k, v) -> {
-            mPulledAtoms.telecomApiStats[index[0]] = new PulledAtomsClass.TelecomApiStats();
-            mPulledAtoms.telecomApiStats[index[0]].setApiName(k.mId);
-            mPulledAtoms.telecomApiStats[index[0]].setUid(k.mCallerUid);
-            mPulledAtoms.telecomApiStats[index[0]].setApiResult(k.mResult);
-            mPulledAtoms.telecomApiStats[index[0]].setCount(v);
-            index[0]++;
-        });
-        save(DELAY_FOR_PERSISTENT_MILLIS);
+                stats.toArray(new PulledAtomsClass.TelecomApiStats[stats.size()]);
+    }
+
+    @Override
+    protected void onPrepareSave() {
+        mDirty.set(false);
+        onAggregate();
     }
 
     public void log(@NonNull ApiEvent event) {
-        post(() -> {
-            mApiStatsMap.put(event, mApiStatsMap.getOrDefault(event, 0) + 1);
-            onAggregate();
-        });
+        log(event.mId, event.mCallerUid, event.mResult);
+    }
+
+    /**
+     * Counts an invocation of a Telecom API.  The counter is bumped on the calling thread; the
+     * atoms are only rebuilt when they are next saved or pulled.
+     */
+    public void log(@ApiId int apiId, int callerUid, @ResultId int result) {
+        long key = toKey(apiId, callerUid, result);
+        getStripe(key).add(key, 1);
+        if (mDirty.compareAndSet(false, true)) {
+            save(DELAY_FOR_PERSISTENT_MILLIS);
+        }
+    }
+
+    private CounterStripe getStripe(long key) {
+        return mStripes[CounterStripe.hash(key) & (NUM_STRIPES - 1)];
+    }
+
+    private static long toKey(@ApiId int apiId, int callerUid, @ResultId int result) {
+        return ((long) callerUid << 32) | ((apiId & 0xFFFFL) << 16) | (result & 0xFFFFL);
+    }
+
+    private static int getApiId(long key) {
+        return (int) ((key >>> 16) & 0xFFFF);
+    }
+
+    private static int getCallerUid(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int getResult(long key) {
+        return (int) (key & 0xFFFF);
+    }
+
+    /**
+     * An open addressing table of counters keyed by the packed (api, uid, result) key.  Each
+     * stripe has its own lock, so concurrent binder calls rarely contend.
+     */
+    private static final class CounterStripe {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private static final int INITIAL_CAPACITY = 16;
+
+        interface CounterConsumer {
+            void accept(long key, int count);
+        }
+
+        private long[] mKeys = newKeys(INITIAL_CAPACITY);
+        private int[] mCounts = new int[INITIAL_CAPACITY];
+        private int mSize;
+
+        static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        synchronized void add(long key, int count) {
+            int index = indexOf(mKeys, key);
+            if (mKeys[index] == EMPTY) {
+                if ((mSize + 1) * 2 > mKeys.length) {
+                    resize();
+                    index = indexOf(mKeys, key);
+                }
+                mKeys[index] = key;
+                mSize++;
+            }
+            mCounts[index] += count;
+        }
+
+        synchronized void forEach(CounterConsumer consumer) {
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mKeys[i] != EMPTY) {
+                    consumer.accept(mKeys[i], mCounts[i]);
+                }
+            }
+        }
+
+        /**
+         * Passes every counter to the consumer and resets the stripe.
+         */
+        synchronized void drain(CounterConsumer consumer) {
+            forEach(consumer);
+            Arrays.fill(mKeys, EMPTY);
+            Arrays.fill(mCounts, 0);
+            mSize = 0;
+        }
+
+        private void resize() {
+            long[] keys = mKeys;
+            int[] counts = mCounts;
+            mKeys = newKeys(keys.length * 2);
+            mCounts = new int[keys.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    int index = indexOf(mKeys, keys[i]);
+                    mKeys[index] = keys[i];
+                    mCounts[index] = counts[i];
+                }
+            }
+        }
+
+        private static int indexOf(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int index = hash(key) & mask;
+            while (keys[index] != EMPTY && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
     }
 
     @IntDef(prefix = "API", value = {
@@ -324,11 +463,37 @@ public class ApiStats extends TelecomPulledAtom {
         int mCallerUid;
         @ResultId
         int mResult;
+        // When the API was called, and the time it spent waiting for the Telecom lock, summed
+        // over every time it entered it.  mLockRequestedNanos is -1 unless it is waiting now.
+        final long mStartNanos;
+        long mLockRequestedNanos = -1;
+        long mLockWaitNanos;
 
         public ApiEvent(@ApiId int id, int callerUid, @ResultId int result) {
             mId = id;
             mCallerUid = callerUid;
             mResult = result;
+            mStartNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        /**
+         * Notes that the API is about to wait for the Telecom lock; call right before entering
+         * it, so the permission checks done before are not counted as lock wait.
+         */
+        public void onLockRequested() {
+            mLockRequestedNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        /**
+         * Notes that the API acquired the Telecom lock, so the time spent waiting for it can be
+         * told apart from the time spent handling the call.  APIs which enter the lock more than
+         * once report each entry; the waits are added up.
+         */
+        public void onLockAcquired() {
+            if (mLockRequestedNanos >= 0) {
+                mLockWaitNanos += SystemClock.elapsedRealtimeNanos() - mLockRequestedNanos;
+                mLockRequestedNanos = -1;
+            }
         }
 
         public void setCallerUid(int uid) {
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.metrics;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.app.StatsManager;
+import android.content.Context;
+import android.os.Looper;
+import android.telecom.Log;
+import android.util.StatsEvent;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.CallAudioRouteAdapter;
+import com.android.server.telecom.LogScaleHistogram;
+import com.android.server.telecom.nano.PulledAtomsClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps a latency histogram per audio route switch, keyed like {@link AudioRouteStats}, so the
+ * tail latency of the switches can be pulled rather than only their average.  Besides the whole
+ * switch, it also tracks how long the switches waited for each of the messages they were pending
+ * on, such as {@link CallAudioRouteAdapter#BT_AUDIO_CONNECTED}.
+ * <p>
+ * The atom is not declared in frameworks/proto_logging, so it uses an id from the range statsd
+ * reserves for OEM atoms, see {@link CallLatencyStats}.
+ */
+public class AudioRouteLatencyStats extends TelecomPulledAtom {
+    public static final int CALL_AUDIO_ROUTE_LATENCY_STATS = 100003;
+
+    /** The latency of the whole switch, rather than of a single pending message. */
+    public static final int PENDING_MESSAGE_NONE = 0;
+
+    private static final String TAG = AudioRouteLatencyStats.class.getSimpleName();
+    private static final String FILE_NAME = "audio_route_latency_stats";
+    // Latencies of 2^18 ms (about 4 minutes) and more share the last bucket.
+    private static final int NUM_BUCKETS = 20;
+    private Map<AudioRouteLatencyStatsKey, LogScaleHistogram> mAudioRouteLatencyStatsMap;
+
+    public AudioRouteLatencyStats(@NonNull Context context, @NonNull Looper looper) {
+        super(context, looper);
+    }
+
+    public AudioRouteLatencyStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public int getTag() {
+        return CALL_AUDIO_ROUTE_LATENCY_STATS;
+    }
+
+    @Override
+    protected String getFileName() {
+        return FILE_NAME;
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized int onPull(final List<StatsEvent> data) {
+        if (mPulledAtoms.callAudioRouteLatencyStats.length != 0) {
+            Arrays.stream(mPulledAtoms.callAudioRouteLatencyStats).forEach(v -> {
+                LogScaleHistogram histogram = toHistogram(v);
+                data.add(StatsEvent.newBuilder()
+                        .setAtomId(getTag())
+                        .writeInt(v.getCallAudioRouteSource())
+                        .writeInt(v.getCallAudioRouteDest())
+                        .writeBoolean(v.getSuccess())
+                        .writeBoolean(v.getRevert())
+                        .writeInt(v.getPendingMessage())
+                        .writeLong(histogram.getCount())
+                        .writeLong(histogram.getPercentile(50))
+                        .writeLong(histogram.getPercentile(95))
+                        .writeLong(histogram.getPercentile(99))
+                        .writeLong(histogram.getMax())
+                        .usePooledBuffer()
+                        .build());
+            });
+            mAudioRouteLatencyStatsMap.clear();
+            onAggregate();
+            return StatsManager.PULL_SUCCESS;
+        } else {
+            return StatsManager.PULL_SKIP;
+        }
+    }
+
+    @Override
+    protected synchronized void onLoad() {
+        if (mPulledAtoms.callAudioRouteLatencyStats != null) {
+            mAudioRouteLatencyStatsMap = new HashMap<>();
+            for (PulledAtomsClass.CallAudioRouteLatencyStats v
+                    : mPulledAtoms.callAudioRouteLatencyStats) {
+                mAudioRouteLatencyStatsMap.put(new AudioRouteLatencyStatsKey(
+                        v.getCallAudioRouteSource(), v.getCallAudioRouteDest(), v.getSuccess(),
+                        v.getRevert(), v.getPendingMessage()), toHistogram(v));
+            }
+            mLastPulledTimestamps =
+                    mPulledAtoms.getCallAudioRouteLatencyStatsPullTimestampMillis();
+        }
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized void onAggregate() {
+        Log.d(TAG, "onAggregate: %s", mAudioRouteLatencyStatsMap);
+        clearAtoms();
+        if (mAudioRouteLatencyStatsMap.isEmpty()) {
+            return;
+        }
+        mPulledAtoms.setCallAudioRouteLatencyStatsPullTimestampMillis(mLastPulledTimestamps);
+        mPulledAtoms.callAudioRouteLatencyStats =
+                new PulledAtomsClass.CallAudioRouteLatencyStats[
+                        mAudioRouteLatencyStatsMap.size()];
+        int[] index = new int[1];
+        mAudioRouteLatencyStatsMap.forEach((k, v) -> {
+            PulledAtomsClass.CallAudioRouteLatencyStats stats =
+                    new PulledAtomsClass.CallAudioRouteLatencyStats();
+            stats.setCallAudioRouteSource(k.mSource);
+            stats.setCallAudioRouteDest(k.mDest);
+            stats.setSuccess(k.mIsSuccess);
+            stats.setRevert(k.mIsRevert);
+            stats.setPendingMessage(k.mPendingMessage);
+            stats.setCount(v.getCount());
+            stats.setSumMs(v.getSum());
+            stats.setMaxMs(v.getMax());
+            stats.bucketCounts = new long[v.getNumBuckets()];
+            for (int i = 0; i < stats.bucketCounts.length; i++) {
+                stats.bucketCounts[i] = v.getBucketCount(i);
+            }
+            mPulledAtoms.callAudioRouteLatencyStats[index[0]++] = stats;
+        });
+        save(DELAY_FOR_PERSISTENT_MILLIS);
+    }
+
+    /**
+     * @param pendingMessage The message the switch waited for, or {@link #PENDING_MESSAGE_NONE}
+     *                       for the latency of the whole switch.
+     */
+    public void log(int source, int dest, boolean isSuccess, boolean isRevert,
+            int pendingMessage, long latencyMillis) {
+        post(() -> {
+            mAudioRouteLatencyStatsMap.computeIfAbsent(new AudioRouteLatencyStatsKey(source, dest,
+                            isSuccess, isRevert, pendingMessage),
+                    k -> new LogScaleHistogram(NUM_BUCKETS)).record(latencyMillis);
+            onAggregate();
+        });
+    }
+
+    /**
+     * Prints the latency percentiles of each audio route switch since the last pull.
+     */
+    public synchronized void dump(IndentingPrintWriter pw) {
+        List<AudioRouteLatencyStatsKey> keys = new ArrayList<>(mAudioRouteLatencyStatsMap.keySet());
+        keys.sort(Comparator.comparing(AudioRouteLatencyStatsKey::toString));
+        for (AudioRouteLatencyStatsKey key : keys) {
+            pw.println(key + ": " + mAudioRouteLatencyStatsMap.get(key));
+        }
+    }
+
+    private static LogScaleHistogram toHistogram(PulledAtomsClass.CallAudioRouteLatencyStats v) {
+        LogScaleHistogram histogram = new LogScaleHistogram(NUM_BUCKETS);
+        histogram.add(v.bucketCounts, v.getSumMs(), v.getMaxMs());
+        return histogram;
+    }
+
+    static class AudioRouteLatencyStatsKey {
+        final int mSource;
+        final int mDest;
+        final boolean mIsSuccess;
+        final boolean mIsRevert;
+        final int mPendingMessage;
+
+        AudioRouteLatencyStatsKey(int source, int dest, boolean isSuccess, boolean isRevert,
+                int pendingMessage) {
+            mSource = source;
+            mDest = dest;
+            mIsSuccess = isSuccess;
+            mIsRevert = isRevert;
+            mPendingMessage = pendingMessage;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof AudioRouteLatencyStatsKey obj)) {
+                return false;
+            }
+            return this.mSource == obj.mSource && this.mDest == obj.mDest
+                    && this.mIsSuccess == obj.mIsSuccess && this.mIsRevert == obj.mIsRevert
+                    && this.mPendingMessage == obj.mPendingMessage;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mSource, mDest, mIsSuccess, mIsRevert, mPendingMessage);
+        }
+
+        @Override
+        public String toString() {
+            return "[AudioRouteLatencyStatsKey: mSource=" + mSource + ", mDest=" + mDest
+                    + ", mIsSuccess=" + mIsSuccess + ", mIsRevert=" + mIsRevert
+                    + ", mPendingMessage=" + (mPendingMessage == PENDING_MESSAGE_NONE ? "none"
+                    : CallAudioRouteAdapter.MESSAGE_CODE_TO_NAME.get(mPendingMessage,
+                            String.valueOf(mPendingMessage))) + "]";
+        }
+    }
+}
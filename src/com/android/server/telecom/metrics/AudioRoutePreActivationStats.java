@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.metrics;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.app.StatsManager;
+import android.content.Context;
+import android.os.Looper;
+import android.telecom.Log;
+import android.util.StatsEvent;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.LogScaleHistogram;
+import com.android.server.telecom.nano.PulledAtomsClass;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tracks the Bluetooth routes connected ahead of time while an incoming call rings, see
+ * {@link com.android.server.telecom.CallAudioRouteController#setBluetoothPreActivationEnabled}.
+ * Each pre-activation is a hit if the call is answered on the route, with the latency it saved,
+ * or a miss, with how long the route was held before it was released.
+ * <p>
+ * The atom is not declared in frameworks/proto_logging, so it uses an id from the range statsd
+ * reserves for OEM atoms, see {@link CallLatencyStats}.
+ */
+public class AudioRoutePreActivationStats extends TelecomPulledAtom {
+    public static final int CALL_AUDIO_ROUTE_PRE_ACTIVATION_STATS = 100004;
+
+    private static final String TAG = AudioRoutePreActivationStats.class.getSimpleName();
+    private static final String FILE_NAME = "audio_route_pre_activation_stats";
+    // Latencies of 2^18 ms (about 4 minutes) and more share the last bucket.
+    private static final int NUM_BUCKETS = 20;
+    private Map<PreActivationStatsKey, LogScaleHistogram> mPreActivationStatsMap;
+
+    public AudioRoutePreActivationStats(@NonNull Context context, @NonNull Looper looper) {
+        super(context, looper);
+    }
+
+    public AudioRoutePreActivationStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public int getTag() {
+        return CALL_AUDIO_ROUTE_PRE_ACTIVATION_STATS;
+    }
+
+    @Override
+    protected String getFileName() {
+        return FILE_NAME;
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized int onPull(final List<StatsEvent> data) {
+        if (mPulledAtoms.callAudioRoutePreActivationStats.length != 0) {
+            Arrays.stream(mPulledAtoms.callAudioRoutePreActivationStats).forEach(v -> {
+                LogScaleHistogram histogram = toHistogram(v);
+                data.add(StatsEvent.newBuilder()
+                        .setAtomId(getTag())
+                        .writeInt(v.getRouteType())
+                        .writeBoolean(v.getHit())
+                        .writeLong(histogram.getCount())
+                        .writeLong(histogram.getPercentile(50))
+                        .writeLong(histogram.getPercentile(95))
+                        .writeLong(histogram.getPercentile(99))
+                        .writeLong(histogram.getMax())
+                        .usePooledBuffer()
+                        .build());
+            });
+            mPreActivationStatsMap.clear();
+            onAggregate();
+            return StatsManager.PULL_SUCCESS;
+        } else {
+            return StatsManager.PULL_SKIP;
+        }
+    }
+
+    @Override
+    protected synchronized void onLoad() {
+        if (mPulledAtoms.callAudioRoutePreActivationStats != null) {
+            mPreActivationStatsMap = new HashMap<>();
+            for (PulledAtomsClass.CallAudioRoutePreActivationStats v
+                    : mPulledAtoms.callAudioRoutePreActivationStats) {
+                mPreActivationStatsMap.put(new PreActivationStatsKey(v.getRouteType(), v.getHit()),
+                        toHistogram(v));
+            }
+            mLastPulledTimestamps =
+                    mPulledAtoms.getCallAudioRoutePreActivationStatsPullTimestampMillis();
+        }
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized void onAggregate() {
+        Log.d(TAG, "onAggregate: %s", mPreActivationStatsMap);
+        clearAtoms();
+        if (mPreActivationStatsMap.isEmpty()) {
+            return;
+        }
+        mPulledAtoms.setCallAudioRoutePreActivationStatsPullTimestampMillis(mLastPulledTimestamps);
+        mPulledAtoms.callAudioRoutePreActivationStats =
+                new PulledAtomsClass.CallAudioRoutePreActivationStats[
+                        mPreActivationStatsMap.size()];
+        int[] index = new int[1];
+        mPreActivationStatsMap.forEach((k, v) -> {
+            PulledAtomsClass.CallAudioRoutePreActivationStats stats =
+                    new PulledAtomsClass.CallAudioRoutePreActivationStats();
+            stats.setRouteType(k.mRouteType);
+            stats.setHit(k.mIsHit);
+            stats.setCount(v.getCount());
+            stats.setSumMs(v.getSum());
+            stats.setMaxMs(v.getMax());
+            stats.bucketCounts = new long[v.getNumBuckets()];
+            for (int i = 0; i < stats.bucketCounts.length; i++) {
+                stats.bucketCounts[i] = v.getBucketCount(i);
+            }
+            mPulledAtoms.callAudioRoutePreActivationStats[index[0]++] = stats;
+        });
+        save(DELAY_FOR_PERSISTENT_MILLIS);
+    }
+
+    /**
+     * @param routeType The {@link com.android.server.telecom.AudioRoute} type of the route.
+     * @param isHit Whether the call was answered on the route.
+     * @param latencyMillis For hits, the latency saved; for misses, how long the route was held.
+     */
+    public void log(int routeType, boolean isHit, long latencyMillis) {
+        post(() -> {
+            mPreActivationStatsMap.computeIfAbsent(new PreActivationStatsKey(routeType, isHit),
+                    k -> new LogScaleHistogram(NUM_BUCKETS)).record(latencyMillis);
+            onAggregate();
+        });
+    }
+
+    /**
+     * Prints the hits and misses since the last pull.
+     */
+    public synchronized void dump(IndentingPrintWriter pw) {
+        mPreActivationStatsMap.forEach((k, v) -> pw.println(k + ": " + v));
+    }
+
+    private static LogScaleHistogram toHistogram(
+            PulledAtomsClass.CallAudioRoutePreActivationStats v) {
+        LogScaleHistogram histogram = new LogScaleHistogram(NUM_BUCKETS);
+        histogram.add(v.bucketCounts, v.getSumMs(), v.getMaxMs());
+        return histogram;
+    }
+
+    static class PreActivationStatsKey {
+        final int mRouteType;
+        final boolean mIsHit;
+
+        PreActivationStatsKey(int routeType, boolean isHit) {
+            mRouteType = routeType;
+            mIsHit = isHit;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof PreActivationStatsKey obj)) {
+                return false;
+            }
+            return this.mRouteType == obj.mRouteType && this.mIsHit == obj.mIsHit;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mRouteType, mIsHit);
+        }
+
+        @Override
+        public String toString() {
+            return "[PreActivationStatsKey: mRouteType=" + mRouteType + ", mIsHit=" + mIsHit + "]";
+        }
+    }
+}
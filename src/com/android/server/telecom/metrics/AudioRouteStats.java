@@ -43,6 +43,7 @@ import static com.android.server.telecom.TelecomStatsLog.CALL_AUDIO_ROUTE_STATS_
 import static com.android.server.telecom.TelecomStatsLog.CALL_AUDIO_ROUTE_STATS__ROUTE_SOURCE__CALL_AUDIO_WIRED_HEADSET;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.StatsManager;
 import android.content.Context;
 import android.os.Looper;
@@ -59,6 +60,7 @@ import com.android.server.telecom.PendingAudioRoute;
 import com.android.server.telecom.TelecomStatsLog;
 import com.android.server.telecom.nano.PulledAtomsClass;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -74,12 +76,20 @@ public class AudioRouteStats extends TelecomPulledAtom {
     private static final String FILE_NAME = "audio_route_stats";
     private Map<AudioRouteStatsKey, AudioRouteStatsData> mAudioRouteStatsMap;
     private Pair<AudioRouteStatsKey, long[]> mCur;
+    // The pending message waits of mCur, logged with it once it is known whether it was reverted.
+    private final List<PendingAudioRoute.MessageWait> mCurMessageWaits = new ArrayList<>();
     private boolean mIsOngoing;
+    private AudioRouteLatencyStats mLatencyStats;
 
     public AudioRouteStats(@NonNull Context context, @NonNull Looper looper) {
         super(context, looper);
     }
 
+    public AudioRouteStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     @Override
     public int getTag() {
@@ -145,6 +155,14 @@ public class AudioRouteStats extends TelecomPulledAtom {
         save(DELAY_FOR_PERSISTENT_MILLIS);
     }
 
+    /**
+     * Sets where the latency of each switch, and of the pending messages it waited for, is
+     * recorded in addition to the average kept here.
+     */
+    public void setLatencyStats(@Nullable AudioRouteLatencyStats latencyStats) {
+        mLatencyStats = latencyStats;
+    }
+
     @VisibleForTesting
     public void log(int source, int target, boolean isSuccess, boolean isRevert, int latency) {
         post(() -> onLog(new AudioRouteStatsKey(source, target, isSuccess, isRevert), latency));
@@ -186,6 +204,7 @@ public class AudioRouteStats extends TelecomPulledAtom {
         // Check the dest type on the route exiting as it may be different as the enter
         int destType = convertAudioType(pendingRoute.getDestRoute(), false);
         long curTime = SystemClock.elapsedRealtime();
+        List<PendingAudioRoute.MessageWait> messageWaits = pendingRoute.takeMessageWaits();
         post(() -> {
             if (mIsOngoing) {
                 mIsOngoing = false;
@@ -194,6 +213,7 @@ public class AudioRouteStats extends TelecomPulledAtom {
                     mCur.first.setDestType(destType);
                     mCur.first.setSuccess(isSuccess);
                     mCur.second[1] = curTime;
+                    mCurMessageWaits.addAll(messageWaits);
                 }
             }
         });
@@ -209,8 +229,19 @@ public class AudioRouteStats extends TelecomPulledAtom {
                     mCur.second[1] = SystemClock.elapsedRealtime();
                 }
                 onLog(mCur.first, (int) (mCur.second[1] - mCur.second[0]));
+                if (mLatencyStats != null) {
+                    for (PendingAudioRoute.MessageWait messageWait : mCurMessageWaits) {
+                        // A message given up on counts as a failed wait, even if the switch
+                        // itself went through.
+                        mLatencyStats.log(mCur.first.mSource, mCur.first.mDest,
+                                mCur.first.mIsSuccess && messageWait.isReceived,
+                                mCur.first.mIsRevert, messageWait.message,
+                                messageWait.waitMillis);
+                    }
+                }
             }
             mCur = null;
+            mCurMessageWaits.clear();
         }
     }
 
@@ -218,6 +249,10 @@ public class AudioRouteStats extends TelecomPulledAtom {
         AudioRouteStatsData data = mAudioRouteStatsMap.computeIfAbsent(key,
                 k -> new AudioRouteStatsData(0, 0));
         data.add(latency);
+        if (mLatencyStats != null) {
+            mLatencyStats.log(key.mSource, key.mDest, key.mIsSuccess, key.mIsRevert,
+                    AudioRouteLatencyStats.PENDING_MESSAGE_NONE, latency);
+        }
         onAggregate();
     }
 
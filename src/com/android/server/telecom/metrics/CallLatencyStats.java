@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.metrics;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.app.StatsManager;
+import android.content.Context;
+import android.os.Looper;
+import android.telecom.Log;
+import android.util.StatsEvent;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.LogScaleHistogram;
+import com.android.server.telecom.nano.PulledAtomsClass;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Aggregates the {@link CallLatencyTimeline} of incoming calls into a latency histogram per
+ * milestone, and per call filter, so the percentiles can be pulled.
+ * <p>
+ * The atom is not declared in frameworks/proto_logging, so it has no generated
+ * {@link com.android.server.telecom.TelecomStatsLog} constants; it uses an id from the range
+ * statsd reserves for OEM atoms instead.
+ */
+public class CallLatencyStats extends TelecomPulledAtom {
+    public static final int INCOMING_CALL_LATENCY_STATS = 100001;
+
+    /** The ConnectionService reported the incoming connection as created. */
+    public static final int MILESTONE_CONNECTION_CREATED = 1;
+    /** Incoming call filtering started. */
+    public static final int MILESTONE_FILTERING_STARTED = 2;
+    /** Incoming call filtering completed, or was skipped. */
+    public static final int MILESTONE_FILTERING_COMPLETED = 3;
+    /** The ringtone started playing. */
+    public static final int MILESTONE_RINGER_STARTED = 4;
+    /** The call was first sent to an InCallService. */
+    public static final int MILESTONE_IN_CALL_SERVICE_ADDED = 5;
+    /** The user answered the call. */
+    public static final int MILESTONE_ANSWERED = 6;
+    /** How long a single call filter took, rather than an offset from the start of the call. */
+    public static final int MILESTONE_FILTER = 7;
+
+    private static final String TAG = CallLatencyStats.class.getSimpleName();
+    private static final String FILE_NAME = "call_latency_stats";
+    // Latencies of 2^18 ms (about 4 minutes) and more share the last bucket.
+    private static final int NUM_BUCKETS = 20;
+    private Map<CallLatencyStatsKey, LogScaleHistogram> mCallLatencyStatsMap;
+
+    public CallLatencyStats(@NonNull Context context, @NonNull Looper looper) {
+        super(context, looper);
+    }
+
+    public CallLatencyStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public int getTag() {
+        return INCOMING_CALL_LATENCY_STATS;
+    }
+
+    @Override
+    protected String getFileName() {
+        return FILE_NAME;
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized int onPull(final List<StatsEvent> data) {
+        if (mPulledAtoms.incomingCallLatencyStats.length != 0) {
+            Arrays.stream(mPulledAtoms.incomingCallLatencyStats).forEach(v -> {
+                LogScaleHistogram histogram = toHistogram(v);
+                data.add(StatsEvent.newBuilder()
+                        .setAtomId(getTag())
+                        .writeInt(v.getMilestone())
+                        .writeString(v.getFilter())
+                        .writeLong(histogram.getCount())
+                        .writeLong(histogram.getPercentile(50))
+                        .writeLong(histogram.getPercentile(95))
+                        .writeLong(histogram.getPercentile(99))
+                        .writeLong(histogram.getMax())
+                        .usePooledBuffer()
+                        .build());
+            });
+            mCallLatencyStatsMap.clear();
+            onAggregate();
+            return StatsManager.PULL_SUCCESS;
+        } else {
+            return StatsManager.PULL_SKIP;
+        }
+    }
+
+    @Override
+    protected synchronized void onLoad() {
+        if (mPulledAtoms.incomingCallLatencyStats != null) {
+            mCallLatencyStatsMap = new HashMap<>();
+            for (PulledAtomsClass.IncomingCallLatencyStats v
+                    : mPulledAtoms.incomingCallLatencyStats) {
+                mCallLatencyStatsMap.put(new CallLatencyStatsKey(v.getMilestone(), v.getFilter()),
+                        toHistogram(v));
+            }
+            mLastPulledTimestamps = mPulledAtoms.getIncomingCallLatencyStatsPullTimestampMillis();
+        }
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
+    @Override
+    public synchronized void onAggregate() {
+        Log.d(TAG, "onAggregate: %s", mCallLatencyStatsMap);
+        clearAtoms();
+        if (mCallLatencyStatsMap.isEmpty()) {
+            return;
+        }
+        mPulledAtoms.setIncomingCallLatencyStatsPullTimestampMillis(mLastPulledTimestamps);
+        mPulledAtoms.incomingCallLatencyStats =
+                new PulledAtomsClass.IncomingCallLatencyStats[mCallLatencyStatsMap.size()];
+        int[] index = new int[1];
+        mCallLatencyStatsMap.forEach((k, v) -> {
+            PulledAtomsClass.IncomingCallLatencyStats stats =
+                    new PulledAtomsClass.IncomingCallLatencyStats();
+            stats.setMilestone(k.mMilestone);
+            stats.setFilter(k.mFilter);
+            stats.setCount(v.getCount());
+            stats.setSumMs(v.getSum());
+            stats.setMaxMs(v.getMax());
+            stats.bucketCounts = new long[v.getNumBuckets()];
+            for (int i = 0; i < stats.bucketCounts.length; i++) {
+                stats.bucketCounts[i] = v.getBucketCount(i);
+            }
+            mPulledAtoms.incomingCallLatencyStats[index[0]++] = stats;
+        });
+        save(DELAY_FOR_PERSISTENT_MILLIS);
+    }
+
+    @VisibleForTesting
+    public void log(int milestone, String filter, long latencyMillis) {
+        post(() -> {
+            onLog(milestone, filter, latencyMillis);
+            onAggregate();
+        });
+    }
+
+    /**
+     * Records the milestones the given call reached, if it was an incoming call being tracked.
+     */
+    public void onCallEnd(Call call) {
+        CallLatencyTimeline timeline = call.getLatencyTimeline();
+        if (timeline == null) {
+            return;
+        }
+        post(() -> {
+            for (int milestone = MILESTONE_CONNECTION_CREATED; milestone < MILESTONE_FILTER;
+                    milestone++) {
+                long latencyMillis = timeline.getMilestoneMillis(milestone);
+                if (latencyMillis >= 0) {
+                    onLog(milestone, "", latencyMillis);
+                }
+            }
+            timeline.getFilterMillis().forEach((filter, latencyMillis) ->
+                    onLog(MILESTONE_FILTER, filter, latencyMillis));
+            onAggregate();
+        });
+    }
+
+    private void onLog(int milestone, String filter, long latencyMillis) {
+        mCallLatencyStatsMap.computeIfAbsent(new CallLatencyStatsKey(milestone, filter),
+                k -> new LogScaleHistogram(NUM_BUCKETS)).record(latencyMillis);
+    }
+
+    private static LogScaleHistogram toHistogram(PulledAtomsClass.IncomingCallLatencyStats v) {
+        LogScaleHistogram histogram = new LogScaleHistogram(NUM_BUCKETS);
+        histogram.add(v.bucketCounts, v.getSumMs(), v.getMaxMs());
+        return histogram;
+    }
+
+    static class CallLatencyStatsKey {
+        final int mMilestone;
+        final String mFilter;
+
+        CallLatencyStatsKey(int milestone, String filter) {
+            mMilestone = milestone;
+            mFilter = filter;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof CallLatencyStatsKey obj)) {
+                return false;
+            }
+            return this.mMilestone == obj.mMilestone && Objects.equals(this.mFilter, obj.mFilter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mMilestone, mFilter);
+        }
+
+        @Override
+        public String toString() {
+            return "[CallLatencyStatsKey: mMilestone=" + mMilestone + ", mFilter=" + mFilter + "]";
+        }
+    }
+}
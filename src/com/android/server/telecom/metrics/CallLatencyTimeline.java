@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.metrics;
+
+import android.util.ArrayMap;
+
+import java.util.Map;
+
+/**
+ * The milestones reached while setting up a single incoming call, as offsets from the time the
+ * call was reported to Telecom.  Milestones may be stamped from any thread; only the first stamp
+ * of each milestone counts.
+ */
+public class CallLatencyTimeline {
+    private final long mStartMillis;
+    private final long[] mMilestoneMillis = new long[CallLatencyStats.MILESTONE_FILTER - 1];
+    private final Map<String, Long> mFilterMillis = new ArrayMap<>();
+
+    /**
+     * @param startMillis The elapsed realtime the call was reported to Telecom.
+     */
+    public CallLatencyTimeline(long startMillis) {
+        mStartMillis = startMillis;
+        for (int i = 0; i < mMilestoneMillis.length; i++) {
+            mMilestoneMillis[i] = -1;
+        }
+    }
+
+    /**
+     * @param milestone One of the {@code CallLatencyStats.MILESTONE_*} values, other than
+     *                  {@link CallLatencyStats#MILESTONE_FILTER}.
+     * @param nowMillis The current elapsed realtime.
+     */
+    public synchronized void mark(int milestone, long nowMillis) {
+        int index = milestone - 1;
+        if (index >= 0 && index < mMilestoneMillis.length && mMilestoneMillis[index] < 0) {
+            mMilestoneMillis[index] = Math.max(0, nowMillis - mStartMillis);
+        }
+    }
+
+    /**
+     * @param filterName The name of the call filter, see
+     *                   {@link com.android.server.telecom.callfiltering.CallFilter#getName()}.
+     * @param durationMillis How long the filter took to produce its result.
+     */
+    public synchronized void markFilter(String filterName, long durationMillis) {
+        mFilterMillis.putIfAbsent(filterName, Math.max(0, durationMillis));
+    }
+
+    /**
+     * @return The offset of the given milestone from the start of the call, or -1 if the call
+     * did not reach it.
+     */
+    public synchronized long getMilestoneMillis(int milestone) {
+        int index = milestone - 1;
+        return index >= 0 && index < mMilestoneMillis.length ? mMilestoneMillis[index] : -1;
+    }
+
+    /**
+     * @return How long each call filter took, keyed by the filter name.
+     */
+    public synchronized Map<String, Long> getFilterMillis() {
+        return new ArrayMap<>(mFilterMillis);
+    }
+}
@@ -27,6 +27,7 @@ import static com.android.server.telecom.TelecomStatsLog.CALL_STATS__CALL_DIRECT
 import static com.android.server.telecom.TelecomStatsLog.CALL_STATS__CALL_DIRECTION__DIR_UNKNOWN;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.StatsManager;
 import android.content.Context;
 import android.os.Looper;
@@ -61,6 +62,11 @@ public class CallStats extends TelecomPulledAtom {
         super(context, looper);
     }
 
+    public CallStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     @Override
     public int getTag() {
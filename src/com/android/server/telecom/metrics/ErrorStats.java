@@ -20,6 +20,7 @@ import static com.android.server.telecom.TelecomStatsLog.TELECOM_ERROR_STATS;
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.StatsManager;
 import android.content.Context;
 import android.os.Looper;
@@ -122,6 +123,11 @@ public class ErrorStats extends TelecomPulledAtom {
         super(context, looper);
     }
 
+    public ErrorStats(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
+        super(context, looper, store);
+    }
+
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     @Override
     public int getTag() {
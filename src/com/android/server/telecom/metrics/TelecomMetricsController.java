@@ -43,12 +43,14 @@ public class TelecomMetricsController implements StatsManager.StatsPullAtomCallb
 
     private final Context mContext;
     private final HandlerThread mHandlerThread;
+    private final TelecomMetricsStore mStore;
     private final ConcurrentHashMap<Integer, TelecomPulledAtom> mStats = new ConcurrentHashMap<>();
 
     private TelecomMetricsController(@NonNull Context context,
                                      @NonNull HandlerThread handlerThread) {
         mContext = context;
         mHandlerThread = handlerThread;
+        mStore = new TelecomMetricsStore(context, handlerThread.getLooper());
     }
 
     @NonNull
@@ -69,11 +71,45 @@ public class TelecomMetricsController implements StatsManager.StatsPullAtomCallb
         return new TelecomMetricsController(context, handlerThread);
     }
 
+    @NonNull
+    public ApiLatencyStats getApiLatencyStats() {
+        ApiLatencyStats stats = (ApiLatencyStats) mStats.get(
+                ApiLatencyStats.TELECOM_API_LATENCY_STATS);
+        if (stats == null) {
+            stats = new ApiLatencyStats(mContext, mHandlerThread.getLooper(), mStore);
+            registerAtom(stats.getTag(), stats);
+        }
+        return stats;
+    }
+
     @NonNull
     public ApiStats getApiStats() {
         ApiStats stats = (ApiStats) mStats.get(TELECOM_API_STATS);
         if (stats == null) {
-            stats = new ApiStats(mContext, mHandlerThread.getLooper());
+            stats = new ApiStats(mContext, mHandlerThread.getLooper(), mStore);
+            registerAtom(stats.getTag(), stats);
+        }
+        return stats;
+    }
+
+    @NonNull
+    public AudioRouteLatencyStats getAudioRouteLatencyStats() {
+        AudioRouteLatencyStats stats = (AudioRouteLatencyStats) mStats.get(
+                AudioRouteLatencyStats.CALL_AUDIO_ROUTE_LATENCY_STATS);
+        if (stats == null) {
+            stats = new AudioRouteLatencyStats(mContext, mHandlerThread.getLooper(), mStore);
+            registerAtom(stats.getTag(), stats);
+        }
+        return stats;
+    }
+
+    @NonNull
+    public AudioRoutePreActivationStats getAudioRoutePreActivationStats() {
+        AudioRoutePreActivationStats stats = (AudioRoutePreActivationStats) mStats.get(
+                AudioRoutePreActivationStats.CALL_AUDIO_ROUTE_PRE_ACTIVATION_STATS);
+        if (stats == null) {
+            stats = new AudioRoutePreActivationStats(mContext, mHandlerThread.getLooper(),
+                    mStore);
             registerAtom(stats.getTag(), stats);
         }
         return stats;
@@ -83,7 +119,19 @@ public class TelecomMetricsController implements StatsManager.StatsPullAtomCallb
     public AudioRouteStats getAudioRouteStats() {
         AudioRouteStats stats = (AudioRouteStats) mStats.get(CALL_AUDIO_ROUTE_STATS);
         if (stats == null) {
-            stats = new AudioRouteStats(mContext, mHandlerThread.getLooper());
+            stats = new AudioRouteStats(mContext, mHandlerThread.getLooper(), mStore);
+            stats.setLatencyStats(getAudioRouteLatencyStats());
+            registerAtom(stats.getTag(), stats);
+        }
+        return stats;
+    }
+
+    @NonNull
+    public CallLatencyStats getCallLatencyStats() {
+        CallLatencyStats stats = (CallLatencyStats) mStats.get(
+                CallLatencyStats.INCOMING_CALL_LATENCY_STATS);
+        if (stats == null) {
+            stats = new CallLatencyStats(mContext, mHandlerThread.getLooper(), mStore);
             registerAtom(stats.getTag(), stats);
         }
         return stats;
@@ -93,7 +141,7 @@ public class TelecomMetricsController implements StatsManager.StatsPullAtomCallb
     public CallStats getCallStats() {
         CallStats stats = (CallStats) mStats.get(CALL_STATS);
         if (stats == null) {
-            stats = new CallStats(mContext, mHandlerThread.getLooper());
+            stats = new CallStats(mContext, mHandlerThread.getLooper(), mStore);
             registerAtom(stats.getTag(), stats);
         }
         return stats;
@@ -103,7 +151,7 @@ public class TelecomMetricsController implements StatsManager.StatsPullAtomCallb
     public ErrorStats getErrorStats() {
         ErrorStats stats = (ErrorStats) mStats.get(TELECOM_ERROR_STATS);
         if (stats == null) {
-            stats = new ErrorStats(mContext, mHandlerThread.getLooper());
+            stats = new ErrorStats(mContext, mHandlerThread.getLooper(), mStore);
             registerAtom(stats.getTag(), stats);
         }
         return stats;
@@ -142,6 +190,8 @@ public class TelecomMetricsController implements StatsManager.StatsPullAtomCallb
         }
 
         mStats.clear();
+        // Write the pending changes before the thread quits.
+        mStore.flush();
         mHandlerThread.quitSafely();
     }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.metrics;
+
+import android.annotation.NonNull;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.telecom.Log;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.AtomicFile;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.server.telecom.nano.PulledAtomsClass.PulledAtoms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists the {@link PulledAtoms} of every {@link TelecomPulledAtom} in a single file.
+ * <p>
+ * The file holds one section per atom, the serialized {@link PulledAtoms} of that atom.  The
+ * sections are cached, so a write only serializes the atoms which changed since the last one;
+ * writes are delayed so that the changes of all atoms in that window share a single write, and go
+ * through {@link AtomicFile} so a crash cannot leave a partially written file behind.  The file
+ * is only written on the thread of the store; each write is a versioned snapshot, so an older
+ * snapshot never replaces a newer one.
+ * <p>
+ * Atoms used to have a file each; those are read when the store has no section for the atom yet,
+ * and deleted once their content made it into the store.
+ */
+public class TelecomMetricsStore extends Handler {
+    private static final String TAG = TelecomMetricsStore.class.getSimpleName();
+    private static final String FILE_NAME = "telecom_metrics";
+    private static final int FILE_VERSION = 1;
+    private static final int EVENT_WRITE = 1;
+
+    private final Context mContext;
+    // The serialized atoms, keyed by the atom tag.
+    private final Map<Integer, byte[]> mSections = new ArrayMap<>();
+    // The atoms which changed since the last write, keyed by the atom tag.
+    private final Map<Integer, TelecomPulledAtom> mDirtyAtoms = new ArrayMap<>();
+    private final Set<String> mLegacyFileNames = new ArraySet<>();
+    private boolean mIsRead;
+    // Incremented for every snapshot of the sections.
+    private long mSnapshotVersion;
+    // Serializes the file writes, separately from the lock of the store.
+    private final Object mWriteLock = new Object();
+    // The version of the snapshot last written; guarded by mWriteLock.
+    private long mWrittenVersion;
+
+    public TelecomMetricsStore(@NonNull Context context, @NonNull Looper looper) {
+        super(looper);
+        mContext = context;
+    }
+
+    /**
+     * @param tag The tag of the atom.
+     * @param legacyFileName The file the atom was persisted to before it used the store.
+     * @return The persisted atoms, or empty atoms if nothing was persisted.
+     */
+    @NonNull
+    public synchronized PulledAtoms load(int tag, @NonNull String legacyFileName) {
+        readSectionsIfNeeded();
+        byte[] section = mSections.get(tag);
+        if (section == null) {
+            section = readLegacyFile(legacyFileName);
+            if (section != null) {
+                mSections.put(tag, section);
+                mLegacyFileNames.add(legacyFileName);
+            }
+        }
+        if (section != null) {
+            try {
+                return PulledAtoms.parseFrom(section);
+            } catch (IOException e) {
+                Log.e(TAG, e, "cannot parse the atoms of %d", tag);
+                mSections.remove(tag);
+            }
+        }
+        return new PulledAtoms();
+    }
+
+    /**
+     * Notes that the atoms of the given atom changed, and schedules a write.
+     *
+     * @param delayMillis How long to wait before writing; 0 to write as soon as possible.
+     */
+    public void markDirty(@NonNull TelecomPulledAtom atom, int delayMillis) {
+        synchronized (this) {
+            mDirtyAtoms.put(atom.getTag(), atom);
+        }
+        if (delayMillis > 0) {
+            if (!hasMessages(EVENT_WRITE)) {
+                sendMessageDelayed(obtainMessage(EVENT_WRITE), delayMillis);
+            }
+        } else if (getLooper().isCurrentThread()) {
+            write();
+        } else {
+            // The file is only written on the metrics thread, never on the caller's.
+            removeMessages(EVENT_WRITE);
+            sendMessageAtFrontOfQueue(obtainMessage(EVENT_WRITE));
+        }
+    }
+
+    /**
+     * Writes the pending changes once the messages already due have been handled.
+     */
+    public void flush() {
+        removeMessages(EVENT_WRITE);
+        sendMessage(obtainMessage(EVENT_WRITE));
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        if (msg.what == EVENT_WRITE) {
+            write();
+        }
+    }
+
+    @VisibleForTesting
+    public void write() {
+        Snapshot snapshot = takeSnapshot();
+        if (snapshot != null) {
+            writeSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Serializes the sections, including the atoms which changed since the last snapshot.  Only
+     * this step holds the lock of the store, so {@link #markDirty} is never blocked on file I/O.
+     */
+    private Snapshot takeSnapshot() {
+        Map<Integer, TelecomPulledAtom> dirtyAtoms;
+        synchronized (this) {
+            dirtyAtoms = new ArrayMap<>(mDirtyAtoms);
+            mDirtyAtoms.clear();
+        }
+        // Serialize outside of the lock of the store; the atoms call markDirty() with their own
+        // lock held.
+        Map<Integer, byte[]> changedSections = new ArrayMap<>(dirtyAtoms.size());
+        dirtyAtoms.forEach((tag, atom) -> changedSections.put(tag, atom.toByteArray()));
+
+        synchronized (this) {
+            readSectionsIfNeeded();
+            mSections.putAll(changedSections);
+            Log.d(TAG, "write: %d of %d sections changed", changedSections.size(),
+                    mSections.size());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(FILE_VERSION);
+                out.writeInt(mSections.size());
+                for (Map.Entry<Integer, byte[]> section : mSections.entrySet()) {
+                    out.writeInt(section.getKey());
+                    out.writeInt(section.getValue().length);
+                    out.write(section.getValue());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, e, "cannot serialize the metrics");
+                return null;
+            }
+            Snapshot snapshot = new Snapshot(++mSnapshotVersion, bytes.toByteArray(),
+                    new ArraySet<>(mLegacyFileNames));
+            mLegacyFileNames.clear();
+            return snapshot;
+        }
+    }
+
+    private void writeSnapshot(@NonNull Snapshot snapshot) {
+        synchronized (mWriteLock) {
+            if (snapshot.version <= mWrittenVersion) {
+                // A newer snapshot made it to the file first; it already has these changes.
+                Log.d(TAG, "write: skip snapshot %d, %d is written", snapshot.version,
+                        mWrittenVersion);
+                return;
+            }
+            AtomicFile file = getFile();
+            if (file == null) {
+                return;
+            }
+            FileOutputStream stream = null;
+            try {
+                stream = file.startWrite();
+                stream.write(snapshot.bytes);
+                file.finishWrite(stream);
+            } catch (IOException e) {
+                Log.e(TAG, e, "cannot write the metrics");
+                file.failWrite(stream);
+                synchronized (this) {
+                    mLegacyFileNames.addAll(snapshot.legacyFileNames);
+                }
+                return;
+            }
+            mWrittenVersion = snapshot.version;
+            for (String legacyFileName : snapshot.legacyFileNames) {
+                File legacyFile = mContext.getFileStreamPath(legacyFileName);
+                if (legacyFile != null && !legacyFile.delete()) {
+                    Log.w(TAG, "cannot delete %s", legacyFileName);
+                }
+            }
+        }
+    }
+
+    private void readSectionsIfNeeded() {
+        if (mIsRead) {
+            return;
+        }
+        mIsRead = true;
+        AtomicFile file = getFile();
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(file.readFully()))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                Log.w(TAG, "unknown version %d", version);
+                return;
+            }
+            int numSections = in.readInt();
+            for (int i = 0; i < numSections; i++) {
+                int tag = in.readInt();
+                byte[] section = new byte[in.readInt()];
+                in.readFully(section);
+                mSections.put(tag, section);
+            }
+        } catch (IOException | NegativeArraySizeException e) {
+            Log.e(TAG, e, "cannot read the metrics");
+            mSections.clear();
+        }
+    }
+
+    private byte[] readLegacyFile(String fileName) {
+        try {
+            File file = mContext.getFileStreamPath(fileName);
+            if (file == null || !file.exists()) {
+                return null;
+            }
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            Log.e(TAG, e, "cannot read %s", fileName);
+            return null;
+        }
+    }
+
+    /**
+     * The serialized content of the file at a point in time.
+     */
+    private static class Snapshot {
+        final long version;
+        final byte[] bytes;
+        // The legacy files whose content is part of the snapshot.
+        final Set<String> legacyFileNames;
+
+        Snapshot(long version, byte[] bytes, Set<String> legacyFileNames) {
+            this.version = version;
+            this.bytes = bytes;
+            this.legacyFileNames = legacyFileNames;
+        }
+    }
+
+    private AtomicFile getFile() {
+        File file = mContext.getFileStreamPath(FILE_NAME);
+        return file == null ? null : new AtomicFile(file);
+    }
+}
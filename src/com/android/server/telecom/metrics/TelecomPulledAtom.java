@@ -17,6 +17,7 @@
 package com.android.server.telecom.metrics;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.StatsManager;
 import android.content.Context;
 import android.os.Handler;
@@ -45,14 +46,23 @@ public abstract class TelecomPulledAtom extends Handler {
     private static final long MIN_PULL_INTERVAL_MILLIS = 23L * 60 * 60 * 1000;
     private static final int EVENT_SAVE = 1;
     protected final Context mContext;
+    // Persists the atoms; null if the atom persists them to its own file.
+    @Nullable
+    private final TelecomMetricsStore mStore;
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     public PulledAtoms mPulledAtoms;
     protected long mLastPulledTimestamps;
 
     protected TelecomPulledAtom(@NonNull Context context, @NonNull Looper looper) {
+        this(context, looper, null);
+    }
+
+    protected TelecomPulledAtom(@NonNull Context context, @NonNull Looper looper,
+            @Nullable TelecomMetricsStore store) {
         super(looper);
         mContext = context;
-        mPulledAtoms = loadAtomsFromFile();
+        mStore = store;
+        mPulledAtoms = store != null ? store.load(getTag(), getFileName()) : loadAtomsFromFile();
         onLoad();
     }
 
@@ -82,6 +92,13 @@ public abstract class TelecomPulledAtom extends Handler {
 
     protected abstract String getFileName();
 
+    /**
+     * Called before the atoms are written to the file, so subclasses which aggregate lazily can
+     * bring {@link #mPulledAtoms} up to date.
+     */
+    protected void onPrepareSave() {
+    }
+
     private synchronized PulledAtoms loadAtomsFromFile() {
         try {
             return
@@ -99,11 +116,19 @@ public abstract class TelecomPulledAtom extends Handler {
         mPulledAtoms = makeNewPulledAtoms();
     }
 
+    /**
+     * @return The serialized atoms, brought up to date by {@link #onPrepareSave()}.
+     */
+    synchronized byte[] toByteArray() {
+        onPrepareSave();
+        return PulledAtoms.toByteArray(mPulledAtoms);
+    }
+
     private synchronized void onSave() {
         try (FileOutputStream stream = mContext.openFileOutput(getFileName(),
                 Context.MODE_PRIVATE)) {
             Log.d(TAG, "save " + getTag());
-            stream.write(PulledAtoms.toByteArray(mPulledAtoms));
+            stream.write(toByteArray());
         } catch (IOException e) {
             Log.e(TAG, e, "cannot save the atom to file");
         } catch (UnsupportedOperationException e) {
@@ -117,7 +142,9 @@ public abstract class TelecomPulledAtom extends Handler {
 
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     public void save(int delayMillis) {
-        if (delayMillis > 0) {
+        if (mStore != null) {
+            mStore.markDirty(this, delayMillis);
+        } else if (delayMillis > 0) {
             if (!hasMessages(EVENT_SAVE)) {
                 sendMessageDelayed(obtainMessage(EVENT_SAVE), delayMillis);
             }
@@ -35,6 +35,7 @@ import android.widget.Toast;
 
 import com.android.server.telecom.R;
 import com.android.server.telecom.SystemSettingsUtil;
+import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
 import com.android.server.telecom.flags.FeatureFlags;
 import com.android.server.telecom.ui.NotificationChannelManager;
 
@@ -175,5 +176,6 @@ public final class BlockedNumbersUtil {
         } else {
             BlockedNumberContract.SystemContract.setEnhancedBlockSetting(context, key, value);
         }
+        BlockCheckerAdapter.invalidateBlockStatusCache();
     }
 }
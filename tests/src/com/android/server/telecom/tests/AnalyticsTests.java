@@ -305,6 +305,31 @@ public class AnalyticsTests extends TelecomSystemTest {
         }
     }
 
+    @SmallTest
+    @Test
+    public void testAnalyticsEvictsOldestCalls() throws Exception {
+        Analytics.reset();
+        int numCalls = Analytics.MAX_NUM_CALLS_TO_STORE + 5;
+        for (int i = 0; i < numCalls; i++) {
+            Analytics.initiateCallAnalytics("TC@" + i, Analytics.OUTGOING_DIRECTION);
+        }
+
+        Map<String, Analytics.CallInfoImpl> analyticsMap = Analytics.cloneData();
+        assertEquals(Analytics.MAX_NUM_CALLS_TO_STORE, analyticsMap.size());
+        for (int i = 0; i < numCalls - Analytics.MAX_NUM_CALLS_TO_STORE; i++) {
+            assertFalse(analyticsMap.containsKey("TC@" + i));
+        }
+        assertTrue(analyticsMap.containsKey("TC@" + (numCalls - 1)));
+
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        Analytics.dumpToEncodedProto(mContext, pw, new String[]{});
+        TelecomLogClass.TelecomLog analyticsProto =
+                TelecomLogClass.TelecomLog.parseFrom(Base64.decode(sw.toString(), Base64.DEFAULT));
+        assertEquals(Analytics.MAX_NUM_CALLS_TO_STORE, analyticsProto.callLogs.length);
+        Analytics.reset();
+    }
+
     @SmallTest
     @Test
     public void testAnalyticsLogSessionTiming() throws Exception {
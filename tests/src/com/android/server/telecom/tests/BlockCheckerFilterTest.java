@@ -94,7 +94,7 @@ public class BlockCheckerFilterTest extends TelecomTestCase {
     @SmallTest
     @Test
     public void testBlockNumber() throws Exception {
-        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class),
+        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class), eq(TEST_HANDLE.getScheme()),
                 eq(TEST_HANDLE.getSchemeSpecificPart()), anyInt(), anyBoolean()))
                 .thenReturn(STATUS_BLOCKED_IN_LIST);
 
@@ -106,7 +106,7 @@ public class BlockCheckerFilterTest extends TelecomTestCase {
     @SmallTest
     @Test
     public void testBlockNumberWhenEnhancedBlockingEnabled() throws Exception {
-        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class),
+        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class), eq(TEST_HANDLE.getScheme()),
                 eq(TEST_HANDLE.getSchemeSpecificPart()), anyInt(), anyBoolean()))
                 .thenReturn(STATUS_BLOCKED_IN_LIST);
 
@@ -120,7 +120,7 @@ public class BlockCheckerFilterTest extends TelecomTestCase {
     @SmallTest
     @Test
     public void testDontBlockNumber() throws Exception {
-        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class),
+        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class), eq(TEST_HANDLE.getScheme()),
                 eq(TEST_HANDLE.getSchemeSpecificPart()), anyInt(), anyBoolean()))
                 .thenReturn(STATUS_NOT_BLOCKED);
 
@@ -132,7 +132,7 @@ public class BlockCheckerFilterTest extends TelecomTestCase {
     @SmallTest
     @Test
     public void testDontBlockNumberWhenEnhancedBlockingEnabled() throws Exception {
-        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class),
+        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class), eq(TEST_HANDLE.getScheme()),
                 eq(TEST_HANDLE.getSchemeSpecificPart()), anyInt(), anyBoolean()))
                 .thenReturn(STATUS_NOT_BLOCKED);
 
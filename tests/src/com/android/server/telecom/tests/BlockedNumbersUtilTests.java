@@ -16,20 +16,29 @@
 
 package com.android.server.telecom.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.os.UserHandle;
+import android.provider.BlockedNumberContract;
+import android.provider.BlockedNumbersManager;
+import android.telecom.PhoneAccount;
+import android.telecom.TelecomManager;
 
 import androidx.test.filters.SmallTest;
 
+import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
 import com.android.server.telecom.settings.BlockedNumbersActivity;
 import com.android.server.telecom.settings.BlockedNumbersUtil;
 
@@ -44,6 +53,7 @@ public class BlockedNumbersUtilTests extends TelecomTestCase {
     @Before
     public void setUp() throws Exception {
         super.setUp();
+        BlockCheckerAdapter.invalidateBlockStatusCache();
     }
 
     @SmallTest
@@ -74,4 +84,106 @@ public class BlockedNumbersUtilTests extends TelecomTestCase {
                 .thenThrow(new UnsupportedOperationException("Bee boop"));
         assertFalse(BlockedNumbersActivity.isEmergencyNumber(mContext, "911"));
     }
+
+    /**
+     * Verify that repeated block checks for the same number are answered from the cache, and
+     * that changing an enhanced call blocking setting drops the cached decisions.
+     */
+    @SmallTest
+    @Test
+    public void testBlockStatusCachedUntilSettingChanges() {
+        when(mFeatureFlags.telecomMainlineBlockedNumbersManager()).thenReturn(true);
+        BlockedNumbersManager blockedNumbersManager =
+                mContext.getSystemService(BlockedNumbersManager.class);
+        when(blockedNumbersManager.shouldSystemBlockNumber(anyString(), anyInt(), anyBoolean()))
+                .thenReturn(BlockedNumberContract.STATUS_BLOCKED_IN_LIST);
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(mFeatureFlags);
+
+        assertEquals(BlockedNumberContract.STATUS_BLOCKED_IN_LIST, adapter.getBlockStatus(
+                mContext, "650-555-1212", TelecomManager.PRESENTATION_ALLOWED, false));
+        assertEquals(BlockedNumberContract.STATUS_BLOCKED_IN_LIST, adapter.getBlockStatus(
+                mContext, "6505551212", TelecomManager.PRESENTATION_ALLOWED, false));
+        verify(blockedNumbersManager, times(1)).shouldSystemBlockNumber(anyString(), anyInt(),
+                anyBoolean());
+
+        BlockedNumbersUtil.setBlockedNumberSetting(mContext,
+                BlockedNumbersManager.ENHANCED_SETTING_KEY_BLOCK_UNREGISTERED, true, mFeatureFlags);
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_ALLOWED, false);
+        verify(blockedNumbersManager, times(2)).shouldSystemBlockNumber(anyString(), anyInt(),
+                anyBoolean());
+    }
+
+    /**
+     * Verify that decisions for empty numbers are not cached, since they depend on the enhanced
+     * blocking settings rather than on who is calling.
+     */
+    @SmallTest
+    @Test
+    public void testBlockStatusNotCachedForEmptyNumbers() {
+        when(mFeatureFlags.telecomMainlineBlockedNumbersManager()).thenReturn(true);
+        BlockedNumbersManager blockedNumbersManager =
+                mContext.getSystemService(BlockedNumbersManager.class);
+        when(blockedNumbersManager.shouldSystemBlockNumber(any(), anyInt(), anyBoolean()))
+                .thenReturn(BlockedNumberContract.STATUS_BLOCKED_RESTRICTED);
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(mFeatureFlags);
+
+        adapter.getBlockStatus(mContext, "", TelecomManager.PRESENTATION_RESTRICTED, false);
+        adapter.getBlockStatus(mContext, "", TelecomManager.PRESENTATION_RESTRICTED, false);
+        adapter.getBlockStatus(mContext, null, TelecomManager.PRESENTATION_ALLOWED, false);
+        adapter.getBlockStatus(mContext, null, TelecomManager.PRESENTATION_ALLOWED, false);
+        verify(blockedNumbersManager, times(4)).shouldSystemBlockNumber(any(), anyInt(),
+                anyBoolean());
+
+        // The same number with another presentation gets a decision of its own.
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_PAYPHONE,
+                false);
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_PAYPHONE,
+                false);
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_ALLOWED,
+                false);
+        verify(blockedNumbersManager, times(6)).shouldSystemBlockNumber(any(), anyInt(),
+                anyBoolean());
+    }
+
+    /**
+     * Verify that decisions are cached when enhanced call blocking is off, in which case the
+     * filter passes no presentation.
+     */
+    @SmallTest
+    @Test
+    public void testBlockStatusCachedWhenEnhancedBlockingDisabled() {
+        when(mFeatureFlags.telecomMainlineBlockedNumbersManager()).thenReturn(true);
+        BlockedNumbersManager blockedNumbersManager =
+                mContext.getSystemService(BlockedNumbersManager.class);
+        when(blockedNumbersManager.shouldSystemBlockNumber(anyString(), anyInt(), anyBoolean()))
+                .thenReturn(BlockedNumberContract.STATUS_NOT_BLOCKED);
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(mFeatureFlags);
+
+        adapter.getBlockStatus(mContext, PhoneAccount.SCHEME_TEL, "6505551212", 0, false);
+        adapter.getBlockStatus(mContext, PhoneAccount.SCHEME_TEL, "6505551212", 0, false);
+        verify(blockedNumbersManager, times(1)).shouldSystemBlockNumber(anyString(), anyInt(),
+                anyBoolean());
+    }
+
+    /**
+     * Verify that SIP addresses are not normalized like phone numbers, so addresses which only
+     * differ in letters or punctuation do not share a decision.
+     */
+    @SmallTest
+    @Test
+    public void testBlockStatusOfSipAddressesNotShared() {
+        when(mFeatureFlags.telecomMainlineBlockedNumbersManager()).thenReturn(true);
+        BlockedNumbersManager blockedNumbersManager =
+                mContext.getSystemService(BlockedNumbersManager.class);
+        when(blockedNumbersManager.shouldSystemBlockNumber(eq("bob@x.com"), anyInt(),
+                anyBoolean())).thenReturn(BlockedNumberContract.STATUS_BLOCKED_IN_LIST);
+        when(blockedNumbersManager.shouldSystemBlockNumber(eq("bob@w.com"), anyInt(),
+                anyBoolean())).thenReturn(BlockedNumberContract.STATUS_NOT_BLOCKED);
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(mFeatureFlags);
+
+        assertEquals(BlockedNumberContract.STATUS_BLOCKED_IN_LIST, adapter.getBlockStatus(
+                mContext, PhoneAccount.SCHEME_SIP, "bob@x.com", 0, false));
+        assertEquals(BlockedNumberContract.STATUS_NOT_BLOCKED, adapter.getBlockStatus(
+                mContext, PhoneAccount.SCHEME_SIP, "bob@w.com", 0, false));
+    }
 }
@@ -374,6 +374,36 @@ public class CallLogManagerTest extends TelecomTestCase {
         verifyNoInsertion();
     }
 
+    /**
+     * Verifies that calls which end together are each written to the call log.
+     */
+    @MediumTest
+    @Test
+    public void testLogCallsEndingTogether() {
+        when(mMockPhoneAccountRegistrar.getPhoneAccountUnchecked(any(PhoneAccountHandle.class)))
+                .thenReturn(makeFakePhoneAccount(mDefaultAccountHandle, 0 /* capabilities */));
+        for (int i = 0; i < 3; i++) {
+            Call fakeOutgoingCall = makeFakeCall(
+                    DisconnectCause.OTHER, // disconnectCauseCode
+                    false, // isConference
+                    false, // isIncoming
+                    1L, // creationTimeMillis
+                    1000L, // ageMillis
+                    TEL_PHONEHANDLE, // callHandle
+                    mDefaultAccountHandle, // phoneAccountHandle
+                    NO_VIDEO_STATE, // callVideoState
+                    POST_DIAL_STRING, // postDialDigits
+                    VIA_NUMBER_STRING, // viaNumber
+                    UserHandle.of(CURRENT_USER_ID)
+            );
+            mCallLogManager.onCallStateChanged(fakeOutgoingCall, CallState.ACTIVE,
+                    CallState.DISCONNECTED);
+        }
+        Uri uri = ContentProvider.maybeAddUserId(CallLog.Calls.CONTENT_URI, CURRENT_USER_ID);
+        verify(mContentProvider, timeout(TEST_TIMEOUT_MILLIS).times(3)).insert(eq(uri),
+                any(ContentValues.class));
+    }
+
     @MediumTest
     @Test
     public void testLogCallDirectionOutgoing() {
@@ -17,7 +17,10 @@
 package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -27,7 +30,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -59,6 +64,7 @@ import java.util.concurrent.CountDownLatch;
 @RunWith(JUnit4.class)
 public class CallerInfoLookupHelperTest extends TelecomTestCase {
     @Mock Context mContext;
+    @Mock ContentResolver mContentResolver;
     @Mock CallerInfoAsyncQueryFactory mFactory;
     @Mock ContactsAsyncHelper mContactsAsyncHelper;
     @Mock Drawable mDrawable2;
@@ -70,6 +76,7 @@ public class CallerInfoLookupHelperTest extends TelecomTestCase {
     CallerInfoLookupHelper mCallerInfoLookupHelper;
     static final Uri URI1 = Uri.parse("tel:555-555-7010");
     static final Uri URI2 = Uri.parse("tel:555-555-7016");
+    static final String TEST_NAME = "Test Contact";
 
     static final Uri CONTACTS_PHOTO_URI = Uri.parse(
             "android.resource://com.android.server.telecom.tests/"
@@ -81,6 +88,7 @@ public class CallerInfoLookupHelperTest extends TelecomTestCase {
     @Before
     public void setUp() throws Exception {
         super.setUp();
+        when(mContext.getContentResolver()).thenReturn(mContentResolver);
         mCallerInfoLookupHelper = new CallerInfoLookupHelper(mContext,
                 mFactory, mContactsAsyncHelper, new TelecomSystem.SyncRoot() { });
         when(mFactory.startQuery(anyInt(), eq(mContext), anyString(),
@@ -239,6 +247,100 @@ public class CallerInfoLookupHelperTest extends TelecomTestCase {
         verifyProperCleanup();
     }
 
+    @SmallTest
+    @Test
+    public void testCompletedLookupIsCachedUntilContactsChange() {
+        CallerInfoLookupHelper.OnQueryCompleteListener listener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        mCallerInfo2.setName(TEST_NAME);
+        mCallerInfoLookupHelper.startLookup(URI2, listener);
+        waitForActionCompletion();
+
+        ArgumentCaptor<CallerInfoAsyncQuery.OnQueryCompleteListener> queryListenerCaptor =
+                ArgumentCaptor.forClass(CallerInfoAsyncQuery.OnQueryCompleteListener.class);
+        ArgumentCaptor<Session> logSessionCaptor = ArgumentCaptor.forClass(Session.class);
+        verify(mFactory).startQuery(anyInt(), eq(mContext), eq(URI2.getSchemeSpecificPart()),
+                queryListenerCaptor.capture(), logSessionCaptor.capture());
+        queryListenerCaptor.getValue().onQueryComplete(
+                0, logSessionCaptor.getValue(), mCallerInfo2);
+        verifyProperCleanup();
+
+        // The same number, formatted differently, is answered from the cache.
+        Uri sameNumber = Uri.parse("tel:5555557016");
+        CallerInfoLookupHelper.OnQueryCompleteListener otherListener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        mCallerInfoLookupHelper.startLookup(sameNumber, otherListener);
+        ArgumentCaptor<CallerInfo> callerInfoCaptor = ArgumentCaptor.forClass(CallerInfo.class);
+        verify(otherListener).onCallerInfoQueryComplete(eq(sameNumber),
+                callerInfoCaptor.capture());
+        assertEquals(TEST_NAME, callerInfoCaptor.getValue().getName());
+        waitForActionCompletion();
+        verify(mFactory, times(1)).startQuery(anyInt(), eq(mContext), anyString(),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+
+        // Once the contacts change, the number is looked up again.
+        ArgumentCaptor<ContentObserver> observerCaptor =
+                ArgumentCaptor.forClass(ContentObserver.class);
+        verify(mContentResolver).registerContentObserver(any(Uri.class), anyBoolean(),
+                observerCaptor.capture(), anyInt());
+        observerCaptor.getValue().onChange(false);
+        mCallerInfoLookupHelper.startLookup(URI2, listener);
+        waitForActionCompletion();
+        verify(mFactory, times(2)).startQuery(anyInt(), eq(mContext), anyString(),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+    }
+
+    @SmallTest
+    @Test
+    public void testCachedLookupReturnsCopyWithoutPhoto() {
+        CallerInfoLookupHelper.OnQueryCompleteListener listener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        mCallerInfo1.setName(TEST_NAME);
+        mCallerInfo1.SetContactDisplayPhotoUri(CONTACTS_PHOTO_URI);
+        mCallerInfoLookupHelper.startLookup(URI1, listener);
+        waitForActionCompletion();
+
+        ArgumentCaptor<CallerInfoAsyncQuery.OnQueryCompleteListener> queryListenerCaptor =
+                ArgumentCaptor.forClass(CallerInfoAsyncQuery.OnQueryCompleteListener.class);
+        ArgumentCaptor<Session> logSessionCaptor = ArgumentCaptor.forClass(Session.class);
+        verify(mFactory).startQuery(anyInt(), eq(mContext), eq(URI1.getSchemeSpecificPart()),
+                queryListenerCaptor.capture(), logSessionCaptor.capture());
+        queryListenerCaptor.getValue().onQueryComplete(
+                0, logSessionCaptor.getValue(), mCallerInfo1);
+        waitForActionCompletion();
+        ArgumentCaptor<ContactsAsyncHelper.OnImageLoadCompleteListener> imageListenerCaptor =
+                ArgumentCaptor.forClass(ContactsAsyncHelper.OnImageLoadCompleteListener.class);
+        verify(mContactsAsyncHelper).startObtainPhotoAsync(anyInt(), eq(mContext),
+                eq(CONTACTS_PHOTO_URI), imageListenerCaptor.capture(), logSessionCaptor.capture());
+        imageListenerCaptor.getValue().onImageLoadComplete(0, mDrawable1, mBitmap,
+                logSessionCaptor.getValue());
+        verifyProperCleanup();
+
+        // A cache hit gets its own CallerInfo, without the photo of the first call.
+        CallerInfoLookupHelper.OnQueryCompleteListener otherListener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        mCallerInfoLookupHelper.startLookup(URI1, otherListener);
+        ArgumentCaptor<CallerInfo> callerInfoCaptor = ArgumentCaptor.forClass(CallerInfo.class);
+        verify(otherListener).onCallerInfoQueryComplete(eq(URI1), callerInfoCaptor.capture());
+        CallerInfo copy = callerInfoCaptor.getValue();
+        assertNotSame(mCallerInfo1, copy);
+        assertEquals(TEST_NAME, copy.getName());
+        assertNull(copy.cachedPhoto);
+        verify(mFactory, times(1)).startQuery(anyInt(), eq(mContext), anyString(),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+
+        // The photo is loaded again, through the photo cache, for the copy.
+        waitForActionCompletion();
+        verify(mContactsAsyncHelper, times(2)).startObtainPhotoAsync(anyInt(), eq(mContext),
+                eq(CONTACTS_PHOTO_URI), imageListenerCaptor.capture(), logSessionCaptor.capture());
+        imageListenerCaptor.getValue().onImageLoadComplete(0, mDrawable2, mBitmap,
+                logSessionCaptor.getValue());
+        verify(otherListener).onContactPhotoQueryComplete(URI1, copy);
+        assertEquals(mDrawable2, copy.cachedPhoto);
+        assertEquals(mDrawable1, mCallerInfo1.cachedPhoto);
+        verifyProperCleanup();
+    }
+
     private void verifyProperCleanup() {
         assertEquals(0, mCallerInfoLookupHelper.getCallerInfoEntries().size());
     }
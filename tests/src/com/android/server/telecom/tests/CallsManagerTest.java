@@ -67,6 +67,7 @@ import android.os.ResultReceiver;
 import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.provider.BlockedNumberContract;
 import android.provider.BlockedNumbersManager;
 import android.telecom.CallException;
 import android.telecom.CallScreeningService;
@@ -133,10 +134,12 @@ import com.android.server.telecom.WiredHeadsetManager;
 import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
 import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
+import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
 import com.android.server.telecom.callfiltering.BlockedNumbersAdapter;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.flags.FeatureFlags;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
+import com.android.server.telecom.metrics.CallLatencyStats;
 import com.android.server.telecom.metrics.TelecomMetricsController;
 import com.android.server.telecom.ui.AudioProcessingNotification;
 import com.android.server.telecom.ui.CallStreamingNotification;
@@ -1107,7 +1110,7 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testDuplicateAnswerCall() {
         Call incomingCall = addSpyCall(CallState.RINGING);
         doAnswer(invocation -> {
-            doReturn(CallState.ANSWERED).when(incomingCall).getState();
+            setSpyCallState(incomingCall, CallState.ANSWERED);
             return null;
         }).when(incomingCall).answer(anyInt());
         mCallsManager.answerCall(incomingCall, VideoProfile.STATE_AUDIO_ONLY);
@@ -1210,15 +1213,15 @@ public class CallsManagerTest extends TelecomTestCase {
         Call ongoingCall = addSpyCall(SIM_1_HANDLE, CallState.ACTIVE);
         doReturn(false).when(ongoingCall).can(Connection.CAPABILITY_HOLD);
         doReturn(true).when(ongoingCall).can(Connection.CAPABILITY_SUPPORT_HOLD);
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
         when(mConnectionSvrFocusMgr.getCurrentFocusCall()).thenReturn(ongoingCall);
 
         Call heldCall = addSpyCall(SIM_1_HANDLE, CallState.ON_HOLD);
-        doReturn(CallState.ON_HOLD).when(heldCall).getState();
+        setSpyCallState(heldCall, CallState.ON_HOLD);
 
         // and other held call has difference ConnectionService
         Call heldCall2 = addSpyCall(VOIP_1_HANDLE, CallState.ON_HOLD);
-        doReturn(CallState.ON_HOLD).when(heldCall2).getState();
+        setSpyCallState(heldCall2, CallState.ON_HOLD);
 
         // WHEN answer an incoming call which ConnectionService is connSvr1
         Call incomingCall = addSpyCall(SIM_1_HANDLE, CallState.RINGING);
@@ -1247,12 +1250,12 @@ public class CallsManagerTest extends TelecomTestCase {
         // Given an ongoing call on SIM1
         Call ongoingCall = addSpyCall(SIM_1_HANDLE, CallState.ACTIVE);
         doReturn(true).when(ongoingCall).can(Connection.CAPABILITY_SUPPORT_HOLD);
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
         when(mConnectionSvrFocusMgr.getCurrentFocusCall()).thenReturn(ongoingCall);
 
         // And a held call on SIM2, which belongs to the same ConnectionService
         Call heldCall = addSpyCall(SIM_2_HANDLE, CallState.ON_HOLD);
-        doReturn(CallState.ON_HOLD).when(heldCall).getState();
+        setSpyCallState(heldCall, CallState.ON_HOLD);
 
         // on answering an incoming call on SIM1, which belongs to the same ConnectionService
         Call incomingCall = addSpyCall(SIM_1_HANDLE, CallState.RINGING);
@@ -1276,12 +1279,12 @@ public class CallsManagerTest extends TelecomTestCase {
         // Given an ongoing call on SIM1
         Call ongoingCall = addSpyCall(SIM_1_HANDLE, CallState.ACTIVE);
         doReturn(true).when(ongoingCall).can(Connection.CAPABILITY_SUPPORT_HOLD);
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
         when(mConnectionSvrFocusMgr.getCurrentFocusCall()).thenReturn(ongoingCall);
 
         // And a held call on SIM1
         Call heldCall = addSpyCall(SIM_1_HANDLE, CallState.ON_HOLD);
-        doReturn(CallState.ON_HOLD).when(heldCall).getState();
+        setSpyCallState(heldCall, CallState.ON_HOLD);
 
         // on answering an incoming call on SIM2, which belongs to the same ConnectionService
         Call incomingCall = addSpyCall(SIM_2_HANDLE, CallState.RINGING);
@@ -1528,7 +1531,7 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testAcceptIncomingCallWhenHeadsetMediaButtonShortPress() {
         // GIVEN an incoming call
         Call incomingCall = addSpyCall();
-        doReturn(CallState.RINGING).when(incomingCall).getState();
+        setSpyCallState(incomingCall, CallState.RINGING);
 
         // WHEN media button short press
         mCallsManager.onMediaButton(HeadsetMediaButton.SHORT_PRESS);
@@ -1546,7 +1549,7 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testRejectIncomingCallWhenHeadsetMediaButtonLongPress() {
         // GIVEN an incoming call
         Call incomingCall = addSpyCall();
-        doReturn(CallState.RINGING).when(incomingCall).getState();
+        setSpyCallState(incomingCall, CallState.RINGING);
 
         // WHEN media button long press
         mCallsManager.onMediaButton(HeadsetMediaButton.LONG_PRESS);
@@ -1560,7 +1563,7 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testHangupOngoingCallWhenHeadsetMediaButtonShortPress() {
         // GIVEN an ongoing call
         Call ongoingCall = addSpyCall();
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
 
         // WHEN media button short press
         mCallsManager.onMediaButton(HeadsetMediaButton.SHORT_PRESS);
@@ -1574,7 +1577,7 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testToggleMuteWhenHeadsetMediaButtonLongPressDuringOngoingCall() {
         // GIVEN an ongoing call
         Call ongoingCall = addSpyCall();
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
 
         // WHEN media button long press
         mCallsManager.onMediaButton(HeadsetMediaButton.LONG_PRESS);
@@ -1589,14 +1592,14 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testSwapCallsWhenHeadsetMediaButtonShortPressDuringTwoCalls() {
         // GIVEN an ongoing call, and this call can be held
         Call ongoingCall = addSpyCall();
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
         doReturn(true).when(ongoingCall).can(Connection.CAPABILITY_HOLD);
         doReturn(true).when(ongoingCall).can(Connection.CAPABILITY_SUPPORT_HOLD);
         when(mConnectionSvrFocusMgr.getCurrentFocusCall()).thenReturn(ongoingCall);
 
         // and a held call
         Call heldCall = addSpyCall();
-        doReturn(CallState.ON_HOLD).when(heldCall).getState();
+        setSpyCallState(heldCall, CallState.ON_HOLD);
 
         // WHEN media button short press
         mCallsManager.onMediaButton(HeadsetMediaButton.SHORT_PRESS);
@@ -1614,11 +1617,11 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testHangupActiveCallWhenHeadsetMediaButtonLongPressDuringTwoCalls() {
         // GIVEN an ongoing call
         Call ongoingCall = addSpyCall();
-        doReturn(CallState.ACTIVE).when(ongoingCall).getState();
+        setSpyCallState(ongoingCall, CallState.ACTIVE);
 
         // and a held call
         Call heldCall = addSpyCall();
-        doReturn(CallState.ON_HOLD).when(heldCall).getState();
+        setSpyCallState(heldCall, CallState.ON_HOLD);
 
         // WHEN media button long press
         mCallsManager.onMediaButton(HeadsetMediaButton.LONG_PRESS);
@@ -1799,10 +1802,10 @@ public class CallsManagerTest extends TelecomTestCase {
         Call existingCall = addSpyCall(SIM_1_HANDLE, CallState.NEW);
         when(existingCall.isSelfManaged()).thenReturn(false);
 
-        when(existingCall.getState()).thenReturn(CallState.RINGING);
+        setSpyCallState(existingCall, CallState.RINGING);
         assertFalse(mCallsManager.isIncomingCallPermitted(SIM_1_HANDLE));
 
-        when(existingCall.getState()).thenReturn(CallState.ON_HOLD);
+        setSpyCallState(existingCall, CallState.ON_HOLD);
         assertFalse(mCallsManager.isIncomingCallPermitted(SIM_1_HANDLE));
     }
 
@@ -1821,7 +1824,7 @@ public class CallsManagerTest extends TelecomTestCase {
         when(existingCall.isSelfManaged()).thenReturn(true);
         assertFalse(mCallsManager.isIncomingCallPermitted(SELF_MANAGED_HANDLE));
 
-        when(existingCall.getState()).thenReturn(CallState.ACTIVE);
+        setSpyCallState(existingCall, CallState.ACTIVE);
         assertTrue(mCallsManager.isIncomingCallPermitted(SELF_MANAGED_HANDLE));
 
         // Add self managed calls up to 10
@@ -1846,16 +1849,16 @@ public class CallsManagerTest extends TelecomTestCase {
         Call existingCall = addSpyCall(SIM_1_HANDLE, CallState.NEW);
         when(existingCall.isSelfManaged()).thenReturn(false);
 
-        when(existingCall.getState()).thenReturn(CallState.CONNECTING);
+        setSpyCallState(existingCall, CallState.CONNECTING);
         assertFalse(mCallsManager.isOutgoingCallPermitted(SIM_1_HANDLE));
 
-        when(existingCall.getState()).thenReturn(CallState.DIALING);
+        setSpyCallState(existingCall, CallState.DIALING);
         assertFalse(mCallsManager.isOutgoingCallPermitted(SIM_1_HANDLE));
 
-        when(existingCall.getState()).thenReturn(CallState.ACTIVE);
+        setSpyCallState(existingCall, CallState.ACTIVE);
         assertFalse(mCallsManager.isOutgoingCallPermitted(SIM_1_HANDLE));
 
-        when(existingCall.getState()).thenReturn(CallState.ON_HOLD);
+        setSpyCallState(existingCall, CallState.ON_HOLD);
         assertFalse(mCallsManager.isOutgoingCallPermitted(SIM_1_HANDLE));
     }
 
@@ -2300,6 +2303,37 @@ public class CallsManagerTest extends TelecomTestCase {
         assertFalse(outgoingCall.getStartWithSpeakerphoneOn());
     }
 
+    /**
+     * Verifies that placing an emergency call drops cached block decisions before returning, so
+     * that a call back is checked against the block suppression rather than a stale entry.
+     */
+    @SmallTest
+    @Test
+    public void testPlaceEmergencyCallInvalidatesBlockStatusCache() throws Exception {
+        when(mFeatureFlags.telecomMainlineBlockedNumbersManager()).thenReturn(true);
+        BlockedNumbersManager blockedNumbersManager =
+                mContext.getSystemService(BlockedNumbersManager.class);
+        when(blockedNumbersManager.shouldSystemBlockNumber(anyString(), anyInt(), anyBoolean()))
+                .thenReturn(BlockedNumberContract.STATUS_BLOCKED_IN_LIST);
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(mFeatureFlags);
+        BlockCheckerAdapter.invalidateBlockStatusCache();
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_ALLOWED, false);
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_ALLOWED, false);
+        verify(blockedNumbersManager, times(1)).shouldSystemBlockNumber(anyString(), anyInt(),
+                anyBoolean());
+
+        Call outgoingCall = addSpyCall(CallState.NEW);
+        doReturn(true).when(outgoingCall).isEmergencyCall();
+        when(mPhoneAccountRegistrar.getPhoneAccount(
+                any(PhoneAccountHandle.class), any(UserHandle.class))).thenReturn(SIM_1_ACCOUNT);
+        mCallsManager.placeOutgoingCall(outgoingCall, TEST_ADDRESS, null, false,
+                VideoProfile.STATE_AUDIO_ONLY);
+
+        adapter.getBlockStatus(mContext, "6505551212", TelecomManager.PRESENTATION_ALLOWED, false);
+        verify(blockedNumbersManager, times(2)).shouldSystemBlockNumber(anyString(), anyInt(),
+                anyBoolean());
+    }
+
     /**
      * Verify that a parent call will inherit the connect time of its children.
      * @throws Exception
@@ -2531,6 +2565,82 @@ public class CallsManagerTest extends TelecomTestCase {
         verify(callSpy).setDisconnectCause(any(DisconnectCause.class));
     }
 
+    /**
+     * Verifies that call lookups honor the priority order of the requested states and the
+     * filters on the counted calls.
+     */
+    @SmallTest
+    @Test
+    public void testCallLookupsByState() {
+        Call activeCall = addSpyCall(SIM_1_HANDLE, CallState.ACTIVE);
+        Call heldCall = addSpyCall(SIM_2_HANDLE, CallState.ON_HOLD);
+
+        assertEquals(heldCall, mCallsManager.getFirstCallWithState(CallState.ON_HOLD,
+                CallState.ACTIVE));
+        assertEquals(activeCall, mCallsManager.getFirstCallWithState(CallState.ACTIVE,
+                CallState.ON_HOLD));
+        assertNull(mCallsManager.getFirstCallWithState(CallState.RINGING));
+
+        assertEquals(2, mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                null /* excludeCall */, null /* phoneAccountHandle */, CallState.ACTIVE,
+                CallState.ON_HOLD));
+        assertEquals(1, mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                activeCall, null /* phoneAccountHandle */, CallState.ACTIVE,
+                CallState.ON_HOLD));
+        assertEquals(1, mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                null /* excludeCall */, SIM_1_HANDLE, CallState.ACTIVE, CallState.ON_HOLD));
+        assertEquals(0, mCallsManager.getNumCallsWithState(true /* isSelfManaged */,
+                null /* excludeCall */, null /* phoneAccountHandle */, CallState.ACTIVE,
+                CallState.ON_HOLD));
+    }
+
+    /**
+     * Verifies that the lookups by state follow state changes of the calls, including those set
+     * on the call directly, and forget removed calls.
+     */
+    @SmallTest
+    @Test
+    public void testCallLookupsByStateFollowStateChanges() {
+        Call call = addSpyCall(SIM_1_HANDLE, CallState.ACTIVE);
+        assertEquals(call, mCallsManager.getFirstCallWithState(CallState.ACTIVE));
+
+        call.setState(CallState.ON_HOLD, "test");
+        assertNull(mCallsManager.getFirstCallWithState(CallState.ACTIVE));
+        assertEquals(call, mCallsManager.getFirstCallWithState(CallState.ON_HOLD));
+        assertEquals(0, mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                null /* excludeCall */, null /* phoneAccountHandle */, CallState.ACTIVE));
+        assertEquals(1, mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                null /* excludeCall */, null /* phoneAccountHandle */, CallState.ON_HOLD,
+                CallState.ON_HOLD));
+
+        mCallsManager.removeCall(call);
+        assertNull(mCallsManager.getFirstCallWithState(CallState.ON_HOLD));
+        assertEquals(0, mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                null /* excludeCall */, null /* phoneAccountHandle */, CallState.ON_HOLD));
+    }
+
+    /**
+     * Verifies that the call state snapshot read by the lock-free queries follows call state
+     * changes.
+     */
+    @SmallTest
+    @Test
+    public void testCallStateSnapshotUpdatedOnCallStateChange() {
+        long initialVersion = mCallsManager.getCallStateSnapshot().getVersion();
+        assertFalse(mCallsManager.hasOngoingCalls(UserHandle.CURRENT, true));
+
+        Call callSpy = addSpyCall(CallState.RINGING);
+        assertTrue(mCallsManager.getCallStateSnapshot().getVersion() > initialVersion);
+        assertTrue(mCallsManager.getCallStateSnapshot().hasRingingOrSimulatedRingingCall());
+        assertTrue(mCallsManager.hasOngoingCalls(UserHandle.CURRENT, true));
+        assertTrue(mCallsManager.hasOngoingManagedCalls(UserHandle.CURRENT, true));
+
+        callSpy.setIsSimCall(true);
+        mCallsManager.markCallAsDisconnected(callSpy, new DisconnectCause(DisconnectCause.LOCAL));
+        assertFalse(mCallsManager.getCallStateSnapshot().hasRingingOrSimulatedRingingCall());
+        assertFalse(mCallsManager.hasOngoingCalls(UserHandle.CURRENT, true));
+    }
+
     @MediumTest
     @Test
     public void testDisconnectCallAsynchronous() throws Exception {
@@ -2739,6 +2849,28 @@ public class CallsManagerTest extends TelecomTestCase {
                 any(MissedCallNotifier.CallInfo.class), /* uri= */ eq(null));
     }
 
+    /**
+     * Verifies that the setup latency of a blocked incoming call is recorded, since the call
+     * ends at call filtering without ever being added.
+     */
+    @SmallTest
+    @Test
+    public void testBlockedCallLogsLatency() {
+        when(mFeatureFlags.telecomMetricsSupport()).thenReturn(true);
+        CallLatencyStats callLatencyStats = mock(CallLatencyStats.class);
+        when(mMockTelecomMetricsController.getCallLatencyStats()).thenReturn(callLatencyStats);
+        Call blockedCall = createSpyCall(SIM_1_HANDLE, CallState.NEW);
+        CallFilteringResult result = new CallFilteringResult.Builder()
+                .setShouldAllowCall(false)
+                .setShouldReject(true)
+                .setShouldAddToCallLog(false)
+                .setShouldShowNotification(false).build();
+
+        mCallsManager.onCallFilteringComplete(blockedCall, result, false /* timeout */);
+
+        verify(callLatencyStats).onCallEnd(blockedCall);
+    }
+
     @Test
     public void testSetStateOnlyCalledOnce() {
         // GIVEN a new self-managed call
@@ -3284,7 +3416,7 @@ public class CallsManagerTest extends TelecomTestCase {
     @Test
     public void testOnFailedOutgoingCallUnholdsCallAfterLocallyDisconnect() {
         Call existingCall = addSpyCall();
-        when(existingCall.getState()).thenReturn(CallState.ON_HOLD);
+        setSpyCallState(existingCall, CallState.ON_HOLD);
 
         Call call = addSpyCall();
         when(call.isDisconnectHandledViaFuture()).thenReturn(false);
@@ -3306,7 +3438,7 @@ public class CallsManagerTest extends TelecomTestCase {
     public void testOnFailedOutgoingCallUnholdsCallIfNoHoldButton() {
         Call existingCall = addSpyCall();
         when(existingCall.can(Connection.CAPABILITY_SUPPORT_HOLD)).thenReturn(false);
-        when(existingCall.getState()).thenReturn(CallState.ON_HOLD);
+        setSpyCallState(existingCall, CallState.ON_HOLD);
 
         Call call = addSpyCall();
         when(call.isDisconnectHandledViaFuture()).thenReturn(false);
@@ -3776,6 +3908,16 @@ public class CallsManagerTest extends TelecomTestCase {
     }
 
 
+    /**
+     * Stubs the state of a spied or mocked call, and refiles it in the call state index of
+     * CallsManager like a real state change would.
+     */
+    private void setSpyCallState(Call call, int state) {
+        int oldState = call.getState();
+        doReturn(state).when(call).getState();
+        mCallsManager.onStateChanged(call, oldState, state);
+    }
+
     private Call addSpyCall() {
         return addSpyCall(SIM_2_HANDLE, CallState.ACTIVE);
     }
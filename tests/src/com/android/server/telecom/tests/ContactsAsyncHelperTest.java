@@ -16,6 +16,9 @@
 
 package com.android.server.telecom.tests;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -28,6 +31,7 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -143,10 +147,15 @@ public class ContactsAsyncHelperTest extends TelecomTestCase {
         verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
                 photoCaptor.capture(), iconCaptor.capture(), eq(COOKIE));
 
+        // The photo is decoded at a fraction of its size which still covers the icon.
         Bitmap capturedPhoto = ((BitmapDrawable) photoCaptor.getValue()).getBitmap();
-        assertTrue(getExpectedPhoto(SAMPLE_CONTACT_PHOTO_URI).sameAs(capturedPhoto));
+        Bitmap expectedPhoto = getExpectedPhoto(SAMPLE_CONTACT_PHOTO_URI);
         int iconSize = mContext.getResources()
                 .getDimensionPixelSize(R.dimen.notification_icon_size);
+        int capturedEdge = Math.max(capturedPhoto.getWidth(), capturedPhoto.getHeight());
+        assertTrue(capturedEdge >= iconSize);
+        assertTrue(capturedEdge / 2 < iconSize
+                || capturedEdge == Math.max(expectedPhoto.getWidth(), expectedPhoto.getHeight()));
         assertTrue(iconSize >= iconCaptor.getValue().getHeight());
         assertTrue(iconSize >= iconCaptor.getValue().getWidth());
     }
@@ -170,6 +179,77 @@ public class ContactsAsyncHelperTest extends TelecomTestCase {
         assertTrue(capturedPhoto.sameAs(iconCaptor.getValue()));
     }
 
+    @SmallTest
+    @Test
+    public void testRepeatedLoadUsesCachedPhoto() {
+        int[] opens = new int[1];
+        ContactsAsyncHelper cah = new ContactsAsyncHelper(
+                new ContactsAsyncHelper.ContentResolverAdapter() {
+                    @Override
+                    public InputStream openInputStream(Context context, Uri uri)
+                            throws FileNotFoundException {
+                        opens[0]++;
+                        return context.getContentResolver().openInputStream(uri);
+                    }
+                }, Looper.getMainLooper());
+        ArgumentCaptor<Drawable> photoCaptor = ArgumentCaptor.forClass(Drawable.class);
+        ArgumentCaptor<Bitmap> iconCaptor = ArgumentCaptor.forClass(Bitmap.class);
+
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI, mListener, COOKIE);
+        verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), any(Bitmap.class), eq(COOKIE));
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI, mListener, COOKIE);
+        verify(mListener, timeout(TEST_TIMEOUT).times(2)).onImageLoadComplete(eq(TOKEN),
+                photoCaptor.capture(), iconCaptor.capture(), eq(COOKIE));
+
+        // The second load decodes nothing, but gets a Drawable of its own.  A decode reads the
+        // photo twice, once for its size only.
+        assertEquals(2, opens[0]);
+        Drawable first = photoCaptor.getAllValues().get(0);
+        Drawable second = photoCaptor.getAllValues().get(1);
+        assertNotSame(first, second);
+        assertSame(((BitmapDrawable) first).getBitmap(), ((BitmapDrawable) second).getBitmap());
+        assertSame(iconCaptor.getAllValues().get(0), iconCaptor.getAllValues().get(1));
+
+        // Once cleared, the photo is decoded again.
+        cah.clearPhotoCache();
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI, mListener, COOKIE);
+        verify(mListener, timeout(TEST_TIMEOUT).times(3)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), any(Bitmap.class), eq(COOKIE));
+        assertEquals(4, opens[0]);
+    }
+
+    @SmallTest
+    @Test
+    public void testCachedPhotoNotSharedAcrossUsers() {
+        int[] opens = new int[1];
+        ContactsAsyncHelper cah = new ContactsAsyncHelper(
+                new ContactsAsyncHelper.ContentResolverAdapter() {
+                    @Override
+                    public InputStream openInputStream(Context context, Uri uri)
+                            throws FileNotFoundException {
+                        opens[0]++;
+                        return context.getContentResolver().openInputStream(uri);
+                    }
+                }, Looper.getMainLooper());
+        Context otherUserContext = new ContextWrapper(mContext) {
+            @Override
+            public int getUserId() {
+                return mContext.getUserId() + 1;
+            }
+        };
+
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI, mListener, COOKIE);
+        verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), any(Bitmap.class), eq(COOKIE));
+        // The same URI read for another user is decoded again rather than served from the cache.
+        cah.startObtainPhotoAsync(TOKEN, otherUserContext, SAMPLE_CONTACT_PHOTO_URI, mListener,
+                COOKIE);
+        verify(mListener, timeout(TEST_TIMEOUT).times(2)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), any(Bitmap.class), eq(COOKIE));
+        assertEquals(4, opens[0]);
+    }
+
     private Bitmap getExpectedPhoto(Uri uri) {
         InputStream is;
         try {
@@ -40,6 +40,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -523,6 +524,118 @@ public class InCallControllerTests extends TelecomTestCase {
                 TelecomManager.EXTRA_OUTGOING_CALL_EXTRAS));
     }
 
+    /**
+     * Ensures that binding again reuses the InCallServices resolved for the first binding until a
+     * package they belong to changes.
+     */
+    @MediumTest
+    @Test
+    public void testResolvedInCallServicesCachedUntilPackageChanges() throws Exception {
+        setupMocks(false /* isExternalCall */);
+        setupMockPackageManager(true /* default */, true /* system */, false /* external calls */);
+
+        mInCallController.bindToServices(mMockCall);
+        mInCallController.unbindFromServices(mUserHandle);
+        mInCallController.bindToServices(mMockCall);
+
+        // Both bindings happened, but the InCallServices were only resolved for the first one.
+        verify(mMockContext, times(2)).bindServiceAsUser(any(Intent.class),
+                any(ServiceConnection.class), eq(serviceBindingFlags), eq(mUserHandle));
+        verify(mMockPackageManager, times(4)).queryIntentServicesAsUser(any(Intent.class),
+                anyInt(), eq(CURRENT_USER_ID));
+
+        // Once the default dialer package changes, it is resolved again on the next binding.
+        mSystemStateListener.onPackageUninstalled(DEF_PKG);
+        mInCallController.unbindFromServices(mUserHandle);
+        mInCallController.bindToServices(mMockCall);
+        verify(mMockPackageManager, times(2)).queryIntentServicesAsUser(
+                argThat(intent -> DEF_PKG.equals(intent.getPackage())), anyInt(),
+                eq(CURRENT_USER_ID));
+    }
+
+    /**
+     * Ensures that the UI bound while an incoming call is filtered is handed over to the call once
+     * it is added, rather than being bound again.
+     */
+    @MediumTest
+    @Test
+    public void testPreBindHandedOverToAddedCall() throws Exception {
+        setupMocks(false /* isExternalCall */);
+        setupMockPackageManager(true /* default */, true /* system */, false /* external calls */);
+        when(mMockCall.isIncoming()).thenReturn(true);
+        when(mTimeoutsAdapter.getInCallServicePreBindTimeoutMillis(any(ContentResolver.class)))
+                .thenReturn(10_000L);
+
+        mInCallController.preBindToServices(mMockCall);
+        ArgumentCaptor<Intent> bindIntentCaptor = ArgumentCaptor.forClass(Intent.class);
+        verify(mMockContext, times(1)).bindServiceAsUser(bindIntentCaptor.capture(),
+                any(ServiceConnection.class), eq(serviceBindingFlags), eq(mUserHandle));
+        verifyBinding(bindIntentCaptor, 0, DEF_PKG, DEF_CLASS);
+
+        // Filtering allowed the call; it reuses the existing binding.
+        mInCallController.onCallAdded(mMockCall);
+        mInCallController.releaseSpeculativeBinding(mMockCall);
+        verify(mMockContext, times(1)).bindServiceAsUser(any(Intent.class),
+                any(ServiceConnection.class), eq(serviceBindingFlags), eq(mUserHandle));
+        verify(mMockContext, never()).unbindService(any(ServiceConnection.class));
+    }
+
+    /**
+     * Ensures that the UI bound while an incoming call is filtered is unbound if the call is
+     * blocked.
+     */
+    @MediumTest
+    @Test
+    public void testPreBindReleasedForBlockedCall() throws Exception {
+        setupMocks(false /* isExternalCall */);
+        setupMockPackageManager(true /* default */, true /* system */, false /* external calls */);
+        when(mMockCall.isIncoming()).thenReturn(true);
+        when(mTimeoutsAdapter.getInCallServicePreBindTimeoutMillis(any(ContentResolver.class)))
+                .thenReturn(10_000L);
+
+        mInCallController.preBindToServices(mMockCall);
+        verify(mMockContext, times(1)).bindServiceAsUser(any(Intent.class),
+                any(ServiceConnection.class), eq(serviceBindingFlags), eq(mUserHandle));
+
+        // Filtering blocked the call, so it is never added.
+        mInCallController.releaseSpeculativeBinding(mMockCall);
+        verify(mMockContext, times(1)).unbindService(any(ServiceConnection.class));
+    }
+
+    /**
+     * Ensures that the UI bound while an incoming call is filtered is not handed over to a
+     * different call added in the meantime; that call is bound on its own instead.
+     */
+    @MediumTest
+    @Test
+    public void testPreBindNotHandedOverToOtherCall() throws Exception {
+        setupMocks(false /* isExternalCall */);
+        setupMockPackageManager(true /* default */, true /* system */, false /* external calls */);
+        when(mMockCall.isIncoming()).thenReturn(true);
+        when(mTimeoutsAdapter.getInCallServicePreBindTimeoutMillis(any(ContentResolver.class)))
+                .thenReturn(10_000L);
+        Call outgoingCall = mock(Call.class);
+        when(outgoingCall.getAssociatedUser()).thenReturn(mUserHandle);
+        when(outgoingCall.getTargetPhoneAccount()).thenReturn(PA_HANDLE);
+        when(outgoingCall.getAnalytics()).thenReturn(new Analytics.CallInfo());
+        when(outgoingCall.getId()).thenReturn("TC@2");
+        when(outgoingCall.isIncoming()).thenReturn(false);
+
+        mInCallController.preBindToServices(mMockCall);
+        verify(mMockContext, times(1)).bindServiceAsUser(any(Intent.class),
+                any(ServiceConnection.class), eq(serviceBindingFlags), eq(mUserHandle));
+
+        // An outgoing call is placed while the incoming call is still being filtered.
+        mInCallController.onCallAdded(outgoingCall);
+        verify(mMockContext, times(1)).unbindService(any(ServiceConnection.class));
+        verify(mMockContext, times(2)).bindServiceAsUser(any(Intent.class),
+                any(ServiceConnection.class), eq(serviceBindingFlags), eq(mUserHandle));
+
+        // The pre-bind was already released, so the filtered call no longer owns a binding.
+        mInCallController.releaseSpeculativeBinding(mMockCall);
+        verify(mMockContext, times(1)).unbindService(any(ServiceConnection.class));
+    }
+
     @MediumTest
     @Test
     public void testBindToService_SystemDialer_Emergency() throws Exception {
@@ -1495,6 +1608,45 @@ public class InCallControllerTests extends TelecomTestCase {
         assertTrue(TextUtils.isEmpty(parcelableCallCaptor.getValue().getContactDisplayName()));
     }
 
+    /**
+     * Ensures that a burst of call property changes is coalesced into a single update to the
+     * bound {@link InCallService}.
+     */
+    @MediumTest
+    @Test
+    public void testCallUpdatesAreCoalesced() throws Exception {
+        setupMocks(false /* isExternalCall */);
+        setupMockPackageManager(true /* default */, true /* system */, true /* external calls */);
+        when(mTimeoutsAdapter.getInCallUpdateCoalescingWindowMillis()).thenReturn(50L);
+
+        mInCallController.bindToServices(mMockCall);
+        ArgumentCaptor<ServiceConnection> serviceConnectionCaptor =
+                ArgumentCaptor.forClass(ServiceConnection.class);
+        verify(mMockContext, times(1)).bindServiceAsUser(
+                any(Intent.class),
+                serviceConnectionCaptor.capture(),
+                eq(serviceBindingFlags),
+                eq(mUserHandle));
+        IInCallService.Stub mockInCallServiceStub = mock(IInCallService.Stub.class);
+        IInCallService mockInCallService = mock(IInCallService.class);
+        when(mockInCallServiceStub.queryLocalInterface(anyString())).thenReturn(mockInCallService);
+        serviceConnectionCaptor.getValue().onServiceConnected(new ComponentName(DEF_PKG, DEF_CLASS),
+                mockInCallServiceStub);
+
+        mInCallController.onCallAdded(mMockCall);
+        ArgumentCaptor<Call.Listener> listenerCaptor = ArgumentCaptor.forClass(Call.Listener.class);
+        verify(mMockCall).addListener(listenerCaptor.capture());
+        Call.Listener listener = listenerCaptor.getValue();
+
+        listener.onStatusHintsChanged(mMockCall);
+        listener.onCallerInfoChanged(mMockCall);
+        listener.onConnectionCapabilitiesChanged(mMockCall);
+        verify(mockInCallService, never()).updateCall(any(ParcelableCall.class));
+
+        verify(mockInCallService, timeout(TEST_TIMEOUT).times(1))
+                .updateCall(any(ParcelableCall.class));
+    }
+
     /**
      * Ensures that the {@link InCallController} will bind to a higher priority car mode service
      * when one becomes available.
@@ -18,6 +18,8 @@ package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
@@ -27,15 +29,20 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.test.filters.SmallTest;
 
 import com.android.server.telecom.Call;
+import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.Ringer;
 import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
+import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
+import com.android.server.telecom.callfiltering.BlockCheckerFilter;
 import com.android.server.telecom.callfiltering.CallFilter;
+import com.android.server.telecom.callfiltering.CallFilterLooperPool;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.callfiltering.DndCallFilter;
@@ -50,6 +57,7 @@ import org.mockito.Mock;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(JUnit4.class)
 public class IncomingCallFilterGraphTest extends TelecomTestCase {
@@ -238,4 +246,62 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
         assertTrue(testResult.get(TIMEOUT_FILTER_SLEEP_TIME,
                 TimeUnit.MILLISECONDS).shouldSuppressCallDueToDndStatus);
     }
+
+    @SmallTest
+    @Test
+    public void testLooperPoolHandsOutLoopersRoundRobin() {
+        Looper looper1 = CallFilterLooperPool.getLooper();
+        Looper looper2 = CallFilterLooperPool.getLooper();
+        Looper looper3 = CallFilterLooperPool.getLooper();
+
+        assertNotSame(looper1, looper2);
+        assertSame(looper1, looper3);
+    }
+
+    @SmallTest
+    @Test
+    public void testConsecutiveGraphsGetDifferentLoopers() {
+        CallFilterResultCallback listener = (call, result, timeout) -> { };
+        IncomingCallFilterGraph graph1 = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mFeatureFlags, mLock);
+        // The block checker of the first call must not take a looper of the pool.
+        new BlockCheckerFilter(mContext, mCall, mock(CallerInfoLookupHelper.class),
+                mock(BlockCheckerAdapter.class), mFeatureFlags);
+        IncomingCallFilterGraph graph2 = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mFeatureFlags, mLock);
+
+        assertNotSame(graph1.getLooper(), graph2.getLooper());
+    }
+
+    @SmallTest
+    @Test
+    public void testLateFilterResultIsIgnoredAfterTimeout() throws Exception {
+        when(mTimeoutsAdapter.getCallScreeningTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(100L);
+        AtomicInteger completeCount = new AtomicInteger();
+        CompletableFuture<Boolean> testTimedOut = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> {
+            completeCount.incrementAndGet();
+            testTimedOut.complete(timeout);
+        };
+        CompletableFuture<CallFilteringResult> lateResult = new CompletableFuture<>();
+        CallFilter lateFilter = new CallFilter() {
+            @Override
+            public CompletionStage<CallFilteringResult> startFilterLookup(
+                    CallFilteringResult priorStageResult) {
+                return lateResult;
+            }
+        };
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mFeatureFlags, mLock);
+        graph.addFilter(lateFilter);
+        graph.performFiltering();
+        assertTrue(testTimedOut.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // The result arriving after the timeout must not complete the call a second time.
+        lateResult.complete(REJECT_CALL_RESULT);
+        waitForHandlerAction(new Handler(graph.getLooper()), TEST_TIMEOUT);
+
+        assertEquals(1, completeCount.get());
+    }
 }
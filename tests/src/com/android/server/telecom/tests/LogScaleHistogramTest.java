@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.LogScaleHistogram;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LogScaleHistogramTest {
+
+    @SmallTest
+    @Test
+    public void testValuesAreBucketedByPowersOfTwo() {
+        LogScaleHistogram histogram = new LogScaleHistogram(4);
+        histogram.record(-5);
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(100);
+
+        assertEquals(7, histogram.getCount());
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(2, histogram.getBucketCount(2));
+        // The last bucket collects everything which does not fit in the others.
+        assertEquals(2, histogram.getBucketCount(3));
+        assertEquals(100, histogram.getMax());
+    }
+
+    @SmallTest
+    @Test
+    public void testPercentiles() {
+        LogScaleHistogram histogram = new LogScaleHistogram(16);
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(300);
+        }
+
+        // Percentiles are the upper bound of their bucket, capped at the maximum.
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(90));
+        assertEquals(300, histogram.getPercentile(95));
+        assertEquals(300, histogram.getPercentile(99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
@@ -4,6 +4,8 @@ import static com.android.server.telecom.TelecomSystem.SyncRoot;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -22,6 +24,7 @@ import android.telephony.ims.ImsCallProfile;
 import androidx.test.filters.SmallTest;
 
 import com.android.server.telecom.Call;
+import com.android.server.telecom.CallState;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.CallsManager;
 import com.android.server.telecom.ClockProxy;
@@ -124,6 +127,76 @@ public class ParcelableCallUtilsTest extends TelecomTestCase {
         assertTrue(parceledExtras.containsKey(Connection.EXTRA_CALL_SUBJECT));
     }
 
+    @SmallTest
+    @Test
+    public void testSnapshotSanitizesPerVariant() {
+        mCall.putConnectionServiceExtras(getSomeExtras());
+        ParcelableCallUtils.Snapshot snapshot = new ParcelableCallUtils.Snapshot(mCall,
+                null /* phoneAccountRegistrar */);
+        ParcelableCall systemCall = snapshot.toParcelableCall(
+                false /* includevideoProvider */,
+                false /* supportsExternalCalls */,
+                false /* includeRttCall */,
+                true /* isForSystemDialer */);
+        ParcelableCall nonSystemCall = snapshot.toParcelableCall(
+                false /* includevideoProvider */,
+                false /* supportsExternalCalls */,
+                false /* includeRttCall */,
+                false /* isForSystemDialer */);
+
+        Bundle systemExtras = systemCall.getExtras();
+        assertTrue(systemExtras.containsKey(Connection.EXTRA_SIP_INVITE));
+        assertTrue(systemExtras.containsKey("SomeExtra"));
+        Bundle nonSystemExtras = nonSystemCall.getExtras();
+        assertFalse(nonSystemExtras.containsKey(Connection.EXTRA_SIP_INVITE));
+        assertFalse(nonSystemExtras.containsKey("SomeExtra"));
+        assertTrue(nonSystemExtras.containsKey(Connection.EXTRA_CALL_SUBJECT));
+
+        // Variants are memoized by their parameters.
+        assertNotSame(systemCall, nonSystemCall);
+        assertSame(nonSystemCall, snapshot.toParcelableCall(false, false, false, false));
+    }
+
+    /**
+     * Verifies that each variant of a snapshot matches the call parcelled directly with the same
+     * parameters, including the capabilities which depend on the parcelled state.
+     */
+    @SmallTest
+    @Test
+    public void testSnapshotVariantsMatchDirectParcel() {
+        mCall.putConnectionServiceExtras(getSomeExtras());
+        mCall.setConnectionCapabilities(Connection.CAPABILITY_MUTE
+                | Connection.CAPABILITY_SUPPORTS_VT_LOCAL_BIDIRECTIONAL
+                | Connection.CAPABILITY_SUPPORTS_VT_REMOTE_BIDIRECTIONAL);
+        // A pulling call is parcelled as dialing for in-call services without external call
+        // support, which must not see the video capabilities.
+        mCall.setState(CallState.PULLING, "");
+        ParcelableCallUtils.Snapshot snapshot = new ParcelableCallUtils.Snapshot(mCall,
+                null /* phoneAccountRegistrar */);
+
+        for (boolean supportsExternalCalls : new boolean[] {true, false}) {
+            for (boolean isForSystem : new boolean[] {true, false}) {
+                ParcelableCall variant = snapshot.toParcelableCall(
+                        false /* includevideoProvider */,
+                        supportsExternalCalls,
+                        false /* includeRttCall */,
+                        isForSystem);
+                ParcelableCall direct = ParcelableCallUtils.toParcelableCall(mCall,
+                        false /* includevideoProvider */,
+                        null /* phoneAccountRegistrar */,
+                        supportsExternalCalls,
+                        false /* includeRttCall */,
+                        isForSystem);
+                assertEquals(direct.getState(), variant.getState());
+                assertEquals(direct.getCapabilities(), variant.getCapabilities());
+                assertEquals(direct.getProperties(), variant.getProperties());
+                assertEquals(direct.getExtras().keySet(), variant.getExtras().keySet());
+            }
+        }
+        assertEquals(android.telecom.Call.STATE_DIALING,
+                snapshot.toParcelableCall(false, false, false, false).getState());
+    }
+
     @SmallTest
     @Test
     public void testParcelForSystemCallScreening() {
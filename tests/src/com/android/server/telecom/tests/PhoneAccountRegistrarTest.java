@@ -39,13 +39,17 @@ import static org.mockito.Mockito.when;
 import android.annotation.Nullable;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.graphics.drawable.Icon;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.PersistableBundle;
 import android.os.Process;
@@ -95,10 +99,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 public class PhoneAccountRegistrarTest extends TelecomTestCase {
@@ -110,6 +117,9 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
     private static final String FILE_NAME = "phone-account-registrar-test-1223.xml";
     private static final String TEST_LABEL = "right";
     private static final String TEST_ID = "123";
+    private static final long TEST_TIMEOUT = 1000;
+    // Longer than the delay PhoneAccountRegistrar waits to coalesce writes.
+    private static final long WRITE_FLUSH_WAIT_MS = 300;
     private final String PACKAGE_1 = "PACKAGE_1";
     private final String PACKAGE_2 = "PACKAGE_2";
     private final String COMPONENT_NAME = "com.android.server.telecom.tests.MockConnectionService";
@@ -425,6 +435,87 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
         assertStateEquals(input, result);
     }
 
+    /**
+     * Verifies that a burst of incidental changes is persisted with a single write.
+     */
+    @MediumTest
+    @Test
+    public void testWritesAreCoalesced() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        for (int i = 0; i < 3; i++) {
+            mRegistrar.registerPhoneAccount(makeQuickAccountBuilder("id" + i, i, null)
+                    .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                    .build());
+        }
+        waitForWriteFlush();
+        int flushed = mRegistrar.getNumWritesFlushed();
+
+        for (int i = 0; i < 3; i++) {
+            mRegistrar.enablePhoneAccount(makeQuickAccountHandle("id" + i), true);
+        }
+        waitForWriteFlush();
+
+        assertEquals(flushed + 1, mRegistrar.getNumWritesFlushed());
+    }
+
+    /**
+     * Verifies that registrations and removals are persisted without waiting for a burst to end.
+     */
+    @MediumTest
+    @Test
+    public void testRegistrationIsWrittenImmediately() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        int flushed = mRegistrar.getNumWritesFlushed();
+
+        mRegistrar.registerPhoneAccount(makeQuickAccountBuilder("id0", 0, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .build());
+        assertEquals(flushed + 1, mRegistrar.getNumWritesFlushed());
+
+        mRegistrar.unregisterPhoneAccount(makeQuickAccountHandle("id0"));
+        assertEquals(flushed + 2, mRegistrar.getNumWritesFlushed());
+    }
+
+    /**
+     * Verifies that re-registering an unchanged account does not rewrite the file.
+     */
+    @MediumTest
+    @Test
+    public void testUnchangedWriteIsSkipped() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account = makeQuickAccountBuilder("id0", 0, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .build();
+        registerAndEnableAccount(account);
+        waitForWriteFlush();
+        int flushed = mRegistrar.getNumWritesFlushed();
+        int skipped = mRegistrar.getNumWritesSkipped();
+
+        mRegistrar.registerPhoneAccount(account);
+        waitForWriteFlush();
+
+        assertEquals(flushed, mRegistrar.getNumWritesFlushed());
+        assertEquals(skipped + 1, mRegistrar.getNumWritesSkipped());
+    }
+
+    private void waitForWriteFlush() {
+        // Writes are flushed on the main looper after a short coalescing delay.
+        waitForHandlerActionDelayed(new Handler(Looper.getMainLooper()), TEST_TIMEOUT,
+                WRITE_FLUSH_WAIT_MS);
+    }
+
+    private void waitForWriteToDisk() throws InterruptedException {
+        waitForWriteFlush();
+        // The flushed state is written out by an AsyncTask on the serial executor, so once a
+        // task queued behind it has run, the file is complete.
+        CountDownLatch latch = new CountDownLatch(1);
+        AsyncTask.SERIAL_EXECUTOR.execute(latch::countDown);
+        assertTrue(latch.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
     private void registerAndEnableAccount(PhoneAccount account) {
         mRegistrar.registerPhoneAccount(account);
         mRegistrar.enablePhoneAccount(account.getAccountHandle(), true);
@@ -842,6 +933,72 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
                         .build());
     }
 
+    /**
+     * Tests that an icon left encoded while reading is kept so it can be decoded on first use.
+     * @throws Exception
+     */
+    @MediumTest
+    @Test
+    public void testPhoneAccountDeferredIcon() throws Exception {
+        Icon icon = Icon.createWithBitmap(BitmapFactory.decodeResource(
+                InstrumentationRegistry.getContext().getResources(),
+                R.drawable.stat_sys_phone_call));
+        PhoneAccount original = new PhoneAccount.Builder(makeQuickAccountHandle("foo"), "foo")
+                .setIcon(icon)
+                .build();
+        byte[] data = toXml(original, PhoneAccountRegistrar.sPhoneAccountXml, mContext,
+                mTelephonyFeatureFlags);
+
+        Map<PhoneAccount, String> deferredIcons = new IdentityHashMap<>();
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(new BufferedInputStream(new ByteArrayInputStream(data)), null);
+        parser.nextTag();
+        PhoneAccount copy = PhoneAccountRegistrar.sPhoneAccountXml.readFromXml(parser,
+                MAX_VERSION, mContext, mTelephonyFeatureFlags, mFeatureFlags, deferredIcons);
+
+        assertNull(copy.getIcon());
+        assertEquals(1, deferredIcons.size());
+        assertEquals(PhoneAccountRegistrar.XmlSerialization.writeIconToBase64String(icon),
+                deferredIcons.get(copy));
+        assertPhoneAccountEquals(original, copy.toBuilder().setIcon(icon).build());
+    }
+
+    /**
+     * Verifies that icons read from disk are only decoded once an account is queried, and that
+     * each is decoded only once.
+     */
+    @MediumTest
+    @Test
+    public void testDeferredIconDecodedLazilyAndOnce() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        Icon icon = Icon.createWithBitmap(BitmapFactory.decodeResource(
+                InstrumentationRegistry.getContext().getResources(),
+                R.drawable.stat_sys_phone_call));
+        for (int i = 0; i < 2; i++) {
+            registerAndEnableAccount(makeQuickAccountBuilder("id" + i, i, null)
+                    .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                    .setIcon(icon)
+                    .build());
+        }
+        waitForWriteToDisk();
+
+        PhoneAccountRegistrar registrar = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(), mLock, FILE_NAME,
+                mDefaultDialerCache, mAppLabelProxy, mTelephonyFeatureFlags, mFeatureFlags);
+        registrar.setCurrentUserHandle(UserHandle.SYSTEM);
+        assertEquals(0, registrar.getNumDeferredIconsDecoded());
+
+        PhoneAccount account = registrar.getPhoneAccountUnchecked(
+                makeQuickAccountHandle("id0"));
+        assertNotNull(account.getIcon());
+        assertEquals(2, registrar.getNumDeferredIconsDecoded());
+
+        assertNotNull(registrar.getPhoneAccountUnchecked(makeQuickAccountHandle("id1")).getIcon());
+        assertEquals(2, registrar.getAllPhoneAccounts(null, false).size());
+        assertEquals(2, registrar.getNumDeferredIconsDecoded());
+    }
+
     /**
      * Tests ability to register a self-managed PhoneAccount; verifies that the user defined label
      * is overridden.
@@ -1239,6 +1396,66 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
                 PhoneAccount.CAPABILITY_RTT);
     }
 
+    /**
+     * Tests that account queries reflect registration changes made after a previous query.
+     * @throws Exception
+     */
+    @MediumTest
+    @Test
+    public void testQueriesReflectRegistrationChanges() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount sipAccount = makeQuickAccountBuilder("id1", 1, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .setSupportedUriSchemes(Arrays.asList(PhoneAccount.SCHEME_SIP))
+                .build();
+        registerAndEnableAccount(sipAccount);
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_SIP,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+        assertEquals(0, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_TEL,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+
+        registerAndEnableAccount(makeQuickAccountBuilder("id2", 2, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .setSupportedUriSchemes(Arrays.asList(PhoneAccount.SCHEME_TEL))
+                .build());
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_TEL,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+
+        mRegistrar.unregisterPhoneAccount(sipAccount.getAccountHandle());
+        assertNull(mRegistrar.getPhoneAccountUnchecked(sipAccount.getAccountHandle()));
+        assertEquals(0, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_SIP,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(null, false /* includeDisabled */,
+                Process.myUserHandle(), false).size());
+    }
+
+    /**
+     * Tests that repeated account queries reuse the resolved {@link ConnectionService} rather
+     * than querying the package manager for each account every time.
+     * @throws Exception
+     */
+    @MediumTest
+    @Test
+    public void testQueriesUseResolvedComponentCache() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        registerAndEnableAccount(makeQuickAccountBuilder("id1", 1, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .build());
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_TEL,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+
+        PackageManager packageManager = mContext.getPackageManager();
+        clearInvocations(packageManager);
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_TEL,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(PhoneAccount.SCHEME_TEL,
+                false /* includeDisabled */, Process.myUserHandle(), false).size());
+        verify(packageManager, never()).queryIntentServicesAsUser(any(Intent.class), anyInt(),
+                anyInt());
+    }
+
     /**
      * Tests {@link PhoneAccount#equals(Object)} operator.
      * @throws Exception
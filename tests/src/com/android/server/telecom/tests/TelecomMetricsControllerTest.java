@@ -34,8 +34,12 @@ import android.util.StatsEvent;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.android.server.telecom.metrics.ApiLatencyStats;
 import com.android.server.telecom.metrics.ApiStats;
+import com.android.server.telecom.metrics.AudioRouteLatencyStats;
+import com.android.server.telecom.metrics.AudioRoutePreActivationStats;
 import com.android.server.telecom.metrics.AudioRouteStats;
+import com.android.server.telecom.metrics.CallLatencyStats;
 import com.android.server.telecom.metrics.CallStats;
 import com.android.server.telecom.metrics.ErrorStats;
 import com.android.server.telecom.metrics.TelecomMetricsController;
@@ -85,6 +89,13 @@ public class TelecomMetricsControllerTest extends TelecomTestCase {
         super.tearDown();
     }
 
+    @Test
+    public void testGetApiLatencyStatsReturnsSameInstance() {
+        ApiLatencyStats stats1 = mTelecomMetricsController.getApiLatencyStats();
+        ApiLatencyStats stats2 = mTelecomMetricsController.getApiLatencyStats();
+        assertThat(stats1).isSameInstanceAs(stats2);
+    }
+
     @Test
     public void testGetApiStatsReturnsSameInstance() {
         ApiStats stats1 = mTelecomMetricsController.getApiStats();
@@ -92,6 +103,22 @@ public class TelecomMetricsControllerTest extends TelecomTestCase {
         assertThat(stats1).isSameInstanceAs(stats2);
     }
 
+    @Test
+    public void testGetAudioRouteLatencyStatsReturnsSameInstance() {
+        AudioRouteLatencyStats stats1 = mTelecomMetricsController.getAudioRouteLatencyStats();
+        AudioRouteLatencyStats stats2 = mTelecomMetricsController.getAudioRouteLatencyStats();
+        assertThat(stats1).isSameInstanceAs(stats2);
+    }
+
+    @Test
+    public void testGetAudioRoutePreActivationStatsReturnsSameInstance() {
+        AudioRoutePreActivationStats stats1 =
+                mTelecomMetricsController.getAudioRoutePreActivationStats();
+        AudioRoutePreActivationStats stats2 =
+                mTelecomMetricsController.getAudioRoutePreActivationStats();
+        assertThat(stats1).isSameInstanceAs(stats2);
+    }
+
     @Test
     public void testGetAudioRouteStatsReturnsSameInstance() {
         AudioRouteStats stats1 = mTelecomMetricsController.getAudioRouteStats();
@@ -99,6 +126,13 @@ public class TelecomMetricsControllerTest extends TelecomTestCase {
         assertThat(stats1).isSameInstanceAs(stats2);
     }
 
+    @Test
+    public void testGetCallLatencyStatsReturnsSameInstance() {
+        CallLatencyStats stats1 = mTelecomMetricsController.getCallLatencyStats();
+        CallLatencyStats stats2 = mTelecomMetricsController.getCallLatencyStats();
+        assertThat(stats1).isSameInstanceAs(stats2);
+    }
+
     @Test
     public void testGetCallStatsReturnsSameInstance() {
         CallStats stats1 = mTelecomMetricsController.getCallStats();
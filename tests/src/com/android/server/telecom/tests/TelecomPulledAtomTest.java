@@ -16,6 +16,7 @@
 package com.android.server.telecom.tests;
 
 import static com.android.server.telecom.AudioRoute.TYPE_BLUETOOTH_LE;
+import static com.android.server.telecom.AudioRoute.TYPE_BLUETOOTH_SCO;
 import static com.android.server.telecom.AudioRoute.TYPE_EARPIECE;
 import static com.android.server.telecom.AudioRoute.TYPE_SPEAKER;
 import static com.android.server.telecom.TelecomStatsLog.CALL_AUDIO_ROUTE_STATS__ROUTE_SOURCE__CALL_AUDIO_BLUETOOTH_LE;
@@ -23,6 +24,7 @@ import static com.android.server.telecom.TelecomStatsLog.CALL_AUDIO_ROUTE_STATS_
 import static com.android.server.telecom.TelecomStatsLog.CALL_STATS__ACCOUNT_TYPE__ACCOUNT_SIM;
 import static com.android.server.telecom.TelecomStatsLog.CALL_STATS__CALL_DIRECTION__DIR_INCOMING;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
@@ -50,11 +52,18 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.android.server.telecom.AudioRoute;
 import com.android.server.telecom.Call;
+import com.android.server.telecom.CallAudioRouteAdapter;
 import com.android.server.telecom.PendingAudioRoute;
+import com.android.server.telecom.metrics.ApiLatencyStats;
 import com.android.server.telecom.metrics.ApiStats;
+import com.android.server.telecom.metrics.AudioRouteLatencyStats;
+import com.android.server.telecom.metrics.AudioRoutePreActivationStats;
 import com.android.server.telecom.metrics.AudioRouteStats;
+import com.android.server.telecom.metrics.CallLatencyStats;
+import com.android.server.telecom.metrics.CallLatencyTimeline;
 import com.android.server.telecom.metrics.CallStats;
 import com.android.server.telecom.metrics.ErrorStats;
+import com.android.server.telecom.metrics.TelecomMetricsStore;
 import com.android.server.telecom.nano.PulledAtomsClass;
 
 import org.junit.After;
@@ -100,6 +109,9 @@ public class TelecomPulledAtomTest extends TelecomTestCase {
     private static final int VALUE_CALL_COUNT = 1;
     private static final int VALUE_CALL_DURATION = 3000;
 
+    // Falls into the [256, 511] bucket of the latency histograms.
+    private static final int VALUE_CALL_LATENCY = 300;
+
     private static final int VALUE_MODULE_ID = 1;
     private static final int VALUE_ERROR_ID = 1;
     private static final int VALUE_ERROR_COUNT = 1;
@@ -308,14 +320,32 @@ public class TelecomPulledAtomTest extends TelecomTestCase {
 
         for (int i = 0; i < 10; i++) {
             apiStats.log(event);
-            waitForHandlerAction(apiStats, TEST_TIMEOUT);
-
-            verify(apiStats, times(i + 1)).onAggregate();
-            verify(apiStats, times(i + 1)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
-            assertEquals(apiStats.mPulledAtoms.telecomApiStats.length, 1);
-            verifyMessageForApiStats(apiStats.mPulledAtoms.telecomApiStats[0], VALUE_API_ID,
-                    VALUE_UID, VALUE_API_RESULT, i + 1);
         }
+
+        // The counters are only materialized when the atoms are saved or pulled.
+        verify(apiStats, never()).onAggregate();
+        verify(apiStats, times(1)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
+        apiStats.onAggregate();
+        assertEquals(apiStats.mPulledAtoms.telecomApiStats.length, 1);
+        verifyMessageForApiStats(apiStats.mPulledAtoms.telecomApiStats[0], VALUE_API_ID,
+                VALUE_UID, VALUE_API_RESULT, 10);
+    }
+
+    @Test
+    public void testApiStatsSaveMaterializesCounters() throws Exception {
+        ApiStats apiStats = spy(new ApiStats(mSpyContext, mLooper));
+
+        apiStats.log(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        apiStats.onFlush();
+
+        verify(apiStats).onAggregate();
+        assertEquals(apiStats.mPulledAtoms.telecomApiStats.length, 1);
+        verifyMessageForApiStats(apiStats.mPulledAtoms.telecomApiStats[0], VALUE_API_ID,
+                VALUE_UID, VALUE_API_RESULT, 1);
+
+        // Logging again after the save schedules another one.
+        apiStats.log(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        verify(apiStats, times(2)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
     }
 
     @Test
@@ -396,10 +426,9 @@ public class TelecomPulledAtomTest extends TelecomTestCase {
             eventMap.put(event, eventMap.getOrDefault(event, 0) + 1);
 
             apiStats.log(event);
-            waitForHandlerAction(apiStats, TEST_TIMEOUT);
+            apiStats.onAggregate();
 
-            verify(apiStats, times(i + 1)).onAggregate();
-            verify(apiStats, times(i + 1)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
+            verify(apiStats, times(1)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
             assertEquals(apiStats.mPulledAtoms.telecomApiStats.length, eventMap.size());
             assertTrue(hasMessageForApiStats(apiStats.mPulledAtoms.telecomApiStats,
                     api, uid, result, eventMap.get(event)));
@@ -461,6 +490,136 @@ public class TelecomPulledAtomTest extends TelecomTestCase {
                 latency);
     }
 
+    @Test
+    public void testAudioRouteLatencyStatsLog() throws Exception {
+        AudioRouteLatencyStats latencyStats =
+                spy(new AudioRouteLatencyStats(mSpyContext, mLooper));
+
+        latencyStats.log(VALUE_AUDIO_ROUTE_TYPE1, VALUE_AUDIO_ROUTE_TYPE2, true, false,
+                AudioRouteLatencyStats.PENDING_MESSAGE_NONE, VALUE_AUDIO_ROUTE_LATENCY);
+        latencyStats.log(VALUE_AUDIO_ROUTE_TYPE1, VALUE_AUDIO_ROUTE_TYPE2, true, false,
+                AudioRouteLatencyStats.PENDING_MESSAGE_NONE, VALUE_AUDIO_ROUTE_LATENCY * 4);
+        waitForHandlerAction(latencyStats, TEST_TIMEOUT);
+
+        verify(latencyStats, times(2)).onAggregate();
+        verify(latencyStats, times(2)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
+        assertEquals(1, latencyStats.mPulledAtoms.callAudioRouteLatencyStats.length);
+        PulledAtomsClass.CallAudioRouteLatencyStats msg =
+                latencyStats.mPulledAtoms.callAudioRouteLatencyStats[0];
+        assertEquals(VALUE_AUDIO_ROUTE_TYPE1, msg.getCallAudioRouteSource());
+        assertEquals(VALUE_AUDIO_ROUTE_TYPE2, msg.getCallAudioRouteDest());
+        assertEquals(AudioRouteLatencyStats.PENDING_MESSAGE_NONE, msg.getPendingMessage());
+        assertEquals(2, msg.getCount());
+        assertEquals(VALUE_AUDIO_ROUTE_LATENCY * 5, msg.getSumMs());
+        assertEquals(VALUE_AUDIO_ROUTE_LATENCY * 4, msg.getMaxMs());
+    }
+
+    @Test
+    public void testAudioRouteStatsRecordsLatencyHistograms() throws Exception {
+        int latency = 500;
+        List<PendingAudioRoute.MessageWait> messageWaits = new ArrayList<>();
+        messageWaits.add(new PendingAudioRoute.MessageWait(
+                CallAudioRouteAdapter.BT_AUDIO_CONNECTED, VALUE_AUDIO_ROUTE_LATENCY, true));
+        doReturn(messageWaits).when(mMockPendingAudioRoute).takeMessageWaits();
+        AudioRouteLatencyStats latencyStats =
+                spy(new AudioRouteLatencyStats(mSpyContext, mLooper));
+        AudioRouteStats audioRouteStats = new AudioRouteStats(mSpyContext, mLooper);
+        audioRouteStats.setLatencyStats(latencyStats);
+
+        audioRouteStats.onRouteEnter(mMockPendingAudioRoute);
+        waitForHandlerActionDelayed(audioRouteStats, TEST_TIMEOUT, latency);
+        audioRouteStats.onRouteExit(mMockPendingAudioRoute, true);
+        waitForHandlerActionDelayed(
+                audioRouteStats, TEST_TIMEOUT, AudioRouteStats.THRESHOLD_REVERT_MS);
+        waitForHandlerAction(latencyStats, TEST_TIMEOUT);
+
+        // One histogram for the whole switch, and one for the wait for BT_AUDIO_CONNECTED.
+        assertEquals(2, latencyStats.mPulledAtoms.callAudioRouteLatencyStats.length);
+        for (PulledAtomsClass.CallAudioRouteLatencyStats msg
+                : latencyStats.mPulledAtoms.callAudioRouteLatencyStats) {
+            assertEquals(CALL_AUDIO_ROUTE_STATS__ROUTE_SOURCE__CALL_AUDIO_EARPIECE,
+                    msg.getCallAudioRouteSource());
+            assertEquals(CALL_AUDIO_ROUTE_STATS__ROUTE_SOURCE__CALL_AUDIO_BLUETOOTH_LE,
+                    msg.getCallAudioRouteDest());
+            assertTrue(msg.getSuccess());
+            assertEquals(1, msg.getCount());
+            if (msg.getPendingMessage() == CallAudioRouteAdapter.BT_AUDIO_CONNECTED) {
+                assertEquals(VALUE_AUDIO_ROUTE_LATENCY, msg.getMaxMs());
+            } else {
+                assertEquals(AudioRouteLatencyStats.PENDING_MESSAGE_NONE,
+                        msg.getPendingMessage());
+                assertTrue(Math.abs(latency - msg.getMaxMs()) < DELAY_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testAudioRouteStatsLogsMessageWaitsOfRevertedSwitch() throws Exception {
+        int delay = 100;
+        List<PendingAudioRoute.MessageWait> messageWaits = new ArrayList<>();
+        messageWaits.add(new PendingAudioRoute.MessageWait(
+                CallAudioRouteAdapter.BT_AUDIO_CONNECTED, VALUE_AUDIO_ROUTE_LATENCY, false));
+        doReturn(messageWaits).when(mMockPendingAudioRoute).takeMessageWaits();
+        AudioRouteLatencyStats latencyStats =
+                spy(new AudioRouteLatencyStats(mSpyContext, mLooper));
+        AudioRouteStats audioRouteStats = new AudioRouteStats(mSpyContext, mLooper);
+        audioRouteStats.setLatencyStats(latencyStats);
+
+        audioRouteStats.onRouteEnter(mMockPendingAudioRoute);
+        audioRouteStats.onRouteExit(mMockPendingAudioRoute, true);
+        waitForHandlerAction(audioRouteStats, delay);
+        // Route back to the source before the revert threshold expires.
+        doReturn(TYPE_BLUETOOTH_LE).when(mMockSourceRoute).getType();
+        doReturn(TYPE_EARPIECE).when(mMockDestRoute).getType();
+        audioRouteStats.onRouteEnter(mMockPendingAudioRoute);
+        waitForHandlerAction(audioRouteStats, delay);
+        waitForHandlerAction(latencyStats, TEST_TIMEOUT);
+
+        // The wait is keyed like its switch, as a revert, and as failed since it was cleared.
+        PulledAtomsClass.CallAudioRouteLatencyStats wait = null;
+        for (PulledAtomsClass.CallAudioRouteLatencyStats msg
+                : latencyStats.mPulledAtoms.callAudioRouteLatencyStats) {
+            assertTrue(msg.getRevert());
+            if (msg.getPendingMessage() == CallAudioRouteAdapter.BT_AUDIO_CONNECTED) {
+                wait = msg;
+            } else {
+                assertTrue(msg.getSuccess());
+            }
+        }
+        assertNotNull(wait);
+        assertFalse(wait.getSuccess());
+        assertEquals(VALUE_AUDIO_ROUTE_LATENCY, wait.getMaxMs());
+    }
+
+    @Test
+    public void testAudioRoutePreActivationStatsLog() throws Exception {
+        AudioRoutePreActivationStats preActivationStats =
+                spy(new AudioRoutePreActivationStats(mSpyContext, mLooper));
+
+        preActivationStats.log(TYPE_BLUETOOTH_SCO, true, VALUE_AUDIO_ROUTE_LATENCY);
+        preActivationStats.log(TYPE_BLUETOOTH_SCO, true, VALUE_AUDIO_ROUTE_LATENCY * 2);
+        preActivationStats.log(TYPE_BLUETOOTH_SCO, false, VALUE_AUDIO_ROUTE_LATENCY);
+        waitForHandlerAction(preActivationStats, TEST_TIMEOUT);
+
+        verify(preActivationStats, times(3)).onAggregate();
+        assertEquals(2, preActivationStats.mPulledAtoms.callAudioRoutePreActivationStats.length);
+        for (PulledAtomsClass.CallAudioRoutePreActivationStats msg
+                : preActivationStats.mPulledAtoms.callAudioRoutePreActivationStats) {
+            assertEquals(TYPE_BLUETOOTH_SCO, msg.getRouteType());
+            if (msg.getHit()) {
+                assertEquals(2, msg.getCount());
+                assertEquals(VALUE_AUDIO_ROUTE_LATENCY * 3, msg.getSumMs());
+                assertEquals(VALUE_AUDIO_ROUTE_LATENCY * 2, msg.getMaxMs());
+            } else {
+                assertEquals(1, msg.getCount());
+            }
+        }
+
+        List<StatsEvent> data = new ArrayList<>();
+        assertEquals(StatsManager.PULL_SUCCESS, preActivationStats.onPull(data));
+        assertEquals(2, data.size());
+    }
+
     @Test
     public void testAudioRouteStatsOnRevertToSourceInThreshold() throws Exception {
         int delay = 100;
@@ -823,6 +982,248 @@ public class TelecomPulledAtomTest extends TelecomTestCase {
         }
     }
 
+    @Test
+    public void testCallLatencyStatsLog() throws Exception {
+        CallLatencyStats callLatencyStats = spy(new CallLatencyStats(mSpyContext, mLooper));
+
+        callLatencyStats.log(CallLatencyStats.MILESTONE_RINGER_STARTED, "",
+                VALUE_CALL_LATENCY);
+        waitForHandlerAction(callLatencyStats, TEST_TIMEOUT);
+        callLatencyStats.log(CallLatencyStats.MILESTONE_RINGER_STARTED, "",
+                VALUE_CALL_LATENCY * 4);
+        waitForHandlerAction(callLatencyStats, TEST_TIMEOUT);
+
+        verify(callLatencyStats, times(2)).onAggregate();
+        verify(callLatencyStats, times(2)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
+        assertEquals(1, callLatencyStats.mPulledAtoms.incomingCallLatencyStats.length);
+        PulledAtomsClass.IncomingCallLatencyStats msg =
+                callLatencyStats.mPulledAtoms.incomingCallLatencyStats[0];
+        assertEquals(CallLatencyStats.MILESTONE_RINGER_STARTED, msg.getMilestone());
+        assertEquals(2, msg.getCount());
+        assertEquals(VALUE_CALL_LATENCY * 5, msg.getSumMs());
+        assertEquals(VALUE_CALL_LATENCY * 4, msg.getMaxMs());
+    }
+
+    @Test
+    public void testCallLatencyStatsOnCallEnd() throws Exception {
+        CallLatencyTimeline timeline = new CallLatencyTimeline(0);
+        timeline.mark(CallLatencyStats.MILESTONE_CONNECTION_CREATED, VALUE_CALL_LATENCY);
+        timeline.mark(CallLatencyStats.MILESTONE_RINGER_STARTED, VALUE_CALL_LATENCY * 2);
+        // Only the first stamp of a milestone counts.
+        timeline.mark(CallLatencyStats.MILESTONE_RINGER_STARTED, VALUE_CALL_LATENCY * 3);
+        timeline.markFilter("DndCallFilter", VALUE_CALL_LATENCY);
+        Call call = mock(Call.class);
+        doReturn(timeline).when(call).getLatencyTimeline();
+        CallLatencyStats callLatencyStats = spy(new CallLatencyStats(mSpyContext, mLooper));
+
+        callLatencyStats.onCallEnd(call);
+        waitForHandlerAction(callLatencyStats, TEST_TIMEOUT);
+
+        verify(callLatencyStats, times(1)).onAggregate();
+        assertEquals(3, callLatencyStats.mPulledAtoms.incomingCallLatencyStats.length);
+        for (PulledAtomsClass.IncomingCallLatencyStats msg
+                : callLatencyStats.mPulledAtoms.incomingCallLatencyStats) {
+            assertEquals(1, msg.getCount());
+            if (msg.getMilestone() == CallLatencyStats.MILESTONE_RINGER_STARTED) {
+                assertEquals(VALUE_CALL_LATENCY * 2, msg.getMaxMs());
+            } else if (msg.getMilestone() == CallLatencyStats.MILESTONE_FILTER) {
+                assertEquals("DndCallFilter", msg.getFilter());
+            }
+        }
+    }
+
+    @Test
+    public void testPullCallLatencyStatsRestoresHistograms() throws Exception {
+        PulledAtomsClass.PulledAtoms atom = new PulledAtomsClass.PulledAtoms();
+        atom.incomingCallLatencyStats = new PulledAtomsClass.IncomingCallLatencyStats[1];
+        atom.incomingCallLatencyStats[0] = new PulledAtomsClass.IncomingCallLatencyStats();
+        atom.incomingCallLatencyStats[0].setMilestone(CallLatencyStats.MILESTONE_ANSWERED);
+        atom.incomingCallLatencyStats[0].setCount(1);
+        atom.incomingCallLatencyStats[0].setSumMs(VALUE_CALL_LATENCY);
+        atom.incomingCallLatencyStats[0].setMaxMs(VALUE_CALL_LATENCY);
+        atom.incomingCallLatencyStats[0].bucketCounts = new long[20];
+        atom.incomingCallLatencyStats[0].bucketCounts[9] = 1;
+        atom.setIncomingCallLatencyStatsPullTimestampMillis(
+                System.currentTimeMillis() - MIN_PULL_INTERVAL_MILLIS / 2);
+        FileOutputStream stream = new FileOutputStream(mTempFile);
+        stream.write(PulledAtomsClass.PulledAtoms.toByteArray(atom));
+        stream.close();
+        CallLatencyStats callLatencyStats = spy(new CallLatencyStats(mSpyContext, mLooper));
+
+        callLatencyStats.log(CallLatencyStats.MILESTONE_ANSWERED, "", VALUE_CALL_LATENCY);
+        waitForHandlerAction(callLatencyStats, TEST_TIMEOUT);
+
+        assertEquals(1, callLatencyStats.mPulledAtoms.incomingCallLatencyStats.length);
+        PulledAtomsClass.IncomingCallLatencyStats msg =
+                callLatencyStats.mPulledAtoms.incomingCallLatencyStats[0];
+        assertEquals(2, msg.getCount());
+        assertEquals(VALUE_CALL_LATENCY * 2, msg.getSumMs());
+        assertEquals(2, msg.bucketCounts[9]);
+    }
+
+    @Test
+    public void testApiLatencyStatsLog() throws Exception {
+        ApiLatencyStats apiLatencyStats = spy(new ApiLatencyStats(mSpyContext, mLooper));
+
+        apiLatencyStats.log(VALUE_API_ID, 0, VALUE_CALL_LATENCY);
+        apiLatencyStats.log(VALUE_API_ID, VALUE_CALL_LATENCY, VALUE_CALL_LATENCY * 4);
+
+        verify(apiLatencyStats, never()).onAggregate();
+        verify(apiLatencyStats, times(1)).save(eq(DELAY_FOR_PERSISTENT_MILLIS));
+        apiLatencyStats.onAggregate();
+        assertEquals(1, apiLatencyStats.mPulledAtoms.telecomApiLatencyStats.length);
+        PulledAtomsClass.TelecomApiLatencyStats msg =
+                apiLatencyStats.mPulledAtoms.telecomApiLatencyStats[0];
+        assertEquals(VALUE_API_ID, msg.getApiName());
+        assertEquals(2, msg.getCount());
+        assertEquals(VALUE_CALL_LATENCY, msg.getLockWaitSumUs());
+        assertEquals(VALUE_CALL_LATENCY, msg.getLockWaitMaxUs());
+        assertEquals(1, msg.lockWaitBucketCounts[0]);
+        assertEquals(VALUE_CALL_LATENCY * 5, msg.getWorkSumUs());
+        assertEquals(VALUE_CALL_LATENCY * 4, msg.getWorkMaxUs());
+    }
+
+    @Test
+    public void testApiLatencyStatsLogEventSplitsLockWait() throws Exception {
+        ApiLatencyStats apiLatencyStats = new ApiLatencyStats(mSpyContext, mLooper);
+        ApiStats.ApiEvent event = new ApiStats.ApiEvent(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        // The time spent before asking for the lock, such as permission checks, is not lock wait.
+        Thread.sleep(50);
+        event.onLockRequested();
+        Thread.sleep(5);
+        event.onLockAcquired();
+
+        apiLatencyStats.log(event);
+        apiLatencyStats.onAggregate();
+
+        PulledAtomsClass.TelecomApiLatencyStats msg =
+                apiLatencyStats.mPulledAtoms.telecomApiLatencyStats[0];
+        assertTrue(msg.getLockWaitMaxUs() >= 5000);
+        assertTrue(msg.getLockWaitMaxUs() < 50000);
+        assertTrue(msg.getWorkMaxUs() >= 50000);
+    }
+
+    @Test
+    public void testApiLatencyStatsLogEventSumsLockWaits() throws Exception {
+        ApiLatencyStats apiLatencyStats = new ApiLatencyStats(mSpyContext, mLooper);
+        ApiStats.ApiEvent event = new ApiStats.ApiEvent(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        event.onLockRequested();
+        Thread.sleep(5);
+        event.onLockAcquired();
+        // The work done between the two times the lock is entered is not lock wait.
+        Thread.sleep(50);
+        event.onLockRequested();
+        Thread.sleep(5);
+        event.onLockAcquired();
+
+        apiLatencyStats.log(event);
+        apiLatencyStats.onAggregate();
+
+        PulledAtomsClass.TelecomApiLatencyStats msg =
+                apiLatencyStats.mPulledAtoms.telecomApiLatencyStats[0];
+        assertTrue(msg.getLockWaitMaxUs() >= 10000);
+        assertTrue(msg.getLockWaitMaxUs() < 50000);
+        assertTrue(msg.getWorkMaxUs() >= 50000);
+    }
+
+    @Test
+    public void testPullApiLatencyStats() throws Exception {
+        ApiLatencyStats apiLatencyStats = spy(new ApiLatencyStats(mSpyContext, mLooper));
+        apiLatencyStats.log(VALUE_API_ID, 0, VALUE_CALL_LATENCY);
+        final List<StatsEvent> data = new ArrayList<>();
+
+        int result = apiLatencyStats.pull(data);
+
+        assertEquals(StatsManager.PULL_SUCCESS, result);
+        assertEquals(1, data.size());
+        assertEquals(0, apiLatencyStats.mPulledAtoms.telecomApiLatencyStats.length);
+    }
+
+    @Test
+    public void testMetricsStorePersistsAtomsInOneFile() throws Exception {
+        mTempFile.delete();
+        File storeFile = createMetricsStoreFile();
+        TelecomMetricsStore store = new TelecomMetricsStore(mSpyContext, mLooper);
+        ApiStats apiStats = new ApiStats(mSpyContext, mLooper, store);
+        ApiLatencyStats apiLatencyStats = new ApiLatencyStats(mSpyContext, mLooper, store);
+
+        apiStats.log(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        apiLatencyStats.log(VALUE_API_ID, 0, VALUE_CALL_LATENCY);
+        store.write();
+
+        assertTrue(storeFile.exists());
+        verify(mSpyContext, never()).openFileOutput(anyString(), anyInt());
+        TelecomMetricsStore restoredStore = new TelecomMetricsStore(mSpyContext, mLooper);
+        ApiStats restoredApiStats = new ApiStats(mSpyContext, mLooper, restoredStore);
+        ApiLatencyStats restoredApiLatencyStats =
+                new ApiLatencyStats(mSpyContext, mLooper, restoredStore);
+        assertEquals(1, restoredApiStats.mPulledAtoms.telecomApiStats.length);
+        verifyMessageForApiStats(restoredApiStats.mPulledAtoms.telecomApiStats[0], VALUE_API_ID,
+                VALUE_UID, VALUE_API_RESULT, 1);
+        assertEquals(0, restoredApiStats.mPulledAtoms.telecomApiLatencyStats.length);
+        assertEquals(1, restoredApiLatencyStats.mPulledAtoms.telecomApiLatencyStats.length);
+        assertEquals(0, restoredApiLatencyStats.mPulledAtoms.telecomApiStats.length);
+    }
+
+    @Test
+    public void testMetricsStoreOnlySerializesChangedAtoms() throws Exception {
+        mTempFile.delete();
+        createMetricsStoreFile();
+        TelecomMetricsStore store = new TelecomMetricsStore(mSpyContext, mLooper);
+        ApiStats apiStats = spy(new ApiStats(mSpyContext, mLooper, store));
+        ApiLatencyStats apiLatencyStats =
+                spy(new ApiLatencyStats(mSpyContext, mLooper, store));
+        apiStats.log(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        apiLatencyStats.log(VALUE_API_ID, 0, VALUE_CALL_LATENCY);
+        store.write();
+
+        apiStats.log(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+        store.write();
+
+        verify(apiStats, times(2)).onAggregate();
+        verify(apiLatencyStats, times(1)).onAggregate();
+    }
+
+    @Test
+    public void testMetricsStoreWritesOnItsOwnThread() throws Exception {
+        mTempFile.delete();
+        File storeFile = createMetricsStoreFile();
+        TelecomMetricsStore store = new TelecomMetricsStore(mSpyContext, mLooper);
+        ApiStats apiStats = new ApiStats(mSpyContext, mLooper, store);
+        apiStats.log(VALUE_API_ID, VALUE_UID, VALUE_API_RESULT);
+
+        // An immediate write requested off the metrics thread is handed over to it.
+        store.markDirty(apiStats, 0);
+        waitForHandlerAction(store, TEST_TIMEOUT);
+
+        assertTrue(storeFile.exists());
+        ApiStats restoredApiStats = new ApiStats(mSpyContext, mLooper,
+                new TelecomMetricsStore(mSpyContext, mLooper));
+        assertEquals(1, restoredApiStats.mPulledAtoms.telecomApiStats.length);
+    }
+
+    @Test
+    public void testMetricsStoreMigratesLegacyFile() throws Exception {
+        createTestFileForApiStats(DEFAULT_TIMESTAMPS_MILLIS);
+        createMetricsStoreFile();
+        TelecomMetricsStore store = new TelecomMetricsStore(mSpyContext, mLooper);
+
+        ApiStats apiStats = new ApiStats(mSpyContext, mLooper, store);
+        verifyTestDataForApiStats(apiStats.mPulledAtoms, DEFAULT_TIMESTAMPS_MILLIS);
+        store.write();
+
+        assertFalse(mTempFile.exists());
+        ApiStats restoredApiStats = new ApiStats(mSpyContext, mLooper,
+                new TelecomMetricsStore(mSpyContext, mLooper));
+        verifyTestDataForApiStats(restoredApiStats.mPulledAtoms, DEFAULT_TIMESTAMPS_MILLIS);
+    }
+
+    private File createMetricsStoreFile() throws IOException {
+        File storeFile = new File(mTempFolder.getRoot(), "telecom_metrics");
+        doReturn(storeFile).when(mSpyContext).getFileStreamPath("telecom_metrics");
+        return storeFile;
+    }
+
     private void createTestFileForApiStats(long timestamps) throws IOException {
         PulledAtomsClass.PulledAtoms atom = new PulledAtomsClass.PulledAtoms();
         atom.telecomApiStats =
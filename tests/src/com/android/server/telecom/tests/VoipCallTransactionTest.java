@@ -39,6 +39,7 @@ import org.junit.runners.JUnit4;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
@@ -60,6 +61,7 @@ public class VoipCallTransactionTest extends TelecomTestCase {
         private long mSleepTime;
         private String mName;
         private int mType;
+        private Set<String> mResources;
         public boolean isFinished = false;
 
         public TestVoipCallTransaction(String name, long sleepTime, int type) {
@@ -69,6 +71,17 @@ public class VoipCallTransactionTest extends TelecomTestCase {
             mType = type;
         }
 
+        public TestVoipCallTransaction(String name, long sleepTime, int type,
+                Set<String> resources) {
+            this(name, sleepTime, type);
+            mResources = resources;
+        }
+
+        @Override
+        public Set<String> getResources() {
+            return mResources != null ? mResources : super.getResources();
+        }
+
         @Override
         public CompletionStage<CallTransactionResult> processTransaction(Void v) {
             if (mType == EXCEPTION) {
@@ -241,6 +254,41 @@ public class VoipCallTransactionTest extends TelecomTestCase {
         verifyTransactionsFinished(t1, t2, t3);
     }
 
+    /**
+     * Verifies that transactions for different calls run concurrently while transactions for the
+     * same call, or which do not declare their resources, still run in order.
+     */
+    @SmallTest
+    @Test
+    public void testNonConflictingTransactionsRunConcurrently()
+            throws ExecutionException, InterruptedException, TimeoutException {
+        TestVoipCallTransaction t1 = new TestVoipCallTransaction("t1", 1000L,
+                TestVoipCallTransaction.SUCCESS, Set.of(CallTransaction.getCallResource("1")));
+        TestVoipCallTransaction t2 = new TestVoipCallTransaction("t2", 100L,
+                TestVoipCallTransaction.SUCCESS, Set.of(CallTransaction.getCallResource("2")));
+        TestVoipCallTransaction t3 = new TestVoipCallTransaction("t3", 100L,
+                TestVoipCallTransaction.SUCCESS, Set.of(CallTransaction.getCallResource("1")));
+        TestVoipCallTransaction t4 = new TestVoipCallTransaction("t4", 100L,
+                TestVoipCallTransaction.SUCCESS);
+        TestVoipCallTransaction t5 = new TestVoipCallTransaction("t5", 100L,
+                TestVoipCallTransaction.SUCCESS, Set.of(CallTransaction.getCallResource("2")));
+        List<CompletableFuture<CallTransactionResult>> resultFutures = new ArrayList<>();
+        for (TestVoipCallTransaction t : List.of(t1, t2, t3, t4, t5)) {
+            CompletableFuture<CallTransactionResult> resultFuture = new CompletableFuture<>();
+            resultFutures.add(resultFuture);
+            mTransactionManager.addTransaction(t, resultFuture::complete);
+        }
+        for (CompletableFuture<CallTransactionResult> resultFuture : resultFutures) {
+            assertEquals(CallTransactionResult.RESULT_SUCCEED,
+                    resultFuture.get(5000L, TimeUnit.MILLISECONDS).getResult());
+        }
+        // t2 overtakes t1, but t5 may not overtake t4, which touches everything.
+        String expectedLog = "t2 success;\nt1 success;\nt3 success;\nt4 success;\n"
+                + "t5 success;\n";
+        assertEquals(expectedLog, mLog.toString());
+        verifyTransactionsFinished(t1, t2, t3, t4, t5);
+    }
+
     @SmallTest
     @Test
     public void testTransactionTimeout()